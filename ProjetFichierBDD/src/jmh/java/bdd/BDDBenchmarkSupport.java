@@ -0,0 +1,97 @@
+package bdd;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+
+/**
+ * Paramètres et outils communs aux benchmarks de {@link BDD}.
+ * <p>
+ * Chaque benchmark est exécuté pour chaque combinaison de la taille des valeurs, du nombre de clés,
+ * du support ({@link StorageMode}) et du répertoire des clés ({@link KeyDirectoryType}).
+ * Une combinaison peut être choisie grâce à l'option -p de JMH, par exemple -p keyDirectoryType=B_TREE.
+ */
+@State(Scope.Benchmark)
+public abstract class BDDBenchmarkSupport {
+    private static final int FILL_BATCH_SIZE = 1000;
+
+    @Param({"100", "4096"})
+    public int valueSize;
+
+    @Param({"1000", "50000"})
+    public int keyCount;
+
+    @Param({"RANDOM_ACCESS_FILE", "MEMORY_MAPPED"})
+    public StorageMode storageMode;
+
+    @Param({"HASH_MAP", "PRIMITIVE_HASH", "B_TREE"})
+    public KeyDirectoryType keyDirectoryType;
+
+    File file;
+    String[] keys;
+
+    /**
+     * Crée le fichier temporaire du benchmark et les clés utilisées
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void createFile () throws IOException {
+        file = File.createTempFile("bdd-benchmark", ".bdd");
+        file.delete();
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++)
+            keys[i] = "key-" + i;
+    }
+
+    void deleteFiles () {
+        file.delete();
+        OperationLog.getLogFile(file).delete();
+    }
+
+    BDD open () throws IOException, ClassNotFoundException {
+        return new BDD(file, new BDDConfiguration()
+                .setStorageMode(storageMode)
+                .setKeyDirectoryType(keyDirectoryType));
+    }
+
+    /**
+     * @param size   la taille de la valeur
+     * @param random le générateur utilisé pour remplir la valeur
+     * @return une valeur aléatoire, enregistrée comme un tableau d'octets
+     */
+    static byte[] value (int size, Random random) {
+        byte[] res = new byte[size];
+        random.nextBytes(res);
+        return res;
+    }
+
+    /**
+     * Associe chaque clé à une valeur fournie par la fonction donnée, par lots
+     *
+     * @param bdd    la BDD à remplir
+     * @param values la fonction qui donne la valeur de chaque clé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void fill (BDD bdd, IntFunction<Serializable> values) throws IOException {
+        HashMap<String, Serializable> batch = new HashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            batch.put(keys[i], values.apply(i));
+            if (batch.size() == FILL_BATCH_SIZE || i == keyCount - 1) {
+                bdd.putAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    String randomKey () {
+        return keys[ThreadLocalRandom.current().nextInt(keyCount)];
+    }
+}
@@ -0,0 +1,61 @@
+package bdd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure le remplacement de valeurs de tailles variables, entre la moitié et une fois et demie {@link #valueSize} :
+ * chaque suppression laisse un espace libre de taille différente, si bien que le fichier se fragmente
+ * et que chaque ajout doit chercher une place parmi de nombreux espaces libres.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChurnBenchmark extends BDDBenchmarkSupport {
+    private static final int DISTINCT_VALUES = 64;
+
+    private BDD bdd;
+    private byte[][] values;
+
+    @Setup(Level.Trial)
+    public void setUp () throws IOException, ClassNotFoundException {
+        createFile();
+        Random random = new Random(0);
+        values = new byte[DISTINCT_VALUES][];
+        for (int i = 0; i < values.length; i++)
+            values[i] = value(valueSize / 2 + random.nextInt(valueSize + 1), random);
+        bdd = open();
+        fill(bdd, i -> values[i % values.length]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () throws Exception {
+        bdd.close();
+        deleteFiles();
+    }
+
+    @Benchmark
+    public void churn () throws IOException {
+        String key = randomKey();
+        bdd.removeObject(key);
+        bdd.putObject(key, values[ThreadLocalRandom.current().nextInt(values.length)]);
+    }
+}
@@ -0,0 +1,49 @@
+package bdd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure l'ouverture puis la fermeture d'une BDD qui contient {@link #keyCount} clés,
+ * c'est-à-dire le chargement des métadonnées puis leur sauvegarde.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenCloseBenchmark extends BDDBenchmarkSupport {
+
+    @Setup(Level.Trial)
+    public void setUp () throws Exception {
+        createFile();
+        byte[] value = value(valueSize, new Random(0));
+        try (BDD bdd = open()) {
+            fill(bdd, i -> value);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () {
+        deleteFiles();
+    }
+
+    @Benchmark
+    public void openClose () throws Exception {
+        open().close();
+    }
+}
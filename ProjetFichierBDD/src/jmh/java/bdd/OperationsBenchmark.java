@@ -0,0 +1,71 @@
+package bdd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure le temps moyen des opérations unitaires sur une BDD qui contient déjà {@link #keyCount} clés.
+ * Les clés sont choisies au hasard parmi les clés existantes, si bien que chaque ajout remplace un enregistrement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperationsBenchmark extends BDDBenchmarkSupport {
+    private BDD bdd;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUp () throws IOException, ClassNotFoundException {
+        createFile();
+        Random random = new Random(0);
+        value = value(valueSize, random);
+        bdd = open();
+        fill(bdd, i -> value);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () throws Exception {
+        bdd.close();
+        deleteFiles();
+    }
+
+    @Benchmark
+    public void putObject () throws IOException {
+        bdd.putObject(randomKey(), value);
+    }
+
+    @Benchmark
+    public Serializable getObject () throws IOException, ClassNotFoundException {
+        return bdd.getObject(randomKey());
+    }
+
+    /**
+     * La clé supprimée est ajoutée à nouveau pour que la BDD garde le même nombre de clés :
+     * le coût de la suppression seule s'obtient en retranchant le résultat de {@link #putObject()}.
+     */
+    @Benchmark
+    public boolean removeObject () throws IOException {
+        String key = randomKey();
+        boolean res = bdd.removeObject(key);
+        bdd.putObject(key, value);
+        return res;
+    }
+}
@@ -0,0 +1,288 @@
+package bdd;
+
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Façade asynchrone d'une {@link BDD} : chaque opération est exécutée par un exécuteur dédié aux entrées/sorties,
+ * et son résultat est rendu par un {@link CompletableFuture}, si bien que le fil appelant n'est jamais bloqué.
+ * <p>
+ * Les opérations sur une même clé sont exécutées dans l'ordre de leur soumission : une lecture soumise après une écriture voit cette écriture,
+ * une lecture soumise avant une écriture ne la voit pas, et deux écritures sur la même clé ne se croisent jamais.
+ * Les opérations sur des clés différentes s'exécutent en parallèle.
+ * <p>
+ * Les lectures simultanées d'une même clé sont regroupées : tant qu'une lecture de la clé est en attente ou en cours, et qu'aucune écriture
+ * de cette clé n'a été soumise depuis, les nouvelles lectures reçoivent le résultat de la première sans solliciter le fichier.
+ * Elles obtiennent alors la même instance de l'objet, qui ne doit pas être modifiée.
+ * <p>
+ * Le nombre d'opérations en attente ou en cours est borné. Au delà, une opération n'est pas mise en file :
+ * son résultat échoue immédiatement avec une {@link RejectedExecutionException}, afin que l'appelant puisse ralentir sans être bloqué.
+ * <p>
+ * La BDD n'est pas fermée par {@link #close()} : elle peut continuer à être utilisée directement.
+ *
+ * @version 1.0
+ */
+public class AsyncBDD implements AutoCloseable {
+    /**
+     * Nombre maximal par défaut d'opérations en attente ou en cours
+     */
+    public static final int DEFAULT_MAX_PENDING_OPERATIONS = 1024;
+
+    private final BDD bdd;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final int maxPendingOperations;
+    private final Semaphore permits;
+    private final Object monitor = new Object();
+    private final HashMap<String, CompletableFuture<Serializable>> pendingReads = new HashMap<>();
+    private final HashMap<String, CompletableFuture<?>> pendingWrites = new HashMap<>();
+    private final LongAdder coalescedReads = new LongAdder();
+    private final LongAdder rejectedOperations = new LongAdder();
+    private volatile boolean closed = false;
+
+    /**
+     * Crée une façade dont l'exécuteur compte autant de fils que de processeurs, avec {@link #DEFAULT_MAX_PENDING_OPERATIONS} opérations en attente au plus
+     *
+     * @param bdd la BDD
+     */
+    public AsyncBDD (BDD bdd) {
+        this(bdd, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_PENDING_OPERATIONS);
+    }
+
+    /**
+     * Crée une façade qui possède son propre exécuteur, arrêté par {@link #close()}
+     *
+     * @param bdd                  la BDD
+     * @param ioThreads            le nombre de fils d'exécution qui effectuent les opérations
+     * @param maxPendingOperations le nombre maximal d'opérations en attente ou en cours
+     */
+    public AsyncBDD (BDD bdd, int ioThreads, int maxPendingOperations) {
+        this(bdd, newExecutor(ioThreads), maxPendingOperations, true);
+    }
+
+    /**
+     * Crée une façade qui soumet les opérations à l'exécuteur donné. Cet exécuteur n'est pas arrêté par {@link #close()}.
+     *
+     * @param bdd                  la BDD
+     * @param executor             l'exécuteur des opérations
+     * @param maxPendingOperations le nombre maximal d'opérations en attente ou en cours
+     */
+    public AsyncBDD (BDD bdd, Executor executor, int maxPendingOperations) {
+        this(bdd, executor, maxPendingOperations, false);
+    }
+
+    private AsyncBDD (BDD bdd, Executor executor, int maxPendingOperations, boolean owned) {
+        if (bdd == null || executor == null) throw new NullPointerException();
+        if (maxPendingOperations <= 0) throw new IllegalArgumentException();
+        this.bdd = bdd;
+        this.executor = executor;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+        this.maxPendingOperations = maxPendingOperations;
+        this.permits = new Semaphore(maxPendingOperations);
+    }
+
+    private static ExecutorService newExecutor (int ioThreads) {
+        if (ioThreads <= 0) throw new IllegalArgumentException();
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(ioThreads, r -> {
+            Thread t = new Thread(r, "AsyncBDD I/O " + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Lit de manière asynchrone l'objet associé à la clé donnée, grâce à {@link BDD#getObject(String)}
+     *
+     * @param objectName la clé
+     * @return le futur objet, ou null si la clé est absente
+     */
+    public CompletableFuture<Serializable> getAsync (String objectName) {
+        if (objectName == null) throw new NullPointerException();
+        synchronized (monitor) {
+            CompletableFuture<Serializable> read = pendingReads.get(objectName);
+            if (read != null) {
+                coalescedReads.increment();
+                return read.thenApply(Function.identity());
+            }
+            CompletableFuture<Serializable> res = submit(() -> bdd.getObject(objectName), pendingWrites.get(objectName));
+            if (!res.isDone()) {
+                pendingReads.put(objectName, res);
+                res.whenComplete((v, e) -> {
+                    synchronized (monitor) {
+                        pendingReads.remove(objectName, res);
+                    }
+                });
+            }
+            return res.thenApply(Function.identity());
+        }
+    }
+
+    /**
+     * Ajoute de manière asynchrone un objet, grâce à {@link BDD#putObject(String, Serializable)}
+     *
+     * @param objectName la clé
+     * @param object     l'objet
+     * @return un futur terminé lorsque l'objet est enregistré
+     */
+    public CompletableFuture<Void> putAsync (String objectName, Serializable object) {
+        if (objectName == null || object == null) throw new NullPointerException();
+        return write(objectName, () -> {
+            bdd.putObject(objectName, object);
+            return null;
+        });
+    }
+
+    /**
+     * Supprime de manière asynchrone un objet, grâce à {@link BDD#removeObject(String)}
+     *
+     * @param objectName la clé
+     * @return le futur résultat de la suppression : true si l'objet a été trouvé
+     */
+    public CompletableFuture<Boolean> removeAsync (String objectName) {
+        if (objectName == null) throw new NullPointerException();
+        return write(objectName, () -> bdd.removeObject(objectName));
+    }
+
+    /**
+     * Soumet une écriture, exécutée après les opérations de la même clé déjà soumises.
+     * La lecture de la clé en attente, elle-même exécutée après l'écriture précédente, est attendue à la place de cette écriture ;
+     * elle ne peut plus être rejointe, puisqu'elle ne verrait pas cette écriture.
+     *
+     * @param objectName la clé
+     * @param operation  l'écriture
+     * @param <T>        le type du résultat
+     * @return le futur résultat
+     */
+    private <T> CompletableFuture<T> write (String objectName, Callable<T> operation) {
+        synchronized (monitor) {
+            CompletableFuture<?> after = pendingReads.remove(objectName);
+            if (after == null)
+                after = pendingWrites.get(objectName);
+            CompletableFuture<T> res = submit(operation, after);
+            if (!res.isDone()) {
+                pendingWrites.put(objectName, res);
+                res.whenComplete((v, e) -> {
+                    synchronized (monitor) {
+                        pendingWrites.remove(objectName, res);
+                    }
+                });
+            }
+            return res.thenApply(Function.identity());
+        }
+    }
+
+    /**
+     * Réserve une place parmi les opérations en attente, puis confie l'opération à l'exécuteur, éventuellement après la fin d'une autre opération
+     *
+     * @param operation l'opération
+     * @param after     l'opération qui doit être terminée, avec succès ou non, avant que celle-ci ne commence, ou null
+     * @param <T>       le type du résultat
+     * @return le futur résultat, qui a déjà échoué si la façade est fermée ou si trop d'opérations sont en attente
+     */
+    private <T> CompletableFuture<T> submit (Callable<T> operation, CompletableFuture<?> after) {
+        CompletableFuture<T> res = new CompletableFuture<>();
+        if (closed) {
+            res.completeExceptionally(new IllegalStateException("La façade asynchrone est fermée"));
+            return res;
+        }
+        if (!permits.tryAcquire()) {
+            rejectedOperations.increment();
+            res.completeExceptionally(new RejectedExecutionException("Trop d'opérations en attente : " + maxPendingOperations));
+            return res;
+        }
+        Runnable task = () -> run(operation, res);
+        if (after == null)
+            execute(task, res);
+        else
+            after.whenComplete((v, e) -> execute(task, res));
+        return res;
+    }
+
+    /**
+     * Exécute une opération, puis libère sa place avant de rendre son résultat, afin que la place soit disponible pour les opérations
+     * soumises par les fonctions appelées à la fin du futur
+     *
+     * @param operation l'opération
+     * @param res       le futur résultat
+     * @param <T>       le type du résultat
+     */
+    private <T> void run (Callable<T> operation, CompletableFuture<T> res) {
+        T value = null;
+        Throwable failure = null;
+        try {
+            value = operation.call();
+        } catch (Throwable e) {
+            failure = e;
+        }
+        permits.release();
+        if (failure == null)
+            res.complete(value);
+        else
+            res.completeExceptionally(failure);
+    }
+
+    private void execute (Runnable task, CompletableFuture<?> res) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            res.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return le nombre d'opérations en attente ou en cours
+     */
+    public int getPendingOperations () {
+        return maxPendingOperations - permits.availablePermits();
+    }
+
+    /**
+     * @return le nombre de lectures qui ont reçu le résultat d'une lecture de la même clé déjà en attente
+     */
+    public long getCoalescedReads () {
+        return coalescedReads.sum();
+    }
+
+    /**
+     * @return le nombre d'opérations refusées parce que trop d'opérations étaient en attente
+     */
+    public long getRejectedOperations () {
+        return rejectedOperations.sum();
+    }
+
+    /**
+     * Refuse les nouvelles opérations, attend la fin des opérations en attente, puis arrête l'exécuteur s'il appartient à la façade.
+     * La BDD n'est pas fermée.
+     *
+     * @throws InterruptedIOException si le fil appelant est interrompu pendant l'attente
+     */
+    @Override
+    public void close () throws InterruptedIOException {
+        closed = true;
+        try {
+            permits.acquire(maxPendingOperations);
+            permits.release(maxPendingOperations);
+            if (ownedExecutor != null) {
+                ownedExecutor.shutdown();
+                ownedExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
@@ -1,9 +1,45 @@
 package bdd;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Cette classe permet d'enregistrer un tableau associatif dans un fichier.
@@ -20,21 +56,73 @@ import java.util.TreeSet;
  * Cette fonction va rechercher la position de l'enregistrement dans le fichier grace au tableau associatif {@link #links},
  * puis elle va déserializer l'enregistrement pour le retourner.
  * <p>
- * La suppression, consiste à appeler la fonction {@link #removeObject(String)} qui va ajouter l'espace occupé par l'engistrement dans le tableau trié {@link #freeSpaceIntervals},
- * sauf si l'enregistrement se trouve en fin de fichier. Dans ce dernier cas, le fichier est tronqué.
+ * La suppression, consiste à appeler la fonction {@link #removeObject(String)} qui va rendre l'espace occupé par l'engistrement à l'allocateur {@link #freeSpaceAllocator},
+ * qui le fusionne avec les espaces libres voisins. Si l'espace libre obtenu se trouve en fin de fichier, le fichier est tronqué.
  * <p>
- * De même, lors de l'ajout d'un nouvel enregistrement, le tableau {@link #freeSpaceIntervals} est mis à jour si un espace vide contigue est trouvé.
+ * De même, lors de l'ajout d'un nouvel enregistrement, l'allocateur {@link #freeSpaceAllocator} cherche le plus petit espace vide contigue suffisant,
+ * et le découpe s'il est plus grand que nécessaire.
  * <p>
- * A la fermeture du fichier, les deux fonctions suivantes sont appelées :
+ * Les accès au fichier passent par un support {@link Storage} choisi à l'ouverture grâce à {@link StorageMode} :
+ * soit des appels systèmes sur un {@link RandomAccessFile} (mode par défaut), soit une projection du fichier en mémoire par segments.
+ * <p>
+ * Si le journal des opérations est activé ({@link BDDConfiguration#setOperationLogEnabled(boolean)}), chaque ajout et chaque suppression
+ * est aussi inscrit dans un fichier {@link OperationLog} en ajout seul, placé à côté du fichier de la BDD.
+ * Après un arrêt brutal, ce journal est rejoué à l'ouverture, si bien que les modifications effectuées depuis la dernière sauvegarde des métadonnées ne sont pas perdues.
+ * <p>
+ * Une même instance peut être utilisée par plusieurs fils d'exécution. Les lectures s'effectuent en parallèle sous le verrou de lecture de {@link #lock},
+ * grâce aux lectures positionnelles du support. Un ajout ne prend le verrou d'écriture que pour réserver sa zone puis pour mettre à jour {@link #links} :
+ * la sérialisation et l'écriture des données se font sans verrou, dans une zone que personne d'autre ne peut référencer.
+ * <p>
+ * Les objets sont encodés grâce au {@link CodecRegistry} de la configuration : les classes qui y ont un {@link Codec} sont écrites sans descripteur de classe,
+ * les autres passent par la sérialisation Java. Les deux formats peuvent cohabiter dans un même fichier.
+ * Si la compression est activée ({@link BDDConfiguration#setCompressionEnabled(boolean)}), les enregistrements dont la taille atteint un seuil sont compressés,
+ * et commencent alors par un octet d'options ({@link SerializationTools#RECORD_FLAGS_MARKER}) qui permet de les distinguer des enregistrements bruts.
+ * <p>
+ * Un cache optionnel des objets désérialisés ({@link ObjectCache}), borné par un nombre d'entrées ou une estimation de sa taille,
+ * peut être placé devant {@link #getObject(String)} grâce à {@link BDDConfiguration#setCacheMaxEntries(int)} ou {@link BDDConfiguration#setCacheMaxBytes(long)}.
+ * Chaque ajout et chaque suppression invalide l'entrée de la clé concernée.
+ * <p>
+ * La fonction {@link #getStatistics()} donne l'occupation du fichier et ses zones libres. Si les métriques sont activées ({@link BDDConfiguration#setMetricsEnabled(boolean)}),
+ * le support est enveloppé par un {@link MeteredStorage} qui compte les octets lus et écrits, et la durée de chaque {@link MeasuredOperation} alimente un histogramme.
+ * Ces informations peuvent aussi être consultées par JMX ({@link BDDMXBean}).
+ * <p>
+ * Les fonctions {@link #putAll(Map)}, {@link #getAll(Collection)} et {@link #removeAll(Collection)} traitent un lot de clés en une seule prise de verrou.
+ * Les lectures d'un lot sont triées par position dans le fichier, et les zones d'un lot d'ajouts sont réservées d'un seul coup
+ * afin que les enregistrements placés côte à côte soient écrits ensemble.
+ * <p>
+ * Le répertoire des clés {@link #links} est choisi par {@link BDDConfiguration#setKeyDirectoryType(KeyDirectoryType)} : un tableau associatif
+ * entièrement chargé en mémoire (par défaut), une table de hachage en mémoire faite de tableaux primitifs ({@link PrimitiveHashKeyDirectory}),
+ * ou un arbre B+ enregistré dans le fichier ({@link BTreeKeyDirectory}), dont les pages sont lues à la demande
+ * et réécrites par copie lors de la sauvegarde des métadonnées.
+ * Les fonctions {@link #scan(String, String)} et {@link #scanPrefix(String)} parcourent les clés dans l'ordre, par lots lus sous le verrou de lecture.
+ * <p>
+ * Les grandes valeurs binaires peuvent être écrites et lues par flux grâce à {@link #openForWrite(String, long)} et {@link #openForRead(String)},
+ * sans jamais être entièrement chargées en mémoire. Une zone en cours de lecture est épinglée : si sa clé est supprimée ou remplacée,
+ * sa libération est différée jusqu'à la fermeture du flux. De même, {@link #putBytes(String, ByteBuffer)}, {@link #getBytes(String)},
+ * {@link #getInto(String, ByteBuffer)} et {@link #transferTo(String, WritableByteChannel)} échangent des tableaux d'octets sans sérialisation Java,
+ * le dernier envoyant l'enregistrement vers un canal sans le copier en mémoire.
+ * <p>
+ * Chaque modification des clés crée une nouvelle version de la BDD. Un instantané ({@link #snapshot()}) lit les objets tels qu'ils étaient
+ * à la version de son ouverture, sans bloquer les écritures : tant qu'il est ouvert, l'ancienne position de chaque clé modifiée est conservée
+ * dans {@link #history}, et les zones des enregistrements remplacés ou supprimés ne sont rendues à l'allocateur qu'une fois fermés
+ * tous les instantanés qui peuvent les lire ({@link #snapshotFrees}). Une transaction ({@link #beginTransaction()}) s'appuie sur un instantané
+ * pour ses lectures, et applique toutes ses modifications d'un seul coup lors de sa validation.
+ * <p>
+ * Si l'écriture différée est activée ({@link BDDConfiguration#setWriteBufferSize(long)}), les ajouts et les suppressions sont conservés
+ * dans un {@link WriteBuffer}, que les lectures consultent avant le fichier. Le tampon est vidé par {@link #flush()} lorsqu'il atteint sa taille,
+ * périodiquement en arrière-plan, et à la fermeture : ses enregistrements sont alors réservés d'un seul coup et écrits par blocs contigus,
+ * comme ceux de {@link #putAll(Map)}. Les opérations qui lisent le fichier sans consulter le tampon le vident au préalable.
+ * <p>
+ * A la fermeture du fichier, ou lors d'un appel à {@link #checkpoint()}, les deux fonctions suivantes sont appelées :
  * <ul>
  *     <li>{@link #saveLinks()} qui sauvegarde le tableau {@link #links} comme si c'était un entregistrement quelconque, mais sans clé. La position de cet enregistrement dans le fichier est enregistré à la position déterminée par {@link #LINKS_REFERENCE_POSITION} du même fichier.</li>
- *     <li>{@link #saveFreeSpaceTab()} ()} qui sauvegarde le tableau {@link #freeSpaceIntervals} comme si c'était un enregistrement quelconque aussi. La position de cet enregistrement dans le fichier est enregistré à la position déterminée par {@link #SPACE_TAB_REFERENCE_POSITION} du même fichier.</li>
+ *     <li>{@link #saveFreeSpaceTab(long, int)} qui sauvegarde les espaces libres de {@link #freeSpaceAllocator} comme si c'était un enregistrement quelconque aussi. La position de cet enregistrement dans le fichier est enregistré à la position déterminée par {@link #SPACE_TAB_REFERENCE_POSITION} du même fichier.</li>
  * </ul>
  * <p>
  * De même, à l'ouverture du fichier, les deux fonctions suivantes sont appelées :
  * <ul>
  *     <li>{@link #readLinks()} qui permet de charger le tableau {@link #links} à partir du fichier, en chargeant un enregistrement dont la position est déterminée par {@link #LINKS_REFERENCE_POSITION}</li>
- *     <li>{@link #readFreeSpaceTab()} ()} qui permet de charger le tableau {@link #freeSpaceIntervals} à partir du fichier, en chargeant un enregistrement dont la position est déterminée par {@link #SPACE_TAB_REFERENCE_POSITION}</li>
+ *     <li>{@link #readFreeSpaceTab()} ()} qui permet de charger les espaces libres de {@link #freeSpaceAllocator} à partir du fichier, en chargeant un enregistrement dont la position est déterminée par {@link #SPACE_TAB_REFERENCE_POSITION}</li>
  * </ul>
  *
  * @author Jason Mahdjoub
@@ -43,161 +131,2296 @@ import java.util.TreeSet;
 public class BDD implements AutoCloseable {
     private static final long LINKS_REFERENCE_POSITION = 0;
     private static final long SPACE_TAB_REFERENCE_POSITION = 8;
+    /**
+     * Taille maximale du tampon utilisé pour regrouper en une seule écriture des enregistrements contigus
+     */
+    private static final int MAX_COALESCED_WRITE_SIZE = 1 << 20;
+    /**
+     * Octets nuls copiés dans la marge des zones écrites par {@link #writeRecords(byte[][], long[])}
+     */
+    private static final byte[] PADDING = new byte[4096];
+    /**
+     * Nombre de clés lues sous une même prise du verrou de lecture par {@link #scan(String, String)}
+     */
+    static final int SCAN_BATCH_SIZE = 128;
+    /**
+     * En-tête d'un enregistrement écrit par {@link #openForWrite(String, long)} : la taille de l'enregistrement,
+     * l'identifiant du codec des tableaux d'octets, puis la taille du tableau
+     */
+    private static final int STREAM_HEADER_SIZE = 9;
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Ancienne position d'une clé, avant sa modification par une version donnée
+     */
+    private static final class KeyVersion {
+        private final long version;
+        private final String key;
+        private final Long previous;
+
+        private KeyVersion (long version, String key, Long previous) {
+            this.version = version;
+            this.key = key;
+            this.previous = previous;
+        }
+    }
+
+    static class FreeSpaceInterval implements Comparable<FreeSpaceInterval> {
+        private long startPosition;
+        private long length;
+
+        FreeSpaceInterval (long startPosition, long length) {
+            this.startPosition = startPosition;
+            this.length = length;
+        }
+
+        long getStartPosition () {
+            return startPosition;
+        }
+
+        long getLength () {
+            return length;
+        }
+
+        @Override
+        public int compareTo (FreeSpaceInterval o) {
+            return Long.compare(startPosition, o.startPosition);
+        }
+    }
+
+
+    private final Storage storage;
+    private final BDDConfiguration configuration;
+    private final OperationLog operationLog;
+    /**
+     * Journal en cours de relecture par {@link #recoverOperationLog(File)}, null en dehors de celle-ci
+     */
+    private File recoveredLog;
+    private final ArrayDeque<long[]> pendingFrees = new ArrayDeque<>();
+    private final ConcurrentHashMap<Long, Integer> pinnedZones = new ConcurrentHashMap<>();
+    private final HashMap<Long, Long> deferredFrees = new HashMap<>();
+    /**
+     * Numéro de la dernière version de la BDD, incrémenté sous le verrou d'écriture par chaque modification des clés
+     */
+    private long version = 0;
+    /**
+     * Nombre d'instantanés ouverts, par version
+     */
+    private final ConcurrentSkipListMap<Long, Integer> snapshots = new ConcurrentSkipListMap<>();
+    /**
+     * Anciennes positions des clés modifiées pendant qu'un instantané était ouvert, dans l'ordre des versions.
+     * Elles sont oubliées dès que plus aucun instantané ouvert n'est antérieur à leur version.
+     */
+    private final ArrayDeque<KeyVersion> history = new ArrayDeque<>();
+    private final HashMap<String, ArrayDeque<KeyVersion>> historyByKey = new HashMap<>();
+    /**
+     * Zones libérées pendant qu'un instantané était ouvert : version de la libération, numéro de séquence de son entrée dans le journal, position et taille
+     */
+    private final ArrayDeque<long[]> snapshotFrees = new ArrayDeque<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CodecRegistry codecRegistry;
+    private final ObjectCache cache;
+    private final Metrics metrics;
+    private ObjectName mbeanName = null;
+    private final Object compactionMonitor = new Object();
+    private final ScheduledExecutorService compactionScheduler;
+    private volatile IOException compactionFailure = null;
+    private final WriteBuffer writeBuffer;
+    private final Object flushMonitor = new Object();
+    private final ScheduledExecutorService flushScheduler;
+    private volatile IOException flushFailure = null;
+    private volatile boolean closed = false;
+    private FreeSpaceAllocator freeSpaceAllocator;
+    private KeyDirectory links;
+    /**
+     * CRC32 de l'enregistrement du répertoire des clés sauvegardé ou chargé en dernier, qui fait partie de l'empreinte des métadonnées
+     */
+    private long linksChecksum = 0;
+    private final File indexFile;
+    /**
+     * Index secondaires déclarés par la configuration, par nom. Null tant qu'ils ne sont pas chargés.
+     */
+    private LinkedHashMap<String, SecondaryIndex> indexes = null;
+    private final ArrayDeque<long[]> obsoleteZones = new ArrayDeque<>();
+    private final KeyDirectory.PageAllocator pageAllocator = new KeyDirectory.PageAllocator() {
+        @Override
+        public long allocate (int length) throws IOException {
+            return findPosition(length);
+        }
+
+        @Override
+        public void release (long position, int length) {
+            obsoleteZones.add(new long[]{position, length});
+        }
+    };
+
+
+    /**
+     * Ouvre la BDD contenue dans le fichier donné en paramètre, en utilisant le mode {@link StorageMode#RANDOM_ACCESS_FILE}
+     *
+     * @param file le fichier de la BDD, créé s'il n'existe pas
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si la déserialisation des métadonnées se passe mal.
+     */
+    public BDD (File file) throws IOException, ClassNotFoundException {
+        this(file, StorageMode.RANDOM_ACCESS_FILE);
+    }
+
+    /**
+     * Ouvre la BDD contenue dans le fichier donné en paramètre
+     *
+     * @param file        le fichier de la BDD, créé s'il n'existe pas
+     * @param storageMode le mode d'accès au fichier (appels systèmes ou projection en mémoire)
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si la déserialisation des métadonnées se passe mal.
+     */
+    public BDD (File file, StorageMode storageMode) throws IOException, ClassNotFoundException {
+        this(file, new BDDConfiguration().setStorageMode(storageMode));
+    }
+
+    /**
+     * Ouvre la BDD contenue dans le fichier donné en paramètre.
+     * Si un journal des opérations est présent à côté du fichier, suite à un arrêt brutal, il est rejoué grâce à la fonction {@link #recoverOperationLog(File)},
+     * que le journal soit activé ou non dans la configuration.
+     * Les octets situés après la fin logique enregistrée par la dernière sauvegarde des métadonnées, et qu'aucune entrée du journal n'a réservés,
+     * sont ensuite tronqués : c'est par exemple la fin projetée d'un fichier {@link StorageMode#MEMORY_MAPPED} qui n'a pas été fermé.
+     *
+     * @param file          le fichier de la BDD, créé s'il n'existe pas
+     * @param configuration les paramètres d'ouverture
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si la déserialisation des métadonnées se passe mal.
+     */
+    public BDD (File file, BDDConfiguration configuration) throws IOException, ClassNotFoundException {
+        if (file == null || configuration == null) throw new NullPointerException();
+        this.configuration = configuration;
+        codecRegistry = configuration.getCodecRegistry();
+        cache = configuration.isCacheEnabled()
+                ? new ObjectCache(configuration.getCacheMaxEntries(), configuration.getCacheMaxBytes(), configuration.isCacheSharedInstances(), codecRegistry)
+                : null;
+        metrics = configuration.isMetricsEnabled() ? new Metrics() : null;
+        Storage s = Storage.open(file, configuration.getStorageMode());
+        storage = metrics == null ? s : new MeteredStorage(s, metrics);
+        indexFile = getIndexFile(file);
+        writeBuffer = configuration.getWriteBufferSize() > 0 ? new WriteBuffer(configuration.getWriteBufferSize()) : null;
+        OperationLog log = null;
+        try {
+            loadMetaData();
+            File logFile = OperationLog.getLogFile(file);
+            boolean replayed = logFile.length() > 0;
+            if (replayed)
+                recoverOperationLog(logFile);
+            truncateFreeEnd();
+            loadIndexes(!replayed);
+            if (configuration.isOperationLogEnabled())
+                log = new OperationLog(logFile, storage, configuration);
+            else if (logFile.exists() && !logFile.delete())
+                throw new IOException("Impossible de supprimer le journal " + logFile);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            storage.close();
+            throw e;
+        }
+        operationLog = log;
+        if (configuration.getCompactionThreshold() > 0) {
+            compactionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "BDD compaction " + file.getName());
+                t.setDaemon(true);
+                return t;
+            });
+            long delay = configuration.getCompactionCheckInterval();
+            compactionScheduler.scheduleWithFixedDelay(this::backgroundCompaction, delay, delay, TimeUnit.MILLISECONDS);
+        } else {
+            compactionScheduler = null;
+        }
+        if (writeBuffer != null) {
+            flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "BDD write buffer " + file.getName());
+                t.setDaemon(true);
+                return t;
+            });
+            long delay = configuration.getWriteBufferFlushInterval();
+            flushScheduler.scheduleWithFixedDelay(this::backgroundFlush, delay, delay, TimeUnit.MILLISECONDS);
+        } else {
+            flushScheduler = null;
+        }
+        if (configuration.isJmxEnabled())
+            registerMBean(file);
+    }
+
+    /**
+     * Enregistre la BDD auprès du serveur de MBeans de la plateforme, sous le nom décrit par {@link BDDMXBean}.
+     * Si l'enregistrement échoue, par exemple parce que le même fichier est déjà ouvert avec JMX, la BDD est fermée.
+     *
+     * @param file le fichier de la BDD
+     * @throws IOException si l'enregistrement échoue
+     */
+    private void registerMBean (File file) throws IOException {
+        try {
+            ObjectName name = new ObjectName("bdd:type=BDD,name=" + ObjectName.quote(file.getAbsolutePath()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Management(), name);
+            mbeanName = name;
+        } catch (JMException e) {
+            try {
+                close();
+            } catch (Exception ignored) {
+            }
+            throw new IOException("Impossible d'enregistrer la BDD auprès de JMX", e);
+        }
+    }
+
+    /**
+     * @param dataFile le fichier de la BDD
+     * @return le fichier des index secondaires, placé à côté du fichier de la BDD
+     */
+    static File getIndexFile (File dataFile) {
+        return new File(dataFile.getPath() + ".idx");
+    }
+
+    /**
+     * @return l'empreinte des métadonnées sauvegardées : la position et le CRC32 du répertoire des clés, et le nombre de clés.
+     * Elle est enregistrée dans le fichier des index pour reconnaître un fichier qui ne correspond pas aux métadonnées.
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private long[] metaDataStamp () throws IOException {
+        return new long[]{storage.readLong(LINKS_REFERENCE_POSITION), linksChecksum, links.size()};
+    }
+
+    /**
+     * Charge les index secondaires déclarés par la configuration à partir du fichier des index, si son empreinte correspond aux métadonnées chargées.
+     * Les index absents de ce fichier sont reconstruits en lisant et en désérialisant tous les objets de la BDD.
+     * Le fichier est supprimé si aucun index n'est déclaré.
+     *
+     * @param useIndexFile false si le fichier des index doit être ignoré, parce que le journal des opérations vient d'être rejoué
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si un objet ne peut pas être désérialisé
+     */
+    private void loadIndexes (boolean useIndexFile) throws IOException, ClassNotFoundException {
+        LinkedHashMap<String, SecondaryIndex> res = new LinkedHashMap<>();
+        for (SecondaryIndex.Definition definition : configuration.getIndexes())
+            res.put(definition.name, new SecondaryIndex(definition));
+        if (res.isEmpty()) {
+            indexFile.delete();
+        } else {
+            List<SecondaryIndex> missing = new ArrayList<>(res.values());
+            if (useIndexFile)
+                for (String name : SecondaryIndex.load(indexFile, metaDataStamp(), res, codecRegistry))
+                    missing.remove(res.get(name));
+            if (!missing.isEmpty()) {
+                try {
+                    for (Iterator<Map.Entry<String, Long>> it = links.iterator(); it.hasNext(); ) {
+                        Map.Entry<String, Long> e = it.next();
+                        Serializable object = SerializationTools.deserialize(SerializationTools.decompress(readData(e.getValue())), codecRegistry);
+                        for (SecondaryIndex index : missing)
+                            index.put(e.getKey(), index.extract(object));
+                    }
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+        indexes = res;
+    }
+
+    /**
+     * Sauvegarde les index secondaires grâce à {@link SecondaryIndex#save(File, long[], Collection, CodecRegistry)}, avec l'empreinte des métadonnées
+     * qui viennent d'être sauvegardées. Rien n'est fait tant que les index ne sont pas chargés.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void saveIndexes () throws IOException {
+        if (indexes != null && !indexes.isEmpty())
+            SecondaryIndex.save(indexFile, metaDataStamp(), indexes.values(), codecRegistry);
+    }
+
+    /**
+     * Extrait d'un objet les valeurs de tous les index secondaires, avant que l'objet ne soit enregistré et sans verrou
+     *
+     * @param object l'objet
+     * @return les valeurs indexées, dans l'ordre des index, ou null si aucun index n'est déclaré
+     */
+    Object[] extractIndexValues (Serializable object) {
+        if (indexes.isEmpty())
+            return null;
+        Object[] res = new Object[indexes.size()];
+        int i = 0;
+        for (SecondaryIndex index : indexes.values())
+            res[i++] = index.extract(object);
+        return res;
+    }
+
+    /**
+     * Reporte dans les index secondaires la nouvelle valeur d'une clé. Cette fonction est appelée sous le verrou d'écriture.
+     *
+     * @param objectName  la clé
+     * @param indexValues les valeurs retournées par {@link #extractIndexValues(Serializable)}, ou null si la valeur n'est pas indexable
+     */
+    private void updateIndexes (String objectName, Object[] indexValues) {
+        int i = 0;
+        for (SecondaryIndex index : indexes.values())
+            index.put(objectName, indexValues == null ? null : indexValues[i++]);
+    }
+
+    /**
+     * Retire une clé supprimée des index secondaires. Cette fonction est appelée sous le verrou d'écriture.
+     *
+     * @param objectName la clé
+     */
+    private void removeFromIndexes (String objectName) {
+        for (SecondaryIndex index : indexes.values())
+            index.remove(objectName);
+    }
+
+    /**
+     * @return une copie des associations entre les clés et les positions de leurs enregistrements
+     */
+    HashMap<String, Long> getLinks () {
+        HashMap<String, Long> res = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Iterator<Map.Entry<String, Long>> it = links.iterator(); it.hasNext(); ) {
+                Map.Entry<String, Long> e = it.next();
+                res.put(e.getKey(), e.getValue());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return res;
+    }
+
+    /**
+     * Chargement des métadonnées
+     *
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si la déserialisation des données se passe mal.
+     */
+    private void loadMetaData () throws IOException, ClassNotFoundException {
+        if (storage.length() == 0) {
+            //le fichier est vide, les 16 premiers octets sont remplis par des références invalides qui seront complétés plus tard.
+            storage.writeLong(LINKS_REFERENCE_POSITION, -1);
+            storage.writeLong(SPACE_TAB_REFERENCE_POSITION, -1);
+        }
+        if (storage.readLong(LINKS_REFERENCE_POSITION) < 16) {
+            //les métadonnées n'ont encore jamais été sauvegardées : initialiation des métadonnées
+            freeSpaceAllocator = new FreeSpaceAllocator();
+            links = KeyDirectory.create(configuration, storage, pageAllocator);
+        } else {
+            //les métadonnées ont déjà été sauvegardées, donc on charge les deux métadonnées de notre base de données.
+            readLinks();
+            readFreeSpaceTab();
+        }
+    }
+
+    /**
+     * Cette fonction rejoue les entrées du journal des opérations sur les métadonnées qui viennent d'être chargées, puis sauvegarde les métadonnées obtenues.
+     * La relecture commence par la dernière sauvegarde des métadonnées présente dans le journal, dont les références n'ont peut-être pas été écrites
+     * en début de fichier : ces références sont écrites et les métadonnées sont chargées à nouveau, et les entrées précédentes, déjà incluses, sont ignorées.
+     * La sauvegarde finale est elle aussi ajoutée au journal avant d'être référencée en début de fichier, si bien qu'un arrêt brutal pendant la
+     * récupération ne fait pas rejouer à nouveau les entrées qu'elle inclut.
+     *
+     * @param logFile le fichier du journal
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si la déserialisation des métadonnées se passe mal.
+     */
+    private void recoverOperationLog (File logFile) throws IOException, ClassNotFoundException {
+        int count;
+        try {
+            count = OperationLog.replay(logFile, new OperationLog.Visitor() {
+                @Override
+                public void put (String key, long position, long length) throws IOException {
+                    links.put(key, position);
+                    freeSpaceAllocator.claim(position, length);
+                }
+
+                @Override
+                public void remove (String key) throws IOException {
+                    links.remove(key);
+                }
+
+                @Override
+                public void free (long position, long length) {
+                    freeSpaceAllocator.free(position, length);
+                }
+
+                @Override
+                public void checkpoint (long linksPosition, long spaceTabPosition) throws IOException, ClassNotFoundException {
+                    storage.writeLong(LINKS_REFERENCE_POSITION, linksPosition);
+                    storage.writeLong(SPACE_TAB_REFERENCE_POSITION, spaceTabPosition);
+                    storage.force();
+                    readLinks();
+                    readFreeSpaceTab();
+                }
+            });
+        } catch (IllegalStateException e) {
+            throw new IOException("Le journal des opérations est incohérent", e);
+        }
+        if (count > 0) {
+            //les zones libérées en fin de fichier ont été tronquées : elles ne doivent pas rester libres au delà de la fin du fichier
+            long length = storage.length();
+            freeSpaceAllocator.claim(length, Long.MAX_VALUE - length);
+            truncateFreeEnd();
+            recoveredLog = logFile;
+            try {
+                saveMetaData();
+            } finally {
+                recoveredLog = null;
+            }
+            storage.force();
+        }
+    }
+
+    /**
+     * Sauvegarde des métadonnées. Les anciennes métadonnées ne sont pas écrasées avant que les nouvelles ne soient entièrement écrites :
+     * <ol>
+     *     <li>{@link #saveLinks()} enregistre les liens dans une zone libre</li>
+     *     <li>une zone est réservée pour le tableau des espaces libres. Sa taille prévoit le pire cas, où chaque zone libérée par les étapes suivantes
+     *         et le découpage de la zone réservée ajoutent chacun un espace libre, ainsi que l'espace qui marque la fin logique du fichier.</li>
+     *     <li>{@link #removeLinks()} et {@link #removeFreeSpaceTab()} libèrent les zones des anciennes métadonnées, sans tronquer le fichier</li>
+     *     <li>les zones libérées en attente de la synchronisation du journal sont rendues à l'allocateur, car la sauvegarde les rend définitives,
+     *         de même que les pages du répertoire des clés qui ne sont plus référencées par le répertoire sauvegardé ({@link #obsoleteZones})</li>
+     *     <li>{@link #saveFreeSpaceTab(long, int)} enregistre les espaces libres dans la zone réservée</li>
+     *     <li>si le journal est activé, une entrée {@link OperationLog#CHECKPOINT} y est synchronisée ; pendant la relecture d'un journal,
+     *         cette entrée est ajoutée au journal relu, après la synchronisation du fichier</li>
+     *     <li>les positions des nouvelles métadonnées sont enregistrées aux positions {@link #LINKS_REFERENCE_POSITION} et {@link #SPACE_TAB_REFERENCE_POSITION}, puis le journal est vidé</li>
+     *     <li>les anciennes métadonnées n'étant plus référencées, le fichier est tronqué si elles se trouvaient à sa fin</li>
+     * </ol>
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void saveMetaData () throws IOException {
+        long start = startMeasure();
+        long linksPosition = saveLinks();
+        int maxIntervals = freeSpaceAllocator.size() + pendingFrees.size() + obsoleteZones.size() + deferredFrees.size() + snapshotFrees.size() + 4;
+        long spaceTabPosition = findPosition(maxIntervals * 16L + 4);
+        removeLinks();
+        removeFreeSpaceTab();
+        while (!pendingFrees.isEmpty()) {
+            long[] free = pendingFrees.poll();
+            releaseZone(free[1], free[2]);
+        }
+        while (!obsoleteZones.isEmpty()) {
+            long[] zone = obsoleteZones.poll();
+            freeSpaceAllocator.free(zone[0], zone[1]);
+        }
+        saveFreeSpaceTab(spaceTabPosition, maxIntervals);
+        if (operationLog != null) {
+            operationLog.checkpoint(linksPosition, spaceTabPosition);
+        } else if (recoveredLog != null) {
+            storage.force();
+            OperationLog.appendCheckpoint(recoveredLog, linksPosition, spaceTabPosition);
+        }
+        storage.writeLong(LINKS_REFERENCE_POSITION, linksPosition);
+        storage.writeLong(SPACE_TAB_REFERENCE_POSITION, spaceTabPosition);
+        if (operationLog != null) {
+            storage.force();
+            operationLog.reset();
+        }
+        truncateFreeEnd();
+        saveIndexes();
+        measure(MeasuredOperation.CHECKPOINT, start);
+    }
+
+    /**
+     * Sauvegarde immédiatement les métadonnées et vide le journal des opérations.
+     * Il n'est pas nécessaire d'appeler cette fonction pour que les modifications survivent à un arrêt brutal lorsque le journal est activé,
+     * mais elle permet de réduire le temps de relecture du journal.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public void checkpoint () throws IOException {
+        flush();
+        lock.writeLock().lock();
+        try {
+            saveMetaData();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cette fonction est appelée après chaque modification.
+     * Elle rend à l'allocateur les zones libérées dont la libération est désormais inscrite durablement dans le journal,
+     * puis sauvegarde les métadonnées si le journal dépasse la taille donnée par {@link BDDConfiguration#getMaxOperationLogSize()},
+     * ou si le répertoire des clés le demande ({@link KeyDirectory#needsSave()}).
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void afterModification () throws IOException {
+        if (operationLog != null) {
+            releasePendingFrees();
+            if (operationLog.size() > configuration.getMaxOperationLogSize() || links.needsSave())
+                saveMetaData();
+        } else if (links.needsSave()) {
+            saveMetaData();
+        }
+    }
+
+    /**
+     * Rend à l'allocateur les zones libérées dont l'entrée {@link OperationLog#FREE} est synchronisée sur disque.
+     * Tant que ce n'est pas le cas, une zone ne peut pas être réutilisée : après un arrêt brutal, elle serait encore référencée par une clé.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void releasePendingFrees () throws IOException {
+        if (!pendingFrees.isEmpty()) {
+            long durable = operationLog.getDurableSequence();
+            boolean released = false;
+            while (!pendingFrees.isEmpty() && pendingFrees.peek()[0] <= durable) {
+                long[] free = pendingFrees.poll();
+                releaseZone(free[1], free[2]);
+                released = true;
+            }
+            if (released)
+                truncateFreeEnd();
+        }
+    }
+
+
+    /**
+     * Ajout d'un enregistrement linéairement dans le fichier.
+     * La fonction va serialiser l'élément en un tableau binaire, puis elle va appeler la fonction {@link #putData(String, byte[], int, Object[])}.
+     * Sans tampon d'écriture différée, l'enregistrement est encodé et compressé dans les tampons réutilisables du fil courant ({@link BufferPool}),
+     * d'où il est directement écrit ; sinon, il est encodé par {@link #encode(Serializable)} dans un tableau conservé par le tampon d'écriture différée.
+     * Les valeurs des index secondaires sont extraites de l'objet au préalable.
+     *
+     * @param objectName le nom de l'object à ajouter
+     * @param object     l'objet/enregistrement à serializer, puis à ajouter.
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+
+    public void putObject (String objectName, Serializable object) throws IOException {
+        if (object == null) throw new NullPointerException();
+        long start = startMeasure();
+        Object[] indexValues = extractIndexValues(object);
+        if (writeBuffer != null) {
+            write(objectName, encode(object), indexValues);
+        } else {
+            try (BufferPool buffers = BufferPool.acquire()) {
+                long encodeStart = startMeasure();
+                int size = SerializationTools.serialize(object, codecRegistry, buffers);
+                byte[] data = buffers.getOutput();
+                if (configuration.isCompressionEnabled() && size >= configuration.getCompressionThreshold()) {
+                    int compressed = SerializationTools.compress(data, size, configuration.getCompressionLevel(), buffers);
+                    if (compressed >= 0) {
+                        data = buffers.getConverted();
+                        size = compressed;
+                    }
+                }
+                measure(MeasuredOperation.SERIALIZE, encodeStart);
+                putData(objectName, data, size, indexValues);
+            }
+        }
+        measure(MeasuredOperation.PUT, start);
+    }
+
+    /**
+     * Enregistre un objet encodé, soit dans le tampon d'écriture différée s'il est activé, soit directement par {@link #putData(String, byte[], int, Object[])}
+     *
+     * @param objectName  la clé
+     * @param array       l'enregistrement binaire
+     * @param indexValues les valeurs des index secondaires, ou null si la valeur n'est pas indexable
+     * @throws IOException si un problème d'entrée/sortie se produit, y compris lors de l'écriture précédente du tampon
+     */
+    private void write (String objectName, byte[] array, Object[] indexValues) throws IOException {
+        if (writeBuffer == null) {
+            putData(objectName, array, array.length, indexValues);
+        } else {
+            checkKey(objectName);
+            buffer(objectName, array, indexValues);
+        }
+    }
+
+    /**
+     * Inscrit une modification dans le tampon d'écriture différée, puis vide le tampon s'il a atteint sa taille maximale
+     *
+     * @param objectName  la clé
+     * @param array       l'enregistrement binaire, ou null pour une suppression
+     * @param indexValues les valeurs des index secondaires
+     * @throws IOException si un problème d'entrée/sortie se produit, y compris lors de l'écriture précédente du tampon en arrière-plan
+     */
+    private void buffer (String objectName, byte[] array, Object[] indexValues) throws IOException {
+        if (flushFailure != null)
+            throw flushFailure;
+        if (writeBuffer.put(objectName, array, indexValues))
+            flush();
+    }
+
+    /**
+     * Ecrit les modifications en attente dans le tampon d'écriture différée grâce à la fonction {@link #putRecords(String[], byte[][], Object[][], long)} :
+     * les zones de tous les enregistrements sont réservées d'un seul coup, puis les enregistrements sont écrits dans l'ordre des positions,
+     * par blocs contigus. Les modifications restent lisibles dans le tampon jusqu'à ce que leurs clés soient associées aux nouveaux enregistrements.
+     * Sans effet si l'écriture différée est désactivée.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public void flush () throws IOException {
+        if (writeBuffer == null)
+            return;
+        synchronized (flushMonitor) {
+            LinkedHashMap<String, WriteBuffer.Entry> pending = writeBuffer.pending();
+            if (pending.isEmpty())
+                return;
+            String[] keys = new String[pending.size()];
+            byte[][] arrays = new byte[keys.length][];
+            Object[][] indexValues = new Object[keys.length][];
+            int i = 0;
+            for (Map.Entry<String, WriteBuffer.Entry> e : pending.entrySet()) {
+                keys[i] = e.getKey();
+                indexValues[i] = e.getValue().indexValues;
+                arrays[i++] = e.getValue().data;
+            }
+            long start = startMeasure();
+            putRecords(keys, arrays, indexValues, -1);
+            measure(MeasuredOperation.FLUSH, start);
+            writeBuffer.flushed(pending);
+        }
+    }
+
+    /**
+     * Vide le tampon d'écriture différée si la clé donnée y a une modification en attente, avant une opération qui accède directement à son enregistrement
+     *
+     * @param objectName la clé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void flushIfPending (String objectName) throws IOException {
+        if (writeBuffer != null && writeBuffer.get(objectName) != null)
+            flush();
+    }
+
+    /**
+     * Vide le tampon d'écriture différée pour une opération qui ne peut pas lever d'{@link IOException}
+     *
+     * @throws UncheckedIOException si un problème d'entrée/sortie se produit
+     */
+    private void flushUnchecked () {
+        try {
+            flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Tâche de l'écriture différée : le tampon est vidé périodiquement. Une erreur est conservée pour être levée
+     * par la modification suivante et par {@link #close()}.
+     */
+    private void backgroundFlush () {
+        try {
+            if (!closed)
+                flush();
+        } catch (IOException e) {
+            flushFailure = e;
+        }
+    }
+
+    /**
+     * Encode l'objet donné grâce à la fonction {@link SerializationTools#serialize(Serializable, CodecRegistry)}.
+     * Si la compression est activée et que l'enregistrement obtenu atteint {@link BDDConfiguration#getCompressionThreshold()} octets,
+     * il est compressé grâce à la fonction {@link SerializationTools#compress(byte[], int)}.
+     *
+     * @param object l'objet à encoder
+     * @return l'enregistrement binaire à écrire
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    byte[] encode (Serializable object) throws IOException {
+        long start = startMeasure();
+        byte[] res = compressIfNeeded(SerializationTools.serialize(object, codecRegistry));
+        measure(MeasuredOperation.SERIALIZE, start);
+        return res;
+    }
+
+    /**
+     * @param data l'enregistrement binaire encodé
+     * @return l'enregistrement compressé si la compression est activée et qu'il atteint {@link BDDConfiguration#getCompressionThreshold()} octets, data sinon
+     */
+    private byte[] compressIfNeeded (byte[] data) {
+        if (configuration.isCompressionEnabled() && data.length >= configuration.getCompressionThreshold())
+            data = SerializationTools.compress(data, configuration.getCompressionLevel());
+        return data;
+    }
+
+    /**
+     * Ajout d'un enregistrement linéairement dans le fichier, en trois étapes :
+     * <ol>
+     *     <li>sous le verrou d'écriture, si la clé existe déjà et que le nouvel enregistrement tient dans sa zone, il y est réécrit par {@link #overwrite(String, byte[], int, Object[])}
+     *         et l'ajout s'arrête là. Sinon, la fonction va rechercher une position où ajouter le fichier en appelant la fonction {@link #findPosition(long)},
+     *         pour une zone agrandie de la marge {@link BDDConfiguration#getAllocationSlack()}</li>
+     *     <li>sans verrou, l'enregistrement est écrit dans la zone réservée, qu'aucune clé ne référence encore</li>
+     *     <li>sous le verrou d'écriture, le tableau associatif {@link #links} est mis à jour, pour associer la clé de l'enregistrement avec la position de l'enregistrement dans le fichier.
+     *         Si la clé était déjà associée à un enregistrement, ce dernier est ensuite supprimé grâce à la fonction {@link #removeObject(long)}.</li>
+     * </ol>
+     * En dehors de la réécriture sur place, l'ancien enregistrement n'est donc jamais écrasé avant que le nouveau ne soit écrit, et les lecteurs voient l'un ou l'autre.
+     *
+     * @param objectName  la clé de l'object à ajouter
+     * @param array       l'objet/enregistrement sous son format binaire à ajouter, éventuellement suivi d'octets inutilisés
+     * @param size        le nombre d'octets de l'enregistrement
+     * @param indexValues les valeurs des index secondaires, ou null si la valeur n'est pas indexable
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void putData (String objectName, byte[] array, int size, Object[] indexValues) throws IOException {
+        checkKey(objectName);
+        long length = zoneLength(size);
+        long pos;
+        lock.writeLock().lock();
+        try {
+            if (overwrite(objectName, array, size, indexValues))
+                return;
+            releasePendingFrees();
+            pos = findPosition(length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            writeData(array, size, pos, length);
+        } catch (IOException | RuntimeException e) {
+            releasePosition(pos, length);
+            throw e;
+        }
+        linkRecord(objectName, pos, length, indexValues);
+    }
+
+    /**
+     * @param size le nombre d'octets d'un enregistrement
+     * @return la taille de la zone à réserver pour l'enregistrement, en-tête compris, agrandie de la marge {@link BDDConfiguration#getAllocationSlack()}
+     */
+    private long zoneLength (int size) {
+        long length = size + 4L;
+        return Math.min(length + length * configuration.getAllocationSlack() / 100, Integer.MAX_VALUE + 4L);
+    }
+
+    /**
+     * Sous le verrou d'écriture, réécrit l'enregistrement d'une clé dans sa zone actuelle si le nouvel enregistrement y tient
+     * et que l'ancien ne peut plus être lu par personne : la réécriture doit être autorisée par {@link BDDConfiguration#isInPlaceUpdatesEnabled()},
+     * le journal des opérations désactivé (après un arrêt brutal, une réécriture interrompue ne pourrait pas être annulée),
+     * aucun instantané ouvert, et aucun flux ouvert sur la zone ({@link #pinnedZones}).
+     * <p>
+     * L'en-tête de la zone, qui donne sa capacité, est conservé : les octets qui suivent le nouvel enregistrement sont ignorés par le décodage.
+     *
+     * @param objectName  la clé
+     * @param array       le nouvel enregistrement binaire
+     * @param size        le nombre d'octets de l'enregistrement
+     * @param indexValues les valeurs des index secondaires, ou null si la valeur n'est pas indexable
+     * @return true si l'enregistrement a été réécrit, false s'il doit être ajouté dans une nouvelle zone
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private boolean overwrite (String objectName, byte[] array, int size, Object[] indexValues) throws IOException {
+        if (!configuration.isInPlaceUpdatesEnabled() || operationLog != null || !snapshots.isEmpty())
+            return false;
+        Long pos = links.get(objectName);
+        if (pos == null || pinnedZones.containsKey(pos) || storage.readInt(pos) < size)
+            return false;
+        storage.write(pos + 4, array, 0, size);
+        ++version;
+        updateIndexes(objectName, indexValues);
+        if (cache != null)
+            cache.invalidate(objectName);
+        if (metrics != null)
+            metrics.updatedInPlace();
+        afterModification();
+        return true;
+    }
+
+    /**
+     * Vérifie qu'une clé peut être ajoutée, avant que son enregistrement ne soit écrit
+     *
+     * @param objectName la clé
+     * @throws IllegalArgumentException si la clé ne peut pas être enregistrée par le répertoire des clés
+     */
+    void checkKey (String objectName) {
+        if (objectName == null) throw new NullPointerException();
+        links.checkKey(objectName);
+    }
+
+    /**
+     * Sous le verrou d'écriture, associe la clé à l'enregistrement qui vient d'être écrit, met à jour les index secondaires,
+     * puis supprime l'ancien enregistrement de la clé
+     *
+     * @param objectName  la clé
+     * @param pos         la position de l'enregistrement
+     * @param length      la taille de la zone de l'enregistrement, en-tête compris
+     * @param indexValues les valeurs des index secondaires, ou null si la valeur n'est pas indexable
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void linkRecord (String objectName, long pos, long length, Object[] indexValues) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Long previous = links.put(objectName, pos);
+            ++version;
+            keepVersion(objectName, previous);
+            updateIndexes(objectName, indexValues);
+            if (cache != null)
+                cache.invalidate(objectName);
+            if (operationLog != null)
+                operationLog.put(objectName, pos, length);
+            if (previous != null)
+                removeObject(previous.longValue());
+            afterModification();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ajout d'un lot d'enregistrements. Les objets sont sérialisés sans verrou, puis ajoutés par {@link #putRecords(String[], byte[][], Object[][], long)}.
+     *
+     * @param objects les objets à ajouter, associés à leurs clés
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public void putAll (Map<String, ? extends Serializable> objects) throws IOException {
+        long start = startMeasure();
+        int count = objects.size();
+        String[] keys = new String[count];
+        byte[][] arrays = new byte[count][];
+        Object[][] indexValues = new Object[count][];
+        int i = 0;
+        for (Map.Entry<String, ? extends Serializable> e : objects.entrySet()) {
+            if (e.getValue() == null) throw new NullPointerException();
+            checkKey(e.getKey());
+            keys[i] = e.getKey();
+            indexValues[i] = extractIndexValues(e.getValue());
+            arrays[i++] = encode(e.getValue());
+        }
+        if (count == 0)
+            return;
+        if (writeBuffer != null) {
+            boolean full = false;
+            if (flushFailure != null)
+                throw flushFailure;
+            for (i = 0; i < count; i++)
+                full |= writeBuffer.put(keys[i], arrays[i], indexValues[i]);
+            if (full)
+                flush();
+        } else {
+            putRecords(keys, arrays, indexValues, -1);
+        }
+        measure(MeasuredOperation.PUT_ALL, start);
+    }
+
+    /**
+     * Valide les modifications d'une transaction grâce à la fonction {@link #putRecords(String[], byte[][], Object[][], long)}
+     *
+     * @param snapshotVersion la version de l'instantané de la transaction
+     * @param keys            les clés modifiées
+     * @param arrays          les enregistrements binaires à associer aux clés, ou null pour les clés supprimées
+     * @param indexValues     les valeurs des index secondaires de chaque enregistrement
+     * @throws IOException                     si un problème d'entrée/sortie se produit
+     * @throws ConcurrentModificationException si une des clés a été modifiée depuis l'ouverture de l'instantané
+     */
+    void commit (long snapshotVersion, String[] keys, byte[][] arrays, Object[][] indexValues) throws IOException {
+        long start = startMeasure();
+        flush();
+        if (keys.length > 0)
+            putRecords(keys, arrays, indexValues, snapshotVersion);
+        measure(MeasuredOperation.COMMIT, start);
+    }
+
+    /**
+     * Ajout et suppression d'un lot d'enregistrements déjà encodés :
+     * <ol>
+     *     <li>sous le verrou d'écriture, toutes les zones sont réservées d'un seul coup par {@link #findPositions(byte[][])}</li>
+     *     <li>sans verrou, les enregistrements sont écrits par {@link #writeRecords(byte[][], long[])}, qui regroupe les enregistrements contigus</li>
+     *     <li>sous le verrou d'écriture, toutes les clés sont associées à leurs nouvelles positions ou supprimées dans une même version,
+     *         et les anciens enregistrements sont supprimés. Les entrées du journal des opérations ne sont synchronisées qu'une fois pour tout le lot ;
+     *         pour une transaction, elles forment une seule entrée {@link OperationLog#TRANSACTION}, rejouée entièrement ou pas du tout.</li>
+     * </ol>
+     * Pour une transaction, l'absence de conflit est vérifiée avant la réservation puis avant l'association des clés.
+     *
+     * @param keys            les clés
+     * @param arrays          les enregistrements binaires, ou null pour les clés à supprimer
+     * @param indexValues     les valeurs des index secondaires de chaque enregistrement
+     * @param snapshotVersion la version de l'instantané d'une transaction, ou -1 en dehors d'une transaction
+     * @throws IOException                     si un problème d'entrée/sortie se produit
+     * @throws ConcurrentModificationException si une des clés a été modifiée depuis l'ouverture de l'instantané de la transaction
+     */
+    private void putRecords (String[] keys, byte[][] arrays, Object[][] indexValues, long snapshotVersion) throws IOException {
+        boolean transaction = snapshotVersion >= 0;
+        long[] positions;
+        lock.writeLock().lock();
+        try {
+            checkConflicts(keys, snapshotVersion);
+            releasePendingFrees();
+            positions = findPositions(arrays);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            writeRecords(arrays, positions);
+        } catch (IOException | RuntimeException e) {
+            releasePositions(arrays, positions);
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            try {
+                checkConflicts(keys, snapshotVersion);
+            } catch (ConcurrentModificationException e) {
+                releasePositions(arrays, positions);
+                throw e;
+            }
+            ++version;
+            if (operationLog != null) {
+                if (transaction)
+                    operationLog.beginTransaction();
+                else
+                    operationLog.beginBatch();
+            }
+            try {
+                for (int i = 0; i < keys.length; i++) {
+                    Long previous;
+                    if (arrays[i] == null) {
+                        previous = links.remove(keys[i]);
+                        if (previous == null)
+                            continue;
+                        removeFromIndexes(keys[i]);
+                    } else {
+                        previous = links.put(keys[i], positions[i]);
+                        updateIndexes(keys[i], indexValues[i]);
+                    }
+                    keepVersion(keys[i], previous);
+                    if (cache != null)
+                        cache.invalidate(keys[i]);
+                    if (operationLog != null) {
+                        if (arrays[i] == null)
+                            operationLog.remove(keys[i]);
+                        else
+                            operationLog.put(keys[i], positions[i], zoneLength(arrays[i].length));
+                    }
+                    if (previous != null)
+                        removeObject(previous.longValue());
+                }
+            } finally {
+                if (operationLog != null) {
+                    if (transaction)
+                        operationLog.endTransaction();
+                    else
+                        operationLog.endBatch();
+                }
+            }
+            afterModification();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Vérifie, sous le verrou d'écriture, qu'aucune des clés d'une transaction n'a été modifiée depuis l'ouverture de son instantané.
+     * L'instantané étant ouvert, toute modification postérieure d'une clé est inscrite dans {@link #historyByKey}.
+     *
+     * @param keys            les clés modifiées par la transaction
+     * @param snapshotVersion la version de l'instantané de la transaction, ou -1 en dehors d'une transaction
+     * @throws ConcurrentModificationException si une des clés a été modifiée
+     */
+    private void checkConflicts (String[] keys, long snapshotVersion) {
+        if (snapshotVersion < 0)
+            return;
+        for (String key : keys) {
+            ArrayDeque<KeyVersion> versions = historyByKey.get(key);
+            if (versions != null && versions.peekLast().version > snapshotVersion)
+                throw new ConcurrentModificationException("La clé " + key + " a été modifiée par une autre transaction");
+        }
+    }
+
+    /**
+     * Réserve les zones d'un lot d'enregistrements, agrandies de la marge {@link BDDConfiguration#getAllocationSlack()}.
+     * Chaque enregistrement est d'abord placé dans le plus petit espace libre suffisant.
+     * Ceux qui ne trouvent pas de place sont placés les uns à la suite des autres en fin de fichier, qui n'est agrandi qu'une seule fois.
+     *
+     * @param arrays les enregistrements binaires, éventuellement null
+     * @return les positions réservées, dans l'ordre des enregistrements, ou -1 pour les enregistrements null
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private long[] findPositions (byte[][] arrays) throws IOException {
+        long[] positions = new long[arrays.length];
+        long end = storage.length();
+        for (int i = 0; i < arrays.length; i++) {
+            if (arrays[i] == null) {
+                positions[i] = -1;
+                continue;
+            }
+            long length = zoneLength(arrays[i].length);
+            Long l = findPositionIntoFreeSpace(length);
+            if (metrics != null)
+                metrics.allocated(l != null);
+            if (l == null) {
+                l = end;
+                end += length;
+            }
+            positions[i] = l;
+        }
+        if (end != storage.length())
+            storage.setLength(end);
+        return positions;
+    }
+
+    /**
+     * Ecrit un lot d'enregistrements dans l'ordre des positions. Les enregistrements dont les zones se suivent sont copiés dans un même tampon
+     * de {@link #MAX_COALESCED_WRITE_SIZE} octets au plus, écrit en une seule fois. La marge de chaque zone y est remplie de zéros.
+     *
+     * @param arrays    les enregistrements binaires, éventuellement null
+     * @param positions les positions réservées pour chaque enregistrement
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void writeRecords (byte[][] arrays, long[] positions) throws IOException {
+        Integer[] order = sortByPosition(positions);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        long bufferPosition = -1;
+        for (Integer index : order) {
+            byte[] array = arrays[index];
+            long pos = positions[index];
+            if (array == null)
+                continue;
+            long length = zoneLength(array.length);
+            if (buffer.size() > 0 && (bufferPosition + buffer.size() != pos || buffer.size() + length > MAX_COALESCED_WRITE_SIZE)) {
+                storage.write(bufferPosition, buffer.toByteArray(), 0, buffer.size());
+                buffer.reset();
+            }
+            if (length > MAX_COALESCED_WRITE_SIZE) {
+                writeData(array, array.length, pos, length);
+                continue;
+            }
+            if (buffer.size() == 0)
+                bufferPosition = pos;
+            out.writeInt((int) (length - 4));
+            out.write(array);
+            for (int padding = (int) (length - 4 - array.length); padding > 0; padding -= PADDING.length)
+                out.write(PADDING, 0, Math.min(padding, PADDING.length));
+        }
+        if (buffer.size() > 0)
+            storage.write(bufferPosition, buffer.toByteArray(), 0, buffer.size());
+    }
+
+    /**
+     * @param positions des positions dans le fichier
+     * @return les indices des positions données, triés par position croissante
+     */
+    private static Integer[] sortByPosition (long[] positions) {
+        Integer[] order = new Integer[positions.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> positions[i]));
+        return order;
+    }
+
+    /**
+     * Rend à l'allocateur une zone réservée par {@link #findPosition(long)} mais qui n'a jamais été référencée
+     *
+     * @param pos    la position de la zone
+     * @param length la taille de la zone
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void releasePosition (long pos, long length) throws IOException {
+        lock.writeLock().lock();
+        try {
+            freeSpaceAllocator.free(pos, length);
+            truncateFreeEnd();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rend à l'allocateur les zones réservées par {@link #findPositions(byte[][])} pour un lot qui n'a jamais été référencé
+     *
+     * @param arrays    les enregistrements binaires, éventuellement null
+     * @param positions les positions réservées
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void releasePositions (byte[][] arrays, long[] positions) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < arrays.length; i++)
+                if (arrays[i] != null)
+                    freeSpaceAllocator.free(positions[i], zoneLength(arrays[i].length));
+            truncateFreeEnd();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cette fonction ajoute la taille du tableau data à position donnée dans le fichier, suivi des données du tableau
+     *
+     * @param data le tableau binaire
+     * @param pos  la position où placer les données dans le fichier {@link #storage}
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void writeData (byte[] data, long pos) throws IOException {
+        storage.writeInt(pos, data.length);
+        storage.write(pos + 4, data, 0, data.length);
+    }
+
+    /**
+     * Ecrit un enregistrement dans une zone plus grande que lui. L'en-tête donne la taille de la zone, et non celle de l'enregistrement :
+     * la marge qui suit l'enregistrement est lue avec lui, et ignorée par le décodage.
+     *
+     * @param data   le tableau binaire
+     * @param size   le nombre d'octets de l'enregistrement, au début du tableau
+     * @param pos    la position de la zone dans le fichier {@link #storage}
+     * @param length la taille de la zone, en-tête compris
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void writeData (byte[] data, int size, long pos, long length) throws IOException {
+        storage.writeInt(pos, (int) (length - 4));
+        storage.write(pos + 4, data, 0, size);
+    }
+
+    /**
+     * Cette fonction permet de récupérer l'enregistrement associé à la clé donnée en argument
+     * Elle va rechercher la position de l'enregistrement dans le fichier grace au tableau associatif {@link #links},
+     * Une fois l'enregistrement lu grace à la fonction {@link #readData(long, BufferPool)}, il est décompressé si nécessaire par {@link SerializationTools#decompress(byte[], int, BufferPool)},
+     * puis désérialisé grâce à la fonction {@link SerializationTools#deserialize(byte[], int, CodecRegistry, BufferPool)} pour être retourné.
+     * Ces trois étapes réutilisent les tampons du fil courant ({@link BufferPool}) : seul l'objet retourné est alloué, sauf pour la sérialisation Java.
+     * Seules la recherche et la lecture se font sous le verrou de lecture ; la désérialisation se fait sans verrou.
+     * <p>
+     * Si le cache est activé, il est consulté avant la lecture, et l'objet désérialisé y est ajouté après une lecture.
+     * Une modification en attente dans le tampon d'écriture différée est prioritaire sur le cache et sur le fichier.
+     *
+     * @param objectName la clé qui permet de retrouver l'objet enregistré
+     * @return l'object enregistré correspondant ou null s'il n'est pas trouvé.
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si l'object n'a pas pu être désérialisé
+     */
+    public Serializable getObject (String objectName) throws IOException, ClassNotFoundException {
+        Serializable res = null;
+        if (objectName == null) throw new NullPointerException();
+        long start = startMeasure();
+        WriteBuffer.Entry buffered = writeBuffer == null ? null : writeBuffer.get(objectName);
+        if (buffered != null) {
+            res = buffered.isRemoval() ? null : decode(buffered.data);
+            measure(MeasuredOperation.GET, start);
+            return res;
+        }
+        Object cached = null;
+        long pos = -1;
+        int length = -1;
+        long invalidationCount = 0;
+        try (BufferPool buffers = BufferPool.acquire()) {
+            lock.readLock().lock();
+            try {
+                Long key = links.get(objectName);
+                if (key != null) {
+                    pos = key;
+                    if (cache != null) {
+                        cached = cache.get(objectName, pos);
+                        invalidationCount = cache.getInvalidationCount();
+                    }
+                    if (cached == null)
+                        length = readData(pos, buffers);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (cached != null)
+                res = cache.toObject(cached, buffers);
+            else if (length >= 0)
+                res = decode(buffers.getRecord(), length, buffers, objectName, pos, invalidationCount);
+        }
+        measure(MeasuredOperation.GET, start);
+        return res;
+    }
+
+    /**
+     * Récupère un lot d'enregistrements. Sous le verrou de lecture, les positions des clés sont triées,
+     * si bien que le fichier est parcouru dans l'ordre, puis les enregistrements sont désérialisés sans verrou.
+     * Les clés servies par le cache ne sont pas lues, et celles qui ont une modification en attente dans le tampon d'écriture différée sont servies par le tampon.
+     *
+     * @param objectNames les clés des objets à récupérer
+     * @return les objets trouvés, associés à leurs clés. Les clés absentes de la BDD sont absentes du résultat.
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si un objet n'a pas pu être désérialisé
+     */
+    public Map<String, Serializable> getAll (Collection<String> objectNames) throws IOException, ClassNotFoundException {
+        long start = startMeasure();
+        Map<String, Serializable> res;
+        if (writeBuffer == null) {
+            res = readAll(objectNames, -1);
+        } else {
+            HashMap<String, WriteBuffer.Entry> buffered = new HashMap<>();
+            List<String> unbuffered = new ArrayList<>();
+            for (String objectName : objectNames) {
+                if (objectName == null) throw new NullPointerException();
+                WriteBuffer.Entry e = writeBuffer.get(objectName);
+                if (e != null)
+                    buffered.put(objectName, e);
+                else
+                    unbuffered.add(objectName);
+            }
+            res = readAll(unbuffered, -1);
+            for (Map.Entry<String, WriteBuffer.Entry> e : buffered.entrySet())
+                if (!e.getValue().isRemoval())
+                    res.put(e.getKey(), decode(e.getValue().data));
+        }
+        measure(MeasuredOperation.GET_ALL, start);
+        return res;
+    }
+
+    /**
+     * Lit un lot d'enregistrements comme {@link #getAll(Collection)}, tels qu'ils étaient à la version donnée.
+     * Les objets lus pour un instantané ne sont pas ajoutés au cache, qui ne contient que les valeurs actuelles.
+     *
+     * @param objectNames     les clés des objets à récupérer
+     * @param snapshotVersion la version d'un instantané ouvert, ou -1 pour lire les valeurs actuelles
+     * @return les objets trouvés, associés à leurs clés
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si un objet n'a pas pu être désérialisé
+     */
+    Map<String, Serializable> readAll (Collection<String> objectNames, long snapshotVersion) throws IOException, ClassNotFoundException {
+        HashMap<String, Serializable> res = new HashMap<>();
+        HashMap<String, Object> cached = new HashMap<>();
+        String[] keys = new String[objectNames.size()];
+        long[] positions = new long[keys.length];
+        byte[][] arrays = new byte[keys.length][];
+        int count = 0;
+        long invalidationCount = 0;
+        lock.readLock().lock();
+        try {
+            if (cache != null)
+                invalidationCount = cache.getInvalidationCount();
+            for (String objectName : new HashSet<>(objectNames)) {
+                if (objectName == null) throw new NullPointerException();
+                Long pos = snapshotVersion < 0 ? links.get(objectName) : getPosition(objectName, snapshotVersion);
+                if (pos == null)
+                    continue;
+                Object c = cache == null ? null : cache.get(objectName, pos);
+                if (c != null)
+                    cached.put(objectName, c);
+                else {
+                    keys[count] = objectName;
+                    positions[count++] = pos;
+                }
+            }
+            positions = Arrays.copyOf(positions, count);
+            for (Integer index : sortByPosition(positions))
+                arrays[index] = readData(positions[index]);
+        } finally {
+            lock.readLock().unlock();
+        }
+        try (BufferPool buffers = BufferPool.acquire()) {
+            for (Map.Entry<String, Object> e : cached.entrySet())
+                res.put(e.getKey(), cache.toObject(e.getValue(), buffers));
+            for (int i = 0; i < count; i++)
+                res.put(keys[i], decode(arrays[i], arrays[i].length, buffers, snapshotVersion < 0 ? keys[i] : null, positions[i], invalidationCount));
+        }
+        return res;
+    }
+
+    /**
+     * Décode un enregistrement encodé par {@link #encode(Serializable)}
+     *
+     * @param data l'enregistrement binaire
+     * @return l'objet
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si l'objet n'a pas pu être désérialisé
+     */
+    Serializable decode (byte[] data) throws IOException, ClassNotFoundException {
+        try (BufferPool buffers = BufferPool.acquire()) {
+            return decode(data, data.length, buffers, null, -1, 0);
+        }
+    }
+
+    /**
+     * Décompresse si nécessaire puis désérialise un enregistrement avec les tampons réutilisables du fil courant.
+     * Si une clé est donnée et que le cache est activé, l'objet y est ajouté.
+     *
+     * @param record            l'enregistrement binaire, éventuellement suivi d'octets inutilisés
+     * @param length            le nombre d'octets de l'enregistrement
+     * @param buffers           les tampons du fil courant
+     * @param objectName        la clé de l'enregistrement à ajouter au cache, ou null
+     * @param pos               la position de l'enregistrement
+     * @param invalidationCount le nombre d'invalidations du cache observé lors de la lecture
+     * @return l'objet
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si l'objet n'a pas pu être désérialisé
+     */
+    private Serializable decode (byte[] record, int length, BufferPool buffers, String objectName, long pos, long invalidationCount) throws IOException, ClassNotFoundException {
+        long start = startMeasure();
+        int size = SerializationTools.decompress(record, length, buffers);
+        if (size >= 0) {
+            record = buffers.getConverted();
+            length = size;
+        }
+        Serializable res = SerializationTools.deserialize(record, length, codecRegistry, buffers);
+        measure(MeasuredOperation.DESERIALIZE, start);
+        if (cache != null && objectName != null)
+            cache.put(objectName, pos, record, length, res, invalidationCount);
+        return res;
+    }
+
+    /**
+     * Ouvre un instantané de la version actuelle de la BDD. Ses lectures ignorent les modifications effectuées après son ouverture,
+     * sans bloquer les écritures ni être bloquées par elles plus longtemps qu'une lecture ordinaire.
+     * Tant qu'il est ouvert, les zones des enregistrements remplacés ou supprimés ne sont pas réutilisées : il doit être fermé dès que possible.
+     * Les instantanés ne survivent pas à la fermeture de la BDD.
+     *
+     * Le tampon d'écriture différée est vidé au préalable, afin que l'instantané contienne les modifications en attente.
+     *
+     * @return l'instantané, à fermer par {@link Snapshot#close()}
+     * @throws IOException si un problème d'entrée/sortie se produit lors de l'écriture du tampon
+     */
+    public Snapshot snapshot () throws IOException {
+        flush();
+        lock.readLock().lock();
+        try {
+            long v = version;
+            snapshots.merge(v, 1, Integer::sum);
+            return new Snapshot(this, v);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Commence une transaction, dont les lectures se font sur un instantané ouvert par {@link #snapshot()}
+     *
+     * @return la transaction, à valider par {@link Transaction#commit()} ou à annuler par {@link Transaction#rollback()}
+     * @throws IOException si un problème d'entrée/sortie se produit lors de l'écriture du tampon d'écriture différée
+     */
+    public Transaction beginTransaction () throws IOException {
+        return new Transaction(this, snapshot());
+    }
+
+    /**
+     * Ferme un instantané. Les anciennes positions et les zones que plus aucun instantané ouvert ne peut lire sont oubliées,
+     * et ces zones sont rendues à l'allocateur comme le fait {@link #removeObject(long)}.
+     *
+     * @param snapshotVersion la version de l'instantané
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void closeSnapshot (long snapshotVersion) throws IOException {
+        lock.writeLock().lock();
+        try {
+            snapshots.merge(snapshotVersion, -1, (a, b) -> a + b == 0 ? null : a + b);
+            long oldest = snapshots.isEmpty() ? Long.MAX_VALUE : snapshots.firstKey();
+            while (!history.isEmpty() && history.peek().version <= oldest) {
+                KeyVersion v = history.poll();
+                ArrayDeque<KeyVersion> versions = historyByKey.get(v.key);
+                versions.poll();
+                if (versions.isEmpty())
+                    historyByKey.remove(v.key);
+            }
+            boolean released = false;
+            while (!closed && !snapshotFrees.isEmpty() && snapshotFrees.peek()[0] <= oldest) {
+                long[] free = snapshotFrees.poll();
+                if (operationLog != null && free[1] > operationLog.getDurableSequence()) {
+                    pendingFrees.add(new long[]{free[1], free[2], free[3]});
+                } else {
+                    releaseZone(free[2], free[3]);
+                    released = true;
+                }
+            }
+            if (released)
+                truncateFreeEnd();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sous le verrou d'écriture, conserve l'ancienne position d'une clé qui vient d'être modifiée par la version {@link #version},
+     * si un instantané ouvert peut encore la lire
+     *
+     * @param objectName la clé
+     * @param previous   l'ancienne position de la clé, ou null si elle était absente
+     */
+    private void keepVersion (String objectName, Long previous) {
+        if (!snapshots.isEmpty()) {
+            KeyVersion v = new KeyVersion(version, objectName, previous);
+            history.add(v);
+            historyByKey.computeIfAbsent(objectName, k -> new ArrayDeque<>()).add(v);
+        }
+    }
+
+    /**
+     * Sous le verrou de lecture, retrouve la position d'une clé à la version d'un instantané ouvert :
+     * c'est l'ancienne position conservée par la première modification postérieure à cette version, ou à défaut la position actuelle.
+     *
+     * @param objectName      la clé
+     * @param snapshotVersion la version de l'instantané
+     * @return la position de l'enregistrement, ou null si la clé était absente
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private Long getPosition (String objectName, long snapshotVersion) throws IOException {
+        ArrayDeque<KeyVersion> versions = historyByKey.get(objectName);
+        if (versions != null)
+            for (KeyVersion v : versions)
+                if (v.version > snapshotVersion)
+                    return v.previous;
+        return links.get(objectName);
+    }
+
+    /**
+     * Parcourt, dans l'ordre des clés, les objets dont la clé est comprise entre fromKey inclus et toKey exclu.
+     * L'ordre des clés est celui de leurs points de code ({@link KeyDirectory#compareKeys(String, String)}).
+     * <p>
+     * Le parcours est paresseux : les clés sont obtenues par lots de {@link #SCAN_BATCH_SIZE}, et les enregistrements d'un lot sont lus
+     * sous le verrou de lecture dans l'ordre de leurs positions dans le fichier. Chaque objet n'est désérialisé qu'au moment où le flux le consomme.
+     * Le verrou est relâché entre deux lots, si bien que la BDD peut être modifiée pendant le parcours : chaque objet retourné correspond
+     * à la valeur de sa clé au moment de la lecture de son lot. Avec un répertoire des clés trié ({@link KeyDirectoryType#B_TREE}),
+     * les clés ajoutées après la position du parcours sont retournées ; avec les autres répertoires, les clés du parcours sont triées lors de la lecture du premier lot.
+     * <p>
+     * Les erreurs d'entrée/sortie ou de désérialisation sont levées par le flux sous la forme d'une {@link UncheckedIOException}.
+     * Le tampon d'écriture différée est vidé avant le parcours, ce qui peut aussi lever une {@link UncheckedIOException}.
+     *
+     * @param fromKey la plus petite clé, ou null pour commencer à la plus petite clé de la BDD
+     * @param toKey   la clé qui suit la dernière clé retournée, ou null pour aller jusqu'à la plus grande clé de la BDD
+     * @return un flux séquentiel des associations entre les clés et les objets
+     */
+    public Stream<Map.Entry<String, Serializable>> scan (String fromKey, String toKey) {
+        flushUnchecked();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ScanIterator(fromKey, toKey, null),
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+    }
+
+    /**
+     * Parcourt, dans l'ordre des clés, les objets dont la clé commence par le préfixe donné, de la même manière que {@link #scan(String, String)}
+     *
+     * @param prefix le préfixe des clés
+     * @return un flux séquentiel des associations entre les clés et les objets
+     */
+    public Stream<Map.Entry<String, Serializable>> scanPrefix (String prefix) {
+        if (prefix == null) throw new NullPointerException();
+        flushUnchecked();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ScanIterator(prefix, null, prefix),
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+    }
+
+    /**
+     * @param indexName le nom d'un index secondaire déclaré par {@link BDDConfiguration#addIndex(String, Class, Function)}
+     * @return l'index. Cette fonction est appelée sous le verrou de lecture.
+     */
+    private SecondaryIndex getIndex (String indexName) {
+        SecondaryIndex index = indexes.get(indexName);
+        if (index == null)
+            throw new IllegalArgumentException("Index inconnu : " + indexName);
+        return index;
+    }
+
+    /**
+     * Recherche dans un index secondaire les clés des objets dont la valeur indexée est égale à la valeur donnée, sans lire aucun objet
+     *
+     * @param indexName le nom de l'index
+     * @param value     la valeur recherchée
+     * @return les clés trouvées, dans l'ordre naturel des clés
+     * @throws ClassCastException   si la valeur n'est pas comparable aux valeurs de l'index
+     * @throws UncheckedIOException si un problème d'entrée/sortie se produit lors de l'écriture du tampon d'écriture différée, vidé au préalable
+     */
+    public List<String> findKeys (String indexName, Comparable<?> value) {
+        if (indexName == null || value == null) throw new NullPointerException();
+        flushUnchecked();
+        lock.readLock().lock();
+        try {
+            return getIndex(indexName).find(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recherche dans un index secondaire les clés des objets dont la valeur indexée est comprise dans l'intervalle donné, sans lire aucun objet
+     *
+     * @param indexName le nom de l'index
+     * @param from      la plus petite valeur, incluse, ou null pour partir de la plus petite valeur de l'index
+     * @param to        la plus grande valeur, exclue, ou null pour aller jusqu'à la plus grande valeur de l'index
+     * @return les clés trouvées, dans l'ordre des valeurs indexées puis des clés
+     * @throws ClassCastException   si les bornes ne sont pas comparables aux valeurs de l'index
+     * @throws UncheckedIOException si un problème d'entrée/sortie se produit lors de l'écriture du tampon d'écriture différée, vidé au préalable
+     */
+    public List<String> findKeysInRange (String indexName, Comparable<?> from, Comparable<?> to) {
+        if (indexName == null) throw new NullPointerException();
+        flushUnchecked();
+        lock.readLock().lock();
+        try {
+            return getIndex(indexName).findRange(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Récupère les objets dont la valeur indexée est égale à la valeur donnée, au sens de {@link Comparable#compareTo(Object)} comme dans l'index. Les clés sont trouvées grâce à {@link #findKeys(String, Comparable)},
+     * puis les objets sont lus par {@link #getAll(Collection)}. Un objet modifié entre les deux étapes, et qui ne correspond plus, est écarté.
+     *
+     * @param indexName le nom de l'index
+     * @param value     la valeur recherchée
+     * @return les objets trouvés, associés à leurs clés, dans l'ordre naturel des clés
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si un objet n'a pas pu être désérialisé
+     */
+    public Map<String, Serializable> findBy (String indexName, Comparable<?> value) throws IOException, ClassNotFoundException {
+        List<String> keys = findKeys(indexName, value);
+        SecondaryIndex index = indexes.get(indexName);
+        return readIndexed(keys, object -> index.matches(object, value));
+    }
+
+    /**
+     * Récupère les objets dont la valeur indexée est comprise dans l'intervalle donné, de la même manière que {@link #findBy(String, Comparable)}
+     *
+     * @param indexName le nom de l'index
+     * @param from      la plus petite valeur, incluse, ou null
+     * @param to        la plus grande valeur, exclue, ou null
+     * @return les objets trouvés, associés à leurs clés, dans l'ordre des valeurs indexées puis des clés
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si un objet n'a pas pu être désérialisé
+     */
+    public Map<String, Serializable> findInRange (String indexName, Comparable<?> from, Comparable<?> to) throws IOException, ClassNotFoundException {
+        List<String> keys = findKeysInRange(indexName, from, to);
+        SecondaryIndex index = indexes.get(indexName);
+        return readIndexed(keys, object -> index.matches(object, from, to));
+    }
+
+    private Map<String, Serializable> readIndexed (List<String> keys, Predicate<Serializable> filter) throws IOException, ClassNotFoundException {
+        Map<String, Serializable> objects = getAll(keys);
+        LinkedHashMap<String, Serializable> res = new LinkedHashMap<>();
+        for (String key : keys) {
+            Serializable object = objects.get(key);
+            if (object != null && filter.test(object))
+                res.put(key, object);
+        }
+        return res;
+    }
+
+    /**
+     * Itérateur de {@link #scan(String, String)} et de {@link #scanPrefix(String)}.
+     * Les clés d'un préfixe étant contiguës dans l'ordre des points de code, le parcours commence au préfixe et s'arrête à la première clé qui ne le porte pas.
+     */
+    private final class ScanIterator implements Iterator<Map.Entry<String, Serializable>> {
+        private final String toKey;
+        private final String prefix;
+        private final ArrayDeque<String> keys = new ArrayDeque<>();
+        private final ArrayDeque<byte[]> records = new ArrayDeque<>();
+        private String fromKey;
+        private boolean inclusive = true;
+        private Iterator<String> snapshot = null;
+        private boolean finished = false;
+
+        private ScanIterator (String fromKey, String toKey, String prefix) {
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            this.prefix = prefix;
+        }
+
+        private boolean inRange (String key) {
+            if (prefix != null)
+                return key.startsWith(prefix);
+            return toKey == null || KeyDirectory.compareKeys(key, toKey) < 0;
+        }
+
+        /**
+         * Lit le lot suivant sous le verrou de lecture : les clés sont cherchées à partir de la dernière clé retournée,
+         * puis leurs enregistrements sont lus dans l'ordre de leurs positions
+         */
+        private void fill () throws IOException {
+            String[] batchKeys = new String[SCAN_BATCH_SIZE];
+            long[] positions = new long[SCAN_BATCH_SIZE];
+            int count = 0;
+            lock.readLock().lock();
+            try {
+                if (links.isSorted()) {
+                    Iterator<Map.Entry<String, Long>> it = links.iterator(fromKey, inclusive);
+                    while (count < SCAN_BATCH_SIZE && it.hasNext()) {
+                        Map.Entry<String, Long> e = it.next();
+                        if (!inRange(e.getKey())) {
+                            finished = true;
+                            break;
+                        }
+                        batchKeys[count] = e.getKey();
+                        positions[count++] = e.getValue();
+                    }
+                    if (!it.hasNext())
+                        finished = true;
+                } else {
+                    if (snapshot == null)
+                        snapshot = sortedKeys();
+                    while (count < SCAN_BATCH_SIZE && snapshot.hasNext()) {
+                        String key = snapshot.next();
+                        Long pos = links.get(key);
+                        if (pos != null) {
+                            batchKeys[count] = key;
+                            positions[count++] = pos;
+                        }
+                    }
+                    if (!snapshot.hasNext())
+                        finished = true;
+                }
+                positions = Arrays.copyOf(positions, count);
+                byte[][] arrays = new byte[count][];
+                for (Integer index : sortByPosition(positions))
+                    arrays[index] = readData(positions[index]);
+                for (int i = 0; i < count; i++) {
+                    keys.add(batchKeys[i]);
+                    records.add(arrays[i]);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (count > 0) {
+                fromKey = batchKeys[count - 1];
+                inclusive = false;
+            }
+        }
+
+        /**
+         * @return les clés de l'intervalle, triées, pour un répertoire des clés qui ne sait pas les parcourir dans l'ordre
+         */
+        private Iterator<String> sortedKeys () {
+            ArrayList<String> res = new ArrayList<>();
+            for (Iterator<Map.Entry<String, Long>> it = links.iterator(); it.hasNext(); ) {
+                String key = it.next().getKey();
+                if ((fromKey == null || KeyDirectory.compareKeys(key, fromKey) >= 0) && inRange(key))
+                    res.add(key);
+            }
+            res.sort(KeyDirectory::compareKeys);
+            return res.iterator();
+        }
+
+        @Override
+        public boolean hasNext () {
+            try {
+                while (keys.isEmpty() && !finished)
+                    fill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return !keys.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<String, Serializable> next () {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            String key = keys.poll();
+            try {
+                return new AbstractMap.SimpleImmutableEntry<>(key, decode(records.poll()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ClassNotFoundException e) {
+                throw new UncheckedIOException(new IOException("Impossible de désérialiser l'objet de la clé " + key, e));
+            }
+        }
+    }
+
+    /**
+     * Ouvre un flux qui écrit directement dans le fichier la valeur associée à la clé donnée, sans la conserver en mémoire.
+     * La valeur est enregistrée comme un tableau d'octets : {@link #getObject(String)} retourne donc un byte[], et {@link #openForRead(String)} permet de la relire.
+     * <p>
+     * Une zone de expectedLength octets (plus l'en-tête) est réservée dès l'ouverture, puis remplie sans verrou par le flux.
+     * A la fermeture du flux, la fin inutilisée de la zone est libérée, puis la clé est associée au nouvel enregistrement comme le ferait {@link #putObject(String, Serializable)} :
+     * jusque là, la clé reste associée à son ancienne valeur. Ecrire plus de expectedLength octets, ou une erreur d'écriture, libère la zone et lève une {@link IOException}.
+     * Un flux qui n'est jamais fermé laisse sa zone réservée jusqu'à la fermeture de la BDD. La valeur n'est pas compressée.
+     *
+     * @param objectName     la clé
+     * @param expectedLength le nombre maximal d'octets qui seront écrits
+     * @return le flux d'écriture, qui doit être fermé pour que la valeur soit enregistrée
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public OutputStream openForWrite (String objectName, long expectedLength) throws IOException {
+        if (objectName == null) throw new NullPointerException();
+        if (expectedLength < 0 || expectedLength > Integer.MAX_VALUE - STREAM_HEADER_SIZE) throw new IllegalArgumentException();
+        links.checkKey(objectName);
+        flushIfPending(objectName);
+        long pos;
+        lock.writeLock().lock();
+        try {
+            releasePendingFrees();
+            pos = findPosition(STREAM_HEADER_SIZE + expectedLength);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return new RecordOutputStream(objectName, pos, expectedLength);
+    }
+
+    /**
+     * Ouvre un flux qui lit directement dans le fichier la valeur associée à la clé donnée, qui doit être un tableau d'octets
+     * (écrit par {@link #openForWrite(String, long)} ou par {@link #putObject(String, Serializable)}), compressé ou non.
+     * <p>
+     * Le flux lit sans verrou la version de la valeur qui existait à son ouverture : si la clé est modifiée ou supprimée entre temps,
+     * la zone de l'ancien enregistrement n'est libérée qu'à la fermeture du flux. Le flux doit donc toujours être fermé.
+     *
+     * @param objectName la clé
+     * @return le flux de lecture, ou null si la clé est absente
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si la valeur n'est pas un tableau d'octets
+     */
+    public InputStream openForRead (String objectName) throws IOException {
+        if (objectName == null) throw new NullPointerException();
+        flushIfPending(objectName);
+        long pos;
+        int length;
+        lock.readLock().lock();
+        try {
+            Long p = links.get(objectName);
+            if (p == null)
+                return null;
+            pos = p;
+            length = readByteArrayLength(objectName, pos);
+            pinnedZones.merge(pos, 1, Integer::sum);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (length >= 0)
+            return new RecordInputStream(pos, pos + STREAM_HEADER_SIZE, pos + STREAM_HEADER_SIZE + length);
+        InputStream in = null;
+        try {
+            in = new InflaterInputStream(new RecordInputStream(pos, pos + STREAM_HEADER_SIZE, pos + 4 + storage.readInt(pos)), new Inflater(), STREAM_BUFFER_SIZE) {
+                @Override
+                public void close () throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+            DataInputStream data = new DataInputStream(in);
+            if (data.readByte() != CodecRegistry.BYTE_ARRAY_ID)
+                throw notByteArray(objectName);
+            data.readInt();
+            return in;
+        } catch (IOException | RuntimeException e) {
+            if (in != null)
+                in.close();
+            else
+                unpinZone(pos);
+            throw e;
+        }
+    }
+
+    /**
+     * Lit l'en-tête de l'enregistrement dont la zone commence à la position donnée, qui doit contenir un tableau d'octets.
+     * Doit être appelée sous le verrou de lecture.
+     *
+     * @param objectName la clé de l'enregistrement
+     * @param pos        la position de la zone
+     * @return la taille du tableau d'octets, qui suit immédiatement l'en-tête de {@link #STREAM_HEADER_SIZE} octets,
+     * ou -1 si l'enregistrement est compressé et doit être décodé par {@link #decodeByteArray(String, byte[])}
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si l'enregistrement n'est pas un tableau d'octets
+     */
+    private int readByteArrayLength (String objectName, long pos) throws IOException {
+        int length = storage.readInt(pos);
+        byte[] header = new byte[STREAM_HEADER_SIZE - 4];
+        storage.read(pos + 4, header, 0, Math.min(header.length, length));
+        if (header[0] == CodecRegistry.BYTE_ARRAY_ID && length >= header.length)
+            return ByteBuffer.wrap(header, 1, 4).getInt();
+        if (SerializationTools.isCompressed(header[0]))
+            return -1;
+        throw notByteArray(objectName);
+    }
+
+    /**
+     * Décompresse un enregistrement lu par {@link #readData(long)}, qui doit contenir un tableau d'octets
+     *
+     * @param objectName la clé de l'enregistrement
+     * @param record     l'enregistrement compressé
+     * @return un tampon sur les octets du tableau
+     * @throws IOException si l'enregistrement est corrompu, ou s'il n'est pas un tableau d'octets
+     */
+    private static ByteBuffer decodeByteArray (String objectName, byte[] record) throws IOException {
+        byte[] data = SerializationTools.decompress(record);
+        if (data.length < STREAM_HEADER_SIZE - 4 || data[0] != CodecRegistry.BYTE_ARRAY_ID)
+            throw notByteArray(objectName);
+        int length = ByteBuffer.wrap(data, 1, 4).getInt();
+        if (length != data.length - (STREAM_HEADER_SIZE - 4))
+            throw new IOException("Le tableau d'octets de la clé " + objectName + " est corrompu");
+        return ByteBuffer.wrap(data, STREAM_HEADER_SIZE - 4, length);
+    }
+
+    private static IOException notByteArray (String objectName) {
+        return new IOException("La valeur de la clé " + objectName + " n'est pas un tableau d'octets");
+    }
+
+    /**
+     * Enregistre le contenu restant du tampon donné comme un tableau d'octets, sans passer par la sérialisation Java.
+     * L'enregistrement est identique à celui qu'écrirait {@link #putObject(String, Serializable)} pour un byte[], compression comprise,
+     * si bien que {@link #getObject(String)} retourne un byte[]. La position du tampon est avancée jusqu'à sa limite.
+     *
+     * @param objectName la clé
+     * @param value      le tampon qui contient la valeur
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public void putBytes (String objectName, ByteBuffer value) throws IOException {
+        if (objectName == null || value == null) throw new NullPointerException();
+        int length = value.remaining();
+        if (length > Integer.MAX_VALUE - STREAM_HEADER_SIZE) throw new IllegalArgumentException();
+        byte[] array = new byte[STREAM_HEADER_SIZE - 4 + length];
+        array[0] = CodecRegistry.BYTE_ARRAY_ID;
+        ByteBuffer.wrap(array, 1, 4).putInt(length);
+        value.get(array, STREAM_HEADER_SIZE - 4, length);
+        long start = startMeasure();
+        write(objectName, compressIfNeeded(array), null);
+        measure(MeasuredOperation.PUT, start);
+    }
+
+    /**
+     * Récupère la valeur associée à la clé donnée, qui doit être un tableau d'octets, sans passer par la désérialisation.
+     * Un enregistrement non compressé est lu directement dans le tableau retourné.
+     *
+     * @param objectName la clé
+     * @return le tableau d'octets, ou null si la clé est absente
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si la valeur n'est pas un tableau d'octets
+     */
+    public byte[] getBytes (String objectName) throws IOException {
+        if (objectName == null) throw new NullPointerException();
+        flushIfPending(objectName);
+        byte[] record;
+        lock.readLock().lock();
+        try {
+            Long pos = links.get(objectName);
+            if (pos == null)
+                return null;
+            int length = readByteArrayLength(objectName, pos);
+            if (length >= 0) {
+                byte[] res = new byte[length];
+                storage.read(pos + STREAM_HEADER_SIZE, res, 0, length);
+                return res;
+            }
+            record = readData(pos);
+        } finally {
+            lock.readLock().unlock();
+        }
+        ByteBuffer value = decodeByteArray(objectName, record);
+        return Arrays.copyOfRange(value.array(), value.position(), value.limit());
+    }
+
+    /**
+     * Copie la valeur associée à la clé donnée, qui doit être un tableau d'octets, dans le tampon donné, à partir de sa position.
+     * Un enregistrement non compressé est lu directement dans le tampon, sans tableau intermédiaire.
+     * La position du tampon est avancée du nombre d'octets copiés.
+     *
+     * @param objectName la clé
+     * @param dst        le tampon de destination
+     * @return le nombre d'octets copiés, ou -1 si la clé est absente
+     * @throws IOException                     si un problème d'entrée/sortie se produit, ou si la valeur n'est pas un tableau d'octets
+     * @throws java.nio.BufferOverflowException si la place restante dans le tampon est insuffisante. Le tampon n'est alors pas modifié.
+     * @throws java.nio.ReadOnlyBufferException si le tampon est en lecture seule
+     */
+    public int getInto (String objectName, ByteBuffer dst) throws IOException {
+        if (objectName == null || dst == null) throw new NullPointerException();
+        if (dst.isReadOnly()) throw new ReadOnlyBufferException();
+        flushIfPending(objectName);
+        byte[] record;
+        lock.readLock().lock();
+        try {
+            Long pos = links.get(objectName);
+            if (pos == null)
+                return -1;
+            int length = readByteArrayLength(objectName, pos);
+            if (length >= 0) {
+                if (dst.remaining() < length)
+                    throw new BufferOverflowException();
+                ByteBuffer target = dst.duplicate();
+                target.limit(target.position() + length);
+                storage.read(pos + STREAM_HEADER_SIZE, target);
+                dst.position(target.position());
+                return length;
+            }
+            record = readData(pos);
+        } finally {
+            lock.readLock().unlock();
+        }
+        ByteBuffer value = decodeByteArray(objectName, record);
+        int length = value.remaining();
+        dst.put(value);
+        return length;
+    }
+
+    /**
+     * Envoie la valeur associée à la clé donnée, qui doit être un tableau d'octets, vers le canal donné, par exemple une socket ou un autre fichier.
+     * Un enregistrement non compressé est transmis par {@link Storage#transferTo(long, long, WritableByteChannel)}, c'est-à-dire par
+     * {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)} ou depuis les segments projetés en mémoire, sans copie dans un tableau.
+     * <p>
+     * Le transfert se fait sans verrou : comme pour {@link #openForRead(String)}, la zone de l'enregistrement est épinglée jusqu'à la fin du transfert,
+     * si bien qu'une modification simultanée de la clé n'en altère pas le contenu.
+     *
+     * @param objectName la clé
+     * @param target     le canal de destination
+     * @return le nombre d'octets envoyés, ou -1 si la clé est absente
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si la valeur n'est pas un tableau d'octets
+     */
+    public long transferTo (String objectName, WritableByteChannel target) throws IOException {
+        if (objectName == null || target == null) throw new NullPointerException();
+        flushIfPending(objectName);
+        long pos;
+        int length;
+        byte[] record = null;
+        lock.readLock().lock();
+        try {
+            Long p = links.get(objectName);
+            if (p == null)
+                return -1;
+            pos = p;
+            length = readByteArrayLength(objectName, pos);
+            if (length >= 0)
+                pinnedZones.merge(pos, 1, Integer::sum);
+            else
+                record = readData(pos);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (record != null) {
+            ByteBuffer value = decodeByteArray(objectName, record);
+            length = value.remaining();
+            while (value.hasRemaining())
+                target.write(value);
+            return length;
+        }
+        try {
+            storage.transferTo(pos + STREAM_HEADER_SIZE, length, target);
+        } finally {
+            unpinZone(pos);
+        }
+        return length;
+    }
+
+    /**
+     * Retire une lecture de la zone donnée, et libère la zone si elle n'est plus référencée et que plus aucun flux ne la lit
+     *
+     * @param pos la position de la zone
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void unpinZone (long pos) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (pinnedZones.merge(pos, -1, (a, b) -> a + b == 0 ? null : a + b) == null && !closed) {
+                Long length = deferredFrees.remove(pos);
+                if (length != null) {
+                    freeSpaceAllocator.free(pos, length);
+                    truncateFreeEnd();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flux de {@link #openForWrite(String, long)}. Les octets sont accumulés dans un tampon de {@link #STREAM_BUFFER_SIZE} octets,
+     * puis écrits dans la zone réservée, après l'en-tête qui n'est écrit qu'à la fermeture.
+     */
+    private final class RecordOutputStream extends OutputStream {
+        private final String objectName;
+        private final long position;
+        private final long capacity;
+        private byte[] buffer = null;
+        private int buffered = 0;
+        private long written = 0;
+        private boolean done = false;
+
+        private RecordOutputStream (String objectName, long position, long capacity) {
+            this.objectName = objectName;
+            this.position = position;
+            this.capacity = capacity;
+        }
+
+        private void checkWrite (int length) throws IOException {
+            if (done)
+                throw new IOException("Flux fermé");
+            if (written + buffered + length > capacity)
+                abort(new IOException("La valeur de la clé " + objectName + " dépasse la taille annoncée de " + capacity + " octets"));
+        }
 
-    static class FreeSpaceInterval implements Comparable<FreeSpaceInterval> {
-        private long startPosition;
-        private long length;
+        private void abort (IOException e) throws IOException {
+            done = true;
+            releasePosition(position, STREAM_HEADER_SIZE + capacity);
+            throw e;
+        }
 
-        FreeSpaceInterval (long startPosition, long length) {
-            this.startPosition = startPosition;
-            this.length = length;
+        private void flushBuffer () throws IOException {
+            if (buffered > 0) {
+                try {
+                    storage.write(position + STREAM_HEADER_SIZE + written, buffer, 0, buffered);
+                } catch (IOException e) {
+                    abort(e);
+                }
+                written += buffered;
+                buffered = 0;
+            }
         }
 
-        long getStartPosition () {
-            return startPosition;
+        @Override
+        public void write (int b) throws IOException {
+            checkWrite(1);
+            if (buffer == null)
+                buffer = new byte[(int) Math.min(STREAM_BUFFER_SIZE, capacity)];
+            if (buffered == buffer.length)
+                flushBuffer();
+            buffer[buffered++] = (byte) b;
         }
 
-        long getLength () {
-            return length;
+        @Override
+        public void write (byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+            checkWrite(len);
+            if (buffer == null)
+                buffer = new byte[(int) Math.min(STREAM_BUFFER_SIZE, capacity)];
+            if (buffered + len <= buffer.length) {
+                System.arraycopy(b, off, buffer, buffered, len);
+                buffered += len;
+                return;
+            }
+            flushBuffer();
+            if (len < buffer.length) {
+                System.arraycopy(b, off, buffer, 0, len);
+                buffered = len;
+                return;
+            }
+            //les grands blocs sont écrits directement, sans passer par le tampon
+            try {
+                storage.write(position + STREAM_HEADER_SIZE + written, b, off, len);
+            } catch (IOException e) {
+                abort(e);
+            }
+            written += len;
         }
 
         @Override
-        public int compareTo (FreeSpaceInterval o) {
-            return Long.compare(startPosition, o.startPosition);
+        public void flush () throws IOException {
+            if (!done)
+                flushBuffer();
+        }
+
+        /**
+         * Ecrit l'en-tête, libère la fin inutilisée de la zone, puis associe la clé à l'enregistrement
+         */
+        @Override
+        public void close () throws IOException {
+            if (done)
+                return;
+            flushBuffer();
+            done = true;
+            buffer = null;
+            try {
+                byte[] header = ByteBuffer.allocate(STREAM_HEADER_SIZE)
+                        .putInt((int) written + 5).put((byte) CodecRegistry.BYTE_ARRAY_ID).putInt((int) written).array();
+                storage.write(position, header, 0, header.length);
+            } catch (IOException | RuntimeException e) {
+                releasePosition(position, STREAM_HEADER_SIZE + capacity);
+                throw e;
+            }
+            if (written < capacity)
+                releasePosition(position + STREAM_HEADER_SIZE + written, capacity - written);
+            linkRecord(objectName, position, STREAM_HEADER_SIZE + written, null);
         }
     }
 
+    /**
+     * Flux de {@link #openForRead(String)}, qui lit sans verrou les octets compris entre deux positions de l'enregistrement
+     * dont la zone commence à la position donnée. La zone est protégée de toute réutilisation jusqu'à la fermeture du flux,
+     * sauf si sa position est négative : c'est le cas du répertoire des clés lu par {@link #readLinks()}, qu'aucune écriture ne peut concurrencer.
+     */
+    private final class RecordInputStream extends InputStream {
+        private final long zone;
+        private final long end;
+        private long next;
+        private boolean done = false;
 
-    private final RandomAccessFile raf;
-    private TreeSet<FreeSpaceInterval> freeSpaceIntervals;
-    private HashMap<String, Long> links;
+        private RecordInputStream (long zone, long start, long end) {
+            this.zone = zone;
+            this.next = start;
+            this.end = end;
+        }
 
+        @Override
+        public int read () throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
 
-    public BDD (File file) throws IOException, ClassNotFoundException {
-        raf = new RandomAccessFile(file, "rw");
-        loadMetaData();
-    }
+        @Override
+        public int read (byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+            if (done)
+                throw new IOException("Flux fermé");
+            if (next >= end)
+                return -1;
+            int n = (int) Math.min(len, end - next);
+            storage.read(next, b, off, n);
+            next += n;
+            return n;
+        }
 
-    HashMap<String, Long> getLinks () {
-        return links;
-    }
+        @Override
+        public long skip (long n) {
+            long skipped = Math.max(0, Math.min(n, end - next));
+            next += skipped;
+            return skipped;
+        }
 
-    /**
-     * Chargement des métadonnées
-     *
-     * @throws IOException            si un problème d'entrée/sortie se produit
-     * @throws ClassNotFoundException si la déserialisation des données se passe mal.
-     */
-    private void loadMetaData () throws IOException, ClassNotFoundException {
-        if (raf.length() == 0) {
-            //le fichier est vide, les 16 premiers octets sont remplis par des références invalides qui seront complétés plus tard.
-            raf.writeLong(-1);
-            raf.writeLong(-1);
-            //initialiation des métadonnées
-            freeSpaceIntervals = new TreeSet<>();
-            links = new HashMap<>();
-        } else {
-            //le fichier n'est pas vide, donc on charge les deux métadonnées de notre base de données.
-            readLinks();
-            readFreeSpaceTab();
+        @Override
+        public int available () {
+            return (int) Math.min(Integer.MAX_VALUE, end - next);
+        }
+
+        @Override
+        public void close () throws IOException {
+            if (!done) {
+                done = true;
+                if (zone >= 0)
+                    unpinZone(zone);
+            }
         }
     }
 
     /**
-     * Sauvegarde des métadonnées
-     *
-     * @throws IOException si un problème d'entrée/sortie se produit
+     * @return les compteurs du cache des objets désérialisés, ou null si le cache n'est pas activé
      */
-    private void saveMetaData () throws IOException {
-        saveLinks();
-        saveFreeSpaceTab();
+    public CacheStatistics getCacheStatistics () {
+        return cache == null ? null : cache.getStatistics();
     }
 
-
     /**
-     * Ajout d'un enregistrement linéairement dans le fichier.
-     * La fonction va serialiser l'élément en un tableau binaire en appelant la fonction {@link SerializationTools#serialize(Serializable)},
-     * Puis elle va appeler la fonction {@link #putData(String, byte[])}
-     *
-     * @param objectName le nom de l'object à ajouter
-     * @param object     l'objet/enregistrement à serializer, puis à ajouter.
+     * @return l'occupation du fichier, ses zones libres, et, si les métriques sont activées, les compteurs et les durées des opérations
      * @throws IOException si un problème d'entrée/sortie se produit
      */
-
-    public void putObject (String objectName, Serializable object) throws IOException {
-        if (object == null) throw new NullPointerException();
-        putData(objectName, SerializationTools.serialize(object));
+    public BDDStatistics getStatistics () throws IOException {
+        lock.readLock().lock();
+        try {
+            return new BDDStatistics(storage.length(), freeSpaceAllocator.getFreeBytes(), freeSpaceAllocator.size(),
+                    freeSpaceAllocator.getLargestInterval(), links.size(), metrics);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
-     * Ajout d'un enregistrement linéairement dans le fichier.
-     * Avant l'ajout du nouvel élément, la fonction va supprimer l'élément associé à la clé donnée en paramètre en appelant la fonction {@link #removeObject(String)}, et ceci dans le cas où il existerait déjà dans la base de donnée.
-     * Elle va ensuite rechercher une position où ajouter le fichier en appelant la fonction {@link #findPosition(byte[])}
-     * Une fois l'ajout effectué, le tableau associatif {@link #links} est mis à jour, pour associer la clé de l'enregistrement avec la position de l'enregistrement dans le fichier.
-     *
-     * @param objectName la clé de l'object à ajouter
-     * @param array      l'objet/enregistrement sous son format binaire à ajouter.
-     * @throws IOException si un problème d'entrée/sortie se produit
+     * @return l'instant présent donné par {@link System#nanoTime()}, ou 0 sans lire l'horloge si les métriques sont désactivées
      */
-    private void putData (String objectName, byte[] array) throws IOException {
-        removeObject(objectName);
-        long pos = findPosition(array);
-        writeData(array, pos);
-        links.put(objectName, pos);
+    private long startMeasure () {
+        return metrics == null ? 0 : System.nanoTime();
     }
 
     /**
-     * Cette fonction ajoute la taille du tableau data à position donnée dans le fichier, suivi des données du tableau
+     * Enregistre la durée d'une opération si les métriques sont activées
      *
-     * @param data le tableau binaire
-     * @param pos  la position où placer les données dans le fichier {@link #raf}
-     * @throws IOException si un problème d'entrée/sortie se produit
+     * @param operation l'opération
+     * @param start     l'instant retourné par {@link #startMeasure()} au début de l'opération
      */
-    private void writeData (byte[] data, long pos) throws IOException {
-        raf.seek(pos);
-        raf.writeInt(data.length);
-        raf.write(data);
+    private void measure (MeasuredOperation operation, long start) {
+        if (metrics != null)
+            metrics.record(operation, start);
     }
 
     /**
-     * Cette fonction permet de récupérer l'enregistrement associé à la clé donnée en argument
-     * Elle va rechercher la position de l'enregistrement dans le fichier grace au tableau associatif {@link #links},
-     * Une fois l'enregistrement lu grace à la fonction {@link #readData(long), il est désérialisé grâce à la fonction {@link SerializationTools#deserialize(byte[])} pour être retourné.
-     *
-     * @param objectName la clé qui permet de retrouver l'objet enregistré
-     * @return l'object enregistré correspondant ou null s'il n'est pas trouvé.
-     * @throws IOException            si un problème d'entrée/sortie se produit
-     * @throws ClassNotFoundException si l'object n'a pas pu être désérialisé
+     * Implémentation de {@link BDDMXBean}, qui lit chaque attribut dans une nouvelle photographie de {@link #getStatistics()}
      */
-    public Serializable getObject (String objectName) throws IOException, ClassNotFoundException {
-        Serializable res = null;
-        if (objectName == null) throw new NullPointerException();
-        Long key = links.get(objectName);
-        if (key != null) {
-            byte[] data = readData(key);
-            res = SerializationTools.deserialize(data);
+    private final class Management implements BDDMXBean {
+        @Override
+        public long getFileLength () throws IOException {
+            return getStatistics().getFileLength();
+        }
+
+        @Override
+        public long getFreeBytes () throws IOException {
+            return getStatistics().getFreeBytes();
+        }
+
+        @Override
+        public long getUsedBytes () throws IOException {
+            return getStatistics().getUsedBytes();
+        }
+
+        @Override
+        public double getFragmentation () throws IOException {
+            return getStatistics().getFragmentation();
+        }
+
+        @Override
+        public int getFreeIntervalCount () throws IOException {
+            return getStatistics().getFreeIntervalCount();
+        }
+
+        @Override
+        public long getLargestFreeInterval () throws IOException {
+            return getStatistics().getLargestFreeInterval();
+        }
+
+        @Override
+        public long getKeyCount () throws IOException {
+            return getStatistics().getKeyCount();
+        }
+
+        @Override
+        public boolean isMetricsEnabled () {
+            return metrics != null;
+        }
+
+        @Override
+        public long getBytesRead () {
+            return metrics == null ? 0 : metrics.getBytesRead();
+        }
+
+        @Override
+        public long getBytesWritten () {
+            return metrics == null ? 0 : metrics.getBytesWritten();
+        }
+
+        @Override
+        public long getAllocationsInFreeSpace () {
+            return metrics == null ? 0 : metrics.getAllocationsInFreeSpace();
+        }
+
+        @Override
+        public long getAllocationsAtEnd () {
+            return metrics == null ? 0 : metrics.getAllocationsAtEnd();
+        }
+
+        @Override
+        public long getInPlaceUpdates () {
+            return metrics == null ? 0 : metrics.getInPlaceUpdates();
+        }
+
+        @Override
+        public Map<String, LatencyStatistics> getLatencies () {
+            TreeMap<String, LatencyStatistics> res = new TreeMap<>();
+            if (metrics != null)
+                for (Map.Entry<MeasuredOperation, LatencyStatistics> e : metrics.getLatencies().entrySet())
+                    res.put(e.getKey().name(), e.getValue());
+            return res;
+        }
+
+        @Override
+        public void checkpoint () throws IOException {
+            BDD.this.checkpoint();
+        }
+
+        @Override
+        public long compact () throws IOException {
+            CompactionStatistics statistics = BDD.this.compact();
+            return statistics.getInitialLength() - Math.max(0, statistics.getCurrentLength());
         }
-        return res;
     }
 
     /**
-     * Cette fonction lit un tableau binaire dans le fichier {@link #raf} à la position donnée.
-     * Pour connaître la quantité de données à enregistrer, la fonction commence par lire un entier dans le fichier ({@link RandomAccessFile#readInt()}).
+     * Cette fonction lit un tableau binaire dans le fichier {@link #storage} à la position donnée.
+     * Pour connaître la quantité de données à enregistrer, la fonction commence par lire un entier dans le fichier ({@link Storage#readInt(long)}).
+     * Si la zone a été réservée avec une marge, ou réécrite sur place par un enregistrement plus petit, le tableau lu se termine par des octets ignorés par le décodage.
      *
-     * @param pos la position où commencer à lire dans le fichier {@link #raf}
+     * @param pos la position où commencer à lire dans le fichier {@link #storage}
      * @return l'enregistrement binaire lu
      * @throws IOException si un problème d'entrée/sortie se produit
      */
     private byte[] readData (long pos) throws IOException {
-        raf.seek(pos);
-        int size = raf.readInt();
+        int size = storage.readInt(pos);
         byte[] tab = new byte[size];
-        raf.read(tab);
+        storage.read(pos + 4, tab, 0, size);
         return tab;
     }
 
     /**
-     * Cette fonction trouve une position libre dans le fichier {@link #raf} où enregistrer le tableau binaire donné en paramètre
+     * Lit un enregistrement comme {@link #readData(long)}, mais dans le tableau réutilisable {@link BufferPool#record(int)} des tampons du fil courant
+     *
+     * @param pos     la position où commencer à lire dans le fichier {@link #storage}
+     * @param buffers les tampons du fil courant
+     * @return la taille de l'enregistrement lu, dont les octets commencent {@link BufferPool#getRecord()}
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private int readData (long pos, BufferPool buffers) throws IOException {
+        int size = storage.readInt(pos);
+        storage.read(pos + 4, buffers.record(size), 0, size);
+        return size;
+    }
+
+    /**
+     * Cette fonction trouve une position libre dans le fichier {@link #storage} où enregistrer le tableau binaire donné en paramètre
      *
      * @param array le tableau binaire
      * @return la position trouvée
@@ -208,9 +2431,10 @@ public class BDD implements AutoCloseable {
     }
 
     /**
-     * Cette fonction trouve une position libre dans le fichier {@link #raf} où enregistrer des données binaires dont la taille est donnée en paramètre.
+     * Cette fonction trouve une position libre dans le fichier {@link #storage} où enregistrer des données binaires dont la taille est donnée en paramètre.
      * Pour se faire, elle appelle la fonction {@link #findPositionIntoFreeSpace(long)} pour vérifier qu'il n'y a pas une position qui pointe vers une zone contigüe libre au milieu du fichier et qui correspond au critère donné.
-     * Si cette dernière fonction ne trouve pas de zone libre suffisement grande, la position retounée correspond à la fin du fichier ({@link RandomAccessFile#length()})
+     * Si cette dernière fonction ne trouve pas de zone libre suffisement grande, la position retounée correspond à la fin du fichier ({@link Storage#length()}),
+     * et le fichier est immédiatement agrandi de la taille souhaitée pour que la zone ne soit pas attribuée deux fois.
      *
      * @param desiredLength la taille de la zone libre souhaitée
      * @return la position trouvée
@@ -218,28 +2442,25 @@ public class BDD implements AutoCloseable {
      */
     private long findPosition (long desiredLength) throws IOException {
         Long l = findPositionIntoFreeSpace(desiredLength);
+        if (metrics != null)
+            metrics.allocated(l != null);
         if (l == null) {
-            l = raf.length();
+            l = storage.length();
+            storage.setLength(l + desiredLength);
         }
         return l;
     }
 
     /**
      * Cette fonction permet de chercher une position qui pointe vers une zone libre contigüe au milieu du fichier dont la taille est supérieure ou égale à la taille donnée en paramètre.
-     * Cette fonction utilise le tableau {@link #freeSpaceIntervals} pour rechercher des zones libres.
-     * Si une zone libre libre est trouvée, elle est amputée de l'espace à allouer.
+     * Cette fonction utilise l'allocateur {@link #freeSpaceAllocator} pour rechercher, en temps logarithmique, la plus petite zone libre suffisante.
+     * Si une zone libre libre est trouvée, elle est amputée de l'espace à allouer, et le reste demeure libre.
      *
      * @param desiredLength la taille souhaitée en octet
      * @return la position trouvée, ou null si aucune position n'a été trouvée
      */
     private Long findPositionIntoFreeSpace (long desiredLength) {
-        for (FreeSpaceInterval free : freeSpaceIntervals) {
-            if (free.getLength() >= desiredLength) {
-                freeSpaceIntervals.remove(free);
-                return free.getStartPosition();
-            }
-        }
-        return null;
+        return freeSpaceAllocator.allocate(desiredLength);
     }
 
     /**
@@ -253,11 +2474,109 @@ public class BDD implements AutoCloseable {
     public boolean removeObject (String objectName) throws IOException {
         Boolean res = false;
         if(objectName == null) throw new NullPointerException();
-        Long pos = links.remove(objectName);
-        if(pos != null) {
-            removeObject(pos);
-            res = true;
+        long start = startMeasure();
+        if (writeBuffer != null) {
+            res = bufferRemoval(objectName);
+            measure(MeasuredOperation.REMOVE, start);
+            return res;
+        }
+        lock.writeLock().lock();
+        try {
+            Long pos = links.remove(objectName);
+            if (pos != null) {
+                ++version;
+                keepVersion(objectName, pos);
+                removeFromIndexes(objectName);
+                if (cache != null)
+                    cache.invalidate(objectName);
+                if (operationLog != null)
+                    operationLog.remove(objectName);
+                removeObject(pos);
+                afterModification();
+                res = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        measure(MeasuredOperation.REMOVE, start);
+        return res;
+    }
+
+    /**
+     * Supprime un lot d'objets en une seule prise du verrou d'écriture.
+     * Les entrées du journal des opérations ne sont synchronisées qu'une fois pour tout le lot.
+     *
+     * @param objectNames les clés des objets à supprimer
+     * @return le nombre d'objets trouvés et supprimés
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public int removeAll (Collection<String> objectNames) throws IOException {
+        long start = startMeasure();
+        int res = 0;
+        if (writeBuffer != null) {
+            for (String objectName : objectNames) {
+                if (objectName == null) throw new NullPointerException();
+                if (bufferRemoval(objectName))
+                    ++res;
+            }
+            measure(MeasuredOperation.REMOVE_ALL, start);
+            return res;
+        }
+        lock.writeLock().lock();
+        try {
+            ++version;
+            if (operationLog != null)
+                operationLog.beginBatch();
+            try {
+                for (String objectName : objectNames) {
+                    if (objectName == null) throw new NullPointerException();
+                    Long pos = links.remove(objectName);
+                    if (pos != null) {
+                        keepVersion(objectName, pos);
+                        removeFromIndexes(objectName);
+                        if (cache != null)
+                            cache.invalidate(objectName);
+                        if (operationLog != null)
+                            operationLog.remove(objectName);
+                        removeObject(pos);
+                        ++res;
+                    }
+                }
+            } finally {
+                if (operationLog != null)
+                    operationLog.endBatch();
+            }
+            if (res > 0)
+                afterModification();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        measure(MeasuredOperation.REMOVE_ALL, start);
+        return res;
+    }
+
+    /**
+     * Inscrit la suppression d'une clé dans le tampon d'écriture différée, si la clé existe en tenant compte des modifications en attente
+     *
+     * @param objectName la clé
+     * @return true si l'objet a été trouvé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private boolean bufferRemoval (String objectName) throws IOException {
+        WriteBuffer.Entry buffered = writeBuffer.get(objectName);
+        boolean res;
+        if (buffered != null) {
+            res = !buffered.isRemoval();
+        } else {
+            lock.readLock().lock();
+            try {
+                res = links.get(objectName) != null;
+            } finally {
+                lock.readLock().unlock();
+            }
         }
+        if (res)
+            buffer(objectName, null, null);
         return res;
     }
 
@@ -265,118 +2584,458 @@ public class BDD implements AutoCloseable {
      * Cette fonction supprime l'objet trouvé à la position donnée en argument.
      * Elle commence par lire la taille des données qui suivent, puis :
      * <ul>
-     *     <li>Si l'objet est écrit jusqu'à la fin du fichier, ce dernier est tronqué grâce à la fonction {@link RandomAccessFile#setLength(long)}</li>
-     *     <li>Sinon, un espace libre est ajouté dans le tableau {@link #freeSpaceIntervals}.
+     *     <li>Si le journal des opérations est activé, la libération y est inscrite.</li>
+     *     <li>Si un instantané est ouvert, l'espace est mis en attente dans {@link #snapshotFrees} jusqu'à la fermeture des instantanés qui peuvent le lire.</li>
+     *     <li>Tant que l'inscription de la libération dans le journal n'est pas synchronisée sur disque, l'espace est mis en attente dans {@link #pendingFrees}.</li>
+     *     <li>L'espace occupé par l'objet, en-tête compris, est rendu à l'allocateur {@link #freeSpaceAllocator}.
      *     	   Si cet espace libre est collé à un autre espace libre, à sa gauche et/ou à sa droite, ces derniers sont alors fusionnés
      *     </li>
+     *     <li>Si l'espace libre obtenu s'étend jusqu'à la fin du fichier, ce dernier est tronqué grâce à la fonction {@link Storage#setLength(long)}</li>
      * </ul>
      *
      * @param pos la position où se trouve la donnée à supprimer
      * @throws IOException si un problème d'entrée/sortie se produit
      */
     private void removeObject (long pos) throws IOException {
-        raf.seek(pos);
-        int l = raf.readInt();
-        if (raf.length() - 1 == pos + 3 + l) {
-            raf.setLength(raf.length() - l - 4);
-        } else {
-            freeSpaceIntervals.add(new FreeSpaceInterval(pos, l));
+        int l = storage.readInt(pos);
+        long sequence = operationLog == null ? 0 : operationLog.free(pos, l + 4);
+        if (!snapshots.isEmpty()) {
+            snapshotFrees.add(new long[]{version, sequence, pos, l + 4});
+            return;
+        }
+        if (operationLog != null && sequence > operationLog.getDurableSequence()) {
+            pendingFrees.add(new long[]{sequence, pos, l + 4});
+            return;
+        }
+        releaseZone(pos, l + 4);
+        truncateFreeEnd();
+    }
+
+    /**
+     * Rend à l'allocateur la zone d'un enregistrement qui n'est plus référencé.
+     * Si un flux ouvert par {@link #openForRead(String)} lit encore cet enregistrement, la zone est placée dans {@link #deferredFrees}
+     * jusqu'à la fermeture du flux. Elle est toutefois décrite comme libre par le tableau des espaces libres sauvegardé entre temps.
+     *
+     * @param pos    la position de la zone
+     * @param length la taille de la zone
+     */
+    private void releaseZone (long pos, long length) {
+        if (pinnedZones.containsKey(pos))
+            deferredFrees.put(pos, length);
+        else
+            freeSpaceAllocator.free(pos, length);
+    }
+
+    /**
+     * Cette fonction tronque le fichier si le dernier espace libre de {@link #freeSpaceAllocator} s'étend jusqu'à la fin du fichier.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void truncateFreeEnd () throws IOException {
+        long length = storage.length();
+        long newLength = freeSpaceAllocator.trimEnd(length);
+        if (newLength != length)
+            storage.setLength(newLength);
+    }
+
+
+    /**
+     * @return la proportion d'octets libres dans le fichier, entre 0 et 1
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public double getFragmentation () throws IOException {
+        lock.readLock().lock();
+        try {
+            long length = storage.length();
+            return length == 0 ? 0 : (double) freeSpaceAllocator.getFreeBytes() / length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compacte le fichier sans suivre l'avancement
+     *
+     * @return l'état final du compactage
+     * @throws IOException si un problème d'entrée/sortie se produit
+     * @see #compact(CompactionListener)
+     */
+    public CompactionStatistics compact () throws IOException {
+        return compact(null);
+    }
+
+    /**
+     * Compacte le fichier pendant que la BDD reste utilisable. Les enregistrements sont parcourus de la fin du fichier vers son début,
+     * et chacun est déplacé par {@link #moveRecord(String, long)} dans le plus petit espace libre suffisant situé avant lui.
+     * Le fichier est tronqué au fur et à mesure que sa fin se libère. Les enregistrements qui n'ont pas pu être déplacés lors d'un passage
+     * le sont parfois au passage suivant, grâce aux espaces libres fusionnés entre temps : les passages se répètent tant qu'un enregistrement est déplacé.
+     * Enfin, les métadonnées sont sauvegardées, ce qui permet de déplacer et de tronquer aussi leurs zones.
+     * <p>
+     * Chaque déplacement se fait sous le verrou d'écriture, qui est relâché entre deux déplacements.
+     * Le débit est limité par {@link BDDConfiguration#getCompactionMaxBytesPerSecond()}. Un seul compactage peut avoir lieu à la fois.
+     *
+     * @param listener l'observateur de l'avancement, ou null
+     * @return l'état final du compactage
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public CompactionStatistics compact (CompactionListener listener) throws IOException {
+        synchronized (compactionMonitor) {
+            long initialLength;
+            lock.readLock().lock();
+            try {
+                initialLength = storage.length();
+            } finally {
+                lock.readLock().unlock();
+            }
+            long movedRecords = 0;
+            long movedBytes = 0;
+            long start = System.nanoTime();
+            boolean moved = true;
+            while (moved && !closed) {
+                moved = false;
+                for (Map.Entry<Long, String> e : recordsAfterFirstFreeSpace().descendingMap().entrySet()) {
+                    long size = moveRecord(e.getValue(), e.getKey());
+                    if (size < 0)
+                        break;
+                    if (size > 0) {
+                        moved = true;
+                        movedRecords++;
+                        movedBytes += size;
+                        if (listener != null)
+                            listener.onProgress(getCompactionStatistics(movedRecords, movedBytes, initialLength));
+                        if (!throttleCompaction(movedBytes, start))
+                            break;
+                    }
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                if (!closed)
+                    saveMetaData();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return getCompactionStatistics(movedRecords, movedBytes, initialLength);
+        }
+    }
+
+    /**
+     * @return les positions des enregistrements situés après le premier espace libre, associées à leurs clés et triées par position
+     */
+    private TreeMap<Long, String> recordsAfterFirstFreeSpace () throws IOException {
+        TreeMap<Long, String> res = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            long first = freeSpaceAllocator.firstFreePosition();
+            if (first >= 0) {
+                for (Iterator<Map.Entry<String, Long>> it = links.iterator(); it.hasNext(); ) {
+                    Map.Entry<String, Long> e = it.next();
+                    if (e.getValue() > first)
+                        res.put(e.getValue(), e.getKey());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return res;
+    }
+
+    /**
+     * Sous le verrou d'écriture, déplace l'enregistrement de la clé donnée dans le plus petit espace libre suffisant situé avant lui.
+     * L'enregistrement est d'abord copié, puis la clé est associée à la nouvelle position (et inscrite au journal), enfin l'ancienne zone est libérée
+     * par {@link #removeObject(long)}, qui tronque le fichier si elle se trouvait à sa fin.
+     *
+     * @param objectName la clé de l'enregistrement
+     * @param pos        la position de l'enregistrement lors du parcours
+     * @return le nombre d'octets déplacés, 0 si l'enregistrement n'a pas été déplacé, ou -1 s'il n'y a plus aucun espace libre avant cette position ou si la BDD est fermée
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private long moveRecord (String objectName, long pos) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return -1;
+            long first = freeSpaceAllocator.firstFreePosition();
+            if (first < 0 || first > pos)
+                return -1;
+            Long current = links.get(objectName);
+            if (current == null || current != pos)
+                return 0;
+            releasePendingFrees();
+            int size = storage.readInt(pos) + 4;
+            Long target = freeSpaceAllocator.allocateBefore(size, pos);
+            if (target == null)
+                return 0;
+            byte[] zone = new byte[Math.min(size, MAX_COALESCED_WRITE_SIZE)];
+            try {
+                for (int copied = 0; copied < size; copied += zone.length) {
+                    int n = Math.min(zone.length, size - copied);
+                    storage.read(pos + copied, zone, 0, n);
+                    storage.write(target + copied, zone, 0, n);
+                }
+            } catch (IOException | RuntimeException e) {
+                freeSpaceAllocator.free(target, size);
+                throw e;
+            }
+            links.put(objectName, target);
+            if (cache != null)
+                cache.invalidate(objectName);
+            if (operationLog != null)
+                operationLog.put(objectName, target, size);
+            removeObject(pos);
+            afterModification();
+            return size;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private CompactionStatistics getCompactionStatistics (long movedRecords, long movedBytes, long initialLength) throws IOException {
+        lock.readLock().lock();
+        try {
+            return new CompactionStatistics(movedRecords, movedBytes, initialLength, closed ? -1 : storage.length(), freeSpaceAllocator.getFreeBytes());
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
+    /**
+     * Attend, sans tenir de verrou, le temps nécessaire pour que le débit du compactage ne dépasse pas {@link BDDConfiguration#getCompactionMaxBytesPerSecond()}
+     *
+     * @param movedBytes le nombre d'octets déplacés depuis le début du compactage
+     * @param start      l'instant du début du compactage, donné par {@link System#nanoTime()}
+     * @return false si le fil d'exécution a été interrompu, auquel cas le compactage doit s'arrêter
+     */
+    private boolean throttleCompaction (long movedBytes, long start) {
+        long maxBytesPerSecond = configuration.getCompactionMaxBytesPerSecond();
+        if (maxBytesPerSecond > 0) {
+            long wait = (long) (movedBytes * 1e9 / maxBytesPerSecond) - (System.nanoTime() - start);
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tâche du compactage automatique : un compactage est lancé si la proportion d'octets libres atteint {@link BDDConfiguration#getCompactionThreshold()}.
+     * Une erreur est conservée pour être levée par {@link #close()}.
+     */
+    private void backgroundCompaction () {
+        try {
+            if (!closed && getFragmentation() >= configuration.getCompactionThreshold())
+                compact(null);
+        } catch (IOException e) {
+            compactionFailure = e;
+        }
+    }
 
     /**
-     * Cette fonction sauvegarde le tableau associatif {@link #links} dans le fichier de la BDD :
+     * Cette fonction sauvegarde le répertoire des clés {@link #links} dans le fichier de la BDD :
      * <ol>
-     *     <li>La fonction {@link #removeLinks()} est d'abord appelée pour supprimer l'ancienne version si elle existe</li>
-     *     <li>{@link #links} est ensuite sérialisé grâce la fonction {@link SerializationTools#serialize(Serializable)}</li>
-     *     <li>Une position pour stocker la nouvelle donnée est recherchée grâce à la fonction {@link #findPosition(byte[])}</li>
+     *     <li>{@link #links} est converti en enregistrement binaire par {@link KeyDirectory#save()}. Pour un arbre B+, seules les pages modifiées sont écrites,
+     *         et l'enregistrement ne contient que la position de la racine.</li>
+     *     <li>Une position pour stocker la nouvelle donnée est recherchée grâce à la fonction {@link #findPosition(byte[])}.
+     *         L'ancienne version n'étant pas encore supprimée, elle ne peut pas être écrasée.</li>
      *     <li>La fonction {@link #writeData(byte[], long)} permet ensuite d'enregistrer la donnée à la position déterminée précédement</li>
-     *     <li>La position de la donnée est ensuite sauvegardée à la position {@link #LINKS_REFERENCE_POSITION}</li>
      * </ol>
+     * La position retournée est enregistrée à la position {@link #LINKS_REFERENCE_POSITION} par {@link #saveMetaData()}.
      *
+     * @return la position de la donnée enregistrée
      * @throws IOException si un problème d'entrée/sortie se produit
      */
-    private void saveLinks () throws IOException {
-        removeLinks();
-        byte[] tab = SerializationTools.serialize(links);
+    private long saveLinks () throws IOException {
+        byte[] tab = links.save();
+        linksChecksum = checksum(tab);
         long l = findPosition(tab);
         writeData(tab, l);
-        raf.seek(LINKS_REFERENCE_POSITION);
-        raf.writeLong(l);
+        return l;
     }
 
     /**
-     * Cette fonction lit la donnée à la position déterminée par {@link #LINKS_REFERENCE_POSITION}, grâce à la fonction {@link #readData(long)}.
-     * Le tableau {@link #links} est ensuite déserialisé grâce à la fonction {@link SerializationTools#deserialize(byte[])}
+     * Cette fonction lit la donnée à la position déterminée par {@link #LINKS_REFERENCE_POSITION}.
+     * Un répertoire au format binaire de {@link SerializationTools#serializeKeyDirectory(java.util.Map)} est décodé au fil de la lecture du fichier,
+     * par un {@link RecordInputStream}, et son CRC32 est calculé au passage. Les autres formats sont lus entièrement grâce à la fonction {@link #readData(long)},
+     * puis chargés grâce à la fonction {@link KeyDirectory#load(byte[], BDDConfiguration, Storage, KeyDirectory.PageAllocator)}, qui reconnaît le format de l'enregistrement.
+     * Dans les deux cas, le répertoire est converti si nécessaire dans le type choisi par la configuration.
+     * Les zones signalées par l'ancien répertoire en mémoire sont oubliées : elles sont décrites par les métadonnées chargées.
      *
      * @throws IOException            si un problème d'entrée/sortie se produit
      * @throws ClassNotFoundException si la désérialisation se passe mal.
      */
     private void readLinks () throws IOException, ClassNotFoundException {
-        raf.seek(LINKS_REFERENCE_POSITION);
-        long pos = raf.readLong();
+        long pos = storage.readLong(LINKS_REFERENCE_POSITION);
+        int length = storage.readInt(pos);
+        obsoleteZones.clear();
+        if (length >= 4 && storage.readInt(pos + 4) == SerializationTools.KEY_DIRECTORY_MAGIC) {
+            try (CheckedInputStream in = new CheckedInputStream(new BufferedInputStream(new RecordInputStream(-1, pos + 4, pos + 4 + length), STREAM_BUFFER_SIZE), new CRC32())) {
+                HashKeyDirectory loaded = new HashKeyDirectory(SerializationTools.deserializeKeyDirectory(in));
+                linksChecksum = in.getChecksum().getValue();
+                links = KeyDirectory.convert(loaded, KeyDirectoryType.HASH_MAP, configuration, storage, pageAllocator);
+            }
+            return;
+        }
         byte[] tab = readData(pos);
-        links = (HashMap<String, Long>) SerializationTools.deserialize(tab);
+        linksChecksum = checksum(tab);
+        links = KeyDirectory.load(tab, configuration, storage, pageAllocator);
+    }
+
+    private static long checksum (byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
     }
 
     /**
-     * Cette fonction supprime la donnée à la position déterminée par {@link #LINKS_REFERENCE_POSITION}, grâce à la fonction {@link #removeObject(long)}.
-     * Si la position déterminée par {@link #LINKS_REFERENCE_POSITION} n'est pas supérieur à 16, aucune donnée n'est à supprimée.
+     * Cette fonction rend à l'allocateur la zone de la donnée dont la position est enregistrée à la position {@link #LINKS_REFERENCE_POSITION}.
+     * Si la position enregistrée n'est pas supérieure ou égale à 16, aucune donnée n'est à supprimée.
+     * Le fichier n'est pas tronqué, car l'ancienne version doit rester lisible tant que la nouvelle n'est pas référencée.
      *
      * @throws IOException si un problème d'entrée/sortie se produit
      */
     private void removeLinks () throws IOException {
-        if (LINKS_REFERENCE_POSITION > 16) removeObject(LINKS_REFERENCE_POSITION);
+        removeMetaData(storage.readLong(LINKS_REFERENCE_POSITION));
+    }
+
+    /**
+     * Cette fonction rend à l'allocateur la zone de la métadonnée enregistrée à la position donnée, sans tronquer le fichier
+     *
+     * @param pos la position de la métadonnée, ou une valeur inférieure à 16 si elle n'existe pas
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void removeMetaData (long pos) throws IOException {
+        if (pos >= 16) freeSpaceAllocator.free(pos, storage.readInt(pos) + 4);
     }
 
     /**
-     * Cette fonction sauvegade le tableau {@link #freeSpaceIntervals} dans le fichier de la BDD :
+     * Cette fonction sauvegade les espaces libres de {@link #freeSpaceAllocator} dans le fichier de la BDD :
      * <ol>
-     *     <li>La fonction {@link #removeFreeSpaceTab()} ()} est d'abord appelée pour supprimer l'ancienne version si elle existe</li>
-     *     <li>{@link #freeSpaceIntervals} est ensuite sérialisé grâce la fonction {@link SerializationTools#deserializeFreeSpaceIntervals(byte[])}</li>
-     *     <li>La position pour stocker la nouvelle donnée correspond à la fin du fichier de la BDD</li>
-     *     <li>La fonction {@link #writeData(byte[], long)} permet ensuite d'enregistrer la donnée à la position déterminée précédement</li>
-     *     <li>La position de la donnée est ensuite sauvegardée à la position {@link #SPACE_TAB_REFERENCE_POSITION}</li>
+     *     <li>Les espaces libres sont sérialisés grâce la fonction {@link SerializationTools#serializeFreeSpaceIntervals(java.util.TreeSet)}</li>
+     *     <li>Les zones dont la libération est différée par un flux de lecture ({@link #deferredFrees}) ou par un instantané ({@link #snapshotFrees}) y sont ajoutées,
+     *         afin qu'elles ne soient pas perdues si le fichier n'est pas fermé proprement</li>
+     *     <li>Un dernier espace libre commence à la fin logique du fichier et s'étend jusqu'à {@link Long#MAX_VALUE} : si le fichier n'est pas fermé proprement,
+     *         tout octet situé au delà, et qu'aucune entrée du journal ne réserve, est rendu à l'allocateur puis tronqué à l'ouverture suivante</li>
+     *     <li>Le résultat est complété par des zéros jusqu'à la taille de la zone réservée par {@link #saveMetaData()}.
+     *         Chaque groupe de 16 zéros correspond à un espace vide, ignoré à la lecture.</li>
+     *     <li>La fonction {@link #writeData(byte[], long)} permet ensuite d'enregistrer la donnée à la position réservée</li>
      *  </ol>
+     * La position est enregistrée à la position {@link #SPACE_TAB_REFERENCE_POSITION} par {@link #saveMetaData()}.
      *
+     * @param position     la position de la zone réservée
+     * @param maxIntervals le nombre d'espaces libres que peut contenir la zone réservée
      * @throws IOException si un problème d'entrée/sortie se produit
      */
-    private void saveFreeSpaceTab () throws IOException {
-        removeFreeSpaceTab();
-        byte[] tab = SerializationTools.serializeFreeSpaceIntervals(freeSpaceIntervals);
-        long l = findPosition(tab);
-        writeData(tab, l);
-        raf.seek(SPACE_TAB_REFERENCE_POSITION);
-        raf.writeLong(l);
+    private void saveFreeSpaceTab (long position, int maxIntervals) throws IOException {
+        TreeSet<FreeSpaceInterval> free = new TreeSet<>(freeSpaceAllocator.getIntervals());
+        for (Map.Entry<Long, Long> e : deferredFrees.entrySet())
+            free.add(new FreeSpaceInterval(e.getKey(), e.getValue()));
+        for (long[] zone : snapshotFrees)
+            free.add(new FreeSpaceInterval(zone[2], zone[3]));
+        long end = storage.length();
+        free.add(new FreeSpaceInterval(end, Long.MAX_VALUE - end));
+        byte[] intervals = SerializationTools.serializeFreeSpaceIntervals(free);
+        if (intervals.length > maxIntervals * 16)
+            throw new IllegalStateException();
+        writeData(Arrays.copyOf(intervals, maxIntervals * 16), position);
     }
 
     /**
      * Cette fonction lit la donnée à la position déterminée par {@link #SPACE_TAB_REFERENCE_POSITION}, grâce à la fonction {@link #readData(long)}.
-     * Le tableau {@link #freeSpaceIntervals} est ensuite déserialisé grâce à la fonction {@link SerializationTools#deserializeFreeSpaceIntervals(byte[])}
+     * Les espaces libres sont ensuite déserialisés grâce à la fonction {@link SerializationTools#deserializeFreeSpaceIntervals(byte[])} pour construire {@link #freeSpaceAllocator}.
+     * Les zones occupées par les deux métadonnées restent réservées jusqu'à la prochaine sauvegarde,
+     * même si un fichier écrit par une version précédente les décrivait comme libres.
+     * Les espaces libres situés au delà de la fin du fichier sont ignorés : ce sont les anciennes métadonnées,
+     * libérées et tronquées par {@link #saveMetaData()} après l'écriture du tableau, et l'espace qui marque la fin logique du fichier.
+     * Les octets compris entre cette fin logique et la fin du fichier restent libres : le fichier n'est pas tronqué ici,
+     * car le journal des opérations peut encore réserver des zones situées au delà.
      *
      * @throws IOException si un problème d'entrée/sortie se produit
      */
     private void readFreeSpaceTab () throws IOException {
-        raf.seek(SPACE_TAB_REFERENCE_POSITION);
-        long pos = raf.readLong();
+        long pos = storage.readLong(SPACE_TAB_REFERENCE_POSITION);
         byte[] tab = readData(pos);
-        freeSpaceIntervals = SerializationTools.deserializeFreeSpaceIntervals(tab);
+        freeSpaceAllocator = new FreeSpaceAllocator(SerializationTools.deserializeFreeSpaceIntervals(tab));
+        freeSpaceAllocator.claim(pos, tab.length + 4);
+        long linksPos = storage.readLong(LINKS_REFERENCE_POSITION);
+        freeSpaceAllocator.claim(linksPos, storage.readInt(linksPos) + 4);
+        long length = storage.length();
+        freeSpaceAllocator.claim(length, Long.MAX_VALUE - length);
     }
 
     /**
-     * Cette fonction supprime la donnée à la position déterminée par {@link #SPACE_TAB_REFERENCE_POSITION}, grâce à la fonction {@link #removeObject(long)}.
-     * Si la position déterminée par {@link #SPACE_TAB_REFERENCE_POSITION} n'est pas supérieur à 16, aucune donnée n'est à supprimée.
+     * Cette fonction rend à l'allocateur la zone de la donnée dont la position est enregistrée à la position {@link #SPACE_TAB_REFERENCE_POSITION}.
+     * Si la position enregistrée n'est pas supérieure ou égale à 16, aucune donnée n'est à supprimée.
+     * Le fichier n'est pas tronqué, car l'ancienne version doit rester lisible tant que la nouvelle n'est pas référencée.
      *
      * @throws IOException si un problème d'entrée/sortie se produit
      */
     private void removeFreeSpaceTab () throws IOException {
-        if (SPACE_TAB_REFERENCE_POSITION > 16) removeObject(SPACE_TAB_REFERENCE_POSITION);
+        removeMetaData(storage.readLong(SPACE_TAB_REFERENCE_POSITION));
     }
 
+    /**
+     * Arrête le compactage en cours ou automatique, écrit le tampon d'écriture différée, sauvegarde les métadonnées puis ferme le fichier.
+     *
+     * @throws Exception si un problème d'entrée/sortie se produit, y compris lors d'un compactage automatique ou d'une écriture du tampon en arrière-plan
+     */
     @Override
     public void close () throws Exception {
-        saveMetaData();
-        raf.close();
+        if (flushScheduler != null) {
+            flushScheduler.shutdown();
+            try {
+                flushScheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        IOException failure = flushFailure;
+        if (failure == null && !closed) {
+            try {
+                flush();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        closed = true;
+        if (mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (JMException ignored) {
+            }
+            mbeanName = null;
+        }
+        if (compactionScheduler != null) {
+            compactionScheduler.shutdown();
+            try {
+                compactionScheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            saveMetaData();
+            if (operationLog != null)
+                operationLog.close();
+            if (cache != null)
+                cache.clear();
+        } finally {
+            try {
+                storage.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (failure != null)
+            throw failure;
+        if (compactionFailure != null)
+            throw compactionFailure;
     }
 }
@@ -0,0 +1,594 @@
+package bdd;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+
+/**
+ * Paramètres d'ouverture d'une {@link BDD}.
+ * Chaque modificateur retourne la configuration elle-même afin de pouvoir enchaîner les appels.
+ *
+ * @version 1.0
+ */
+public class BDDConfiguration {
+    private StorageMode storageMode = StorageMode.RANDOM_ACCESS_FILE;
+    private boolean operationLogEnabled = false;
+    private LogSyncPolicy logSyncPolicy = LogSyncPolicy.GROUP_COMMIT;
+    private long groupCommitDelay = 10;
+    private int groupCommitOperations = 256;
+    private long maxOperationLogSize = 64L << 20;
+    private long writeBufferSize = 0;
+    private long writeBufferFlushInterval = 100;
+    private boolean inPlaceUpdatesEnabled = true;
+    private int allocationSlack = 0;
+    private int cacheMaxEntries = 0;
+    private long cacheMaxBytes = 0;
+    private boolean cacheSharedInstances = false;
+    private CodecRegistry codecRegistry = new CodecRegistry();
+    private boolean compressionEnabled = false;
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private int compressionThreshold = 512;
+    private double compactionThreshold = 0;
+    private long compactionCheckInterval = 60000;
+    private long compactionMaxBytesPerSecond = 0;
+    private KeyDirectoryType keyDirectoryType = KeyDirectoryType.HASH_MAP;
+    private int keyDirectoryPageSize = BTreeKeyDirectory.DEFAULT_PAGE_SIZE;
+    private int keyDirectoryCacheSize = 1024;
+    private int keyDirectoryMaxDirtyPages = 4096;
+    private long maxSegmentSize = 64L << 20;
+    private final LinkedHashMap<String, SecondaryIndex.Definition> indexes = new LinkedHashMap<>();
+    private boolean metricsEnabled = false;
+    private boolean jmxEnabled = false;
+
+    /**
+     * @return le mode d'accès au fichier. Par défaut {@link StorageMode#RANDOM_ACCESS_FILE}.
+     */
+    public StorageMode getStorageMode () {
+        return storageMode;
+    }
+
+    /**
+     * @param storageMode le mode d'accès au fichier
+     * @return cette configuration
+     */
+    public BDDConfiguration setStorageMode (StorageMode storageMode) {
+        if (storageMode == null) throw new NullPointerException();
+        this.storageMode = storageMode;
+        return this;
+    }
+
+    /**
+     * @return true si les modifications sont enregistrées dans un journal des opérations. Par défaut false.
+     */
+    public boolean isOperationLogEnabled () {
+        return operationLogEnabled;
+    }
+
+    /**
+     * Active ou désactive le journal des opérations. Lorsqu'il est activé, chaque ajout et chaque suppression est enregistré
+     * dans un fichier placé à côté du fichier de la BDD, ce qui permet de retrouver les clés après un arrêt brutal
+     * sans avoir à sauvegarder les métadonnées après chaque opération.
+     *
+     * @param operationLogEnabled true pour activer le journal
+     * @return cette configuration
+     */
+    public BDDConfiguration setOperationLogEnabled (boolean operationLogEnabled) {
+        this.operationLogEnabled = operationLogEnabled;
+        return this;
+    }
+
+    /**
+     * @return la politique de synchronisation du journal. Par défaut {@link LogSyncPolicy#GROUP_COMMIT}.
+     */
+    public LogSyncPolicy getLogSyncPolicy () {
+        return logSyncPolicy;
+    }
+
+    /**
+     * @param logSyncPolicy la politique de synchronisation du journal
+     * @return cette configuration
+     */
+    public BDDConfiguration setLogSyncPolicy (LogSyncPolicy logSyncPolicy) {
+        if (logSyncPolicy == null) throw new NullPointerException();
+        this.logSyncPolicy = logSyncPolicy;
+        return this;
+    }
+
+    /**
+     * @return le délai maximal en millisecondes entre deux synchronisations du journal avec {@link LogSyncPolicy#GROUP_COMMIT}. Par défaut 10 ms.
+     */
+    public long getGroupCommitDelay () {
+        return groupCommitDelay;
+    }
+
+    /**
+     * @param groupCommitDelay le délai maximal en millisecondes entre deux synchronisations du journal
+     * @return cette configuration
+     */
+    public BDDConfiguration setGroupCommitDelay (long groupCommitDelay) {
+        if (groupCommitDelay <= 0) throw new IllegalArgumentException();
+        this.groupCommitDelay = groupCommitDelay;
+        return this;
+    }
+
+    /**
+     * @return le nombre maximal d'opérations accumulées avant une synchronisation du journal avec {@link LogSyncPolicy#GROUP_COMMIT}. Par défaut 256.
+     */
+    public int getGroupCommitOperations () {
+        return groupCommitOperations;
+    }
+
+    /**
+     * @param groupCommitOperations le nombre maximal d'opérations accumulées avant une synchronisation du journal
+     * @return cette configuration
+     */
+    public BDDConfiguration setGroupCommitOperations (int groupCommitOperations) {
+        if (groupCommitOperations <= 0) throw new IllegalArgumentException();
+        this.groupCommitOperations = groupCommitOperations;
+        return this;
+    }
+
+    /**
+     * @return la taille du journal en octets au delà de laquelle les métadonnées sont sauvegardées et le journal vidé. Par défaut 64 Mo.
+     */
+    public long getMaxOperationLogSize () {
+        return maxOperationLogSize;
+    }
+
+    /**
+     * @param maxOperationLogSize la taille du journal en octets au delà de laquelle les métadonnées sont sauvegardées et le journal vidé
+     * @return cette configuration
+     */
+    public BDDConfiguration setMaxOperationLogSize (long maxOperationLogSize) {
+        if (maxOperationLogSize <= 0) throw new IllegalArgumentException();
+        this.maxOperationLogSize = maxOperationLogSize;
+        return this;
+    }
+
+    /**
+     * @return le nombre d'octets d'enregistrements en attente à partir duquel le tampon d'écriture différée est vidé, ou 0 si le tampon est désactivé. Par défaut 0.
+     */
+    public long getWriteBufferSize () {
+        return writeBufferSize;
+    }
+
+    /**
+     * Active l'écriture différée : les ajouts et les suppressions sont conservés en mémoire, où les lectures les retrouvent,
+     * puis écrits ensemble, triés par position, lorsque leur taille atteint le seuil donné, toutes les {@link #getWriteBufferFlushInterval()} millisecondes,
+     * lors d'un appel à {@link BDD#flush()} et à la fermeture de la BDD.
+     * Les modifications en attente ne sont pas inscrites dans le journal des opérations : un arrêt brutal les perd.
+     *
+     * @param writeBufferSize le nombre d'octets en attente qui déclenche l'écriture, ou 0 pour désactiver l'écriture différée
+     * @return cette configuration
+     */
+    public BDDConfiguration setWriteBufferSize (long writeBufferSize) {
+        if (writeBufferSize < 0) throw new IllegalArgumentException();
+        this.writeBufferSize = writeBufferSize;
+        return this;
+    }
+
+    /**
+     * @return le délai maximal en millisecondes pendant lequel une modification reste dans le tampon d'écriture différée. Par défaut 100 ms.
+     */
+    public long getWriteBufferFlushInterval () {
+        return writeBufferFlushInterval;
+    }
+
+    /**
+     * @param writeBufferFlushInterval le délai maximal en millisecondes entre deux écritures du tampon d'écriture différée
+     * @return cette configuration
+     */
+    public BDDConfiguration setWriteBufferFlushInterval (long writeBufferFlushInterval) {
+        if (writeBufferFlushInterval <= 0) throw new IllegalArgumentException();
+        this.writeBufferFlushInterval = writeBufferFlushInterval;
+        return this;
+    }
+
+    /**
+     * @return true si un enregistrement modifié peut être réécrit dans sa propre zone. Par défaut true.
+     */
+    public boolean isInPlaceUpdatesEnabled () {
+        return inPlaceUpdatesEnabled;
+    }
+
+    /**
+     * Autorise {@link BDD#putObject(String, Serializable)} à réécrire un enregistrement dans sa zone actuelle, sous le verrou d'écriture,
+     * lorsque le nouvel enregistrement y tient : aucune zone n'est alors réservée ni libérée.
+     * La réécriture n'a pas lieu lorsque l'ancien enregistrement doit rester lisible : journal des opérations activé,
+     * instantané ou transaction ouverts, ou flux de lecture ouvert sur l'enregistrement.
+     * Elle n'a pas lieu non plus pour les enregistrements ajoutés par lot, qui deviennent visibles tous ensemble :
+     * {@link BDD#putAll(java.util.Map)}, validation d'une transaction, et toutes les modifications lorsque l'écriture différée
+     * ({@link #setWriteBufferSize(long)}) est activée.
+     *
+     * @param inPlaceUpdatesEnabled true pour autoriser la réécriture sur place
+     * @return cette configuration
+     */
+    public BDDConfiguration setInPlaceUpdatesEnabled (boolean inPlaceUpdatesEnabled) {
+        this.inPlaceUpdatesEnabled = inPlaceUpdatesEnabled;
+        return this;
+    }
+
+    /**
+     * @return la marge réservée après chaque enregistrement ajouté, en pourcentage de sa taille. Par défaut 0.
+     */
+    public int getAllocationSlack () {
+        return allocationSlack;
+    }
+
+    /**
+     * Réserve une marge après chaque enregistrement ajouté, y compris par lot, par une transaction ou par l'écriture différée,
+     * pour qu'une version un peu plus grande puisse ensuite être réécrite sur place ({@link #setInPlaceUpdatesEnabled(boolean)}).
+     * La marge occupe le fichier tant que l'enregistrement existe. Elle est inutile lorsque la réécriture sur place n'a jamais lieu :
+     * journal des opérations ou écriture différée activés, ou modifications faites uniquement par lot ou par transaction.
+     *
+     * @param allocationSlack la marge en pourcentage de la taille de l'enregistrement, en-tête compris, entre 0 et 100
+     * @return cette configuration
+     */
+    public BDDConfiguration setAllocationSlack (int allocationSlack) {
+        if (allocationSlack < 0 || allocationSlack > 100) throw new IllegalArgumentException();
+        this.allocationSlack = allocationSlack;
+        return this;
+    }
+
+    /**
+     * @return le nombre maximal d'objets conservés dans le cache de {@link BDD#getObject(String)}, ou 0 si le nombre n'est pas borné. Par défaut 0.
+     */
+    public int getCacheMaxEntries () {
+        return cacheMaxEntries;
+    }
+
+    /**
+     * Borne le cache des objets désérialisés par un nombre d'entrées. Le cache est activé dès qu'une des deux bornes
+     * ({@link #setCacheMaxEntries(int)} ou {@link #setCacheMaxBytes(long)}) est strictement positive.
+     *
+     * @param cacheMaxEntries le nombre maximal d'objets conservés, ou 0 pour ne pas borner le nombre d'objets
+     * @return cette configuration
+     */
+    public BDDConfiguration setCacheMaxEntries (int cacheMaxEntries) {
+        if (cacheMaxEntries < 0) throw new IllegalArgumentException();
+        this.cacheMaxEntries = cacheMaxEntries;
+        return this;
+    }
+
+    /**
+     * @return le nombre maximal d'octets, estimé d'après la taille des enregistrements sérialisés, conservés dans le cache, ou 0 si la taille n'est pas bornée. Par défaut 0.
+     */
+    public long getCacheMaxBytes () {
+        return cacheMaxBytes;
+    }
+
+    /**
+     * Borne le cache des objets désérialisés par une estimation du nombre d'octets occupés, qui correspond à la taille des enregistrements sérialisés.
+     *
+     * @param cacheMaxBytes le nombre maximal d'octets, ou 0 pour ne pas borner la taille
+     * @return cette configuration
+     */
+    public BDDConfiguration setCacheMaxBytes (long cacheMaxBytes) {
+        if (cacheMaxBytes < 0) throw new IllegalArgumentException();
+        this.cacheMaxBytes = cacheMaxBytes;
+        return this;
+    }
+
+    /**
+     * @return true si le cache est activé
+     */
+    public boolean isCacheEnabled () {
+        return cacheMaxEntries > 0 || cacheMaxBytes > 0;
+    }
+
+    /**
+     * @return true si le cache rend les mêmes instances à chaque appel, false s'il rend des copies défensives. Par défaut false.
+     */
+    public boolean isCacheSharedInstances () {
+        return cacheSharedInstances;
+    }
+
+    /**
+     * Choisit entre le partage des objets mis en cache et les copies défensives.
+     * Les instances partagées évitent toute désérialisation, mais l'appelant ne doit pas les modifier.
+     * Les copies défensives sont désérialisées à chaque appel à partir de l'enregistrement conservé en mémoire : seule la lecture du fichier est évitée.
+     *
+     * @param cacheSharedInstances true pour partager les instances, false pour rendre des copies défensives
+     * @return cette configuration
+     */
+    public BDDConfiguration setCacheSharedInstances (boolean cacheSharedInstances) {
+        this.cacheSharedInstances = cacheSharedInstances;
+        return this;
+    }
+
+    /**
+     * @return le registre des codecs utilisés pour encoder les objets. Par défaut, un registre qui ne contient que les codecs fournis.
+     */
+    public CodecRegistry getCodecRegistry () {
+        return codecRegistry;
+    }
+
+    /**
+     * Les objets dont la classe n'a pas de codec dans ce registre sont enregistrés grâce à la sérialisation Java.
+     * Un fichier doit toujours être ouvert avec un registre qui contient les codecs utilisés par ses enregistrements.
+     *
+     * @param codecRegistry le registre des codecs utilisés pour encoder les objets
+     * @return cette configuration
+     */
+    public BDDConfiguration setCodecRegistry (CodecRegistry codecRegistry) {
+        if (codecRegistry == null) throw new NullPointerException();
+        this.codecRegistry = codecRegistry;
+        return this;
+    }
+
+    /**
+     * @return true si les enregistrements sont compressés. Par défaut false.
+     */
+    public boolean isCompressionEnabled () {
+        return compressionEnabled;
+    }
+
+    /**
+     * Active ou désactive la compression des enregistrements grâce à {@link Deflater}.
+     * Les enregistrements compressés et non compressés peuvent cohabiter dans un même fichier :
+     * les enregistrements compressés restent lisibles lorsque la compression est désactivée.
+     *
+     * @param compressionEnabled true pour compresser les enregistrements
+     * @return cette configuration
+     */
+    public BDDConfiguration setCompressionEnabled (boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+        return this;
+    }
+
+    /**
+     * @return le niveau de compression. Par défaut {@link Deflater#BEST_SPEED}.
+     */
+    public int getCompressionLevel () {
+        return compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel le niveau de compression, entre {@link Deflater#BEST_SPEED} et {@link Deflater#BEST_COMPRESSION}, ou {@link Deflater#DEFAULT_COMPRESSION}
+     * @return cette configuration
+     */
+    public BDDConfiguration setCompressionLevel (int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException();
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    /**
+     * @return la taille en octets en dessous de laquelle un enregistrement n'est pas compressé. Par défaut 512 octets.
+     */
+    public int getCompressionThreshold () {
+        return compressionThreshold;
+    }
+
+    /**
+     * @param compressionThreshold la taille en octets en dessous de laquelle un enregistrement n'est pas compressé
+     * @return cette configuration
+     */
+    public BDDConfiguration setCompressionThreshold (int compressionThreshold) {
+        if (compressionThreshold < 0) throw new IllegalArgumentException();
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    /**
+     * @return la proportion d'octets libres dans le fichier à partir de laquelle un compactage est lancé en arrière-plan, ou 0 si le compactage automatique est désactivé. Par défaut 0.
+     */
+    public double getCompactionThreshold () {
+        return compactionThreshold;
+    }
+
+    /**
+     * Active le compactage automatique : toutes les {@link #getCompactionCheckInterval()} millisecondes, un fil d'exécution en arrière-plan
+     * lance {@link BDD#compact()} si la proportion d'octets libres dans le fichier atteint le seuil donné.
+     *
+     * @param compactionThreshold le seuil, compris entre 0 exclu et 1 exclu, ou 0 pour désactiver le compactage automatique
+     * @return cette configuration
+     */
+    public BDDConfiguration setCompactionThreshold (double compactionThreshold) {
+        if (compactionThreshold < 0 || compactionThreshold >= 1) throw new IllegalArgumentException();
+        this.compactionThreshold = compactionThreshold;
+        return this;
+    }
+
+    /**
+     * @return le délai en millisecondes entre deux vérifications du compactage automatique. Par défaut 60 s.
+     */
+    public long getCompactionCheckInterval () {
+        return compactionCheckInterval;
+    }
+
+    /**
+     * @param compactionCheckInterval le délai en millisecondes entre deux vérifications du compactage automatique
+     * @return cette configuration
+     */
+    public BDDConfiguration setCompactionCheckInterval (long compactionCheckInterval) {
+        if (compactionCheckInterval <= 0) throw new IllegalArgumentException();
+        this.compactionCheckInterval = compactionCheckInterval;
+        return this;
+    }
+
+    /**
+     * @return le nombre maximal d'octets copiés par seconde lors d'un compactage, ou 0 s'il n'est pas limité. Par défaut 0.
+     */
+    public long getCompactionMaxBytesPerSecond () {
+        return compactionMaxBytesPerSecond;
+    }
+
+    /**
+     * Limite le débit d'un compactage, afin qu'il ne monopolise ni le disque ni les verrous.
+     *
+     * @param compactionMaxBytesPerSecond le nombre maximal d'octets copiés par seconde, ou 0 pour ne pas limiter le débit
+     * @return cette configuration
+     */
+    public BDDConfiguration setCompactionMaxBytesPerSecond (long compactionMaxBytesPerSecond) {
+        if (compactionMaxBytesPerSecond < 0) throw new IllegalArgumentException();
+        this.compactionMaxBytesPerSecond = compactionMaxBytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @return la structure du répertoire des clés. Par défaut {@link KeyDirectoryType#HASH_MAP}.
+     */
+    public KeyDirectoryType getKeyDirectoryType () {
+        return keyDirectoryType;
+    }
+
+    /**
+     * @param keyDirectoryType la structure du répertoire des clés
+     * @return cette configuration
+     */
+    public BDDConfiguration setKeyDirectoryType (KeyDirectoryType keyDirectoryType) {
+        if (keyDirectoryType == null) throw new NullPointerException();
+        this.keyDirectoryType = keyDirectoryType;
+        return this;
+    }
+
+    /**
+     * @return la taille en octets des pages d'un nouvel arbre B+ ({@link KeyDirectoryType#B_TREE}). Par défaut 4096 octets.
+     */
+    public int getKeyDirectoryPageSize () {
+        return keyDirectoryPageSize;
+    }
+
+    /**
+     * La taille des pages est choisie à la création de l'arbre : un arbre existant conserve la taille avec laquelle il a été écrit.
+     * Elle borne aussi la taille des clés, à un peu moins du quart d'une page.
+     *
+     * @param keyDirectoryPageSize la taille des pages, qui doit être une puissance de 2 comprise entre 512 et 65536
+     * @return cette configuration
+     */
+    public BDDConfiguration setKeyDirectoryPageSize (int keyDirectoryPageSize) {
+        if (keyDirectoryPageSize < 512 || keyDirectoryPageSize > 65536 || Integer.bitCount(keyDirectoryPageSize) != 1)
+            throw new IllegalArgumentException();
+        this.keyDirectoryPageSize = keyDirectoryPageSize;
+        return this;
+    }
+
+    /**
+     * @return le nombre de pages non modifiées de l'arbre B+ conservées en mémoire. Par défaut 1024.
+     */
+    public int getKeyDirectoryCacheSize () {
+        return keyDirectoryCacheSize;
+    }
+
+    /**
+     * @param keyDirectoryCacheSize le nombre de pages non modifiées de l'arbre B+ conservées en mémoire
+     * @return cette configuration
+     */
+    public BDDConfiguration setKeyDirectoryCacheSize (int keyDirectoryCacheSize) {
+        if (keyDirectoryCacheSize < 0) throw new IllegalArgumentException();
+        this.keyDirectoryCacheSize = keyDirectoryCacheSize;
+        return this;
+    }
+
+    /**
+     * @return le nombre de pages modifiées de l'arbre B+ au delà duquel les métadonnées sont sauvegardées. Par défaut 4096.
+     */
+    public int getKeyDirectoryMaxDirtyPages () {
+        return keyDirectoryMaxDirtyPages;
+    }
+
+    /**
+     * Les pages modifiées de l'arbre B+ restent en mémoire jusqu'à la sauvegarde suivante des métadonnées.
+     * Avec le journal des opérations, les sauvegardes sont rares : cette borne en provoque une lorsque trop de pages ont été modifiées.
+     *
+     * @param keyDirectoryMaxDirtyPages le nombre de pages modifiées au delà duquel les métadonnées sont sauvegardées
+     * @return cette configuration
+     */
+    public BDDConfiguration setKeyDirectoryMaxDirtyPages (int keyDirectoryMaxDirtyPages) {
+        if (keyDirectoryMaxDirtyPages <= 0) throw new IllegalArgumentException();
+        this.keyDirectoryMaxDirtyPages = keyDirectoryMaxDirtyPages;
+        return this;
+    }
+
+    /**
+     * @return la taille à partir de laquelle {@link LogStructuredBDD} ferme son segment courant pour en commencer un nouveau. Par défaut 64 Mo.
+     */
+    public long getMaxSegmentSize () {
+        return maxSegmentSize;
+    }
+
+    /**
+     * Choisit la taille des segments d'une {@link LogStructuredBDD}. Un segment n'est jamais coupé au milieu d'un enregistrement :
+     * un enregistrement plus grand que cette taille occupe un segment à lui seul.
+     * Des segments plus petits sont fusionnés plus tôt, mais multiplient les fichiers ouverts.
+     *
+     * @param maxSegmentSize la taille maximale d'un segment en octets, au plus 2<sup>39</sup>
+     * @return cette configuration
+     */
+    public BDDConfiguration setMaxSegmentSize (long maxSegmentSize) {
+        if (maxSegmentSize <= 0 || maxSegmentSize > (1L << 39)) throw new IllegalArgumentException();
+        this.maxSegmentSize = maxSegmentSize;
+        return this;
+    }
+
+    /**
+     * Déclare un index secondaire, consulté par {@link BDD#findBy(String, Comparable)} et {@link BDD#findInRange(String, Comparable, Comparable)}.
+     * L'index est tenu à jour par chaque ajout et chaque suppression, et sauvegardé avec les métadonnées dans un fichier placé à côté de celui de la BDD.
+     * À l'ouverture, un index absent de ce fichier, ou dont le fichier est périmé après un arrêt brutal, est reconstruit en lisant tous les objets.
+     * <p>
+     * La fonction d'extraction est appelée avant l'écriture de chaque objet, et pour chaque objet lors d'une reconstruction : elle doit être rapide, et retourner des valeurs
+     * mutuellement comparables et sérialisables, ou null pour ne pas indexer l'objet.
+     *
+     * @param name      le nom de l'index
+     * @param type      le type des objets indexés. Les objets d'un autre type ne sont pas indexés.
+     * @param extractor la fonction qui extrait d'un objet la valeur indexée
+     * @param <T>       le type des objets indexés
+     * @return cette configuration
+     */
+    public <T extends Serializable> BDDConfiguration addIndex (String name, Class<T> type, Function<? super T, ? extends Comparable<?>> extractor) {
+        if (name == null || type == null || extractor == null) throw new NullPointerException();
+        if (indexes.containsKey(name)) throw new IllegalArgumentException("L'index " + name + " est déjà déclaré");
+        indexes.put(name, new SecondaryIndex.Definition(name, type, extractor));
+        return this;
+    }
+
+    /**
+     * @return les définitions des index secondaires, dans l'ordre de leur déclaration
+     */
+    Collection<SecondaryIndex.Definition> getIndexes () {
+        return indexes.values();
+    }
+
+    /**
+     * @return true si les durées des opérations et les compteurs d'octets sont tenus. Par défaut false.
+     */
+    public boolean isMetricsEnabled () {
+        return metricsEnabled;
+    }
+
+    /**
+     * Active ou désactive les métriques, consultables grâce à {@link BDD#getStatistics()} : durées de chaque {@link MeasuredOperation},
+     * octets lus et écrits, et nombre de zones réservées parmi les zones libres ou en fin de fichier.
+     * Désactivées, elles ne coûtent qu'une comparaison par opération.
+     *
+     * @param metricsEnabled true pour activer les métriques
+     * @return cette configuration
+     */
+    public BDDConfiguration setMetricsEnabled (boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+        return this;
+    }
+
+    /**
+     * @return true si la BDD est enregistrée comme MBean ({@link BDDMXBean}) pendant qu'elle est ouverte. Par défaut false.
+     */
+    public boolean isJmxEnabled () {
+        return jmxEnabled;
+    }
+
+    /**
+     * L'enregistrement JMX expose {@link BDD#getStatistics()} : sans {@link #setMetricsEnabled(boolean)}, seules l'occupation du fichier
+     * et les zones libres sont renseignées.
+     *
+     * @param jmxEnabled true pour enregistrer la BDD auprès du serveur de MBeans de la plateforme
+     * @return cette configuration
+     */
+    public BDDConfiguration setJmxEnabled (boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+}
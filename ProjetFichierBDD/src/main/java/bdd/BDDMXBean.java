@@ -0,0 +1,62 @@
+package bdd;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Interface JMX d'une {@link BDD}, enregistrée auprès du serveur de MBeans de la plateforme lorsque
+ * {@link BDDConfiguration#setJmxEnabled(boolean)} est activé, sous le nom {@code bdd:type=BDD,name="<chemin du fichier>"}.
+ * <p>
+ * Chaque attribut est lu dans une nouvelle photographie {@link BDDStatistics}.
+ *
+ * @version 1.0
+ */
+public interface BDDMXBean {
+
+    long getFileLength () throws IOException;
+
+    long getFreeBytes () throws IOException;
+
+    long getUsedBytes () throws IOException;
+
+    double getFragmentation () throws IOException;
+
+    int getFreeIntervalCount () throws IOException;
+
+    long getLargestFreeInterval () throws IOException;
+
+    long getKeyCount () throws IOException;
+
+    boolean isMetricsEnabled ();
+
+    long getBytesRead () throws IOException;
+
+    long getBytesWritten () throws IOException;
+
+    long getAllocationsInFreeSpace () throws IOException;
+
+    long getAllocationsAtEnd () throws IOException;
+
+    long getInPlaceUpdates () throws IOException;
+
+    /**
+     * @return les durées de chaque opération, associées au nom de l'opération
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    Map<String, LatencyStatistics> getLatencies () throws IOException;
+
+    /**
+     * Sauvegarde les métadonnées, comme {@link BDD#checkpoint()}
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void checkpoint () throws IOException;
+
+    /**
+     * Compacte le fichier, comme {@link BDD#compact()}
+     *
+     * @return le nombre d'octets récupérés
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    long compact () throws IOException;
+}
@@ -0,0 +1,157 @@
+package bdd;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Photographie de l'état d'une {@link BDD}, obtenue grâce à {@link BDD#getStatistics()}.
+ * <p>
+ * L'occupation du fichier et les zones libres sont toujours disponibles. Les compteurs d'octets, d'allocations
+ * et les durées des opérations ne sont tenus que si les métriques sont activées ({@link BDDConfiguration#setMetricsEnabled(boolean)}) :
+ * sinon, ils valent 0 et {@link #getLatencies()} est vide.
+ *
+ * @version 1.0
+ */
+public class BDDStatistics {
+    private final long fileLength;
+    private final long freeBytes;
+    private final int freeIntervalCount;
+    private final long largestFreeInterval;
+    private final long keyCount;
+    private final boolean metricsEnabled;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long allocationsInFreeSpace;
+    private final long allocationsAtEnd;
+    private final long inPlaceUpdates;
+    private final Map<MeasuredOperation, LatencyStatistics> latencies;
+
+    BDDStatistics (long fileLength, long freeBytes, int freeIntervalCount, long largestFreeInterval, long keyCount, Metrics metrics) {
+        this.fileLength = fileLength;
+        this.freeBytes = freeBytes;
+        this.freeIntervalCount = freeIntervalCount;
+        this.largestFreeInterval = largestFreeInterval;
+        this.keyCount = keyCount;
+        this.metricsEnabled = metrics != null;
+        this.bytesRead = metrics == null ? 0 : metrics.getBytesRead();
+        this.bytesWritten = metrics == null ? 0 : metrics.getBytesWritten();
+        this.allocationsInFreeSpace = metrics == null ? 0 : metrics.getAllocationsInFreeSpace();
+        this.allocationsAtEnd = metrics == null ? 0 : metrics.getAllocationsAtEnd();
+        this.inPlaceUpdates = metrics == null ? 0 : metrics.getInPlaceUpdates();
+        this.latencies = Collections.unmodifiableMap(metrics == null ? new EnumMap<>(MeasuredOperation.class) : metrics.getLatencies());
+    }
+
+    /**
+     * @return la taille du fichier
+     */
+    public long getFileLength () {
+        return fileLength;
+    }
+
+    /**
+     * @return le nombre d'octets libres au milieu du fichier, qui peuvent être réutilisés ou récupérés par un compactage
+     */
+    public long getFreeBytes () {
+        return freeBytes;
+    }
+
+    /**
+     * @return le nombre d'octets occupés par les enregistrements et les métadonnées
+     */
+    public long getUsedBytes () {
+        return fileLength - freeBytes;
+    }
+
+    /**
+     * @return la proportion d'octets libres dans le fichier, entre 0 et 1
+     */
+    public double getFragmentation () {
+        return fileLength == 0 ? 0 : (double) freeBytes / fileLength;
+    }
+
+    /**
+     * @return le nombre de zones libres
+     */
+    public int getFreeIntervalCount () {
+        return freeIntervalCount;
+    }
+
+    /**
+     * @return la taille de la plus grande zone libre, c'est-à-dire le plus grand enregistrement (en-tête compris) qui peut être ajouté sans agrandir le fichier
+     */
+    public long getLargestFreeInterval () {
+        return largestFreeInterval;
+    }
+
+    /**
+     * @return le nombre de clés
+     */
+    public long getKeyCount () {
+        return keyCount;
+    }
+
+    /**
+     * @return true si les compteurs et les durées sont tenus
+     */
+    public boolean isMetricsEnabled () {
+        return metricsEnabled;
+    }
+
+    /**
+     * @return le nombre d'octets lus dans le fichier depuis l'ouverture, métadonnées comprises
+     */
+    public long getBytesRead () {
+        return bytesRead;
+    }
+
+    /**
+     * @return le nombre d'octets écrits dans le fichier depuis l'ouverture, métadonnées comprises
+     */
+    public long getBytesWritten () {
+        return bytesWritten;
+    }
+
+    /**
+     * @return le nombre de zones réservées parmi les zones libres depuis l'ouverture
+     */
+    public long getAllocationsInFreeSpace () {
+        return allocationsInFreeSpace;
+    }
+
+    /**
+     * @return le nombre de zones réservées en agrandissant le fichier depuis l'ouverture
+     */
+    public long getAllocationsAtEnd () {
+        return allocationsAtEnd;
+    }
+
+    /**
+     * @return le nombre d'enregistrements réécrits dans leur propre zone depuis l'ouverture ({@link BDDConfiguration#setInPlaceUpdatesEnabled(boolean)})
+     */
+    public long getInPlaceUpdates () {
+        return inPlaceUpdates;
+    }
+
+    /**
+     * @return les durées de chaque opération depuis l'ouverture, ou une table vide si les métriques sont désactivées
+     */
+    public Map<MeasuredOperation, LatencyStatistics> getLatencies () {
+        return latencies;
+    }
+
+    /**
+     * @param operation l'opération
+     * @return les durées de l'opération depuis l'ouverture, ou null si les métriques sont désactivées
+     */
+    public LatencyStatistics getLatency (MeasuredOperation operation) {
+        return latencies.get(operation);
+    }
+
+    @Override
+    public String toString () {
+        return "BDDStatistics{fileLength=" + fileLength + ", freeBytes=" + freeBytes + ", freeIntervals=" + freeIntervalCount
+                + ", largestFreeInterval=" + largestFreeInterval + ", keys=" + keyCount + ", bytesRead=" + bytesRead + ", bytesWritten=" + bytesWritten
+                + ", allocationsInFreeSpace=" + allocationsInFreeSpace + ", allocationsAtEnd=" + allocationsAtEnd + ", inPlaceUpdates=" + inPlaceUpdates + ", latencies=" + latencies + "}";
+    }
+}
@@ -0,0 +1,623 @@
+package bdd;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Répertoire des clés enregistré dans le fichier de la BDD sous la forme d'un arbre B+ dont les pages ont une taille fixe.
+ * <p>
+ * Chaque page est une zone du fichier obtenue auprès de l'allocateur de la BDD ({@link KeyDirectory.PageAllocator}), de la forme suivante :
+ * <ul>
+ *     <li>la taille des données de la page, sur 4 octets, comme pour un enregistrement quelconque</li>
+ *     <li>le type de la page ({@link #LEAF} ou {@link #INTERNAL}) sur un octet, puis le nombre de clés sur 2 octets</li>
+ *     <li>pour une feuille : chaque clé (sa taille sur 2 octets puis ses octets UTF-8) suivie de la position de son enregistrement</li>
+ *     <li>pour un noeud interne : la position du premier fils, puis chaque clé séparatrice suivie de la position du fils suivant</li>
+ * </ul>
+ * Les clés sont triées dans l'ordre de leurs octets UTF-8, c'est-à-dire dans l'ordre des points de code.
+ * <p>
+ * Les pages ne sont jamais modifiées sur place (copie sur écriture) : une page modifiée, ainsi que tous ses ancêtres, est copiée en mémoire,
+ * et n'est écrite à une nouvelle position que lors de la sauvegarde suivante ({@link #save()}). L'ancienne page est signalée à l'allocateur,
+ * qui ne la libère qu'une fois la sauvegarde terminée. L'arbre sauvegardé reste donc intact et cohérent jusqu'à ce que le suivant le remplace,
+ * et le journal des opérations peut être rejoué sur lui après un arrêt brutal.
+ * Le nombre de pages modifiées en mémoire est borné : au delà, {@link #needsSave()} demande une sauvegarde.
+ * <p>
+ * Les pages non modifiées sont lues à la demande et conservées dans un petit cache LRU. L'ouverture ne lit que le descripteur de l'arbre
+ * (position de la racine, nombre de clés et taille des pages), quel que soit le nombre de clés.
+ * <p>
+ * Une feuille vidée est retirée de son parent, mais les pages sous-remplies ne sont pas fusionnées : le compactage des pages se fait en réécrivant l'arbre.
+ *
+ * @version 1.0
+ */
+class BTreeKeyDirectory implements KeyDirectory {
+    /**
+     * Premiers octets du descripteur de l'arbre : "BTRE"
+     */
+    static final int MAGIC = 0x42545245;
+    static final int DEFAULT_PAGE_SIZE = 4096;
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+    private static final int PAGE_HEADER_SIZE = 3;
+    private static final int ENTRY_OVERHEAD = 10;
+
+    /**
+     * Page chargée en mémoire. Une page lue dans le fichier n'est jamais modifiée : elle est d'abord copiée par {@link #copy()}.
+     */
+    private static final class Node {
+        private final boolean leaf;
+        private int count;
+        private byte[][] keys;
+        private long[] refs;
+        private int bytes;
+
+        private Node (boolean leaf, int capacity) {
+            this.leaf = leaf;
+            this.keys = new byte[capacity][];
+            this.refs = new long[capacity + 1];
+            this.bytes = PAGE_HEADER_SIZE + (leaf ? 0 : 8);
+        }
+
+        private Node copy () {
+            Node n = new Node(leaf, 0);
+            n.count = count;
+            n.keys = Arrays.copyOf(keys, Math.max(count + 1, 4));
+            n.refs = Arrays.copyOf(refs, Math.max(count + 2, 5));
+            n.bytes = bytes;
+            return n;
+        }
+
+        private int childCount () {
+            return count + 1;
+        }
+
+        private void ensureCapacity () {
+            if (count + 1 >= keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(4, keys.length * 2));
+                refs = Arrays.copyOf(refs, keys.length + 1);
+            }
+        }
+
+        /**
+         * Insère une clé à l'indice donné. Pour une feuille, la position est celle de l'enregistrement ;
+         * pour un noeud interne, c'est le fils placé à droite de la clé.
+         */
+        private void insert (int index, byte[] key, long ref) {
+            ensureCapacity();
+            System.arraycopy(keys, index, keys, index + 1, count - index);
+            int refIndex = leaf ? index : index + 1;
+            System.arraycopy(refs, refIndex, refs, refIndex + 1, (leaf ? count : count + 1) - refIndex);
+            keys[index] = key;
+            refs[refIndex] = ref;
+            count++;
+            bytes += ENTRY_OVERHEAD + key.length;
+        }
+
+        /**
+         * Retire la clé d'indice donné, ainsi que la position de l'enregistrement (feuille) ou le fils d'indice refIndex (noeud interne)
+         */
+        private void delete (int index, int refIndex) {
+            bytes -= ENTRY_OVERHEAD + keys[index].length;
+            System.arraycopy(keys, index + 1, keys, index, count - index - 1);
+            int refCount = leaf ? count : count + 1;
+            System.arraycopy(refs, refIndex + 1, refs, refIndex, refCount - refIndex - 1);
+            count--;
+            keys[count] = null;
+        }
+
+        /**
+         * @return l'indice de la clé, ou -(point d'insertion) - 1 si elle est absente
+         */
+        private int search (byte[] key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = compare(keys[mid], key);
+                if (c < 0)
+                    low = mid + 1;
+                else if (c > 0)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * @return l'indice du fils qui peut contenir la clé donnée, c'est-à-dire le nombre de clés séparatrices inférieures ou égales à la clé
+         */
+        private int childIndex (byte[] key) {
+            int i = search(key);
+            return i >= 0 ? i + 1 : -(i + 1);
+        }
+    }
+
+    private final Storage storage;
+    private final PageAllocator allocator;
+    private final int pageSize;
+    private final int maxKeyLength;
+    private final int maxDirtyPages;
+    private final LinkedHashMap<Long, Node> cache;
+    private final HashMap<Long, Node> dirty = new HashMap<>();
+    private long nextDirtyReference = -1;
+    private long root;
+    private long size;
+
+    /**
+     * Crée un arbre vide
+     *
+     * @param storage       le support du fichier de la BDD
+     * @param allocator     l'allocateur des pages
+     * @param pageSize      la taille d'une page en octets, en-tête compris
+     * @param cacheSize     le nombre de pages non modifiées conservées en mémoire
+     * @param maxDirtyPages le nombre de pages modifiées au delà duquel une sauvegarde est demandée
+     */
+    BTreeKeyDirectory (Storage storage, PageAllocator allocator, int pageSize, int cacheSize, int maxDirtyPages) {
+        this.storage = storage;
+        this.allocator = allocator;
+        this.pageSize = pageSize;
+        this.maxKeyLength = (pageSize - 4 - PAGE_HEADER_SIZE - 8) / 4 - ENTRY_OVERHEAD;
+        this.maxDirtyPages = maxDirtyPages;
+        this.cache = new LinkedHashMap<Long, Node>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry (Map.Entry<Long, Node> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.root = newDirtyNode(new Node(true, 4));
+        this.size = 0;
+    }
+
+    /**
+     * Ouvre un arbre à partir de son descripteur, sans lire aucune page
+     *
+     * @param storage       le support du fichier de la BDD
+     * @param allocator     l'allocateur des pages
+     * @param descriptor    le descripteur écrit par {@link #save()}
+     * @param cacheSize     le nombre de pages non modifiées conservées en mémoire
+     * @param maxDirtyPages le nombre de pages modifiées au delà duquel une sauvegarde est demandée
+     * @throws IOException si le descripteur est invalide
+     */
+    BTreeKeyDirectory (Storage storage, PageAllocator allocator, byte[] descriptor, int cacheSize, int maxDirtyPages) throws IOException {
+        this(storage, allocator, readPageSize(descriptor), cacheSize, maxDirtyPages);
+        ByteBuffer buffer = ByteBuffer.wrap(descriptor, 8, descriptor.length - 8);
+        dirty.clear();
+        root = buffer.getLong();
+        size = buffer.getLong();
+    }
+
+    private static int readPageSize (byte[] descriptor) throws IOException {
+        if (!isDescriptor(descriptor) || descriptor.length < 24)
+            throw new IOException("Descripteur d'arbre B+ invalide");
+        return ByteBuffer.wrap(descriptor, 4, 4).getInt();
+    }
+
+    /**
+     * @param data un enregistrement décrivant un répertoire des clés
+     * @return true si l'enregistrement est un descripteur d'arbre B+
+     */
+    static boolean isDescriptor (byte[] data) {
+        return data.length >= 4 && ByteBuffer.wrap(data).getInt() == MAGIC;
+    }
+
+    /**
+     * Compare deux clés dans l'ordre de leurs octets, considérés comme non signés
+     */
+    static int compare (byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0)
+                return c;
+        }
+        return a.length - b.length;
+    }
+
+    private long newDirtyNode (Node node) {
+        long ref = nextDirtyReference--;
+        dirty.put(ref, node);
+        return ref;
+    }
+
+    /**
+     * Retourne la page désignée par la référence donnée : une page modifiée en mémoire si la référence est négative,
+     * sinon une page du fichier, lue si elle n'est pas dans le cache.
+     */
+    private Node node (long ref) throws IOException {
+        if (ref < 0)
+            return dirty.get(ref);
+        synchronized (cache) {
+            Node n = cache.get(ref);
+            if (n != null)
+                return n;
+        }
+        Node n = readNode(ref);
+        synchronized (cache) {
+            cache.put(ref, n);
+        }
+        return n;
+    }
+
+    private Node readNode (long pos) throws IOException {
+        byte[] page = new byte[pageSize - 4];
+        storage.read(pos + 4, page, 0, page.length);
+        ByteBuffer buffer = ByteBuffer.wrap(page);
+        byte type = buffer.get();
+        if (type != LEAF && type != INTERNAL)
+            throw new IOException("Page d'arbre B+ invalide à la position " + pos);
+        int count = buffer.getShort() & 0xFFFF;
+        Node n = new Node(type == LEAF, count + 1);
+        if (!n.leaf)
+            n.refs[0] = buffer.getLong();
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(key);
+            n.keys[i] = key;
+            n.refs[n.leaf ? i : i + 1] = buffer.getLong();
+            n.bytes += ENTRY_OVERHEAD + key.length;
+        }
+        n.count = count;
+        return n;
+    }
+
+    private long writeNode (Node n) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+        buffer.putInt(pageSize - 4);
+        buffer.put(n.leaf ? LEAF : INTERNAL);
+        buffer.putShort((short) n.count);
+        if (!n.leaf)
+            buffer.putLong(n.refs[0]);
+        for (int i = 0; i < n.count; i++) {
+            buffer.putShort((short) n.keys[i].length);
+            buffer.put(n.keys[i]);
+            buffer.putLong(n.refs[n.leaf ? i : i + 1]);
+        }
+        long pos = allocator.allocate(pageSize);
+        storage.write(pos, buffer.array(), 0, pageSize);
+        return pos;
+    }
+
+    private static byte[] encode (String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void checkKey (String key) {
+        if (encode(key).length > maxKeyLength)
+            throw new IllegalArgumentException("Une clé ne peut pas dépasser " + maxKeyLength + " octets avec des pages de " + pageSize + " octets");
+    }
+
+    @Override
+    public Long get (String key) throws IOException {
+        byte[] k = encode(key);
+        Node n = node(root);
+        while (!n.leaf)
+            n = node(n.refs[n.childIndex(k)]);
+        int i = n.search(k);
+        return i >= 0 ? n.refs[i] : null;
+    }
+
+    /**
+     * Chemin de la racine jusqu'à une feuille. Toutes les pages du chemin sont modifiables une fois {@link #makeDirty()} appelée.
+     */
+    private final class Path {
+        private Node[] nodes = new Node[8];
+        private long[] refs = new long[8];
+        private int[] indexes = new int[8];
+        private int depth = 0;
+
+        private Path (byte[] key) throws IOException {
+            long ref = root;
+            while (true) {
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    refs = Arrays.copyOf(refs, depth * 2);
+                    indexes = Arrays.copyOf(indexes, depth * 2);
+                }
+                Node n = node(ref);
+                nodes[depth] = n;
+                refs[depth] = ref;
+                if (n.leaf)
+                    break;
+                indexes[depth] = n.childIndex(key);
+                ref = n.refs[indexes[depth]];
+                depth++;
+            }
+        }
+
+        private Node leaf () {
+            return nodes[depth];
+        }
+
+        /**
+         * Copie en mémoire chaque page du chemin qui provient du fichier, de la racine vers la feuille,
+         * et met à jour la référence de chaque copie dans son parent
+         */
+        private void makeDirty () {
+            for (int level = 0; level <= depth; level++) {
+                long ref = refs[level];
+                if (ref > 0) {
+                    allocator.release(ref, pageSize);
+                    synchronized (cache) {
+                        cache.remove(ref);
+                    }
+                    nodes[level] = nodes[level].copy();
+                    refs[level] = newDirtyNode(nodes[level]);
+                    if (level == 0)
+                        root = refs[level];
+                    else
+                        nodes[level - 1].refs[indexes[level - 1]] = refs[level];
+                }
+            }
+        }
+    }
+
+    @Override
+    public Long put (String key, long position) throws IOException {
+        byte[] k = encode(key);
+        checkKey(key);
+        Path path = new Path(k);
+        int i = path.leaf().search(k);
+        if (i >= 0 && path.leaf().refs[i] == position)
+            return position;
+        path.makeDirty();
+        Node leaf = path.leaf();
+        if (i >= 0) {
+            long previous = leaf.refs[i];
+            leaf.refs[i] = position;
+            return previous;
+        }
+        leaf.insert(-(i + 1), k, position);
+        size++;
+        for (int level = path.depth; level >= 0 && path.nodes[level].bytes > pageSize - 4; level--)
+            split(path, level);
+        return null;
+    }
+
+    /**
+     * Découpe la page du chemin située au niveau donné en deux pages de tailles proches,
+     * puis insère la clé séparatrice dans le parent, ou dans une nouvelle racine
+     */
+    private void split (Path path, int level) {
+        Node n = path.nodes[level];
+        int half = n.bytes / 2;
+        int acc = PAGE_HEADER_SIZE;
+        int m = 0;
+        while (m < n.count - 1 && acc < half)
+            acc += ENTRY_OVERHEAD + n.keys[m++].length;
+        m = Math.max(1, Math.min(m, n.count - (n.leaf ? 1 : 2)));
+        Node right = new Node(n.leaf, n.count - m + 1);
+        byte[] separator;
+        if (n.leaf) {
+            for (int i = m; i < n.count; i++)
+                right.insert(i - m, n.keys[i], n.refs[i]);
+            separator = right.keys[0];
+        } else {
+            separator = n.keys[m];
+            right.refs[0] = n.refs[m + 1];
+            for (int i = m + 1; i < n.count; i++)
+                right.insert(i - m - 1, n.keys[i], n.refs[i + 1]);
+        }
+        int removed = n.count - m;
+        for (int i = m; i < n.count; i++)
+            n.bytes -= ENTRY_OVERHEAD + n.keys[i].length;
+        for (int i = m; i < n.count; i++)
+            n.keys[i] = null;
+        n.count -= removed;
+        long rightRef = newDirtyNode(right);
+        if (level == 0) {
+            Node newRoot = new Node(false, 4);
+            newRoot.refs[0] = path.refs[0];
+            newRoot.insert(0, separator, rightRef);
+            root = newDirtyNode(newRoot);
+        } else {
+            path.nodes[level - 1].insert(path.indexes[level - 1], separator, rightRef);
+        }
+    }
+
+    @Override
+    public Long remove (String key) throws IOException {
+        byte[] k = encode(key);
+        Path path = new Path(k);
+        int i = path.leaf().search(k);
+        if (i < 0)
+            return null;
+        path.makeDirty();
+        Node leaf = path.leaf();
+        long previous = leaf.refs[i];
+        leaf.delete(i, i);
+        size--;
+        //une page vide, autre que la racine, est retirée de son parent, qui peut à son tour se retrouver sans aucun fils
+        boolean empty = leaf.count == 0;
+        int level = path.depth;
+        while (empty && level > 0) {
+            discard(path.refs[level]);
+            Node parent = path.nodes[level - 1];
+            int child = path.indexes[level - 1];
+            if (parent.count > 0) {
+                parent.delete(child == 0 ? 0 : child - 1, child);
+                empty = false;
+            }
+            level--;
+        }
+        if (empty && !path.nodes[0].leaf) {
+            discard(root);
+            root = newDirtyNode(new Node(true, 4));
+        }
+        //une racine interne qui n'a plus qu'un seul fils est remplacée par ce fils
+        Node r = node(root);
+        while (!r.leaf && r.count == 0) {
+            long child = r.refs[0];
+            discard(root);
+            root = child;
+            r = node(root);
+        }
+        return previous;
+    }
+
+    /**
+     * Oublie une page qui n'est plus référencée par l'arbre
+     */
+    private void discard (long ref) {
+        if (ref < 0) {
+            dirty.remove(ref);
+        } else {
+            allocator.release(ref, pageSize);
+            synchronized (cache) {
+                cache.remove(ref);
+            }
+        }
+    }
+
+    @Override
+    public long size () {
+        return size;
+    }
+
+    @Override
+    public boolean needsSave () {
+        return dirty.size() > maxDirtyPages;
+    }
+
+    /**
+     * Ecrit les pages modifiées, des feuilles vers la racine, à de nouvelles positions, puis retourne le descripteur de l'arbre :
+     * {@link #MAGIC}, la taille des pages, la position de la racine et le nombre de clés.
+     *
+     * @return le descripteur de l'arbre
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    @Override
+    public byte[] save () throws IOException {
+        root = flush(root);
+        dirty.clear();
+        nextDirtyReference = -1;
+        return ByteBuffer.allocate(24).putInt(MAGIC).putInt(pageSize).putLong(root).putLong(size).array();
+    }
+
+    private long flush (long ref) throws IOException {
+        if (ref > 0)
+            return ref;
+        Node n = dirty.get(ref);
+        if (!n.leaf) {
+            for (int i = 0; i < n.childCount(); i++)
+                n.refs[i] = flush(n.refs[i]);
+        }
+        long pos = writeNode(n);
+        synchronized (cache) {
+            cache.put(pos, n);
+        }
+        return pos;
+    }
+
+    @Override
+    public void releaseAll () throws IOException {
+        ArrayDeque<Long> refs = new ArrayDeque<>();
+        refs.push(root);
+        while (!refs.isEmpty()) {
+            long ref = refs.pop();
+            Node n = node(ref);
+            if (!n.leaf)
+                for (int i = 0; i < n.childCount(); i++)
+                    refs.push(n.refs[i]);
+            if (ref > 0)
+                allocator.release(ref, pageSize);
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, Long>> iterator () {
+        return iterator(null, true);
+    }
+
+    @Override
+    public boolean isSorted () {
+        return true;
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, Long>> iterator (String fromKey, boolean inclusive) {
+        return new Iterator<Map.Entry<String, Long>>() {
+            private final ArrayDeque<Node> nodes = new ArrayDeque<>();
+            private final ArrayDeque<Integer> indexes = new ArrayDeque<>();
+            private Map.Entry<String, Long> next;
+
+            {
+                try {
+                    byte[] from = fromKey == null ? null : encode(fromKey);
+                    Node n = node(root);
+                    while (!n.leaf) {
+                        int i = from == null ? 0 : n.childIndex(from);
+                        nodes.push(n);
+                        indexes.push(i);
+                        n = node(n.refs[i]);
+                    }
+                    int i = 0;
+                    if (from != null) {
+                        i = n.search(from);
+                        i = i >= 0 ? (inclusive ? i : i + 1) : -(i + 1);
+                    }
+                    nodes.push(n);
+                    indexes.push(i);
+                    advance();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            private void advance () throws IOException {
+                next = null;
+                while (!nodes.isEmpty()) {
+                    Node n = nodes.peek();
+                    int i = indexes.pop();
+                    if (n.leaf) {
+                        if (i < n.count) {
+                            indexes.push(i + 1);
+                            next = new AbstractMap.SimpleImmutableEntry<>(new String(n.keys[i], StandardCharsets.UTF_8), n.refs[i]);
+                            return;
+                        }
+                        nodes.pop();
+                    } else if (i + 1 < n.childCount()) {
+                        indexes.push(i + 1);
+                        Node child = node(n.refs[i + 1]);
+                        while (!child.leaf) {
+                            nodes.push(child);
+                            indexes.push(0);
+                            child = node(child.refs[0]);
+                        }
+                        nodes.push(child);
+                        indexes.push(0);
+                    } else {
+                        nodes.pop();
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext () {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, Long> next () {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Map.Entry<String, Long> res = next;
+                try {
+                    advance();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return res;
+            }
+        };
+    }
+}
@@ -0,0 +1,203 @@
+package bdd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Tampons et flux réutilisés par un fil d'exécution pour lire, décoder, encoder et écrire les enregistrements,
+ * afin que {@link BDD#getObject(String)} et {@link BDD#putObject(String, java.io.Serializable)} n'allouent plus rien en régime établi
+ * pour les enregistrements encodés par un codec.
+ * <p>
+ * Chaque fil possède un jeu de tampons, emprunté par {@link #acquire()} et rendu par {@link #close()}.
+ * Un emprunt imbriqué, par exemple un codec qui lit la BDD pendant un décodage, reçoit un jeu neuf qui n'est pas conservé.
+ * Les tableaux qui dépassent {@link #MAX_RETAINED_SIZE} octets sont abandonnés à la restitution,
+ * pour qu'un enregistrement exceptionnellement grand n'occupe pas la mémoire du fil indéfiniment.
+ *
+ * @version 1.0
+ */
+final class BufferPool implements AutoCloseable {
+    /**
+     * Taille maximale d'un tableau conservé entre deux emprunts
+     */
+    static final int MAX_RETAINED_SIZE = 1 << 20;
+    private static final int INITIAL_SIZE = 256;
+    private static final ThreadLocal<BufferPool> POOLS = new ThreadLocal<>();
+
+    /**
+     * Flux de lecture dont le tableau peut être remplacé sans nouvelle allocation
+     */
+    private static final class ReusableInputStream extends ByteArrayInputStream {
+        private ReusableInputStream () {
+            super(new byte[0]);
+        }
+
+        private void reset (byte[] data, int offset, int length) {
+            buf = data;
+            pos = offset;
+            mark = offset;
+            count = offset + length;
+        }
+    }
+
+    /**
+     * Flux d'écriture qui donne accès à son tableau sans le copier
+     */
+    private static final class ReusableOutputStream extends ByteArrayOutputStream {
+        private ReusableOutputStream () {
+            super(INITIAL_SIZE);
+        }
+
+        private byte[] array () {
+            return buf;
+        }
+
+        private void trim () {
+            if (buf.length > MAX_RETAINED_SIZE)
+                buf = new byte[INITIAL_SIZE];
+        }
+    }
+
+    private byte[] record = new byte[INITIAL_SIZE];
+    private byte[] converted = new byte[INITIAL_SIZE];
+    private final ReusableInputStream input = new ReusableInputStream();
+    private final DataInputStream dataInput = new DataInputStream(input);
+    private final ReusableOutputStream output = new ReusableOutputStream();
+    private final DataOutputStream dataOutput = new DataOutputStream(output);
+    private Inflater inflater;
+    private Deflater deflater;
+    private boolean borrowed = false;
+
+    private BufferPool () {
+    }
+
+    /**
+     * @return le jeu de tampons du fil courant, ou un jeu neuf s'il est déjà emprunté
+     */
+    static BufferPool acquire () {
+        BufferPool pool = POOLS.get();
+        if (pool == null || pool.borrowed)
+            return new BufferPool();
+        pool.borrowed = true;
+        return pool;
+    }
+
+    /**
+     * Rend le jeu de tampons au fil courant. Un jeu neuf obtenu lors d'un emprunt imbriqué n'est conservé que si le fil n'en a pas encore.
+     */
+    @Override
+    public void close () {
+        if (record.length > MAX_RETAINED_SIZE)
+            record = new byte[INITIAL_SIZE];
+        if (converted.length > MAX_RETAINED_SIZE)
+            converted = new byte[INITIAL_SIZE];
+        output.trim();
+        input.reset(record, 0, 0);
+        BufferPool pool = POOLS.get();
+        if (pool == this) {
+            borrowed = false;
+        } else if (pool == null) {
+            POOLS.set(this);
+        } else {
+            if (inflater != null)
+                inflater.end();
+            if (deflater != null)
+                deflater.end();
+        }
+    }
+
+    /**
+     * @param length la taille souhaitée
+     * @return le tableau où lire un enregistrement, d'au moins length octets
+     */
+    byte[] record (int length) {
+        if (record.length < length)
+            record = new byte[Math.max(length, Math.min(record.length * 2, MAX_RETAINED_SIZE))];
+        return record;
+    }
+
+    /**
+     * @return le tableau retourné par le dernier appel à {@link #record(int)}
+     */
+    byte[] getRecord () {
+        return record;
+    }
+
+    /**
+     * @param length la taille souhaitée
+     * @return le tableau où écrire un enregistrement compressé ou décompressé, d'au moins length octets
+     */
+    byte[] converted (int length) {
+        if (converted.length < length)
+            converted = new byte[Math.max(length, Math.min(converted.length * 2, MAX_RETAINED_SIZE))];
+        return converted;
+    }
+
+    /**
+     * @return le tableau retourné par le dernier appel à {@link #converted(int)}
+     */
+    byte[] getConverted () {
+        return converted;
+    }
+
+    /**
+     * @param data   le tableau à lire
+     * @param offset la position du premier octet à lire
+     * @param length le nombre d'octets à lire
+     * @return un flux qui lit les octets donnés
+     */
+    DataInputStream input (byte[] data, int offset, int length) {
+        input.reset(data, offset, length);
+        return dataInput;
+    }
+
+    /**
+     * @return un flux d'écriture vidé, dont les octets sont ensuite donnés par {@link #getOutput()} et {@link #getOutputSize()}
+     */
+    DataOutputStream output () {
+        output.reset();
+        return dataOutput;
+    }
+
+    /**
+     * @return le tableau du flux retourné par {@link #output()}, dont seuls les {@link #getOutputSize()} premiers octets ont été écrits
+     */
+    byte[] getOutput () {
+        return output.array();
+    }
+
+    /**
+     * @return le nombre d'octets écrits dans le flux retourné par {@link #output()}
+     */
+    int getOutputSize () {
+        return output.size();
+    }
+
+    /**
+     * @return un décompresseur réinitialisé
+     */
+    Inflater inflater () {
+        if (inflater == null)
+            inflater = new Inflater();
+        else
+            inflater.reset();
+        return inflater;
+    }
+
+    /**
+     * @param level le niveau de compression
+     * @return un compresseur réinitialisé, au niveau donné
+     */
+    Deflater deflater (int level) {
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        } else {
+            deflater.reset();
+            deflater.setLevel(level);
+        }
+        return deflater;
+    }
+}
@@ -0,0 +1,70 @@
+package bdd;
+
+/**
+ * Photographie des compteurs du cache d'objets d'une {@link BDD}, obtenue grâce à {@link BDD#getCacheStatistics()}.
+ *
+ * @version 1.0
+ */
+public class CacheStatistics {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+    private final long weight;
+
+    CacheStatistics (long hitCount, long missCount, long evictionCount, int size, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    /**
+     * @return le nombre de lectures servies par le cache
+     */
+    public long getHitCount () {
+        return hitCount;
+    }
+
+    /**
+     * @return le nombre de lectures d'une clé existante qui n'ont pas été servies par le cache
+     */
+    public long getMissCount () {
+        return missCount;
+    }
+
+    /**
+     * @return la proportion de lectures servies par le cache, ou 0 si aucune lecture n'a eu lieu
+     */
+    public double getHitRate () {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return le nombre d'entrées évincées pour respecter les bornes du cache
+     */
+    public long getEvictionCount () {
+        return evictionCount;
+    }
+
+    /**
+     * @return le nombre d'entrées actuellement dans le cache
+     */
+    public int getSize () {
+        return size;
+    }
+
+    /**
+     * @return l'estimation du nombre d'octets occupés par les entrées du cache, c'est-à-dire la taille de leurs enregistrements sérialisés
+     */
+    public long getWeight () {
+        return weight;
+    }
+
+    @Override
+    public String toString () {
+        return "CacheStatistics{hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ", size=" + size + ", weight=" + weight + "}";
+    }
+}
@@ -0,0 +1,38 @@
+package bdd;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Encodeur/décodeur binaire d'un type d'objet, enregistré dans un {@link CodecRegistry}.
+ * <p>
+ * Contrairement à la sérialisation Java, un codec n'écrit aucun descripteur de classe :
+ * seul un octet identifiant le codec précède les données écrites par {@link #encode(Serializable, DataOutput)}.
+ * C'est au codec d'écrire chaque champ dans un ordre fixe, comme le fait {@link SerializationTools#serializeFreeSpaceIntervals(java.util.TreeSet)}.
+ *
+ * @param <T> le type encodé
+ * @version 1.0
+ */
+public interface Codec<T extends Serializable> {
+
+    /**
+     * Ecrit l'objet donné en paramètre
+     *
+     * @param value l'objet à encoder, jamais null
+     * @param out   le flux où écrire l'objet
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void encode (T value, DataOutput out) throws IOException;
+
+    /**
+     * Relit un objet écrit par {@link #encode(Serializable, DataOutput)}.
+     * Le flux peut contenir d'autres octets après l'objet, qui ne doivent pas être lus : la zone d'un enregistrement peut être plus grande que lui.
+     *
+     * @param in le flux où lire l'objet
+     * @return l'objet décodé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    T decode (DataInput in) throws IOException;
+}
@@ -0,0 +1,183 @@
+package bdd;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registre des {@link Codec} utilisés par une {@link BDD} pour encoder ses enregistrements, indexés par type.
+ * <p>
+ * Chaque codec est associé à une classe exacte et à un identifiant compris entre {@link #MIN_USER_ID} et {@link #MAX_ID},
+ * écrit sur un octet en tête de l'enregistrement. Les identifiants inférieurs à {@link #MIN_USER_ID} sont réservés aux codecs fournis :
+ * {@link String}, {@link Integer}, {@link Long}, {@link Double} et les tableaux d'octets.
+ * <p>
+ * Un objet dont la classe n'a pas de codec est enregistré grâce à la sérialisation Java.
+ * Un flux de sérialisation Java commençant toujours par l'octet 0xAC, qui n'est pas un identifiant valide,
+ * les enregistrements écrits par les versions précédentes restent lisibles.
+ * <p>
+ * L'identifiant d'un codec est écrit dans le fichier : il ne doit plus changer une fois des enregistrements écrits.
+ *
+ * @version 1.0
+ */
+public class CodecRegistry {
+    /**
+     * Plus petit identifiant disponible pour les codecs de l'utilisateur
+     */
+    public static final int MIN_USER_ID = 32;
+    /**
+     * Plus grand identifiant de codec
+     */
+    public static final int MAX_ID = 127;
+
+    static final int STRING_ID = 1;
+    static final int INTEGER_ID = 2;
+    static final int LONG_ID = 3;
+    static final int DOUBLE_ID = 4;
+    static final int BYTE_ARRAY_ID = 5;
+
+    private static final class Registration {
+        private final int id;
+        private final Codec<Serializable> codec;
+
+        private Registration (int id, Codec<Serializable> codec) {
+            this.id = id;
+            this.codec = codec;
+        }
+    }
+
+    private final ConcurrentHashMap<Class<?>, Registration> byType = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Registration> byId = new AtomicReferenceArray<>(MAX_ID + 1);
+
+    /**
+     * Construit un registre qui contient les codecs fournis
+     */
+    public CodecRegistry () {
+        add(STRING_ID, String.class, new Codec<String>() {
+            @Override
+            public void encode (String value, DataOutput out) throws IOException {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            @Override
+            public String decode (DataInput in) throws IOException {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        });
+        add(INTEGER_ID, Integer.class, new Codec<Integer>() {
+            @Override
+            public void encode (Integer value, DataOutput out) throws IOException {
+                out.writeInt(value);
+            }
+
+            @Override
+            public Integer decode (DataInput in) throws IOException {
+                return in.readInt();
+            }
+        });
+        add(LONG_ID, Long.class, new Codec<Long>() {
+            @Override
+            public void encode (Long value, DataOutput out) throws IOException {
+                out.writeLong(value);
+            }
+
+            @Override
+            public Long decode (DataInput in) throws IOException {
+                return in.readLong();
+            }
+        });
+        add(DOUBLE_ID, Double.class, new Codec<Double>() {
+            @Override
+            public void encode (Double value, DataOutput out) throws IOException {
+                out.writeDouble(value);
+            }
+
+            @Override
+            public Double decode (DataInput in) throws IOException {
+                return in.readDouble();
+            }
+        });
+        add(BYTE_ARRAY_ID, byte[].class, new Codec<byte[]>() {
+            @Override
+            public void encode (byte[] value, DataOutput out) throws IOException {
+                out.writeInt(value.length);
+                out.write(value);
+            }
+
+            @Override
+            public byte[] decode (DataInput in) throws IOException {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            }
+        });
+    }
+
+    /**
+     * Associe un codec à une classe. Les sous-classes de la classe donnée ne sont pas concernées.
+     *
+     * @param id    l'identifiant du codec, écrit dans chaque enregistrement, compris entre {@link #MIN_USER_ID} et {@link #MAX_ID}
+     * @param type  la classe exacte des objets à encoder
+     * @param codec le codec
+     * @param <T>   le type encodé
+     * @return ce registre
+     * @throws IllegalArgumentException si l'identifiant est invalide, ou si l'identifiant ou la classe sont déjà utilisés
+     */
+    public <T extends Serializable> CodecRegistry register (int id, Class<T> type, Codec<T> codec) {
+        if (id < MIN_USER_ID || id > MAX_ID)
+            throw new IllegalArgumentException("L'identifiant d'un codec doit être compris entre " + MIN_USER_ID + " et " + MAX_ID + " : " + id);
+        add(id, type, codec);
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T extends Serializable> void add (int id, Class<T> type, Codec<T> codec) {
+        if (type == null || codec == null) throw new NullPointerException();
+        if (byId.get(id) != null)
+            throw new IllegalArgumentException("L'identifiant " + id + " est déjà utilisé");
+        if (byType.containsKey(type))
+            throw new IllegalArgumentException("La classe " + type.getName() + " a déjà un codec");
+        Registration registration = new Registration(id, (Codec<Serializable>) codec);
+        byId.set(id, registration);
+        byType.put(type, registration);
+    }
+
+    /**
+     * Encode l'objet donné avec le codec associé à sa classe, précédé de l'identifiant du codec
+     *
+     * @param value l'objet à encoder
+     * @param out   le flux où écrire
+     * @return true si un codec a été trouvé, false si l'objet doit être sérialisé autrement
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    boolean encode (Serializable value, DataOutput out) throws IOException {
+        Registration registration = byType.get(value.getClass());
+        if (registration == null)
+            return false;
+        out.writeByte(registration.id);
+        registration.codec.encode(value, out);
+        return true;
+    }
+
+    /**
+     * Décode un objet avec le codec dont l'identifiant est donné
+     *
+     * @param id l'identifiant lu en tête de l'enregistrement
+     * @param in le flux positionné après l'identifiant
+     * @return l'objet décodé
+     * @throws IOException si aucun codec n'a cet identifiant, ou si un problème d'entrée/sortie se produit
+     */
+    Serializable decode (int id, DataInput in) throws IOException {
+        Registration registration = id >= 0 && id <= MAX_ID ? byId.get(id) : null;
+        if (registration == null)
+            throw new IOException("Aucun codec n'est enregistré avec l'identifiant " + id);
+        return registration.codec.decode(in);
+    }
+}
@@ -0,0 +1,16 @@
+package bdd;
+
+/**
+ * Observateur de l'avancement d'un compactage lancé par {@link BDD#compact(CompactionListener)}
+ *
+ * @version 1.0
+ */
+public interface CompactionListener {
+
+    /**
+     * Fonction appelée après chaque enregistrement déplacé, sans qu'aucun verrou de la BDD ne soit tenu
+     *
+     * @param progress l'état du compactage
+     */
+    void onProgress (CompactionStatistics progress);
+}
@@ -0,0 +1,71 @@
+package bdd;
+
+/**
+ * Etat d'un compactage du fichier d'une {@link BDD}, transmis au {@link CompactionListener} après chaque enregistrement déplacé,
+ * puis retourné par {@link BDD#compact(CompactionListener)}.
+ *
+ * @version 1.0
+ */
+public class CompactionStatistics {
+    private final long movedRecords;
+    private final long movedBytes;
+    private final long initialLength;
+    private final long currentLength;
+    private final long freeBytes;
+
+    CompactionStatistics (long movedRecords, long movedBytes, long initialLength, long currentLength, long freeBytes) {
+        this.movedRecords = movedRecords;
+        this.movedBytes = movedBytes;
+        this.initialLength = initialLength;
+        this.currentLength = currentLength;
+        this.freeBytes = freeBytes;
+    }
+
+    /**
+     * @return le nombre d'enregistrements déplacés depuis le début du compactage
+     */
+    public long getMovedRecords () {
+        return movedRecords;
+    }
+
+    /**
+     * @return le nombre d'octets copiés depuis le début du compactage
+     */
+    public long getMovedBytes () {
+        return movedBytes;
+    }
+
+    /**
+     * @return la taille du fichier au début du compactage
+     */
+    public long getInitialLength () {
+        return initialLength;
+    }
+
+    /**
+     * @return la taille actuelle du fichier, ou -1 si la BDD a été fermée pendant le compactage
+     */
+    public long getCurrentLength () {
+        return currentLength;
+    }
+
+    /**
+     * @return le nombre d'octets libres restant dans le fichier
+     */
+    public long getFreeBytes () {
+        return freeBytes;
+    }
+
+    /**
+     * @return la proportion d'octets libres dans le fichier
+     */
+    public double getFragmentation () {
+        return currentLength == 0 ? 0 : (double) freeBytes / currentLength;
+    }
+
+    @Override
+    public String toString () {
+        return "CompactionStatistics{movedRecords=" + movedRecords + ", movedBytes=" + movedBytes + ", initialLength=" + initialLength
+                + ", currentLength=" + currentLength + ", freeBytes=" + freeBytes + "}";
+    }
+}
@@ -0,0 +1,208 @@
+package bdd;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * Gestionnaire des zones libres du fichier d'une {@link BDD}.
+ * <p>
+ * Les zones libres sont indexées deux fois :
+ * <ul>
+ *     <li>par position, pour retrouver en temps logarithmique les voisins gauche et droit d'une zone libérée et les fusionner</li>
+ *     <li>par taille puis par position, pour trouver en temps logarithmique la plus petite zone suffisamment grande (best-fit)</li>
+ * </ul>
+ * Lorsqu'une zone trouvée est plus grande que nécessaire, elle est découpée et le reste est rendu à l'allocateur.
+ * Ainsi, deux zones libres ne sont jamais contigües.
+ * <p>
+ * La taille d'une zone correspond au nombre total d'octets occupés dans le fichier, en-tête de l'enregistrement compris.
+ *
+ * @version 1.0
+ */
+class FreeSpaceAllocator {
+    private static final Comparator<BDD.FreeSpaceInterval> BY_LENGTH =
+            Comparator.comparingLong(BDD.FreeSpaceInterval::getLength).thenComparingLong(BDD.FreeSpaceInterval::getStartPosition);
+
+    private final TreeSet<BDD.FreeSpaceInterval> byPosition = new TreeSet<>();
+    private final TreeSet<BDD.FreeSpaceInterval> byLength = new TreeSet<>(BY_LENGTH);
+    private long freeBytes = 0;
+
+    FreeSpaceAllocator () {
+    }
+
+    /**
+     * Construit un allocateur à partir d'un tableau de zones libres, par exemple chargé depuis le fichier.
+     * Les zones contigües sont fusionnées et les zones qui se chevauchent sont réunies.
+     *
+     * @param intervals les zones libres
+     */
+    FreeSpaceAllocator (Collection<BDD.FreeSpaceInterval> intervals) {
+        for (BDD.FreeSpaceInterval interval : intervals) {
+            if (interval.getLength() > 0) {
+                claim(interval.getStartPosition(), interval.getLength());
+                free(interval.getStartPosition(), interval.getLength());
+            }
+        }
+    }
+
+    /**
+     * Cherche la plus petite zone libre dont la taille est supérieure ou égale à la taille donnée.
+     * Si la zone trouvée est plus grande, elle est découpée : le début est alloué et la fin reste libre.
+     *
+     * @param length la taille souhaitée en octets
+     * @return la position de la zone allouée, ou null si aucune zone n'est suffisamment grande
+     */
+    Long allocate (long length) {
+        if (length <= 0) throw new IllegalArgumentException();
+        BDD.FreeSpaceInterval found = byLength.ceiling(new BDD.FreeSpaceInterval(Long.MIN_VALUE, length));
+        if (found == null)
+            return null;
+        return take(found, length);
+    }
+
+    /**
+     * Cherche, parmi les zones libres qui commencent avant la limite donnée, la plus petite dont la taille est supérieure ou égale à la taille donnée.
+     * Cette fonction sert au compactage, qui ne déplace un enregistrement que vers le début du fichier.
+     * Son coût est proportionnel au nombre de zones libres suffisamment grandes qui se trouvent après la limite.
+     *
+     * @param length la taille souhaitée en octets
+     * @param limit  la position avant laquelle la zone allouée doit commencer
+     * @return la position de la zone allouée, ou null si aucune zone ne convient
+     */
+    Long allocateBefore (long length, long limit) {
+        if (length <= 0) throw new IllegalArgumentException();
+        for (BDD.FreeSpaceInterval interval : byLength.tailSet(new BDD.FreeSpaceInterval(Long.MIN_VALUE, length))) {
+            if (interval.getStartPosition() < limit)
+                return take(interval, length);
+        }
+        return null;
+    }
+
+    private long take (BDD.FreeSpaceInterval found, long length) {
+        remove(found);
+        if (found.getLength() > length)
+            add(new BDD.FreeSpaceInterval(found.getStartPosition() + length, found.getLength() - length));
+        return found.getStartPosition();
+    }
+
+    /**
+     * Libère la zone donnée en paramètre, en la fusionnant avec ses voisines libres à gauche et à droite.
+     *
+     * @param pos    la position de la zone
+     * @param length la taille de la zone
+     * @throws IllegalStateException si la zone chevauche une zone déjà libre
+     */
+    void free (long pos, long length) {
+        if (length <= 0) throw new IllegalArgumentException();
+        long start = pos;
+        long end = pos + length;
+        BDD.FreeSpaceInterval probe = new BDD.FreeSpaceInterval(pos, 0);
+        BDD.FreeSpaceInterval left = byPosition.lower(probe);
+        if (left != null) {
+            long leftEnd = left.getStartPosition() + left.getLength();
+            if (leftEnd > pos)
+                throw new IllegalStateException("La zone [" + pos + ", " + end + "[ est déjà libre");
+            if (leftEnd == pos) {
+                remove(left);
+                start = left.getStartPosition();
+            }
+        }
+        BDD.FreeSpaceInterval right = byPosition.ceiling(probe);
+        if (right != null) {
+            if (right.getStartPosition() < end)
+                throw new IllegalStateException("La zone [" + pos + ", " + end + "[ est déjà libre");
+            if (right.getStartPosition() == end) {
+                remove(right);
+                end = right.getStartPosition() + right.getLength();
+            }
+        }
+        add(new BDD.FreeSpaceInterval(start, end - start));
+    }
+
+    /**
+     * Retire des zones libres tout octet compris dans la zone donnée, en découpant les zones libres qui la chevauchent.
+     *
+     * @param pos    la position de la zone à réserver
+     * @param length la taille de la zone à réserver
+     */
+    void claim (long pos, long length) {
+        long end = pos + length;
+        BDD.FreeSpaceInterval first = byPosition.lower(new BDD.FreeSpaceInterval(pos, 0));
+        if (first == null || first.getStartPosition() + first.getLength() <= pos)
+            first = byPosition.ceiling(new BDD.FreeSpaceInterval(pos, 0));
+        while (first != null && first.getStartPosition() < end) {
+            BDD.FreeSpaceInterval next = byPosition.higher(first);
+            long firstEnd = first.getStartPosition() + first.getLength();
+            remove(first);
+            if (first.getStartPosition() < pos)
+                add(new BDD.FreeSpaceInterval(first.getStartPosition(), pos - first.getStartPosition()));
+            if (firstEnd > end)
+                add(new BDD.FreeSpaceInterval(end, firstEnd - end));
+            first = next;
+        }
+    }
+
+    /**
+     * Si la dernière zone libre se termine à la fin du fichier, elle est retirée, car le fichier peut être tronqué à sa position.
+     *
+     * @param fileLength la taille actuelle du fichier
+     * @return la taille que doit avoir le fichier
+     */
+    long trimEnd (long fileLength) {
+        if (!byPosition.isEmpty()) {
+            BDD.FreeSpaceInterval last = byPosition.last();
+            if (last.getStartPosition() + last.getLength() == fileLength) {
+                remove(last);
+                return last.getStartPosition();
+            }
+        }
+        return fileLength;
+    }
+
+    /**
+     * @return les zones libres triées par position. Ce tableau ne doit pas être modifié.
+     */
+    TreeSet<BDD.FreeSpaceInterval> getIntervals () {
+        return byPosition;
+    }
+
+    /**
+     * @return la position de la première zone libre, ou -1 s'il n'y en a pas
+     */
+    long firstFreePosition () {
+        return byPosition.isEmpty() ? -1 : byPosition.first().getStartPosition();
+    }
+
+    /**
+     * @return le nombre de zones libres
+     */
+    int size () {
+        return byPosition.size();
+    }
+
+    /**
+     * @return la taille de la plus grande zone libre, ou 0 s'il n'y en a pas
+     */
+    long getLargestInterval () {
+        return byLength.isEmpty() ? 0 : byLength.last().getLength();
+    }
+
+    /**
+     * @return le nombre total d'octets libres
+     */
+    long getFreeBytes () {
+        return freeBytes;
+    }
+
+    private void add (BDD.FreeSpaceInterval interval) {
+        byPosition.add(interval);
+        byLength.add(interval);
+        freeBytes += interval.getLength();
+    }
+
+    private void remove (BDD.FreeSpaceInterval interval) {
+        byPosition.remove(interval);
+        byLength.remove(interval);
+        freeBytes -= interval.getLength();
+    }
+}
@@ -0,0 +1,64 @@
+package bdd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Répertoire des clés conservé entièrement en mémoire dans un {@link HashMap}.
+ * Il est sauvegardé dans le format binaire de {@link SerializationTools#serializeKeyDirectory(Map)}.
+ * Les fichiers plus anciens, où le tableau associatif entier était sérialisé par Java, restent lisibles par {@link KeyDirectory#load(byte[], BDDConfiguration, Storage, KeyDirectory.PageAllocator)}.
+ *
+ * @version 1.0
+ */
+class HashKeyDirectory implements KeyDirectory {
+    private final HashMap<String, Long> links;
+
+    HashKeyDirectory () {
+        this(new HashMap<>());
+    }
+
+    HashKeyDirectory (HashMap<String, Long> links) {
+        this.links = links;
+    }
+
+    @Override
+    public Long get (String key) {
+        return links.get(key);
+    }
+
+    @Override
+    public Long put (String key, long position) {
+        return links.put(key, position);
+    }
+
+    @Override
+    public Long remove (String key) {
+        return links.remove(key);
+    }
+
+    @Override
+    public long size () {
+        return links.size();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, Long>> iterator () {
+        return links.entrySet().iterator();
+    }
+
+    @Override
+    public byte[] save () throws IOException {
+        return SerializationTools.serializeKeyDirectory(links);
+    }
+
+    /**
+     * @param data un enregistrement retourné par {@link KeyDirectory#save()}
+     * @return true si l'enregistrement a été écrit par {@link #save()}, plutôt que par sérialisation Java
+     */
+    static boolean isSavedDirectory (byte[] data) {
+        return data.length >= 4 && ByteBuffer.wrap(data).getInt() == SerializationTools.KEY_DIRECTORY_MAGIC;
+    }
+}
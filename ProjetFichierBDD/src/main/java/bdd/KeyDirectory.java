@@ -0,0 +1,238 @@
+package bdd;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Répertoire des clés d'une {@link BDD} : il associe chaque clé à la position de son enregistrement dans le fichier.
+ * <p>
+ * Les modifications sont faites sous le verrou d'écriture de la BDD, les lectures sous son verrou de lecture :
+ * une implémentation doit seulement supporter plusieurs lectures simultanées en l'absence de modification.
+ * <p>
+ * Le répertoire est sauvegardé dans le fichier de la BDD par {@link #save()}, comme un enregistrement quelconque dont la position
+ * est conservée dans l'en-tête du fichier. Le format de cet enregistrement est reconnu au chargement grâce à ses premiers octets
+ * (voir {@link KeyDirectoryType}), si bien qu'un fichier peut être ouvert avec un autre type de répertoire que celui qui l'a écrit.
+ *
+ * @version 1.0
+ */
+interface KeyDirectory {
+
+    /**
+     * Zones du fichier gérées directement par un répertoire, en dehors de l'enregistrement retourné par {@link #save()}
+     */
+    interface PageAllocator {
+        /**
+         * Réserve une zone libre du fichier
+         *
+         * @param length la taille de la zone, en-tête compris
+         * @return la position de la zone
+         * @throws IOException si un problème d'entrée/sortie se produit
+         */
+        long allocate (int length) throws IOException;
+
+        /**
+         * Signale qu'une zone ne sera plus référencée après la prochaine sauvegarde.
+         * Elle reste réservée jusqu'à ce que cette sauvegarde soit entièrement écrite.
+         *
+         * @param position la position de la zone
+         * @param length   la taille de la zone, en-tête compris
+         */
+        void release (long position, int length);
+    }
+
+    /**
+     * @param key la clé
+     * @return la position de l'enregistrement associé à la clé, ou null si la clé est absente
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    Long get (String key) throws IOException;
+
+    /**
+     * @param key      la clé
+     * @param position la position de l'enregistrement
+     * @return la position précédemment associée à la clé, ou null
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    Long put (String key, long position) throws IOException;
+
+    /**
+     * @param key la clé
+     * @return la position qui était associée à la clé, ou null si la clé était absente
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    Long remove (String key) throws IOException;
+
+    /**
+     * @return le nombre de clés
+     */
+    long size ();
+
+    /**
+     * Parcourt toutes les associations, dans un ordre qui dépend de l'implémentation.
+     * Les erreurs d'entrée/sortie sont levées sous la forme d'une {@link java.io.UncheckedIOException}.
+     *
+     * @return un itérateur sur les associations, qui ne doit pas être utilisé après une modification
+     */
+    Iterator<Map.Entry<String, Long>> iterator ();
+
+    /**
+     * @return true si le répertoire sait parcourir ses clés dans l'ordre grâce à {@link #iterator(String, boolean)}
+     */
+    default boolean isSorted () {
+        return false;
+    }
+
+    /**
+     * Parcourt les associations dans l'ordre des clés défini par {@link #compareKeys(String, String)}, à partir de la clé donnée.
+     * Cette fonction n'est disponible que si {@link #isSorted()} retourne true.
+     * Les erreurs d'entrée/sortie sont levées sous la forme d'une {@link java.io.UncheckedIOException}.
+     *
+     * @param fromKey   la première clé, ou null pour commencer à la plus petite
+     * @param inclusive true si l'association de fromKey doit être retournée
+     * @return un itérateur sur les associations, qui ne doit pas être utilisé après une modification
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    default Iterator<Map.Entry<String, Long>> iterator (String fromKey, boolean inclusive) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Compare deux clés dans l'ordre de leurs points de code, qui est aussi l'ordre des octets de leur encodage UTF-8.
+     * Cet ordre ne diffère de {@link String#compareTo(String)} que pour les caractères situés au delà de U+FFFF.
+     *
+     * @param a la première clé
+     * @param b la seconde clé
+     * @return un nombre négatif, nul ou positif selon que a est avant, égale à ou après b
+     */
+    static int compareKeys (String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb)
+                return Integer.compare(ca, cb);
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    }
+
+    /**
+     * Vérifie qu'une clé peut être ajoutée, avant que son enregistrement ne soit écrit
+     *
+     * @param key la clé
+     * @throws IllegalArgumentException si la clé ne peut pas être enregistrée par ce répertoire
+     */
+    default void checkKey (String key) {
+    }
+
+    /**
+     * @return true si le répertoire doit être sauvegardé dès que possible, par exemple pour limiter la mémoire qu'il occupe
+     */
+    default boolean needsSave () {
+        return false;
+    }
+
+    /**
+     * Prépare l'enregistrement qui décrit le répertoire. Les zones gérées par le répertoire sont écrites à de nouvelles positions si nécessaire.
+     *
+     * @return l'enregistrement binaire à sauvegarder
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    byte[] save () throws IOException;
+
+    /**
+     * Signale toutes les zones gérées par le répertoire comme n'étant plus référencées, lorsque le répertoire est remplacé par un autre
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    default void releaseAll () throws IOException {
+    }
+
+    /**
+     * Crée un répertoire vide du type choisi par la configuration
+     *
+     * @param configuration les paramètres d'ouverture de la BDD
+     * @param storage       le support du fichier de la BDD
+     * @param allocator     l'allocateur des zones gérées par le répertoire
+     * @return le répertoire vide
+     */
+    static KeyDirectory create (BDDConfiguration configuration, Storage storage, PageAllocator allocator) {
+        switch (configuration.getKeyDirectoryType()) {
+            case B_TREE:
+                return new BTreeKeyDirectory(storage, allocator, configuration.getKeyDirectoryPageSize(),
+                        configuration.getKeyDirectoryCacheSize(), configuration.getKeyDirectoryMaxDirtyPages());
+            case PRIMITIVE_HASH:
+                return new PrimitiveHashKeyDirectory();
+            default:
+                return new HashKeyDirectory();
+        }
+    }
+
+    /**
+     * Charge un répertoire à partir de l'enregistrement retourné par {@link #save()}, dont le format est reconnu grâce à ses premiers octets,
+     * puis le convertit si nécessaire grâce à la fonction {@link #convert(KeyDirectory, KeyDirectoryType, BDDConfiguration, Storage, PageAllocator)}.
+     * Un répertoire {@link KeyDirectoryType#HASH_MAP} peut être au format binaire de {@link SerializationTools#serializeKeyDirectory(Map)},
+     * ou sérialisé par Java comme dans les fichiers écrits avant ce format.
+     *
+     * @param data          l'enregistrement qui décrit le répertoire
+     * @param configuration les paramètres d'ouverture de la BDD
+     * @param storage       le support du fichier de la BDD
+     * @param allocator     l'allocateur des zones gérées par le répertoire
+     * @return le répertoire chargé
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si la désérialisation se passe mal
+     */
+    @SuppressWarnings("unchecked")
+    static KeyDirectory load (byte[] data, BDDConfiguration configuration, Storage storage, PageAllocator allocator) throws IOException, ClassNotFoundException {
+        KeyDirectory loaded;
+        KeyDirectoryType type;
+        if (BTreeKeyDirectory.isDescriptor(data)) {
+            loaded = new BTreeKeyDirectory(storage, allocator, data, configuration.getKeyDirectoryCacheSize(), configuration.getKeyDirectoryMaxDirtyPages());
+            type = KeyDirectoryType.B_TREE;
+        } else if (PrimitiveHashKeyDirectory.isSavedDirectory(data)) {
+            loaded = new PrimitiveHashKeyDirectory(data);
+            type = KeyDirectoryType.PRIMITIVE_HASH;
+        } else if (HashKeyDirectory.isSavedDirectory(data)) {
+            loaded = new HashKeyDirectory(SerializationTools.deserializeKeyDirectory(new ByteArrayInputStream(data)));
+            type = KeyDirectoryType.HASH_MAP;
+        } else {
+            loaded = new HashKeyDirectory((HashMap<String, Long>) SerializationTools.deserialize(data));
+            type = KeyDirectoryType.HASH_MAP;
+        }
+        return convert(loaded, type, configuration, storage, allocator);
+    }
+
+    /**
+     * Si le type d'un répertoire chargé ne correspond pas au type choisi par la configuration, les associations sont copiées dans un nouveau répertoire de ce type,
+     * et les zones de l'ancien répertoire sont signalées comme n'étant plus référencées.
+     *
+     * @param loaded        le répertoire chargé
+     * @param type          le type du répertoire chargé
+     * @param configuration les paramètres d'ouverture de la BDD
+     * @param storage       le support du fichier de la BDD
+     * @param allocator     l'allocateur des zones gérées par le répertoire
+     * @return le répertoire chargé, ou sa copie dans le type choisi par la configuration
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    static KeyDirectory convert (KeyDirectory loaded, KeyDirectoryType type, BDDConfiguration configuration, Storage storage, PageAllocator allocator) throws IOException {
+        if (type == configuration.getKeyDirectoryType())
+            return loaded;
+        KeyDirectory res = create(configuration, storage, allocator);
+        try {
+            for (Iterator<Map.Entry<String, Long>> it = loaded.iterator(); it.hasNext(); ) {
+                Map.Entry<String, Long> e = it.next();
+                res.put(e.getKey(), e.getValue());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        loaded.releaseAll();
+        return res;
+    }
+}
@@ -0,0 +1,31 @@
+package bdd;
+
+/**
+ * Structure du répertoire qui associe chaque clé d'une {@link BDD} à la position de son enregistrement.
+ * Le format du répertoire sauvegardé est reconnu à l'ouverture : un fichier écrit avec un type peut être ouvert avec l'autre,
+ * et il est alors converti lors de la sauvegarde suivante.
+ *
+ * @version 1.0
+ */
+public enum KeyDirectoryType {
+    /**
+     * Toutes les clés sont conservées en mémoire dans un {@link java.util.HashMap}, qui est entièrement écrit à chaque sauvegarde,
+     * dans un format binaire compact ({@link SerializationTools#serializeKeyDirectory(java.util.Map)}), et entièrement relu à l'ouverture.
+     * C'est le mode par défaut, adapté à un nombre de clés modéré.
+     */
+    HASH_MAP,
+    /**
+     * Toutes les clés sont conservées en mémoire dans une table de hachage faite de tableaux primitifs ({@link PrimitiveHashKeyDirectory}) :
+     * les clés sont rangées sous la forme de leurs octets UTF-8, sans aucun objet par clé, ce qui réduit la mémoire occupée et le travail du ramasse-miettes.
+     * Les agrandissements de la table sont étalés sur les modifications suivantes. Le répertoire est sauvegardé dans un format binaire,
+     * qui ne peut pas être lu par les versions précédentes.
+     */
+    PRIMITIVE_HASH,
+    /**
+     * Les clés sont enregistrées dans le fichier sous la forme d'un arbre B+ dont les pages sont lues à la demande.
+     * L'ouverture ne lit aucune clé, une sauvegarde n'écrit que les pages modifiées, et la mémoire occupée est bornée
+     * par {@link BDDConfiguration#getKeyDirectoryCacheSize()} et {@link BDDConfiguration#getKeyDirectoryMaxDirtyPages()}.
+     * Chaque accès à une clé absente du cache coûte en revanche quelques lectures de pages.
+     */
+    B_TREE
+}
@@ -0,0 +1,105 @@
+package bdd;
+
+/**
+ * Photographie des durées d'une opération d'une {@link BDD}, obtenue grâce à {@link BDDStatistics#getLatency(MeasuredOperation)}.
+ * Les durées sont exprimées en nanosecondes. Les centiles sont calculés à partir d'un histogramme dont la précision est de 12,5 % :
+ * ils sont arrondis à la borne supérieure de leur case, sans dépasser la durée maximale.
+ *
+ * @version 1.0
+ */
+public class LatencyStatistics {
+    private final long[] counts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    LatencyStatistics (long[] counts, long totalNanos, long maxNanos) {
+        this.counts = counts;
+        long c = 0;
+        for (long n : counts)
+            c += n;
+        this.count = c;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return le nombre d'opérations mesurées
+     */
+    public long getCount () {
+        return count;
+    }
+
+    /**
+     * @return la somme des durées des opérations
+     */
+    public long getTotalNanos () {
+        return totalNanos;
+    }
+
+    /**
+     * @return la durée moyenne d'une opération, ou 0 si aucune opération n'a été mesurée
+     */
+    public double getMeanNanos () {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * @return la durée de l'opération la plus longue
+     */
+    public long getMaxNanos () {
+        return maxNanos;
+    }
+
+    /**
+     * @param percentile le centile souhaité, entre 0 et 100
+     * @return la durée en dessous de laquelle se trouve la proportion donnée des opérations, ou 0 si aucune opération n'a été mesurée
+     */
+    public long getPercentileNanos (double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(LatencyHistogram.upperBoundOf(i), maxNanos);
+        }
+        return maxNanos;
+    }
+
+    /**
+     * @return la médiane des durées
+     */
+    public long getP50Nanos () {
+        return getPercentileNanos(50);
+    }
+
+    /**
+     * @return le 90e centile des durées
+     */
+    public long getP90Nanos () {
+        return getPercentileNanos(90);
+    }
+
+    /**
+     * @return le 99e centile des durées
+     */
+    public long getP99Nanos () {
+        return getPercentileNanos(99);
+    }
+
+    /**
+     * @return le 99,9e centile des durées
+     */
+    public long getP999Nanos () {
+        return getPercentileNanos(99.9);
+    }
+
+    @Override
+    public String toString () {
+        return "LatencyStatistics{count=" + count + ", mean=" + (long) getMeanNanos() + "ns, p50=" + getP50Nanos() + "ns, p99=" + getP99Nanos()
+                + "ns, max=" + maxNanos + "ns}";
+    }
+}
@@ -0,0 +1,1067 @@
+package bdd;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Base de données structurée en journal, sur le modèle de Bitcask, qui offre les mêmes opérations que {@link BDD}.
+ * <p>
+ * Les données sont rangées dans un répertoire, sous la forme d'une suite de segments. Seul le dernier segment, le segment actif, est modifié :
+ * chaque ajout et chaque suppression y est écrit à la suite des précédents, sans jamais rechercher d'espace libre ni réécrire un enregistrement.
+ * Lorsque le segment actif atteint {@link BDDConfiguration#getMaxSegmentSize()}, il devient immuable et un nouveau segment est commencé.
+ * <p>
+ * Chaque entrée d'un segment a la forme suivante :
+ * <ul>
+ *     <li>le CRC32 du reste de l'entrée, sur 4 octets</li>
+ *     <li>la taille de la clé encodée en UTF-8, sur 4 octets, puis la clé</li>
+ *     <li>la taille de l'enregistrement, sur 4 octets, ou {@link #TOMBSTONE} pour une suppression, puis l'enregistrement,
+ *         encodé comme dans une {@link BDD} (codecs et compression)</li>
+ * </ul>
+ * Un répertoire des clés en mémoire ({@link KeyDirectory}) associe chaque clé à la position de son dernier enregistrement :
+ * une lecture coûte une seule recherche dans ce répertoire puis une lecture positionnelle.
+ * <p>
+ * Les anciennes versions des enregistrements et les suppressions occupent de la place jusqu'à la fusion des segments immuables par {@link #compact()},
+ * qui recopie les seuls enregistrements vivants dans de nouveaux segments puis supprime les anciens. La fusion se fait en arrière-plan
+ * si {@link BDDConfiguration#getCompactionThreshold()} est positif ; les lectures et les écritures continuent pendant la copie.
+ * <p>
+ * Chaque segment immuable est accompagné d'un fichier d'indices, qui contient les clés et les positions de ses entrées sans les enregistrements.
+ * À l'ouverture, le répertoire des clés est reconstruit à partir de ces fichiers ; seuls les segments qui n'en ont pas, après un arrêt brutal,
+ * sont parcourus entièrement, et une entrée incomplète ou corrompue en fin de segment est alors tronquée.
+ * <p>
+ * Les options suivantes de la configuration sont utilisées : le registre des codecs, la compression, le mode d'accès aux fichiers,
+ * le type de répertoire des clés ({@link KeyDirectoryType#B_TREE} n'est pas disponible), la taille des segments, le seuil et le délai de la fusion automatique,
+ * ainsi que {@link BDDConfiguration#getLogSyncPolicy()} et {@link BDDConfiguration#getGroupCommitDelay()} qui déterminent quand le segment actif est forcé sur disque.
+ *
+ * @version 1.0
+ */
+public class LogStructuredBDD implements AutoCloseable {
+    /**
+     * Taille d'enregistrement qui marque une suppression
+     */
+    static final int TOMBSTONE = -1;
+    /**
+     * Taille de l'en-tête d'une entrée : le CRC32, la taille de la clé et la taille de l'enregistrement
+     */
+    static final int ENTRY_HEADER_SIZE = 12;
+    private static final int HINT_MAGIC = 0x4C534248;
+    private static final String DATA_SUFFIX = ".data";
+    private static final String HINT_SUFFIX = ".hint";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("[0-9a-f]{16}\\.(data|hint)(\\.tmp)?");
+    /**
+     * Les positions du répertoire des clés contiennent le numéro du segment dans leurs bits de poids fort,
+     * et la position dans le segment dans leurs {@link #OFFSET_BITS} bits de poids faible
+     */
+    private static final int OFFSET_BITS = 40;
+    private static final int MAX_SLOT = (1 << (63 - OFFSET_BITS)) - 1;
+    /**
+     * Taille maximale du tampon utilisé pour regrouper en une seule écriture des entrées consécutives
+     */
+    private static final int MAX_COALESCED_WRITE_SIZE = 1 << 20;
+    /**
+     * Nombre d'enregistrements recopiés par une fusion avant que leurs nouvelles positions ne soient reportées dans le répertoire des clés
+     */
+    private static final int MERGE_BATCH_SIZE = 1024;
+
+    /**
+     * Segment de la base. Son identifiant détermine l'ordre des segments : les 48 bits de poids fort sont incrémentés à chaque nouveau segment actif,
+     * les 16 bits de poids faible numérotent les segments produits par une fusion, qui se placent juste après les segments fusionnés.
+     */
+    private static class Segment {
+        final long id;
+        final int slot;
+        final File dataFile;
+        final File hintFile;
+        final Storage storage;
+        long size = 0;
+        long entries = 0;
+        long deadEntries = 0;
+        /**
+         * Contenu du fichier d'indices, tant qu'il n'est pas écrit
+         */
+        ByteArrayOutputStream hint = null;
+        DataOutputStream hintOut = null;
+        /**
+         * true lorsque le fichier du segment est fermé
+         */
+        boolean released = false;
+
+        Segment (File directory, long id, int slot, StorageMode mode) throws IOException {
+            this.id = id;
+            this.slot = slot;
+            String name = String.format("%016x", id);
+            dataFile = new File(directory, name + DATA_SUFFIX);
+            hintFile = new File(directory, name + HINT_SUFFIX);
+            storage = Storage.open(dataFile, mode);
+        }
+
+        void startHint () throws IOException {
+            hint = new ByteArrayOutputStream();
+            hintOut = new DataOutputStream(hint);
+            hintOut.writeInt(HINT_MAGIC);
+        }
+
+        /**
+         * @return une estimation du nombre d'octets occupés par des entrées mortes
+         */
+        long getDeadBytes () {
+            return entries == 0 ? 0 : (long) (size * ((double) deadEntries / entries));
+        }
+    }
+
+    private final File directory;
+    private final BDDConfiguration configuration;
+    private final CodecRegistry codecRegistry;
+    private final KeyDirectory keyDirectory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final HashMap<Integer, Segment> slots = new HashMap<>();
+    private final ConcurrentLinkedQueue<Segment> unhintedSegments = new ConcurrentLinkedQueue<>();
+    private final Object mergeMonitor = new Object();
+    private final ScheduledExecutorService scheduler;
+    private volatile IOException backgroundFailure = null;
+    private volatile boolean closed = false;
+    private volatile Segment active;
+    private int nextSlot = 0;
+
+    /**
+     * Ouvre la base contenue dans le répertoire donné, avec la configuration par défaut
+     *
+     * @param directory le répertoire des segments, créé s'il n'existe pas
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public LogStructuredBDD (File directory) throws IOException {
+        this(directory, new BDDConfiguration());
+    }
+
+    /**
+     * Ouvre la base contenue dans le répertoire donné. Le répertoire des clés est reconstruit à partir des fichiers d'indices,
+     * ou en parcourant les segments qui n'en ont pas, puis un nouveau segment actif est commencé.
+     *
+     * @param directory     le répertoire des segments, créé s'il n'existe pas
+     * @param configuration les paramètres d'ouverture
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public LogStructuredBDD (File directory, BDDConfiguration configuration) throws IOException {
+        if (directory == null || configuration == null) throw new NullPointerException();
+        if (configuration.getKeyDirectoryType() == KeyDirectoryType.B_TREE)
+            throw new IllegalArgumentException("Le répertoire des clés d'une LogStructuredBDD est conservé en mémoire");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Impossible de créer le répertoire " + directory);
+        this.directory = directory;
+        this.configuration = configuration;
+        this.codecRegistry = configuration.getCodecRegistry();
+        this.keyDirectory = KeyDirectory.create(configuration, null, null);
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            for (Segment s : segments.values())
+                s.storage.close();
+            throw e;
+        }
+        writePendingHints();
+        boolean merge = configuration.getCompactionThreshold() > 0;
+        boolean groupCommit = configuration.getLogSyncPolicy() == LogSyncPolicy.GROUP_COMMIT;
+        if (merge || groupCommit) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "LogStructuredBDD " + directory.getName());
+                t.setDaemon(true);
+                return t;
+            });
+            if (merge) {
+                long delay = configuration.getCompactionCheckInterval();
+                scheduler.scheduleWithFixedDelay(this::backgroundMerge, delay, delay, TimeUnit.MILLISECONDS);
+            }
+            if (groupCommit) {
+                long delay = configuration.getGroupCommitDelay();
+                scheduler.scheduleWithFixedDelay(this::backgroundSync, delay, delay, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Reconstruit le répertoire des clés en rejouant les segments dans l'ordre de leurs identifiants, puis commence un nouveau segment actif.
+     * Les fichiers d'indices orphelins ou temporaires, ainsi que les segments vides, sont supprimés.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void recover () throws IOException {
+        TreeMap<Long, File> dataFiles = new TreeMap<>();
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("Impossible de lister le répertoire " + directory);
+        for (File f : files) {
+            String name = f.getName();
+            if (!SEGMENT_NAME.matcher(name).matches())
+                continue;
+            if (name.endsWith(DATA_SUFFIX))
+                dataFiles.put(Long.parseUnsignedLong(name.substring(0, 16), 16), f);
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (SEGMENT_NAME.matcher(name).matches() && !name.endsWith(DATA_SUFFIX)
+                    && (name.endsWith(".tmp") || !dataFiles.containsKey(Long.parseUnsignedLong(name.substring(0, 16), 16))))
+                Files.deleteIfExists(f.toPath());
+        }
+        long lastId = -1;
+        for (long id : dataFiles.keySet()) {
+            Segment s = openSegment(id);
+            s.size = s.storage.length();
+            if (!s.hintFile.exists() || !loadHint(s))
+                scanSegment(s);
+            if (s.size == 0) {
+                deleteSegment(s);
+            } else if (s.hint != null) {
+                unhintedSegments.add(s);
+            }
+            lastId = id;
+        }
+        active = openSegment(((lastId >>> 16) + 1) << 16);
+        active.startHint();
+    }
+
+    /**
+     * Crée ou ouvre le fichier d'un segment et l'ajoute aux segments de la base
+     *
+     * @param id l'identifiant du segment
+     * @return le segment
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si trop de segments ont été ouverts
+     */
+    private Segment openSegment (long id) throws IOException {
+        if (nextSlot > MAX_SLOT)
+            throw new IOException("Trop de segments ont été ouverts");
+        Segment s = new Segment(directory, id, nextSlot++, configuration.getStorageMode());
+        segments.put(id, s);
+        slots.put(s.slot, s);
+        return s;
+    }
+
+    /**
+     * Charge le fichier d'indices d'un segment. Le fichier est entièrement vérifié grâce à son CRC32 avant que le répertoire des clés ne soit modifié.
+     *
+     * @param s le segment
+     * @return false si le fichier d'indices est invalide, auquel cas il est supprimé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private boolean loadHint (Segment s) throws IOException {
+        byte[] data = Files.readAllBytes(s.hintFile.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        boolean valid = data.length >= 8 && buffer.getInt(0) == HINT_MAGIC;
+        if (valid) {
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - 4);
+            valid = (int) crc.getValue() == buffer.getInt(data.length - 4);
+        }
+        if (!valid) {
+            Files.delete(s.hintFile.toPath());
+            return false;
+        }
+        buffer.position(4);
+        buffer.limit(data.length - 4);
+        while (buffer.hasRemaining()) {
+            int keyLength = buffer.getInt();
+            String key = new String(data, buffer.position(), keyLength, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + keyLength);
+            long valueOffset = buffer.getLong();
+            int valueLength = buffer.getInt();
+            apply(s, key, valueOffset, valueLength);
+        }
+        return true;
+    }
+
+    /**
+     * Parcourt entièrement un segment qui n'a pas de fichier d'indices, et prépare ce fichier.
+     * Le segment est tronqué après sa dernière entrée valide.
+     *
+     * @param s le segment
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void scanSegment (Segment s) throws IOException {
+        s.startHint();
+        long end = 0;
+        try (SegmentScanner scanner = new SegmentScanner(s.dataFile, s.size)) {
+            while (scanner.next()) {
+                apply(s, scanner.getKey(), scanner.getValueOffset(), scanner.getValueLength());
+                end = scanner.getEnd();
+            }
+        }
+        if (end < s.size) {
+            s.storage.setLength(end);
+            s.size = end;
+        }
+    }
+
+    /**
+     * Lecteur séquentiel des entrées d'un segment, qui s'arrête à la première entrée incomplète ou dont le CRC32 est incorrect
+     */
+    static final class SegmentScanner implements AutoCloseable {
+        private final DataInputStream in;
+        private final long length;
+        private long position = 0;
+        private long entryPosition;
+        private byte[] entry;
+        private int keyLength;
+        private int valueLength;
+
+        SegmentScanner (File file, long length) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            this.length = length;
+        }
+
+        /**
+         * Lit l'entrée suivante
+         *
+         * @return false si la fin du segment, ou une entrée invalide, est atteinte
+         * @throws IOException si un problème d'entrée/sortie se produit
+         */
+        boolean next () throws IOException {
+            long remaining = length - position;
+            if (remaining < ENTRY_HEADER_SIZE)
+                return false;
+            int crc = in.readInt();
+            int kl = in.readInt();
+            if (kl < 0 || kl > remaining - ENTRY_HEADER_SIZE)
+                return false;
+            byte[] key = new byte[kl];
+            in.readFully(key);
+            int vl = in.readInt();
+            if (vl < TOMBSTONE || vl > remaining - ENTRY_HEADER_SIZE - kl)
+                return false;
+            byte[] e = new byte[ENTRY_HEADER_SIZE + kl + Math.max(vl, 0)];
+            ByteBuffer buffer = ByteBuffer.wrap(e);
+            buffer.putInt(crc).putInt(kl).put(key).putInt(vl);
+            in.readFully(e, buffer.position(), e.length - buffer.position());
+            CRC32 c = new CRC32();
+            c.update(e, 4, e.length - 4);
+            if ((int) c.getValue() != crc)
+                return false;
+            entry = e;
+            keyLength = kl;
+            valueLength = vl;
+            entryPosition = position;
+            position += e.length;
+            return true;
+        }
+
+        int getKeyLength () {
+            return keyLength;
+        }
+
+        String getKey () {
+            return new String(entry, 8, keyLength, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return l'entrée complète, en-tête compris
+         */
+        byte[] getEntry () {
+            return entry;
+        }
+
+        /**
+         * @return la position de la taille de l'enregistrement dans le segment
+         */
+        long getValueOffset () {
+            return entryPosition + 8 + keyLength;
+        }
+
+        int getValueLength () {
+            return valueLength;
+        }
+
+        /**
+         * @return la position qui suit l'entrée dans le segment
+         */
+        long getEnd () {
+            return position;
+        }
+
+        @Override
+        public void close () throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Construit une entrée de segment
+     *
+     * @param key   la clé encodée en UTF-8
+     * @param value l'enregistrement, ou null pour une suppression
+     * @return l'entrée, dont le CRC32 est calculé
+     */
+    static byte[] encodeEntry (byte[] key, byte[] value) {
+        byte[] res = new byte[ENTRY_HEADER_SIZE + key.length + (value == null ? 0 : value.length)];
+        ByteBuffer buffer = ByteBuffer.wrap(res);
+        buffer.putInt(0).putInt(key.length).put(key).putInt(value == null ? TOMBSTONE : value.length);
+        if (value != null)
+            buffer.put(value);
+        CRC32 crc = new CRC32();
+        crc.update(res, 4, res.length - 4);
+        buffer.putInt(0, (int) crc.getValue());
+        return res;
+    }
+
+    private static long pointer (int slot, long offset) {
+        return ((long) slot << OFFSET_BITS) | offset;
+    }
+
+    private static int slotOf (long pointer) {
+        return (int) (pointer >>> OFFSET_BITS);
+    }
+
+    private static long offsetOf (long pointer) {
+        return pointer & ((1L << OFFSET_BITS) - 1);
+    }
+
+    /**
+     * Comptabilise une entrée écrite dans un segment, et l'ajoute au fichier d'indices en préparation
+     *
+     * @param s           le segment
+     * @param key         la clé
+     * @param valueOffset la position de la taille de l'enregistrement dans le segment
+     * @param valueLength la taille de l'enregistrement, ou {@link #TOMBSTONE}
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void record (Segment s, String key, long valueOffset, int valueLength) throws IOException {
+        s.entries++;
+        if (valueLength == TOMBSTONE)
+            s.deadEntries++;
+        if (s.hintOut != null) {
+            byte[] k = key.getBytes(StandardCharsets.UTF_8);
+            s.hintOut.writeInt(k.length);
+            s.hintOut.write(k);
+            s.hintOut.writeLong(valueOffset);
+            s.hintOut.writeInt(valueLength);
+        }
+    }
+
+    /**
+     * Comptabilise une entrée écrite dans un segment, puis reporte l'ajout ou la suppression dans le répertoire des clés.
+     * L'entrée remplacée, s'il y en a une, est comptée comme morte dans son segment.
+     *
+     * @param s           le segment
+     * @param key         la clé
+     * @param valueOffset la position de la taille de l'enregistrement dans le segment
+     * @param valueLength la taille de l'enregistrement, ou {@link #TOMBSTONE}
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void apply (Segment s, String key, long valueOffset, int valueLength) throws IOException {
+        record(s, key, valueOffset, valueLength);
+        Long previous = valueLength == TOMBSTONE ? keyDirectory.remove(key) : keyDirectory.put(key, pointer(s.slot, valueOffset));
+        if (previous != null)
+            slots.get(slotOf(previous)).deadEntries++;
+    }
+
+    /**
+     * Ecrit des entrées à la suite du segment actif. Les entrées consécutives qui tiennent dans le segment sont regroupées en une seule écriture.
+     * Le segment actif est remplacé par un nouveau segment lorsqu'il atteint {@link BDDConfiguration#getMaxSegmentSize()}.
+     * Cette fonction est appelée sous le verrou d'écriture.
+     *
+     * @param keys    les clés
+     * @param entries les entrées construites par {@link #encodeEntry(byte[], byte[])}
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void append (List<String> keys, List<byte[]> entries) throws IOException {
+        long maxSegmentSize = configuration.getMaxSegmentSize();
+        int i = 0;
+        while (i < entries.size()) {
+            if (active.size > 0 && active.size + entries.get(i).length > maxSegmentSize)
+                roll();
+            int j = i + 1;
+            long length = entries.get(i).length;
+            while (j < entries.size() && active.size + length + entries.get(j).length <= maxSegmentSize
+                    && length + entries.get(j).length <= MAX_COALESCED_WRITE_SIZE)
+                length += entries.get(j++).length;
+            byte[] buffer;
+            if (j == i + 1) {
+                buffer = entries.get(i);
+            } else {
+                buffer = new byte[(int) length];
+                int p = 0;
+                for (int k = i; k < j; k++) {
+                    System.arraycopy(entries.get(k), 0, buffer, p, entries.get(k).length);
+                    p += entries.get(k).length;
+                }
+            }
+            active.storage.write(active.size, buffer, 0, buffer.length);
+            for (int k = i; k < j; k++) {
+                byte[] e = entries.get(k);
+                ByteBuffer header = ByteBuffer.wrap(e);
+                int keyLength = header.getInt(4);
+                apply(active, keys.get(k), active.size + 8 + keyLength, header.getInt(8 + keyLength));
+                active.size += e.length;
+            }
+            i = j;
+        }
+        if (configuration.getLogSyncPolicy() == LogSyncPolicy.EVERY_OPERATION)
+            active.storage.force();
+    }
+
+    /**
+     * Rend le segment actif immuable et commence un nouveau segment. Le fichier d'indices de l'ancien segment sera écrit par {@link #writePendingHints()}.
+     * Cette fonction est appelée sous le verrou d'écriture.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void roll () throws IOException {
+        Segment previous = active;
+        if (configuration.getLogSyncPolicy() != LogSyncPolicy.NONE)
+            previous.storage.force();
+        Segment s = openSegment(((previous.id >>> 16) + 1) << 16);
+        s.startHint();
+        active = s;
+        unhintedSegments.add(previous);
+    }
+
+    /**
+     * Ecrit les fichiers d'indices des segments devenus immuables. Cette fonction est appelée sans verrou, après les modifications.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void writePendingHints () throws IOException {
+        Segment s;
+        while ((s = unhintedSegments.poll()) != null)
+            writeHint(s);
+    }
+
+    /**
+     * Ecrit le fichier d'indices d'un segment immuable, suivi du CRC32 de son contenu.
+     * Le fichier est d'abord écrit sous un nom temporaire puis renommé, si bien qu'un fichier d'indices présent est toujours complet.
+     *
+     * @param s le segment
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void writeHint (Segment s) throws IOException {
+        synchronized (s) {
+            if (s.released || s.hint == null)
+                return;
+            s.hintOut.flush();
+            byte[] data = s.hint.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            File tmp = new File(directory, s.hintFile.getName() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(data);
+                out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+                if (configuration.getLogSyncPolicy() != LogSyncPolicy.NONE)
+                    out.getFD().sync();
+            }
+            Files.move(tmp.toPath(), s.hintFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            s.hint = null;
+            s.hintOut = null;
+        }
+    }
+
+    /**
+     * Ferme puis supprime le fichier d'un segment et son fichier d'indices
+     *
+     * @param s le segment, qui ne doit plus être référencé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void deleteSegment (Segment s) throws IOException {
+        segments.remove(s.id);
+        slots.remove(s.slot);
+        synchronized (s) {
+            s.released = true;
+            s.storage.close();
+            Files.deleteIfExists(s.dataFile.toPath());
+            Files.deleteIfExists(s.hintFile.toPath());
+        }
+    }
+
+    private void ensureOpen () {
+        if (closed)
+            throw new IllegalStateException("La base est fermée");
+    }
+
+    /**
+     * Encode un objet comme le fait {@link BDD} : grâce au registre des codecs, puis en le compressant si la compression est activée
+     * et qu'il atteint {@link BDDConfiguration#getCompressionThreshold()} octets
+     *
+     * @param object l'objet
+     * @return l'enregistrement binaire
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private byte[] encode (Serializable object) throws IOException {
+        byte[] data = SerializationTools.serialize(object, codecRegistry);
+        if (configuration.isCompressionEnabled() && data.length >= configuration.getCompressionThreshold())
+            data = SerializationTools.compress(data, configuration.getCompressionLevel());
+        return data;
+    }
+
+    private Serializable decode (byte[] data) throws IOException, ClassNotFoundException {
+        return SerializationTools.deserialize(SerializationTools.decompress(data), codecRegistry);
+    }
+
+    /**
+     * Lit l'enregistrement désigné par une position du répertoire des clés. Cette fonction est appelée sous le verrou de lecture.
+     *
+     * @param pointer la position
+     * @return l'enregistrement binaire
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private byte[] readValue (long pointer) throws IOException {
+        Segment s = slots.get(slotOf(pointer));
+        long offset = offsetOf(pointer);
+        byte[] data = new byte[s.storage.readInt(offset)];
+        s.storage.read(offset + 4, data, 0, data.length);
+        return data;
+    }
+
+    /**
+     * Ajoute ou remplace un objet. L'objet est encodé sans verrou, puis son entrée est écrite à la fin du segment actif.
+     *
+     * @param objectName la clé
+     * @param object     l'objet
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public void putObject (String objectName, Serializable object) throws IOException {
+        if (objectName == null || object == null) throw new NullPointerException();
+        putAll(Collections.singletonMap(objectName, object));
+    }
+
+    /**
+     * Ajoute ou remplace un lot d'objets. Les entrées sont écrites à la suite les unes des autres, en aussi peu d'écritures que possible.
+     *
+     * @param objects les objets associés à leurs clés
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public void putAll (Map<String, ? extends Serializable> objects) throws IOException {
+        List<String> keys = new ArrayList<>(objects.size());
+        List<byte[]> entries = new ArrayList<>(objects.size());
+        for (Map.Entry<String, ? extends Serializable> e : objects.entrySet()) {
+            if (e.getKey() == null || e.getValue() == null) throw new NullPointerException();
+            keyDirectory.checkKey(e.getKey());
+            keys.add(e.getKey());
+            entries.add(encodeEntry(e.getKey().getBytes(StandardCharsets.UTF_8), encode(e.getValue())));
+        }
+        write(keys, entries);
+    }
+
+    private void write (List<String> keys, List<byte[]> entries) throws IOException {
+        if (entries.isEmpty())
+            return;
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            append(keys, entries);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        writePendingHints();
+    }
+
+    /**
+     * @param objectName la clé
+     * @return l'objet associé à la clé, ou null si la clé est absente
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si l'objet n'a pas pu être désérialisé
+     */
+    public Serializable getObject (String objectName) throws IOException, ClassNotFoundException {
+        if (objectName == null) throw new NullPointerException();
+        byte[] data = null;
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Long pointer = keyDirectory.get(objectName);
+            if (pointer != null)
+                data = readValue(pointer);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return data == null ? null : decode(data);
+    }
+
+    /**
+     * Récupère un lot d'objets. Les enregistrements sont lus dans l'ordre des segments et des positions, puis désérialisés sans verrou.
+     *
+     * @param objectNames les clés
+     * @return les objets trouvés, associés à leurs clés
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si un objet n'a pas pu être désérialisé
+     */
+    public Map<String, Serializable> getAll (Collection<String> objectNames) throws IOException, ClassNotFoundException {
+        TreeMap<Long, String> sorted = new TreeMap<>();
+        HashMap<String, byte[]> data = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            for (String name : objectNames) {
+                if (name == null) throw new NullPointerException();
+                Long pointer = keyDirectory.get(name);
+                if (pointer != null)
+                    sorted.put(pointer, name);
+            }
+            for (Map.Entry<Long, String> e : sorted.entrySet())
+                data.put(e.getValue(), readValue(e.getKey()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        HashMap<String, Serializable> res = new HashMap<>();
+        for (Map.Entry<String, byte[]> e : data.entrySet())
+            res.put(e.getKey(), decode(e.getValue()));
+        return res;
+    }
+
+    /**
+     * Supprime un objet en écrivant une entrée de suppression à la fin du segment actif
+     *
+     * @param objectName la clé
+     * @return true si l'objet a été trouvé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public boolean removeObject (String objectName) throws IOException {
+        if (objectName == null) throw new NullPointerException();
+        return removeAll(Collections.singletonList(objectName)) == 1;
+    }
+
+    /**
+     * Supprime un lot d'objets. Seules les clés présentes donnent lieu à une entrée de suppression.
+     *
+     * @param objectNames les clés
+     * @return le nombre d'objets trouvés et supprimés
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public int removeAll (Collection<String> objectNames) throws IOException {
+        List<String> keys = new ArrayList<>();
+        List<byte[]> entries = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            for (String name : objectNames) {
+                if (name == null) throw new NullPointerException();
+                if (keyDirectory.get(name) != null && !keys.contains(name)) {
+                    keys.add(name);
+                    entries.add(encodeEntry(name.getBytes(StandardCharsets.UTF_8), null));
+                }
+            }
+            append(keys, entries);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        writePendingHints();
+        return keys.size();
+    }
+
+    /**
+     * @return le nombre de clés
+     */
+    public long size () {
+        lock.readLock().lock();
+        try {
+            return keyDirectory.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return le nombre de segments, segment actif compris
+     */
+    public int getSegmentCount () {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return une estimation de la proportion des octets des segments occupés par des entrées mortes,
+     * c'est-à-dire des versions remplacées, des objets supprimés et les entrées de suppression
+     */
+    public double getFragmentation () {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            long dead = 0;
+            for (Segment s : segments.values()) {
+                total += s.size;
+                dead += s.getDeadBytes();
+            }
+            return total == 0 ? 0 : (double) dead / total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Force sur disque le segment actif
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public void checkpoint () throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            active.storage.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fusionne tous les segments immuables, après avoir rendu immuable le segment actif s'il n'est pas vide :
+     * <ol>
+     *     <li>chaque segment fusionné est parcouru séquentiellement, sans verrou ; les enregistrements encore référencés par le répertoire des clés
+     *         sont recopiés dans de nouveaux segments, dont les identifiants suivent ceux des segments fusionnés et précèdent celui du segment actif</li>
+     *     <li>par lots de {@link #MERGE_BATCH_SIZE}, sous le verrou d'écriture, les clés qui désignent toujours l'ancienne position sont reportées sur la nouvelle.
+     *         Une clé modifiée entre-temps garde sa nouvelle valeur, et la copie est comptée comme morte.</li>
+     *     <li>les nouveaux segments et leurs fichiers d'indices sont écrits, puis les segments fusionnés sont supprimés, du plus ancien au plus récent</li>
+     * </ol>
+     * Les entrées de suppression ne sont pas recopiées : tous les segments plus anciens étant fusionnés, elles ne masquent plus rien.
+     * Après un arrêt brutal pendant la fusion, les segments fusionnés puis les nouveaux segments sont rejoués à l'ouverture, ce qui donne le même résultat.
+     *
+     * @return le bilan de la fusion : enregistrements et octets recopiés, tailles totales des segments avant et après
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public CompactionStatistics compact () throws IOException {
+        synchronized (mergeMonitor) {
+            List<Segment> sources;
+            long initialLength = 0;
+            long deadEntries = 0;
+            long nextId;
+            lock.writeLock().lock();
+            try {
+                ensureOpen();
+                if (active.size > 0)
+                    roll();
+                sources = new ArrayList<>(segments.values());
+                sources.remove(active);
+                for (Segment s : segments.values())
+                    initialLength += s.size;
+                for (Segment s : sources)
+                    deadEntries += s.deadEntries;
+                nextId = sources.isEmpty() ? 0 : sources.get(sources.size() - 1).id + 1;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            writePendingHints();
+            if (deadEntries == 0)
+                return new CompactionStatistics(0, 0, initialLength, initialLength, 0);
+            long movedRecords = 0;
+            long movedBytes = 0;
+            List<Segment> outputs = new ArrayList<>();
+            List<Move> moves = new ArrayList<>();
+            Segment output = null;
+            for (Segment source : sources) {
+                try (SegmentScanner scanner = new SegmentScanner(source.dataFile, source.size)) {
+                    while (scanner.next()) {
+                        if (scanner.getValueLength() == TOMBSTONE)
+                            continue;
+                        String key = scanner.getKey();
+                        long oldPointer = pointer(source.slot, scanner.getValueOffset());
+                        if (!isLive(key, oldPointer))
+                            continue;
+                        byte[] e = scanner.getEntry();
+                        if (output == null || (output.size > 0 && output.size + e.length > configuration.getMaxSegmentSize())) {
+                            if ((nextId >>> 16) != (sources.get(sources.size() - 1).id >>> 16))
+                                throw new IOException("Trop de segments produits par la fusion");
+                            output = newMergeOutput(nextId++);
+                            outputs.add(output);
+                        }
+                        output.storage.write(output.size, e, 0, e.length);
+                        moves.add(new Move(key, oldPointer, output, output.size + 8 + scanner.getKeyLength(), scanner.getValueLength()));
+                        output.size += e.length;
+                        movedRecords++;
+                        movedBytes += e.length;
+                        if (moves.size() >= MERGE_BATCH_SIZE)
+                            commitMoves(moves);
+                    }
+                }
+            }
+            commitMoves(moves);
+            for (Segment s : outputs) {
+                if (configuration.getLogSyncPolicy() != LogSyncPolicy.NONE)
+                    s.storage.force();
+                writeHint(s);
+            }
+            long currentLength = 0;
+            long deadBytes = 0;
+            lock.writeLock().lock();
+            try {
+                for (Segment s : sources)
+                    deleteSegment(s);
+                for (Segment s : segments.values()) {
+                    currentLength += s.size;
+                    deadBytes += s.getDeadBytes();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return new CompactionStatistics(movedRecords, movedBytes, initialLength, currentLength, deadBytes);
+        }
+    }
+
+    /**
+     * Enregistrement recopié par une fusion, dont la nouvelle position n'est pas encore reportée dans le répertoire des clés
+     */
+    private static final class Move {
+        final String key;
+        final long oldPointer;
+        final Segment segment;
+        final long valueOffset;
+        final int valueLength;
+
+        Move (String key, long oldPointer, Segment segment, long valueOffset, int valueLength) {
+            this.key = key;
+            this.oldPointer = oldPointer;
+            this.segment = segment;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+    }
+
+    private boolean isLive (String key, long pointer) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Long current = keyDirectory.get(key);
+            return current != null && current == pointer;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Segment newMergeOutput (long id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Segment s = openSegment(id);
+            s.startHint();
+            return s;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reporte dans le répertoire des clés les enregistrements recopiés par une fusion, pour les clés qui désignent toujours leur ancienne position
+     *
+     * @param moves les enregistrements recopiés. La liste est vidée.
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void commitMoves (List<Move> moves) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            for (Move move : moves) {
+                record(move.segment, move.key, move.valueOffset, move.valueLength);
+                Long current = keyDirectory.get(move.key);
+                if (current != null && current == move.oldPointer)
+                    keyDirectory.put(move.key, pointer(move.segment.slot, move.valueOffset));
+                else
+                    move.segment.deadEntries++;
+            }
+            moves.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tâche de la fusion automatique : une fusion est lancée si la proportion d'octets morts atteint {@link BDDConfiguration#getCompactionThreshold()}.
+     * Une erreur est conservée pour être levée par {@link #close()}.
+     */
+    private void backgroundMerge () {
+        try {
+            if (!closed && getFragmentation() >= configuration.getCompactionThreshold())
+                compact();
+        } catch (IOException e) {
+            backgroundFailure = e;
+        } catch (IllegalStateException e) {
+            //la base a été fermée pendant la fusion
+        }
+    }
+
+    /**
+     * Tâche de {@link LogSyncPolicy#GROUP_COMMIT} : force sur disque le segment actif
+     */
+    private void backgroundSync () {
+        Segment s = active;
+        synchronized (s) {
+            if (closed || s.released)
+                return;
+            try {
+                s.storage.force();
+            } catch (IOException e) {
+                backgroundFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Arrête les tâches en arrière-plan, rend immuable le segment actif en écrivant son fichier d'indices, puis ferme les segments.
+     * Un segment actif vide est supprimé. Cette fonction peut être appelée plusieurs fois.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit, y compris lors d'une fusion automatique
+     */
+    @Override
+    public void close () throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (mergeMonitor) {
+            lock.writeLock().lock();
+            try {
+                IOException failure = backgroundFailure;
+                try {
+                    if (active.size > 0) {
+                        if (configuration.getLogSyncPolicy() != LogSyncPolicy.NONE)
+                            active.storage.force();
+                        unhintedSegments.add(active);
+                    } else {
+                        deleteSegment(active);
+                    }
+                    writePendingHints();
+                } finally {
+                    for (Segment s : new ArrayList<>(segments.values())) {
+                        synchronized (s) {
+                            s.released = true;
+                            s.storage.close();
+                        }
+                    }
+                }
+                if (failure != null)
+                    throw failure;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package bdd;
+
+/**
+ * Politique de synchronisation sur disque du journal des opérations d'une {@link BDD}.
+ *
+ * @version 1.0
+ * @see BDDConfiguration#setOperationLogEnabled(boolean)
+ */
+public enum LogSyncPolicy {
+    /**
+     * Chaque opération est écrite puis forcée sur disque avant de rendre la main.
+     * Aucune opération terminée n'est perdue, même en cas de coupure de courant, mais chaque écriture coûte un appel à fsync.
+     */
+    EVERY_OPERATION,
+    /**
+     * Les opérations sont accumulées en mémoire puis écrites et forcées sur disque ensemble,
+     * toutes les {@link BDDConfiguration#getGroupCommitDelay()} millisecondes ou toutes les {@link BDDConfiguration#getGroupCommitOperations()} opérations.
+     * Seules les opérations de la dernière fenêtre peuvent être perdues.
+     */
+    GROUP_COMMIT,
+    /**
+     * Chaque opération est transmise immédiatement au système d'exploitation, sans jamais forcer l'écriture sur disque.
+     * Les opérations survivent à un arrêt brutal du programme, mais pas à une coupure de courant.
+     */
+    NONE
+}
@@ -0,0 +1,276 @@
+package bdd;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Support physique qui projette le fichier en mémoire grâce à {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+ * <p>
+ * Le fichier est découpé en segments de taille fixe (une puissance de deux), chacun projeté par un {@link MappedByteBuffer}.
+ * Seul le dernier segment peut être partiel. Lorsque le fichier grandit, la capacité projetée est au moins doublée
+ * (sans dépasser la taille d'un segment par agrandissement) : le dernier segment partiel est alors projeté à nouveau
+ * et de nouveaux segments sont ajoutés. Les segments déjà complets ne sont jamais projetés à nouveau.
+ * <p>
+ * La taille logique du fichier ({@link #length()}) est distincte de la capacité projetée :
+ * le fichier n'est ramené à sa taille logique qu'à la fermeture grâce à {@link FileChannel#truncate(long)}.
+ * Si le processus s'arrête avant, la taille logique lue à l'ouverture comprend la fin projetée : {@link BDD} la retrouve
+ * grâce à la fin logique enregistrée avec ses métadonnées, puis la tronque. Il en va de même si le système refuse de tronquer
+ * un fichier encore projeté en mémoire à la fermeture.
+ * <p>
+ * Plusieurs fils d'exécution peuvent lire et écrire des zones différentes en même temps :
+ * seuls les agrandissements de la projection sont exclusifs, et le tableau des segments est remplacé d'un seul coup.
+ *
+ * @version 1.0
+ */
+class MappedFileStorage implements Storage {
+    /**
+     * Taille par défaut d'un segment : 64 Mo
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+    private static final long MIN_CAPACITY = 4096;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final int segmentShift;
+    private final int segmentSize;
+    private final long segmentMask;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private volatile long capacity = 0;
+    private final AtomicLong length = new AtomicLong();
+
+    MappedFileStorage (File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Projette le fichier donné. Sa taille logique initiale est sa taille sur disque.
+     *
+     * @param file        le fichier à projeter
+     * @param segmentSize la taille d'un segment, qui doit être une puissance de deux
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    MappedFileStorage (File file, int segmentSize) throws IOException {
+        if (segmentSize <= 0 || Integer.bitCount(segmentSize) != 1)
+            throw new IllegalArgumentException("La taille d'un segment doit être une puissance de deux : " + segmentSize);
+        this.segmentSize = segmentSize;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        this.segmentMask = segmentSize - 1;
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        length.set(channel.size());
+        if (length.get() > 0)
+            remap(length.get());
+    }
+
+    /**
+     * Agrandit la capacité projetée pour qu'elle contienne au moins le nombre d'octets donné en paramètre
+     *
+     * @param required la capacité minimale souhaitée
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private void ensureCapacity (long required) throws IOException {
+        if (required <= capacity) return;
+        synchronized (this) {
+            if (required <= capacity) return;
+            long grown = Math.max(MIN_CAPACITY, Math.min(capacity * 2, capacity + segmentSize));
+            remap(Math.max(required, grown));
+        }
+    }
+
+    /**
+     * Projette le fichier jusqu'à la capacité donnée. Le fichier est agrandi par {@link FileChannel#map} si nécessaire.
+     *
+     * @param newCapacity la nouvelle capacité
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private synchronized void remap (long newCapacity) throws IOException {
+        int count = (int) ((newCapacity + segmentSize - 1) >>> segmentShift);
+        MappedByteBuffer[] newSegments = Arrays.copyOf(segments, count);
+        int first = segments.length;
+        if (first > 0 && segments[first - 1].capacity() < segmentSize)
+            first--;
+        for (int i = first; i < count; i++) {
+            long start = (long) i << segmentShift;
+            newSegments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(segmentSize, newCapacity - start));
+        }
+        segments = newSegments;
+        capacity = newCapacity;
+    }
+
+    private void checkReadable (long pos, int size) throws IOException {
+        if (pos < 0 || pos + size > length.get())
+            throw new EOFException();
+    }
+
+    private MappedByteBuffer segment (long pos) {
+        return segments[(int) (pos >>> segmentShift)];
+    }
+
+    @Override
+    public long length () {
+        return length.get();
+    }
+
+    @Override
+    public void setLength (long newLength) throws IOException {
+        if (newLength < 0) throw new IllegalArgumentException();
+        ensureCapacity(newLength);
+        length.set(newLength);
+    }
+
+    @Override
+    public int readInt (long pos) throws IOException {
+        checkReadable(pos, 4);
+        int offset = (int) (pos & segmentMask);
+        MappedByteBuffer segment = segment(pos);
+        if (offset + 4 <= segment.capacity())
+            return segment.getInt(offset);
+        byte[] tab = new byte[4];
+        read(pos, tab, 0, 4);
+        return ByteBuffer.wrap(tab).getInt();
+    }
+
+    @Override
+    public long readLong (long pos) throws IOException {
+        checkReadable(pos, 8);
+        int offset = (int) (pos & segmentMask);
+        MappedByteBuffer segment = segment(pos);
+        if (offset + 8 <= segment.capacity())
+            return segment.getLong(offset);
+        byte[] tab = new byte[8];
+        read(pos, tab, 0, 8);
+        return ByteBuffer.wrap(tab).getLong();
+    }
+
+    @Override
+    public void read (long pos, byte[] dst, int offset, int length) throws IOException {
+        checkReadable(pos, length);
+        while (length > 0) {
+            ByteBuffer segment = segment(pos).duplicate();
+            segment.position((int) (pos & segmentMask));
+            int n = Math.min(length, segment.remaining());
+            segment.get(dst, offset, n);
+            pos += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void read (long pos, ByteBuffer dst) throws IOException {
+        checkReadable(pos, dst.remaining());
+        while (dst.hasRemaining()) {
+            ByteBuffer segment = segment(pos).duplicate();
+            segment.position((int) (pos & segmentMask));
+            if (segment.remaining() > dst.remaining())
+                segment.limit(segment.position() + dst.remaining());
+            pos += segment.remaining();
+            dst.put(segment);
+        }
+    }
+
+    /**
+     * Les octets sont écrits dans le canal directement depuis les segments projetés, sans passer par un tableau intermédiaire
+     */
+    @Override
+    public void transferTo (long pos, long count, WritableByteChannel target) throws IOException {
+        if (pos < 0 || pos + count > length.get())
+            throw new EOFException();
+        while (count > 0) {
+            ByteBuffer segment = segment(pos).duplicate();
+            segment.position((int) (pos & segmentMask));
+            if (segment.remaining() > count)
+                segment.limit(segment.position() + (int) count);
+            long n = segment.remaining();
+            while (segment.hasRemaining())
+                target.write(segment);
+            pos += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public void writeInt (long pos, int value) throws IOException {
+        int offset = (int) (pos & segmentMask);
+        ensureCapacity(pos + 4);
+        MappedByteBuffer segment = segment(pos);
+        if (offset + 4 <= segment.capacity()) {
+            segment.putInt(offset, value);
+            extendLength(pos + 4);
+        } else {
+            write(pos, ByteBuffer.allocate(4).putInt(value).array(), 0, 4);
+        }
+    }
+
+    @Override
+    public void writeLong (long pos, long value) throws IOException {
+        int offset = (int) (pos & segmentMask);
+        ensureCapacity(pos + 8);
+        MappedByteBuffer segment = segment(pos);
+        if (offset + 8 <= segment.capacity()) {
+            segment.putLong(offset, value);
+            extendLength(pos + 8);
+        } else {
+            write(pos, ByteBuffer.allocate(8).putLong(value).array(), 0, 8);
+        }
+    }
+
+    @Override
+    public void write (long pos, byte[] src, int offset, int length) throws IOException {
+        if (pos < 0) throw new IllegalArgumentException();
+        long end = pos + length;
+        ensureCapacity(end);
+        while (length > 0) {
+            ByteBuffer segment = segment(pos).duplicate();
+            segment.position((int) (pos & segmentMask));
+            int n = Math.min(length, segment.remaining());
+            segment.put(src, offset, n);
+            pos += n;
+            offset += n;
+            length -= n;
+        }
+        extendLength(end);
+    }
+
+    private void extendLength (long end) {
+        length.accumulateAndGet(end, Math::max);
+    }
+
+    @Override
+    public void force () {
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+    }
+
+    /**
+     * Ecrit les segments sur disque, puis ramène le fichier à sa taille logique
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    @Override
+    public void close () throws IOException {
+        try {
+            force();
+            segments = new MappedByteBuffer[0];
+            if (channel.size() > length.get()) {
+                try {
+                    channel.truncate(length.get());
+                } catch (IOException ignored) {
+                    //certains systèmes refusent de tronquer un fichier encore projeté en mémoire.
+                    //Les octets au delà de la taille logique ne sont alors référencés par aucun enregistrement,
+                    //et BDD les récupère puis tronque le fichier à la prochaine ouverture.
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+}
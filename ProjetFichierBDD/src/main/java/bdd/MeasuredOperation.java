@@ -0,0 +1,54 @@
+package bdd;
+
+/**
+ * Opérations d'une {@link BDD} dont la durée est mesurée lorsque les métriques sont activées
+ * ({@link BDDConfiguration#setMetricsEnabled(boolean)}).
+ *
+ * @version 1.0
+ */
+public enum MeasuredOperation {
+    /**
+     * {@link BDD#putObject(String, java.io.Serializable)} et {@link BDD#putBytes(String, java.nio.ByteBuffer)}, encodage compris
+     */
+    PUT,
+    /**
+     * {@link BDD#getObject(String)}, décodage compris
+     */
+    GET,
+    /**
+     * {@link BDD#removeObject(String)}
+     */
+    REMOVE,
+    /**
+     * {@link BDD#putAll(java.util.Map)}, pour tout le lot
+     */
+    PUT_ALL,
+    /**
+     * {@link BDD#getAll(java.util.Collection)}, pour tout le lot
+     */
+    GET_ALL,
+    /**
+     * {@link BDD#removeAll(java.util.Collection)}, pour tout le lot
+     */
+    REMOVE_ALL,
+    /**
+     * {@link Transaction#commit()}, pour toute la transaction
+     */
+    COMMIT,
+    /**
+     * {@link BDD#flush()}, pour toutes les modifications en attente dans le tampon d'écriture différée
+     */
+    FLUSH,
+    /**
+     * Sauvegarde des métadonnées, par {@link BDD#checkpoint()} ou automatiquement
+     */
+    CHECKPOINT,
+    /**
+     * Encodage d'un objet par {@link SerializationTools}, compression comprise
+     */
+    SERIALIZE,
+    /**
+     * Décodage d'un enregistrement par {@link SerializationTools}, décompression comprise
+     */
+    DESERIALIZE
+}
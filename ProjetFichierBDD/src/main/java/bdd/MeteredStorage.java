@@ -0,0 +1,92 @@
+package bdd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Support qui compte les octets lus et écrits par un autre support, pour les {@link Metrics} d'une {@link BDD}.
+ * Il n'est placé devant le support du fichier que si les métriques sont activées.
+ *
+ * @version 1.0
+ */
+class MeteredStorage implements Storage {
+    private final Storage storage;
+    private final Metrics metrics;
+
+    MeteredStorage (Storage storage, Metrics metrics) {
+        this.storage = storage;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long length () throws IOException {
+        return storage.length();
+    }
+
+    @Override
+    public void setLength (long newLength) throws IOException {
+        storage.setLength(newLength);
+    }
+
+    @Override
+    public int readInt (long pos) throws IOException {
+        int res = storage.readInt(pos);
+        metrics.read(4);
+        return res;
+    }
+
+    @Override
+    public long readLong (long pos) throws IOException {
+        long res = storage.readLong(pos);
+        metrics.read(8);
+        return res;
+    }
+
+    @Override
+    public void read (long pos, byte[] dst, int offset, int length) throws IOException {
+        storage.read(pos, dst, offset, length);
+        metrics.read(length);
+    }
+
+    @Override
+    public void read (long pos, ByteBuffer dst) throws IOException {
+        int length = dst.remaining();
+        storage.read(pos, dst);
+        metrics.read(length);
+    }
+
+    @Override
+    public void transferTo (long pos, long count, WritableByteChannel target) throws IOException {
+        storage.transferTo(pos, count, target);
+        metrics.read(count);
+    }
+
+    @Override
+    public void writeInt (long pos, int value) throws IOException {
+        storage.writeInt(pos, value);
+        metrics.written(4);
+    }
+
+    @Override
+    public void writeLong (long pos, long value) throws IOException {
+        storage.writeLong(pos, value);
+        metrics.written(8);
+    }
+
+    @Override
+    public void write (long pos, byte[] src, int offset, int length) throws IOException {
+        storage.write(pos, src, offset, length);
+        metrics.written(length);
+    }
+
+    @Override
+    public void force () throws IOException {
+        storage.force();
+    }
+
+    @Override
+    public void close () throws IOException {
+        storage.close();
+    }
+}
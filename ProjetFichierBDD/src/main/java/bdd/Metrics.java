@@ -0,0 +1,86 @@
+package bdd;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs d'une {@link BDD} dont les métriques sont activées. Tous les compteurs peuvent être alimentés par plusieurs fils d'exécution sans verrou.
+ * Lorsque les métriques sont désactivées, la BDD ne crée pas d'instance de cette classe et ne mesure aucune durée.
+ *
+ * @version 1.0
+ */
+class Metrics {
+    private final EnumMap<MeasuredOperation, LatencyHistogram> latencies = new EnumMap<>(MeasuredOperation.class);
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder allocationsInFreeSpace = new LongAdder();
+    private final LongAdder allocationsAtEnd = new LongAdder();
+    private final LongAdder inPlaceUpdates = new LongAdder();
+
+    Metrics () {
+        for (MeasuredOperation operation : MeasuredOperation.values())
+            latencies.put(operation, new LatencyHistogram());
+    }
+
+    /**
+     * Enregistre la durée d'une opération
+     *
+     * @param operation l'opération
+     * @param start     l'instant du début de l'opération, donné par {@link System#nanoTime()}
+     */
+    void record (MeasuredOperation operation, long start) {
+        latencies.get(operation).record(System.nanoTime() - start);
+    }
+
+    void read (long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    void written (long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * @param inFreeSpace true si la zone a été trouvée parmi les zones libres, false si elle a été ajoutée en fin de fichier
+     */
+    void allocated (boolean inFreeSpace) {
+        (inFreeSpace ? allocationsInFreeSpace : allocationsAtEnd).increment();
+    }
+
+    /**
+     * Compte un enregistrement réécrit dans sa propre zone, sans allocation
+     */
+    void updatedInPlace () {
+        inPlaceUpdates.increment();
+    }
+
+    long getBytesRead () {
+        return bytesRead.sum();
+    }
+
+    long getBytesWritten () {
+        return bytesWritten.sum();
+    }
+
+    long getAllocationsInFreeSpace () {
+        return allocationsInFreeSpace.sum();
+    }
+
+    long getAllocationsAtEnd () {
+        return allocationsAtEnd.sum();
+    }
+
+    long getInPlaceUpdates () {
+        return inPlaceUpdates.sum();
+    }
+
+    /**
+     * @return une photographie des durées de chaque opération
+     */
+    EnumMap<MeasuredOperation, LatencyStatistics> getLatencies () {
+        EnumMap<MeasuredOperation, LatencyStatistics> res = new EnumMap<>(MeasuredOperation.class);
+        for (MeasuredOperation operation : MeasuredOperation.values())
+            res.put(operation, latencies.get(operation).getStatistics());
+        return res;
+    }
+}
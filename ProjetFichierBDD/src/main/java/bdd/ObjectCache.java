@@ -0,0 +1,163 @@
+package bdd;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache des objets désérialisés par {@link BDD#getObject(String)}, placé devant la lecture et la désérialisation.
+ * <p>
+ * Les entrées sont évincées dans l'ordre du moins récemment utilisé (LRU), grâce à un {@link LinkedHashMap} trié par ordre d'accès.
+ * Le cache est borné par un nombre d'entrées et/ou par une estimation du nombre d'octets occupés.
+ * Cette estimation correspond à la taille de l'enregistrement sérialisé, qui est connue sans coût supplémentaire.
+ * <p>
+ * Les objets sont désérialisés sans verrou, si bien qu'un ajout concurrent peut remplacer la clé entre la lecture et l'insertion dans le cache.
+ * Pour qu'une ancienne valeur ne puisse jamais être insérée, le lecteur relève le nombre d'invalidations ({@link #getInvalidationCount()})
+ * en même temps qu'il lit l'enregistrement, et l'insertion est abandonnée si une invalidation a eu lieu entre temps.
+ * Chaque entrée retient aussi la position de son enregistrement, qui doit correspondre à celle de la clé pour que l'entrée soit rendue.
+ * <p>
+ * Deux politiques sont possibles :
+ * <ul>
+ *     <li>instances partagées : l'objet désérialisé est conservé et rendu tel quel à chaque appel.
+ *         Il ne doit alors pas être modifié par l'appelant. C'est la seule politique qui évite toute désérialisation.</li>
+ *     <li>copies défensives (par défaut) : l'enregistrement binaire est conservé et désérialisé à chaque appel,
+ *         si bien que chaque appelant obtient sa propre copie. Seule la lecture du fichier et le verrou sont évités.</li>
+ * </ul>
+ *
+ * @version 1.0
+ */
+class ObjectCache {
+    private static final class Entry {
+        private final long position;
+        private final int weight;
+        private final Object value;
+
+        private Entry (long position, int weight, Object value) {
+            this.position = position;
+            this.weight = weight;
+            this.value = value;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final boolean sharedInstances;
+    private final CodecRegistry codecRegistry;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+    private long invalidationCount = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * @param maxEntries      le nombre maximal d'entrées, ou 0 pour ne pas borner le nombre d'entrées
+     * @param maxWeight       le nombre maximal d'octets estimés, ou 0 pour ne pas borner la taille
+     * @param sharedInstances true pour conserver et partager les objets désérialisés, false pour rendre des copies défensives
+     * @param codecRegistry   le registre des codecs utilisé pour décoder les copies défensives
+     */
+    ObjectCache (int maxEntries, long maxWeight, boolean sharedInstances, CodecRegistry codecRegistry) {
+        if (maxEntries < 0 || maxWeight < 0 || (maxEntries == 0 && maxWeight == 0))
+            throw new IllegalArgumentException();
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.sharedInstances = sharedInstances;
+        this.codecRegistry = codecRegistry;
+    }
+
+    /**
+     * Cherche l'entrée associée à la clé donnée, et la considère comme la plus récemment utilisée
+     *
+     * @param key      la clé de l'objet
+     * @param position la position actuelle de l'enregistrement associé à la clé
+     * @return l'objet mis en cache, ou l'enregistrement binaire s'il s'agit de copies défensives, ou null si l'entrée est absente ou périmée
+     */
+    synchronized Object get (String key, long position) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.position != position) {
+            ++missCount;
+            return null;
+        }
+        ++hitCount;
+        return entry.value;
+    }
+
+    /**
+     * Transforme une valeur rendue par {@link #get(String, long)} en objet à retourner à l'appelant
+     *
+     * @param cached  la valeur rendue par le cache
+     * @param buffers les tampons du fil courant
+     * @return l'objet partagé, ou une nouvelle copie désérialisée
+     * @throws IOException            si la désérialisation se passe mal
+     * @throws ClassNotFoundException si la classe de l'objet est introuvable
+     */
+    Serializable toObject (Object cached, BufferPool buffers) throws IOException, ClassNotFoundException {
+        if (sharedInstances)
+            return (Serializable) cached;
+        byte[] data = (byte[]) cached;
+        return SerializationTools.deserialize(data, data.length, codecRegistry, buffers);
+    }
+
+    /**
+     * Ajoute l'objet lu à la position donnée, puis évince les entrées les moins récemment utilisées tant que les bornes sont dépassées.
+     * Un enregistrement plus grand que la taille maximale n'est pas mis en cache.
+     *
+     * @param key               la clé de l'objet
+     * @param position          la position de l'enregistrement lu
+     * @param data              l'enregistrement binaire lu, copié s'il doit être conservé
+     * @param length            le nombre d'octets de l'enregistrement, au début de data
+     * @param object            l'objet désérialisé à partir de data
+     * @param invalidationCount le nombre d'invalidations relevé au moment de la lecture de l'enregistrement
+     */
+    synchronized void put (String key, long position, byte[] data, int length, Serializable object, long invalidationCount) {
+        if (invalidationCount != this.invalidationCount || (maxWeight > 0 && length > maxWeight))
+            return;
+        Entry previous = entries.put(key, new Entry(position, length, sharedInstances ? object : Arrays.copyOf(data, length)));
+        if (previous != null)
+            weight -= previous.weight;
+        weight += length;
+        Iterator<Entry> it = entries.values().iterator();
+        while ((maxEntries > 0 && entries.size() > maxEntries) || (maxWeight > 0 && weight > maxWeight)) {
+            weight -= it.next().weight;
+            it.remove();
+            ++evictionCount;
+        }
+    }
+
+    /**
+     * Retire l'entrée associée à la clé donnée. Cette fonction est appelée à chaque ajout et à chaque suppression.
+     *
+     * @param key la clé de l'objet
+     */
+    synchronized void invalidate (String key) {
+        ++invalidationCount;
+        Entry entry = entries.remove(key);
+        if (entry != null)
+            weight -= entry.weight;
+    }
+
+    /**
+     * @return le nombre d'invalidations effectuées depuis la création du cache
+     */
+    synchronized long getInvalidationCount () {
+        return invalidationCount;
+    }
+
+    /**
+     * Vide le cache, sans remettre les compteurs à zéro
+     */
+    synchronized void clear () {
+        ++invalidationCount;
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return une photographie des compteurs du cache
+     */
+    synchronized CacheStatistics getStatistics () {
+        return new CacheStatistics(hitCount, missCount, evictionCount, entries.size(), weight);
+    }
+}
@@ -0,0 +1,527 @@
+package bdd;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Journal des opérations d'une {@link BDD}, enregistré dans un fichier placé à côté du fichier de la BDD (voir {@link #getLogFile(File)}).
+ * <p>
+ * Le journal est un fichier en ajout seul. Chaque entrée a la forme suivante :
+ * <ul>
+ *     <li>un entier donnant la taille du contenu de l'entrée</li>
+ *     <li>le contenu, qui commence par un octet donnant le type de l'entrée ({@link #PUT}, {@link #REMOVE}, {@link #FREE}, {@link #CHECKPOINT} ou {@link #TRANSACTION})</li>
+ *     <li>un entier contenant le CRC32 du contenu, qui permet de détecter une entrée incomplète après un arrêt brutal</li>
+ * </ul>
+ * Les entrées décrivent les modifications effectuées depuis la dernière sauvegarde des métadonnées.
+ * A l'ouverture, elles sont rejouées à partir de la dernière entrée {@link #CHECKPOINT} grâce à {@link #replay(File, Visitor)},
+ * puis les métadonnées sont sauvegardées et le journal est vidé.
+ * <p>
+ * Avant chaque synchronisation du journal sur disque, le fichier de la BDD est lui aussi synchronisé,
+ * si bien qu'une entrée présente sur disque ne référence jamais des données absentes du disque.
+ * La politique de synchronisation est donnée par {@link LogSyncPolicy}.
+ *
+ * @version 1.0
+ */
+class OperationLog implements AutoCloseable {
+    private static final int MAGIC = 0x42444C47;
+    private static final int HEADER_SIZE = 4;
+
+    /**
+     * Une clé est associée à un enregistrement : contenu = clé, position, taille de la zone occupée
+     */
+    static final byte PUT = 1;
+    /**
+     * Une clé est supprimée : contenu = clé
+     */
+    static final byte REMOVE = 2;
+    /**
+     * Une zone du fichier est libérée : contenu = position, taille de la zone
+     */
+    static final byte FREE = 3;
+    /**
+     * Les métadonnées ont été sauvegardées : contenu = position des liens, position du tableau des espaces libres.
+     * Les entrées qui précèdent sont incluses dans cette sauvegarde.
+     */
+    static final byte CHECKPOINT = 4;
+    /**
+     * Les opérations d'une transaction : contenu = nombre d'opérations, puis chaque opération {@link #PUT}, {@link #REMOVE} ou {@link #FREE}
+     * avec son type et son contenu. Protégées par un seul CRC, elles sont relues toutes ensemble ou pas du tout.
+     */
+    static final byte TRANSACTION = 5;
+
+    /**
+     * Receveur des entrées du journal lors de leur relecture
+     */
+    interface Visitor {
+        void put (String key, long position, long length) throws IOException;
+
+        void remove (String key) throws IOException;
+
+        void free (long position, long length) throws IOException;
+
+        void checkpoint (long linksPosition, long spaceTabPosition) throws IOException, ClassNotFoundException;
+    }
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final Storage storage;
+    private final LogSyncPolicy syncPolicy;
+    private final int groupCommitOperations;
+    private final ScheduledExecutorService groupCommitScheduler;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+    private final DataOutputStream entryOutput = new DataOutputStream(entry);
+    private final CRC32 crc = new CRC32();
+    private long size = HEADER_SIZE;
+    private long appendedSequence = 0;
+    private volatile long durableSequence = 0;
+    private int unsyncedOperations = 0;
+    private int batchDepth = 0;
+    private final ByteArrayOutputStream transaction = new ByteArrayOutputStream();
+    private int transactionOperations = -1;
+    private IOException syncFailure = null;
+
+    /**
+     * @param dataFile le fichier de la BDD
+     * @return le fichier du journal associé
+     */
+    static File getLogFile (File dataFile) {
+        return new File(dataFile.getPath() + ".log");
+    }
+
+    /**
+     * Crée un journal vide. Un éventuel journal existant doit avoir été rejoué auparavant.
+     *
+     * @param file          le fichier du journal
+     * @param storage       le support de la BDD, synchronisé avant chaque synchronisation du journal
+     * @param configuration la configuration de la BDD
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    OperationLog (File file, Storage storage, BDDConfiguration configuration) throws IOException {
+        this.file = file;
+        this.storage = storage;
+        this.syncPolicy = configuration.getLogSyncPolicy();
+        this.groupCommitOperations = configuration.getGroupCommitOperations();
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        writeHeader();
+        if (syncPolicy == LogSyncPolicy.GROUP_COMMIT) {
+            groupCommitScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "BDD group commit " + file.getName());
+                t.setDaemon(true);
+                return t;
+            });
+            long delay = configuration.getGroupCommitDelay();
+            groupCommitScheduler.scheduleWithFixedDelay(this::backgroundSync, delay, delay, TimeUnit.MILLISECONDS);
+        } else {
+            groupCommitScheduler = null;
+        }
+    }
+
+    private void writeHeader () throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+        header.flip();
+        while (header.hasRemaining())
+            channel.write(header, HEADER_SIZE - header.remaining());
+        channel.force(false);
+        size = HEADER_SIZE;
+    }
+
+    /**
+     * Relit les entrées du journal donné en paramètre, dans l'ordre où elles ont été ajoutées.
+     * La lecture s'arrête à la première entrée incomplète ou corrompue.
+     * <p>
+     * Les entrées qui précèdent la dernière entrée {@link #CHECKPOINT} sont incluses dans la sauvegarde qu'elle désigne : elles sont ignorées,
+     * et la relecture commence par cette entrée. La relecture peut ainsi être recommencée sans risque si un arrêt brutal se produit
+     * après l'écriture des références aux métadonnées en début de fichier, mais avant que le journal ne soit vidé.
+     *
+     * @param file    le fichier du journal
+     * @param visitor le receveur des entrées
+     * @return le nombre d'entrées relues
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si la relecture d'une sauvegarde des métadonnées se passe mal
+     */
+    static int replay (File file, Visitor visitor) throws IOException, ClassNotFoundException {
+        long[] bounds = scan(file);
+        if (bounds == null)
+            return 0;
+        int count = 0;
+        try (FileInputStream fin = new FileInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fin))) {
+            fin.getChannel().position(bounds[1]);
+            CRC32 crc = new CRC32();
+            long position = bounds[1];
+            while (position < bounds[0]) {
+                byte[] content = readEntry(in, file.length(), crc);
+                position += content.length + 8;
+                DataInputStream entry = new DataInputStream(new ByteArrayInputStream(content));
+                byte type = entry.readByte();
+                if (type == TRANSACTION) {
+                    for (int i = entry.readInt(); i > 0; i--)
+                        visit(entry.readByte(), entry, visitor);
+                } else {
+                    visit(type, entry, visitor);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Parcourt les entrées valides du journal donné
+     *
+     * @param file le fichier du journal
+     * @return la position de la fin de la dernière entrée valide, puis celle de la dernière entrée {@link #CHECKPOINT} valide,
+     * ou de la première entrée s'il n'y en a pas ; null si le fichier n'est pas un journal
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private static long[] scan (File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (file.length() < HEADER_SIZE || in.readInt() != MAGIC)
+                return null;
+            CRC32 crc = new CRC32();
+            long end = HEADER_SIZE;
+            long checkpoint = HEADER_SIZE;
+            byte[] content;
+            while ((content = readEntry(in, file.length(), crc)) != null) {
+                if (content[0] == CHECKPOINT)
+                    checkpoint = end;
+                end += content.length + 8;
+            }
+            return new long[]{end, checkpoint};
+        }
+    }
+
+    /**
+     * @param in         le flux du journal, placé au début d'une entrée
+     * @param fileLength la taille du fichier du journal
+     * @param crc        le calculateur de CRC32 à utiliser
+     * @return le contenu de l'entrée, ou null si elle est incomplète ou corrompue
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    private static byte[] readEntry (DataInputStream in, long fileLength, CRC32 crc) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > fileLength)
+                return null;
+            byte[] content = new byte[length];
+            in.readFully(content);
+            crc.reset();
+            crc.update(content, 0, length);
+            return in.readInt() == (int) crc.getValue() ? content : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ajoute une entrée {@link #CHECKPOINT} à la fin d'un journal qui vient d'être rejoué, sans le vider, puis le synchronise.
+     * Les octets qui suivent la dernière entrée valide sont supprimés. Si un arrêt brutal se produit ensuite, avant que le journal ne soit vidé,
+     * la relecture suivante commence par cette entrée au lieu de rejouer les entrées déjà incluses dans la sauvegarde.
+     *
+     * @param file             le fichier du journal
+     * @param linksPosition    la position des liens sauvegardés
+     * @param spaceTabPosition la position du tableau des espaces libres sauvegardé
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si le fichier n'est pas un journal
+     */
+    static void appendCheckpoint (File file, long linksPosition, long spaceTabPosition) throws IOException {
+        long[] bounds = scan(file);
+        if (bounds == null)
+            throw new IOException("Le fichier " + file + " n'est pas un journal des opérations");
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(content);
+        out.writeByte(CHECKPOINT);
+        out.writeLong(linksPosition);
+        out.writeLong(spaceTabPosition);
+        CRC32 crc = new CRC32();
+        crc.update(content.toByteArray(), 0, content.size());
+        ByteBuffer entry = ByteBuffer.allocate(content.size() + 8);
+        entry.putInt(content.size()).put(content.toByteArray()).putInt((int) crc.getValue());
+        entry.flip();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            channel.truncate(bounds[0]);
+            long pos = bounds[0];
+            while (entry.hasRemaining())
+                pos += channel.write(entry, pos);
+            channel.force(false);
+        }
+    }
+
+    private static void visit (byte type, DataInputStream entry, Visitor visitor) throws IOException, ClassNotFoundException {
+        switch (type) {
+            case PUT:
+                visitor.put(readKey(entry), entry.readLong(), entry.readLong());
+                break;
+            case REMOVE:
+                visitor.remove(readKey(entry));
+                break;
+            case FREE:
+                visitor.free(entry.readLong(), entry.readLong());
+                break;
+            case CHECKPOINT:
+                visitor.checkpoint(entry.readLong(), entry.readLong());
+                break;
+            default:
+                throw new IOException("Entrée de journal inconnue");
+        }
+    }
+
+    private static String readKey (DataInputStream in) throws IOException {
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private void writeKey (String key) throws IOException {
+        byte[] tab = key.getBytes(StandardCharsets.UTF_8);
+        entryOutput.writeInt(tab.length);
+        entryOutput.write(tab);
+    }
+
+    /**
+     * Ajoute une entrée {@link #PUT}
+     *
+     * @param key      la clé
+     * @param position la position de l'enregistrement
+     * @param length   la taille de la zone occupée par l'enregistrement
+     * @return le numéro de séquence de l'entrée
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    synchronized long put (String key, long position, long length) throws IOException {
+        entryOutput.writeByte(PUT);
+        writeKey(key);
+        entryOutput.writeLong(position);
+        entryOutput.writeLong(length);
+        return append();
+    }
+
+    /**
+     * Ajoute une entrée {@link #REMOVE}
+     *
+     * @param key la clé supprimée
+     * @return le numéro de séquence de l'entrée
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    synchronized long remove (String key) throws IOException {
+        entryOutput.writeByte(REMOVE);
+        writeKey(key);
+        return append();
+    }
+
+    /**
+     * Ajoute une entrée {@link #FREE}
+     *
+     * @param position la position de la zone libérée
+     * @param length   la taille de la zone libérée
+     * @return le numéro de séquence de l'entrée
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    synchronized long free (long position, long length) throws IOException {
+        entryOutput.writeByte(FREE);
+        entryOutput.writeLong(position);
+        entryOutput.writeLong(length);
+        return append();
+    }
+
+    /**
+     * Ajoute une entrée {@link #CHECKPOINT}, puis synchronise le journal quelle que soit la politique de synchronisation.
+     * Une fois cette fonction terminée, la sauvegarde des métadonnées est acquise, même si les références en début de fichier ne sont pas encore écrites.
+     *
+     * @param linksPosition    la position des liens sauvegardés
+     * @param spaceTabPosition la position du tableau des espaces libres sauvegardé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    synchronized void checkpoint (long linksPosition, long spaceTabPosition) throws IOException {
+        entryOutput.writeByte(CHECKPOINT);
+        entryOutput.writeLong(linksPosition);
+        entryOutput.writeLong(spaceTabPosition);
+        encode();
+        sync();
+    }
+
+    private void encode () throws IOException {
+        crc.reset();
+        crc.update(entry.toByteArray(), 0, entry.size());
+        DataOutputStream out = new DataOutputStream(pending);
+        out.writeInt(entry.size());
+        entry.writeTo(out);
+        out.writeInt((int) crc.getValue());
+        size += entry.size() + 8;
+        entry.reset();
+        appendedSequence++;
+    }
+
+    private long append () throws IOException {
+        if (syncFailure != null)
+            throw syncFailure;
+        if (transactionOperations >= 0) {
+            entry.writeTo(transaction);
+            entry.reset();
+            transactionOperations++;
+            return appendedSequence + 1;
+        }
+        encode();
+        switch (syncPolicy) {
+            case EVERY_OPERATION:
+                if (batchDepth == 0)
+                    sync();
+                break;
+            case GROUP_COMMIT:
+                if (++unsyncedOperations >= groupCommitOperations)
+                    sync();
+                break;
+            case NONE:
+                writePending();
+                durableSequence = appendedSequence;
+                break;
+        }
+        return appendedSequence;
+    }
+
+    /**
+     * Commence un lot d'opérations : avec {@link LogSyncPolicy#EVERY_OPERATION}, les entrées ajoutées jusqu'à l'appel
+     * de {@link #endBatch()} ne sont synchronisées qu'une seule fois, à la fin du lot.
+     */
+    synchronized void beginBatch () {
+        batchDepth++;
+    }
+
+    /**
+     * Termine un lot d'opérations commencé par {@link #beginBatch()}, et synchronise ses entrées avec {@link LogSyncPolicy#EVERY_OPERATION}
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    synchronized void endBatch () throws IOException {
+        if (--batchDepth == 0 && syncPolicy == LogSyncPolicy.EVERY_OPERATION)
+            sync();
+    }
+
+    /**
+     * Commence une transaction : les entrées {@link #PUT}, {@link #REMOVE} et {@link #FREE} ajoutées jusqu'à l'appel de {@link #endTransaction()}
+     * sont regroupées dans une seule entrée {@link #TRANSACTION}. Le numéro de séquence retourné pour chacune d'elles est celui de cette entrée.
+     */
+    synchronized void beginTransaction () {
+        if (transactionOperations >= 0)
+            throw new IllegalStateException();
+        transactionOperations = 0;
+    }
+
+    /**
+     * Termine une transaction commencée par {@link #beginTransaction()} en ajoutant son entrée {@link #TRANSACTION}, synchronisée selon la politique du journal
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    synchronized void endTransaction () throws IOException {
+        int operations = transactionOperations;
+        transactionOperations = -1;
+        if (operations > 0) {
+            entryOutput.writeByte(TRANSACTION);
+            entryOutput.writeInt(operations);
+            transaction.writeTo(entryOutput);
+            transaction.reset();
+            append();
+        }
+    }
+
+    private void writePending () throws IOException {
+        if (pending.size() > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+            long pos = channel.size();
+            while (buffer.hasRemaining())
+                pos += channel.write(buffer, pos);
+            pending.reset();
+        }
+    }
+
+    /**
+     * Ecrit les entrées en attente et force leur écriture sur disque, après avoir forcé l'écriture du fichier de la BDD.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    synchronized void sync () throws IOException {
+        if (syncFailure != null)
+            throw syncFailure;
+        if (durableSequence == appendedSequence)
+            return;
+        storage.force();
+        writePending();
+        channel.force(false);
+        durableSequence = appendedSequence;
+        unsyncedOperations = 0;
+    }
+
+    private synchronized void backgroundSync () {
+        try {
+            if (channel.isOpen())
+                sync();
+        } catch (IOException e) {
+            syncFailure = e;
+        }
+    }
+
+    /**
+     * Vide le journal, après une sauvegarde complète des métadonnées
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    synchronized void reset () throws IOException {
+        pending.reset();
+        writeHeader();
+        durableSequence = appendedSequence;
+        unsyncedOperations = 0;
+    }
+
+    /**
+     * @return le numéro de séquence de la dernière entrée ajoutée
+     */
+    synchronized long getAppendedSequence () {
+        return appendedSequence;
+    }
+
+    /**
+     * @return le numéro de séquence de la dernière entrée qui ne peut plus être perdue par la BDD
+     */
+    long getDurableSequence () {
+        return durableSequence;
+    }
+
+    /**
+     * @return la taille du journal en octets, entrées en attente comprises
+     */
+    synchronized long size () {
+        return size;
+    }
+
+    /**
+     * Ferme le journal et supprime son fichier. Le journal doit avoir été vidé par {@link #reset()} auparavant.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    @Override
+    public void close () throws IOException {
+        if (groupCommitScheduler != null) {
+            groupCommitScheduler.shutdown();
+            try {
+                groupCommitScheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            boolean empty = size == HEADER_SIZE && pending.size() == 0;
+            raf.close();
+            if (empty && !file.delete())
+                throw new IOException("Impossible de supprimer le journal " + file);
+        }
+    }
+}
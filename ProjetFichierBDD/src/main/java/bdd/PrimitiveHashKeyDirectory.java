@@ -0,0 +1,444 @@
+package bdd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Répertoire des clés conservé en mémoire dans une table de hachage à adressage ouvert, faite uniquement de tableaux primitifs.
+ * <p>
+ * Une entrée occupe une case de trois tableaux : l'empreinte de la clé (int), la référence de la clé (long) et la position de l'enregistrement (long).
+ * Les octets UTF-8 des clés sont rangés les uns à la suite des autres dans des pages de 64 Ko ({@link KeyArena}), précédés de leur taille.
+ * Aucun objet n'est donc créé par clé : le ramasse-miettes ne voit que quelques grands tableaux, et une clé ne coûte que ses octets
+ * et de 27 à 40 octets de table selon le remplissage, au lieu d'une centaine pour un {@link java.util.HashMap}.
+ * <p>
+ * Les collisions sont résolues par sondage linéaire, et une suppression laisse une marque ({@link #DELETED}) pour ne pas rompre les séquences de sondage.
+ * Lorsque les cases occupées ou marquées atteignent les trois quarts de la table, une nouvelle table est créée, mais les entrées n'y sont pas toutes recopiées
+ * d'un coup : chaque modification suivante en migre {@link #MIGRATION_STEP} cases, si bien qu'aucune modification ne subit une pause proportionnelle au nombre de clés.
+ * Pendant la migration, une clé se trouve dans l'une ou l'autre des deux tables. Les octets des clés supprimées sont récupérés à cette occasion,
+ * puisque chaque table possède ses propres pages.
+ * <p>
+ * Le répertoire est sauvegardé dans un format binaire qui commence par {@link #MAGIC}, directement à partir des pages de clés.
+ *
+ * @version 1.0
+ */
+class PrimitiveHashKeyDirectory implements KeyDirectory {
+    /**
+     * Premiers octets de l'enregistrement sauvegardé : "PHKD"
+     */
+    static final int MAGIC = 0x50484B44;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MIGRATION_STEP = 64;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+
+    /**
+     * Pages dans lesquelles les clés sont rangées les unes à la suite des autres, sous la forme de leur taille (varint) suivie de leurs octets.
+     * La référence d'une clé contient l'indice de sa page dans les 32 bits de poids fort, et sa position dans la page dans les 32 bits de poids faible.
+     * Le premier octet de la première page n'est jamais utilisé, afin qu'aucune référence ne vaille {@link #EMPTY}.
+     */
+    private static final class KeyArena {
+        private static final int PAGE_SIZE = 1 << 16;
+        private final ArrayList<byte[]> pages = new ArrayList<>();
+        private byte[] current;
+        private int currentIndex;
+        private int used;
+
+        private KeyArena () {
+            newPage();
+            used = 1;
+        }
+
+        private void newPage () {
+            current = new byte[PAGE_SIZE];
+            pages.add(current);
+            currentIndex = pages.size() - 1;
+            used = 0;
+        }
+
+        private long add (byte[] src, int offset, int length) {
+            int needed = varIntSize(length) + length;
+            byte[] page;
+            int index;
+            int start;
+            if (needed > PAGE_SIZE) {
+                //une clé plus grande qu'une page occupe une page à elle seule
+                page = new byte[needed];
+                pages.add(page);
+                index = pages.size() - 1;
+                start = 0;
+            } else {
+                if (used + needed > PAGE_SIZE)
+                    newPage();
+                page = current;
+                index = currentIndex;
+                start = used;
+                used += needed;
+            }
+            int o = writeVarInt(page, start, length);
+            System.arraycopy(src, offset, page, o, length);
+            return ((long) index << 32) | start;
+        }
+
+        private byte[] page (long ref) {
+            return pages.get((int) (ref >>> 32));
+        }
+
+        private boolean matches (long ref, byte[] key) {
+            byte[] page = page(ref);
+            int o = (int) ref;
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = page[o++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (length != key.length)
+                return false;
+            for (int i = 0; i < length; i++)
+                if (page[o + i] != key[i])
+                    return false;
+            return true;
+        }
+
+        /**
+         * @return la position du premier octet de la clé dans sa page, et sa taille dans les 32 bits de poids fort
+         */
+        private long locate (long ref) {
+            byte[] page = page(ref);
+            int o = (int) ref;
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = page[o++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return ((long) length << 32) | o;
+        }
+
+        private String decode (long ref) {
+            long l = locate(ref);
+            return new String(page(ref), (int) l, (int) (l >>> 32), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Table de hachage à adressage ouvert de taille fixe, et les pages de ses clés
+     */
+    private static final class Table {
+        private final int mask;
+        private final int[] hashes;
+        private final long[] keys;
+        private final long[] positions;
+        private final KeyArena arena = new KeyArena();
+        private int count = 0;
+        private int deleted = 0;
+
+        private Table (int capacity) {
+            mask = capacity - 1;
+            hashes = new int[capacity];
+            keys = new long[capacity];
+            positions = new long[capacity];
+        }
+
+        private int capacity () {
+            return mask + 1;
+        }
+
+        /**
+         * @return la case de la clé, ou -1 si elle est absente
+         */
+        private int find (byte[] key, int hash) {
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                long ref = keys[i];
+                if (ref == EMPTY)
+                    return -1;
+                if (ref != DELETED && hashes[i] == hash && arena.matches(ref, key))
+                    return i;
+            }
+        }
+
+        /**
+         * Ajoute une clé absente de la table, dans la première case vide ou marquée de sa séquence de sondage
+         */
+        private void insert (byte[] src, int offset, int length, int hash, long position) {
+            int i = hash & mask;
+            while (keys[i] > 0)
+                i = (i + 1) & mask;
+            if (keys[i] == DELETED)
+                deleted--;
+            hashes[i] = hash;
+            keys[i] = arena.add(src, offset, length);
+            positions[i] = position;
+            count++;
+        }
+
+        private void delete (int slot) {
+            keys[slot] = DELETED;
+            count--;
+            deleted++;
+        }
+    }
+
+    private Table current;
+    private Table previous = null;
+    private int migrated = 0;
+
+    PrimitiveHashKeyDirectory () {
+        current = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * Charge un répertoire à partir de l'enregistrement retourné par {@link #save()}
+     *
+     * @param data l'enregistrement
+     * @throws IOException si l'enregistrement est invalide
+     */
+    PrimitiveHashKeyDirectory (byte[] data) throws IOException {
+        if (!isSavedDirectory(data) || data.length < 12)
+            throw new IOException("Répertoire des clés invalide");
+        ByteBuffer buffer = ByteBuffer.wrap(data, 4, data.length - 4);
+        long count = buffer.getLong();
+        current = new Table(capacityFor(count));
+        for (long i = 0; i < count; i++) {
+            int length = readVarInt(buffer);
+            int offset = buffer.position();
+            buffer.position(offset + length);
+            current.insert(data, offset, length, hash(data, offset, length), buffer.getLong());
+        }
+    }
+
+    /**
+     * @param data un enregistrement décrivant un répertoire des clés
+     * @return true si l'enregistrement a été écrit par {@link #save()}
+     */
+    static boolean isSavedDirectory (byte[] data) {
+        return data.length >= 4 && ByteBuffer.wrap(data).getInt() == MAGIC;
+    }
+
+    private static int capacityFor (long count) {
+        long capacity = MIN_CAPACITY;
+        while (capacity < count * 2 && capacity < (1 << 30))
+            capacity <<= 1;
+        return (int) capacity;
+    }
+
+    private static int hash (byte[] key, int offset, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++)
+            h = 31 * h + key[offset + i];
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static int varIntSize (int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    private static int writeVarInt (byte[] dst, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            dst[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static int readVarInt (ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static byte[] encode (String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Long get (String key) {
+        byte[] k = encode(key);
+        int h = hash(k, 0, k.length);
+        if (previous != null) {
+            int slot = previous.find(k, h);
+            if (slot >= 0)
+                return previous.positions[slot];
+        }
+        int slot = current.find(k, h);
+        return slot >= 0 ? current.positions[slot] : null;
+    }
+
+    @Override
+    public Long put (String key, long position) {
+        migrate(MIGRATION_STEP);
+        byte[] k = encode(key);
+        int h = hash(k, 0, k.length);
+        if (previous != null) {
+            int slot = previous.find(k, h);
+            if (slot >= 0) {
+                long res = previous.positions[slot];
+                previous.positions[slot] = position;
+                return res;
+            }
+        }
+        int slot = current.find(k, h);
+        if (slot >= 0) {
+            long res = current.positions[slot];
+            current.positions[slot] = position;
+            return res;
+        }
+        current.insert(k, 0, k.length, h, position);
+        //les entrées restant à migrer comptent, afin que la migration puisse toujours être terminée dans la table actuelle
+        long used = current.count + current.deleted + (previous == null ? 0 : previous.count);
+        if (used * 4 >= current.capacity() * 3L)
+            resize();
+        return null;
+    }
+
+    @Override
+    public Long remove (String key) {
+        migrate(MIGRATION_STEP);
+        byte[] k = encode(key);
+        int h = hash(k, 0, k.length);
+        if (previous != null) {
+            int slot = previous.find(k, h);
+            if (slot >= 0) {
+                previous.delete(slot);
+                return previous.positions[slot];
+            }
+        }
+        int slot = current.find(k, h);
+        if (slot < 0)
+            return null;
+        current.delete(slot);
+        return current.positions[slot];
+    }
+
+    /**
+     * Termine la migration en cours, puis commence la migration de la table actuelle vers une nouvelle table,
+     * dont la taille est calculée d'après le nombre de clés, et non d'après le nombre de cases marquées
+     */
+    private void resize () {
+        if (previous != null)
+            migrate(Integer.MAX_VALUE);
+        previous = current;
+        current = new Table(capacityFor(previous.count));
+        migrated = 0;
+    }
+
+    /**
+     * Déplace dans la table actuelle les entrées d'au plus le nombre de cases donné de la table en cours de migration
+     */
+    private void migrate (int slots) {
+        if (previous == null)
+            return;
+        int end = (int) Math.min(previous.capacity(), (long) migrated + slots);
+        for (; migrated < end; migrated++) {
+            long ref = previous.keys[migrated];
+            if (ref > 0) {
+                long l = previous.arena.locate(ref);
+                current.insert(previous.arena.page(ref), (int) l, (int) (l >>> 32), previous.hashes[migrated], previous.positions[migrated]);
+                previous.delete(migrated);
+            }
+        }
+        if (migrated == previous.capacity())
+            previous = null;
+    }
+
+    @Override
+    public long size () {
+        return current.count + (previous == null ? 0 : previous.count);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, Long>> iterator () {
+        final Table[] tables = previous == null ? new Table[]{current} : new Table[]{previous, current};
+        return new Iterator<Map.Entry<String, Long>>() {
+            private int table = 0;
+            private int slot = -1;
+
+            {
+                advance();
+            }
+
+            private void advance () {
+                while (table < tables.length) {
+                    while (++slot < tables[table].capacity())
+                        if (tables[table].keys[slot] > 0)
+                            return;
+                    table++;
+                    slot = -1;
+                }
+            }
+
+            @Override
+            public boolean hasNext () {
+                return table < tables.length;
+            }
+
+            @Override
+            public Map.Entry<String, Long> next () {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Table t = tables[table];
+                Map.Entry<String, Long> res = new AbstractMap.SimpleImmutableEntry<>(t.arena.decode(t.keys[slot]), t.positions[slot]);
+                advance();
+                return res;
+            }
+        };
+    }
+
+    /**
+     * Ecrit le répertoire sans créer d'objet par clé, sous la forme suivante :
+     * <ul>
+     *     <li>{@link #MAGIC} sur 4 octets, puis le nombre de clés sur 8 octets</li>
+     *     <li>pour chaque clé : la taille de la clé (varint), ses octets UTF-8, puis la position de son enregistrement sur 8 octets</li>
+     * </ul>
+     *
+     * @return l'enregistrement binaire à sauvegarder
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    @Override
+    public byte[] save () throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(MAGIC);
+        out.writeLong(size());
+        byte[] header = new byte[5];
+        for (Table t : previous == null ? new Table[]{current} : new Table[]{previous, current}) {
+            for (int i = 0; i < t.capacity(); i++) {
+                long ref = t.keys[i];
+                if (ref > 0) {
+                    long l = t.arena.locate(ref);
+                    int length = (int) (l >>> 32);
+                    out.write(header, 0, writeVarInt(header, 0, length));
+                    out.write(t.arena.page(ref), (int) l, length);
+                    out.writeLong(t.positions[i]);
+                }
+            }
+        }
+        out.close();
+        return bos.toByteArray();
+    }
+}
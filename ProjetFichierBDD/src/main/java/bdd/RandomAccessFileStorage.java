@@ -0,0 +1,129 @@
+package bdd;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Support physique qui effectue chaque lecture et chaque écriture par un appel système sur le fichier.
+ * Les accès utilisent les lectures et écritures positionnelles de {@link FileChannel} ({@link FileChannel#read(ByteBuffer, long)}
+ * et {@link FileChannel#write(ByteBuffer, long)}) : aucun curseur n'est partagé, si bien que plusieurs fils d'exécution
+ * peuvent lire et écrire des zones différentes en même temps.
+ *
+ * @version 1.0
+ */
+class RandomAccessFileStorage implements Storage {
+    /**
+     * Tampon direct de 8 octets propre à chaque fil, qui permet de lire et d'écrire les entiers sans allocation ni copie intermédiaire
+     */
+    private static final ThreadLocal<ByteBuffer> NUMBER_BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(8));
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    RandomAccessFileStorage (File file) throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+    }
+
+    @Override
+    public long length () throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void setLength (long newLength) throws IOException {
+        raf.setLength(newLength);
+    }
+
+    /**
+     * @param length le nombre d'octets à lire ou à écrire, 4 ou 8
+     * @return le tampon du fil courant, limité à length octets
+     */
+    private static ByteBuffer numberBuffer (int length) {
+        ByteBuffer buffer = NUMBER_BUFFERS.get();
+        buffer.clear().limit(length);
+        return buffer;
+    }
+
+    private void readFully (ByteBuffer buffer, long pos) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, pos);
+            if (n < 0)
+                throw new EOFException();
+            pos += n;
+        }
+    }
+
+    private void writeFully (ByteBuffer buffer, long pos) throws IOException {
+        while (buffer.hasRemaining())
+            pos += channel.write(buffer, pos);
+    }
+
+    @Override
+    public int readInt (long pos) throws IOException {
+        ByteBuffer buffer = numberBuffer(4);
+        readFully(buffer, pos);
+        return buffer.getInt(0);
+    }
+
+    @Override
+    public long readLong (long pos) throws IOException {
+        ByteBuffer buffer = numberBuffer(8);
+        readFully(buffer, pos);
+        return buffer.getLong(0);
+    }
+
+    @Override
+    public void read (long pos, byte[] dst, int offset, int length) throws IOException {
+        readFully(ByteBuffer.wrap(dst, offset, length), pos);
+    }
+
+    @Override
+    public void read (long pos, ByteBuffer dst) throws IOException {
+        readFully(dst, pos);
+    }
+
+    @Override
+    public void transferTo (long pos, long count, WritableByteChannel target) throws IOException {
+        if (pos < 0 || pos + count > channel.size())
+            throw new EOFException();
+        //FileChannel#transferTo peut envoyer moins d'octets que demandé, par exemple vers un canal non bloquant
+        while (count > 0) {
+            long n = channel.transferTo(pos, count, target);
+            pos += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public void writeInt (long pos, int value) throws IOException {
+        ByteBuffer buffer = numberBuffer(4).putInt(0, value);
+        writeFully(buffer, pos);
+    }
+
+    @Override
+    public void writeLong (long pos, long value) throws IOException {
+        ByteBuffer buffer = numberBuffer(8).putLong(0, value);
+        writeFully(buffer, pos);
+    }
+
+    @Override
+    public void write (long pos, byte[] src, int offset, int length) throws IOException {
+        writeFully(ByteBuffer.wrap(src, offset, length), pos);
+    }
+
+    @Override
+    public void force () throws IOException {
+        channel.force(true);
+    }
+
+    @Override
+    public void close () throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,279 @@
+package bdd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Index secondaire d'une {@link BDD} : il associe chaque valeur extraite des objets enregistrés aux clés de ces objets.
+ * <p>
+ * Les valeurs extraites sont rangées dans l'ordre naturel, ce qui permet les recherches par intervalle ; elles doivent donc être
+ * mutuellement comparables. Un objet qui n'est pas du type de l'index, ou dont la valeur extraite est null, n'est pas indexé.
+ * Les valeurs enregistrées sous forme de tableau d'octets ({@link BDD#putBytes(String, java.nio.ByteBuffer)}, {@link BDD#openForWrite(String, long)})
+ * ne sont jamais indexées.
+ * <p>
+ * Comme le répertoire des clés, un index est modifié sous le verrou d'écriture de la BDD et consulté sous son verrou de lecture.
+ *
+ * @version 1.0
+ */
+final class SecondaryIndex {
+    private static final int FILE_MAGIC = 0x42444958;
+    private static final byte FILE_VERSION = 1;
+
+    /**
+     * Définition d'un index, donnée par {@link BDDConfiguration#addIndex(String, Class, Function)}
+     */
+    static final class Definition {
+        final String name;
+        final Class<?> type;
+        final Function<Object, ? extends Comparable<?>> extractor;
+
+        @SuppressWarnings("unchecked")
+        <T> Definition (String name, Class<T> type, Function<? super T, ? extends Comparable<?>> extractor) {
+            this.name = name;
+            this.type = type;
+            this.extractor = (Function<Object, ? extends Comparable<?>>) extractor;
+        }
+    }
+
+    private final Definition definition;
+    private final TreeMap<Object, TreeSet<String>> entries = new TreeMap<>();
+    private final HashMap<String, Object> values = new HashMap<>();
+
+    SecondaryIndex (Definition definition) {
+        this.definition = definition;
+    }
+
+    String getName () {
+        return definition.name;
+    }
+
+    /**
+     * @param object l'objet enregistré
+     * @return la valeur indexée de l'objet, ou null s'il n'est pas indexé
+     */
+    Object extract (Serializable object) {
+        if (object == null || object instanceof byte[] || !definition.type.isInstance(object))
+            return null;
+        return definition.extractor.apply(object);
+    }
+
+    /**
+     * Associe une clé à sa nouvelle valeur indexée, à la place de la précédente
+     *
+     * @param key   la clé
+     * @param value la valeur retournée par {@link #extract(Serializable)} pour le nouvel objet, ou null si la clé ne doit plus être indexée
+     */
+    void put (String key, Object value) {
+        Object previous = value == null ? values.remove(key) : values.put(key, value);
+        if (previous != null) {
+            if (previous.equals(value))
+                return;
+            unlink(key, previous);
+        }
+        if (value != null)
+            entries.computeIfAbsent(value, v -> new TreeSet<>()).add(key);
+    }
+
+    /**
+     * @param key la clé supprimée
+     */
+    void remove (String key) {
+        Object previous = values.remove(key);
+        if (previous != null)
+            unlink(key, previous);
+    }
+
+    private void unlink (String key, Object value) {
+        TreeSet<String> keys = entries.get(value);
+        keys.remove(key);
+        if (keys.isEmpty())
+            entries.remove(value);
+    }
+
+    /**
+     * @param value la valeur recherchée
+     * @return les clés dont la valeur indexée est égale à value, dans l'ordre
+     */
+    List<String> find (Object value) {
+        TreeSet<String> keys = entries.get(value);
+        return keys == null ? new ArrayList<>() : new ArrayList<>(keys);
+    }
+
+    /**
+     * @param from la plus petite valeur, incluse, ou null
+     * @param to   la plus grande valeur, exclue, ou null
+     * @return les clés dont la valeur indexée est dans l'intervalle, dans l'ordre des valeurs puis des clés
+     */
+    List<String> findRange (Object from, Object to) {
+        NavigableMap<Object, TreeSet<String>> range = entries;
+        if (from != null)
+            range = range.tailMap(from, true);
+        if (to != null)
+            range = range.headMap(to, false);
+        List<String> res = new ArrayList<>();
+        for (TreeSet<String> keys : range.values())
+            res.addAll(keys);
+        return res;
+    }
+
+    /**
+     * @param object l'objet lu pour une clé trouvée dans l'index
+     * @param value  la valeur recherchée
+     * @return true si la valeur extraite de l'objet est égale à la valeur recherchée au sens de {@link Comparable#compareTo(Object)},
+     * comme pour la recherche dans l'index. Cette vérification écarte les objets modifiés entre la recherche et leur lecture.
+     */
+    @SuppressWarnings("unchecked")
+    boolean matches (Serializable object, Object value) {
+        Object extracted = extract(object);
+        return extracted != null && ((Comparable<Object>) extracted).compareTo(value) == 0;
+    }
+
+    /**
+     * @param object l'objet lu pour une clé trouvée dans l'index
+     * @param from   la plus petite valeur, incluse, ou null
+     * @param to     la plus grande valeur, exclue, ou null
+     * @return true si la valeur extraite de l'objet est dans l'intervalle. Cette vérification écarte les objets modifiés entre la recherche et leur lecture.
+     */
+    @SuppressWarnings("unchecked")
+    boolean matches (Serializable object, Object from, Object to) {
+        Object value = extract(object);
+        if (value == null)
+            return false;
+        Comparable<Object> v = (Comparable<Object>) value;
+        if (from == null && to == null)
+            return true;
+        return (from == null || v.compareTo(from) >= 0) && (to == null || v.compareTo(to) < 0);
+    }
+
+    /**
+     * Ecrit le fichier des index, d'abord sous un nom temporaire puis renommé. Le fichier a la forme suivante :
+     * <ul>
+     *     <li>un nombre magique et un numéro de version</li>
+     *     <li>l'empreinte des métadonnées de la BDD sauvegardées en même temps que les index, qui permet de reconnaître un fichier périmé</li>
+     *     <li>pour chaque index, son nom, son nombre d'entrées, puis chaque clé en UTF-8 précédée de sa taille, suivie de la valeur indexée encodée
+     *         grâce à {@link SerializationTools#serialize(Serializable, CodecRegistry)} et précédée de sa taille</li>
+     *     <li>le CRC32 de tout ce qui précède</li>
+     * </ul>
+     *
+     * @param file     le fichier des index
+     * @param stamp    l'empreinte des métadonnées
+     * @param indexes  les index
+     * @param registry le registre des codecs
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    static void save (File file, long[] stamp, Collection<SecondaryIndex> indexes, CodecRegistry registry) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(FILE_MAGIC);
+            out.writeByte(FILE_VERSION);
+            out.writeInt(stamp.length);
+            for (long s : stamp)
+                out.writeLong(s);
+            out.writeInt(indexes.size());
+            for (SecondaryIndex index : indexes) {
+                out.writeUTF(index.getName());
+                out.writeInt(index.values.size());
+                for (Map.Entry<String, Object> e : index.values.entrySet()) {
+                    byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(key.length);
+                    out.write(key);
+                    byte[] value = SerializationTools.serialize((Serializable) e.getValue(), registry);
+                    out.writeInt(value.length);
+                    out.write(value);
+                }
+            }
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Lit le fichier écrit par {@link #save(File, long[], Collection, CodecRegistry)} en flux, et remplit les index donnés dont le nom y figure.
+     * Rien n'est modifié si le fichier est absent, invalide, ou si son empreinte ne correspond pas à celle des métadonnées chargées.
+     *
+     * @param file     le fichier des index
+     * @param stamp    l'empreinte des métadonnées chargées
+     * @param indexes  les index à remplir, par nom
+     * @param registry le registre des codecs
+     * @return les noms des index remplis
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si une valeur indexée ne peut pas être décodée
+     */
+    static Collection<String> load (File file, long[] stamp, Map<String, SecondaryIndex> indexes, CodecRegistry registry) throws IOException, ClassNotFoundException {
+        List<String> res = new ArrayList<>();
+        if (!file.exists())
+            return res;
+        LinkedHashMap<String, SecondaryIndex> loaded = new LinkedHashMap<>();
+        try (FileInputStream fis = new FileInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(fis, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != FILE_MAGIC || in.readByte() != FILE_VERSION || in.readInt() != stamp.length)
+                return res;
+            for (long s : stamp)
+                if (in.readLong() != s)
+                    return res;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                SecondaryIndex target = indexes.get(name);
+                SecondaryIndex index = target == null ? null : new SecondaryIndex(target.definition);
+                int entryCount = in.readInt();
+                for (int j = 0; j < entryCount; j++) {
+                    byte[] key = new byte[in.readInt()];
+                    in.readFully(key);
+                    byte[] value = new byte[in.readInt()];
+                    in.readFully(value);
+                    if (index != null) {
+                        String k = new String(key, StandardCharsets.UTF_8);
+                        Object v = SerializationTools.deserialize(value, registry);
+                        index.values.put(k, v);
+                        index.entries.computeIfAbsent(v, x -> new TreeSet<>()).add(k);
+                    }
+                }
+                if (index != null)
+                    loaded.put(name, index);
+            }
+            int crc = (int) checked.getChecksum().getValue();
+            if (in.readInt() != crc)
+                return res;
+        } catch (EOFException | ClassCastException e) {
+            return res;
+        }
+        for (Map.Entry<String, SecondaryIndex> e : loaded.entrySet()) {
+            SecondaryIndex target = indexes.get(e.getKey());
+            target.values.putAll(e.getValue().values);
+            target.entries.putAll(e.getValue().entries);
+            res.add(e.getKey());
+        }
+        return res;
+    }
+}
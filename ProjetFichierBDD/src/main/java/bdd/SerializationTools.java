@@ -2,8 +2,15 @@ package bdd;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * Classe qui contient des outils de sérialization
@@ -12,6 +19,30 @@ import java.util.TreeSet;
  * @version 1.0
  */
 class SerializationTools {
+    /**
+     * Premier octet de tout flux écrit par {@link ObjectOutputStream} (ObjectStreamConstants.STREAM_MAGIC)
+     */
+    static final byte JAVA_SERIALIZATION_HEADER = (byte) 0xAC;
+    /**
+     * Bit commun à tous les octets d'options d'enregistrement. Les options occupent les 4 bits de poids faible,
+     * si bien qu'un octet d'options ne peut être confondu ni avec {@link #JAVA_SERIALIZATION_HEADER} ni avec un identifiant de codec.
+     */
+    static final int RECORD_FLAGS_MARKER = 0x80;
+    private static final int RECORD_FLAGS_MASK = 0xF0;
+    /**
+     * Option indiquant que l'enregistrement est compressé grâce à {@link Deflater}
+     */
+    static final int COMPRESSED = 0x01;
+    /**
+     * Quatre premiers octets ("KEYS") d'un répertoire des clés écrit par {@link #serializeKeyDirectory(Map)}.
+     * Un répertoire sauvegardé par sérialisation Java commence par {@link #JAVA_SERIALIZATION_HEADER}, et ne peut donc pas être confondu avec lui.
+     */
+    static final int KEY_DIRECTORY_MAGIC = 0x4B455953;
+    /**
+     * Version du format écrit par {@link #serializeKeyDirectory(Map)}, qui suit {@link #KEY_DIRECTORY_MAGIC}
+     */
+    static final int KEY_DIRECTORY_VERSION = 1;
+
     /**
      * Serialise/binarise l'objet passé en paramètre pour retourner un tableau binaire
      *
@@ -47,6 +78,243 @@ class SerializationTools {
 
     }
 
+    /**
+     * Encode l'objet passé en paramètre grâce au codec associé à sa classe dans le registre donné.
+     * Si aucun codec n'est associé à sa classe, l'objet est sérialisé grâce à la fonction {@link #serialize(Serializable)}.
+     *
+     * @param o        l'objet à encoder
+     * @param registry le registre des codecs
+     * @return le tableau binaire, qui commence par l'identifiant du codec, ou par l'en-tête de la sérialisation Java
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    static byte[] serialize(Serializable o, CodecRegistry registry) throws IOException {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        if (registry.encode(o, new DataOutputStream(bos)))
+            return bos.toByteArray();
+        return serialize(o);
+    }
+
+    /**
+     * Effectue l'opération inverse de la fonction {@link #serialize(Serializable, CodecRegistry)}.
+     * Si le tableau commence par l'octet {@link #JAVA_SERIALIZATION_HEADER}, il est désérialisé grâce à la fonction {@link #deserialize(byte[])}.
+     * Sinon, son premier octet désigne le codec à utiliser.
+     *
+     * @param data     le tableau binaire
+     * @param registry le registre des codecs
+     * @return l'objet décodé
+     * @throws IOException            si un problème d'entrée/sortie se produit, ou si le codec est inconnu
+     * @throws ClassNotFoundException si un problème lors de la déserialisation s'est produit
+     */
+    static Serializable deserialize(byte[] data, CodecRegistry registry) throws IOException, ClassNotFoundException {
+        if (data.length == 0)
+            throw new EOFException();
+        if (data[0] == JAVA_SERIALIZATION_HEADER)
+            return deserialize(data);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1));
+        return registry.decode(data[0], in);
+    }
+
+    /**
+     * Encode l'objet comme {@link #serialize(Serializable, CodecRegistry)}, mais dans le flux réutilisable {@link BufferPool#output()}, sans copie finale
+     *
+     * @param o        l'objet à encoder
+     * @param registry le registre des codecs
+     * @param buffers  les tampons du fil courant
+     * @return la taille de l'enregistrement, dont les octets commencent {@link BufferPool#getOutput()}
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    static int serialize(Serializable o, CodecRegistry registry, BufferPool buffers) throws IOException {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        DataOutputStream out = buffers.output();
+        if (!registry.encode(o, out)) {
+            ObjectOutputStream output = new ObjectOutputStream(out);
+            output.writeObject(o);
+            output.flush();
+        }
+        return buffers.getOutputSize();
+    }
+
+    /**
+     * Effectue l'opération inverse de la fonction {@link #serialize(Serializable, CodecRegistry, BufferPool)} sur les premiers octets d'un tableau.
+     * Le tableau est lu au travers du flux réutilisable {@link BufferPool#input(byte[], int, int)}, par le codec
+     * ou par un {@link ObjectInputStream}, qui ne peut pas être réutilisé, pour la sérialisation Java.
+     *
+     * @param data     le tableau binaire
+     * @param length   le nombre d'octets de l'enregistrement
+     * @param registry le registre des codecs
+     * @param buffers  les tampons du fil courant
+     * @return l'objet décodé
+     * @throws IOException            si un problème d'entrée/sortie se produit, ou si le codec est inconnu
+     * @throws ClassNotFoundException si un problème lors de la déserialisation s'est produit
+     */
+    static Serializable deserialize(byte[] data, int length, CodecRegistry registry, BufferPool buffers) throws IOException, ClassNotFoundException {
+        if (length == 0)
+            throw new EOFException();
+        if (data[0] == JAVA_SERIALIZATION_HEADER)
+            return (Serializable) new ObjectInputStream(buffers.input(data, 0, length)).readObject();
+        return registry.decode(data[0], buffers.input(data, 1, length - 1));
+    }
+
+    /**
+     * Compresse l'enregistrement binaire donné en paramètre grâce à {@link Deflater}. Le tableau retourné a la forme suivante :
+     * <ul>
+     *     <li>un octet d'options valant {@link #RECORD_FLAGS_MARKER} | {@link #COMPRESSED}</li>
+     *     <li>la taille de l'enregistrement non compressé, sur 4 octets</li>
+     *     <li>les données compressées</li>
+     * </ul>
+     * Si le résultat n'est pas plus petit que l'enregistrement initial, ce dernier est retourné tel quel.
+     *
+     * @param data  l'enregistrement binaire, qui commence par un identifiant de codec ou par {@link #JAVA_SERIALIZATION_HEADER}
+     * @param level le niveau de compression, entre {@link Deflater#BEST_SPEED} et {@link Deflater#BEST_COMPRESSION}, ou {@link Deflater#DEFAULT_COMPRESSION}
+     * @return l'enregistrement compressé, ou data s'il ne gagne rien à être compressé
+     */
+    static byte[] compress(byte[] data, int level) {
+        if (data.length <= 5)
+            return data;
+        Deflater deflater = new Deflater(level);
+        try {
+            byte[] res = new byte[data.length];
+            int size = deflate(data, data.length, res, deflater);
+            return size < 0 ? data : Arrays.copyOf(res, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Compresse les premiers octets d'un tableau comme {@link #compress(byte[], int)}, avec le compresseur et le tableau réutilisables des tampons donnés
+     *
+     * @param data    le tableau binaire
+     * @param length  le nombre d'octets de l'enregistrement
+     * @param level   le niveau de compression
+     * @param buffers les tampons du fil courant
+     * @return la taille de l'enregistrement compressé, dont les octets commencent {@link BufferPool#getConverted()},
+     * ou -1 si la compression ne réduit pas l'enregistrement
+     */
+    static int compress(byte[] data, int length, int level, BufferPool buffers) {
+        if (length <= 5)
+            return -1;
+        return deflate(data, length, buffers.converted(length), buffers.deflater(level));
+    }
+
+    /**
+     * @param data     le tableau binaire
+     * @param length   le nombre d'octets à compresser, supérieur à 5
+     * @param res      le tableau où écrire l'enregistrement compressé, d'au moins length octets
+     * @param deflater un compresseur réinitialisé
+     * @return la taille de l'enregistrement compressé, ou -1 s'il n'est pas plus petit que l'original
+     */
+    private static int deflate(byte[] data, int length, byte[] res, Deflater deflater) {
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        res[0] = (byte) (RECORD_FLAGS_MARKER | COMPRESSED);
+        res[1] = (byte) (length >>> 24);
+        res[2] = (byte) (length >>> 16);
+        res[3] = (byte) (length >>> 8);
+        res[4] = (byte) length;
+        int size = 5;
+        while (!deflater.finished() && size < length)
+            size += deflater.deflate(res, size, length - size);
+        return deflater.finished() ? size : -1;
+    }
+
+    /**
+     * @param header le premier octet d'un enregistrement
+     * @return true si l'enregistrement a été compressé par {@link #compress(byte[], int)}. Les données compressées commencent alors au sixième octet.
+     */
+    static boolean isCompressed (byte header) {
+        return header == (byte) (RECORD_FLAGS_MARKER | COMPRESSED);
+    }
+
+    /**
+     * Effectue l'opération inverse de la fonction {@link #compress(byte[], int)}.
+     * Un enregistrement qui ne commence pas par un octet d'options est retourné tel quel.
+     *
+     * @param record l'enregistrement lu dans le fichier
+     * @return l'enregistrement décompressé
+     * @throws IOException si les données compressées sont corrompues, ou si les options sont inconnues
+     */
+    static byte[] decompress(byte[] record) throws IOException {
+        int size = decompressedLength(record, record.length);
+        if (size < 0)
+            return record;
+        byte[] res = new byte[size];
+        Inflater inflater = new Inflater();
+        try {
+            inflate(record, record.length, res, size, inflater);
+            return res;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Décompresse les premiers octets d'un tableau comme {@link #decompress(byte[])}, avec le décompresseur et le tableau réutilisables des tampons donnés
+     *
+     * @param record  l'enregistrement lu
+     * @param length  le nombre d'octets de l'enregistrement
+     * @param buffers les tampons du fil courant
+     * @return la taille de l'enregistrement décompressé, dont les octets commencent {@link BufferPool#getConverted()},
+     * ou -1 si l'enregistrement n'est pas compressé
+     * @throws IOException si les options sont inconnues ou si l'enregistrement compressé est corrompu
+     */
+    static int decompress(byte[] record, int length, BufferPool buffers) throws IOException {
+        int size = decompressedLength(record, length);
+        if (size >= 0)
+            inflate(record, length, buffers.converted(size), size, buffers.inflater());
+        return size;
+    }
+
+    /**
+     * @param record l'enregistrement lu
+     * @param length le nombre d'octets de l'enregistrement
+     * @return la taille de l'enregistrement décompressé, ou -1 si l'enregistrement ne commence pas par un octet d'options
+     * @throws IOException si les options sont inconnues ou si l'en-tête est tronqué
+     */
+    private static int decompressedLength(byte[] record, int length) throws IOException {
+        if (length == 0 || (record[0] & RECORD_FLAGS_MASK) != RECORD_FLAGS_MARKER)
+            return -1;
+        int flags = record[0] & ~RECORD_FLAGS_MASK & 0xFF;
+        if (flags != COMPRESSED)
+            throw new IOException("Options d'enregistrement inconnues : " + flags);
+        if (length < 5)
+            throw new EOFException("Enregistrement compressé tronqué");
+        int size = (record[1] & 0xFF) << 24 | (record[2] & 0xFF) << 16 | (record[3] & 0xFF) << 8 | (record[4] & 0xFF);
+        if (size < 0)
+            throw new IOException("Enregistrement compressé corrompu");
+        return size;
+    }
+
+    /**
+     * @param record   l'enregistrement compressé
+     * @param length   le nombre d'octets de l'enregistrement
+     * @param res      le tableau où écrire l'enregistrement décompressé
+     * @param size     la taille de l'enregistrement décompressé
+     * @param inflater un décompresseur réinitialisé
+     * @throws IOException si l'enregistrement compressé est corrompu
+     */
+    private static void inflate(byte[] record, int length, byte[] res, int size, Inflater inflater) throws IOException {
+        try {
+            inflater.setInput(record, 5, length - 5);
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int read = inflater.inflate(res, n, size - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new EOFException("Enregistrement compressé tronqué");
+                n += read;
+            }
+            if (n != size)
+                throw new IOException("Taille de l'enregistrement décompressé incorrecte");
+        } catch (DataFormatException e) {
+            throw new IOException("Enregistrement compressé corrompu", e);
+        }
+    }
+
     /**
      * Serialise/binarise le tableau d'espaces libres passé en paramètre pour retourner un tableau binaire, mais selon le schéma suivant :
      * Pour chaque interval ;
@@ -90,22 +358,134 @@ class SerializationTools {
         if (data != null) {
             TreeSet<BDD.FreeSpaceInterval> freeSpaceInterval = new TreeSet<BDD.FreeSpaceInterval>();
 
-            ByteArrayInputStream bais = new ByteArrayInputStream(data);
-            byte[] first = new byte[8];
-            byte[] second = new byte[8];
-
-            ByteBuffer buffer1 = ByteBuffer.wrap(first);
-            long posTab1 =  buffer1.getLong();
-
-            ByteBuffer buffer2 = ByteBuffer.wrap(second);
-            long posTab2 =  buffer2.getLong();
-
-            while (bais.read(first) != -1 && bais.read(second) != -1) {
-                freeSpaceInterval.add(new BDD.FreeSpaceInterval(posTab1, posTab1));
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.remaining() >= 16) {
+                long position = buffer.getLong();
+                long length = buffer.getLong();
+                freeSpaceInterval.add(new BDD.FreeSpaceInterval(position, length));
             }
             return freeSpaceInterval;
         } else {
             throw new NullPointerException();
         }
     }
+
+    /**
+     * Serialise/binarise le répertoire des clés passé en paramètre, selon le schéma suivant :
+     * <ul>
+     *     <li>{@link #KEY_DIRECTORY_MAGIC} sur 4 octets, puis {@link #KEY_DIRECTORY_VERSION} sur 1 octet</li>
+     *     <li>le nombre de clés</li>
+     *     <li>pour chaque clé, dans l'ordre croissant des clés : le nombre d'octets communs avec la clé précédente,
+     *         le nombre d'octets restants suivis de ces octets (UTF-8), puis l'écart entre la position de l'enregistrement et celle de la clé précédente</li>
+     * </ul>
+     * Les nombres sont écrits sur un nombre variable d'octets par {@link #writeVarLong(DataOutput, long)}, les écarts après un codage zigzag.
+     *
+     * @param links les positions des enregistrements, associées à leurs clés
+     * @return un tableau binaire
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    static byte[] serializeKeyDirectory(Map<String, Long> links) throws IOException {
+        if (links == null)
+            throw new NullPointerException();
+        ArrayList<Map.Entry<String, Long>> entries = new ArrayList<>(links.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        ByteArrayOutputStream tab = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(tab);
+        out.writeInt(KEY_DIRECTORY_MAGIC);
+        out.writeByte(KEY_DIRECTORY_VERSION);
+        writeVarLong(out, entries.size());
+        byte[] previousKey = new byte[0];
+        long previousPosition = 0;
+        for (Map.Entry<String, Long> e : entries) {
+            byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            int max = Math.min(key.length, previousKey.length);
+            while (shared < max && key[shared] == previousKey[shared])
+                ++shared;
+            writeVarLong(out, shared);
+            writeVarLong(out, key.length - shared);
+            out.write(key, shared, key.length - shared);
+            long position = e.getValue();
+            long delta = position - previousPosition;
+            writeVarLong(out, (delta << 1) ^ (delta >> 63));
+            previousKey = key;
+            previousPosition = position;
+        }
+        out.close();
+        return tab.toByteArray();
+    }
+
+    /**
+     * Effectue l'opération inverse de la fonction {@link #serializeKeyDirectory(Map)}, en lisant le flux au fur et à mesure :
+     * le répertoire n'a jamais besoin d'être entièrement chargé sous sa forme binaire.
+     *
+     * @param in le flux, placé au début du répertoire
+     * @return les positions des enregistrements, associées à leurs clés
+     * @throws IOException si un problème d'entrée/sortie se produit, si le répertoire est tronqué ou si son format n'est pas reconnu
+     */
+    static HashMap<String, Long> deserializeKeyDirectory(InputStream in) throws IOException {
+        if (in == null)
+            throw new NullPointerException();
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != KEY_DIRECTORY_MAGIC)
+            throw new IOException("Le répertoire des clés n'est pas au format binaire");
+        int version = data.readUnsignedByte();
+        if (version != KEY_DIRECTORY_VERSION)
+            throw new IOException("Version du répertoire des clés inconnue : " + version);
+        long count = readVarLong(data);
+        if (count < 0)
+            throw new IOException("Répertoire des clés corrompu");
+        HashMap<String, Long> links = new HashMap<>((int) Math.min(count * 4 / 3 + 1, 1 << 30));
+        byte[] key = new byte[64];
+        int keyLength = 0;
+        long position = 0;
+        for (long i = 0; i < count; i++) {
+            long shared = readVarLong(data);
+            long suffix = readVarLong(data);
+            if (shared < 0 || shared > keyLength || suffix < 0 || shared + suffix > Integer.MAX_VALUE)
+                throw new IOException("Répertoire des clés corrompu");
+            keyLength = (int) (shared + suffix);
+            if (keyLength > key.length)
+                key = Arrays.copyOf(key, Math.max(keyLength, key.length * 2));
+            data.readFully(key, (int) shared, (int) suffix);
+            long delta = readVarLong(data);
+            position += (delta >>> 1) ^ -(delta & 1);
+            links.put(new String(key, 0, keyLength, StandardCharsets.UTF_8), position);
+        }
+        return links;
+    }
+
+    /**
+     * Ecrit un entier positif sur 1 à 10 octets : 7 bits par octet, en commençant par les bits de poids faible,
+     * le bit de poids fort de chaque octet indiquant qu'un autre octet suit
+     *
+     * @param out   le flux
+     * @param value l'entier, interprété comme non signé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Effectue l'opération inverse de la fonction {@link #writeVarLong(DataOutput, long)}
+     *
+     * @param in le flux
+     * @return l'entier lu
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si l'entier est trop long
+     */
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Entier de taille variable corrompu");
+    }
 }
@@ -0,0 +1,445 @@
+package bdd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Tableau associatif réparti entre plusieurs {@link BDD}, appelées fragments, dont les fichiers sont placés dans un même répertoire.
+ * <p>
+ * Chaque clé est associée à un fragment grâce à son {@link String#hashCode()}, dont la valeur est fixée par la spécification de Java :
+ * un répertoire doit donc toujours être ouvert avec le même nombre de fragments. Chaque fragment a son propre fichier, ses propres métadonnées
+ * et son propre verrou, si bien que des opérations sur des clés de fragments différents ne se bloquent jamais entre elles.
+ * <p>
+ * Les opérations par lot ({@link #putAll(Map)}, {@link #getAll(Collection)} et {@link #removeAll(Collection)}) découpent le lot par fragment,
+ * puis traitent les fragments en parallèle grâce à un fil d'exécution par fragment. L'ouverture, la fermeture, la sauvegarde des métadonnées
+ * et le compactage de tous les fragments se font aussi en parallèle. Un lot n'est pas atomique : si un fragment échoue, les autres ont pu être modifiés.
+ *
+ * @version 1.0
+ */
+public class ShardedBDD implements AutoCloseable {
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-\\d+\\.bdd");
+
+    private final BDD[] shards;
+    private final ExecutorService executor;
+    private volatile boolean closed = false;
+
+    /**
+     * Ouvre les fragments contenus dans le répertoire donné, avec la configuration par défaut
+     *
+     * @param directory  le répertoire des fragments, créé s'il n'existe pas
+     * @param shardCount le nombre de fragments
+     * @throws IOException            si un problème d'entrée/sortie se produit, ou si le répertoire contient un autre nombre de fragments
+     * @throws ClassNotFoundException si la déserialisation des métadonnées d'un fragment se passe mal
+     */
+    public ShardedBDD (File directory, int shardCount) throws IOException, ClassNotFoundException {
+        this(directory, shardCount, new BDDConfiguration());
+    }
+
+    /**
+     * Ouvre en parallèle les fragments contenus dans le répertoire donné. Si l'ouverture d'un fragment échoue, les fragments déjà ouverts sont fermés.
+     *
+     * @param directory     le répertoire des fragments, créé s'il n'existe pas
+     * @param shardCount    le nombre de fragments
+     * @param configuration les paramètres d'ouverture de chaque fragment
+     * @throws IOException            si un problème d'entrée/sortie se produit, ou si le répertoire contient un autre nombre de fragments
+     * @throws ClassNotFoundException si la déserialisation des métadonnées d'un fragment se passe mal
+     */
+    public ShardedBDD (File directory, int shardCount, BDDConfiguration configuration) throws IOException, ClassNotFoundException {
+        if (directory == null || configuration == null) throw new NullPointerException();
+        if (shardCount <= 0) throw new IllegalArgumentException();
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Impossible de créer le répertoire " + directory);
+        String[] existing = directory.list((dir, name) -> SHARD_FILE.matcher(name).matches());
+        if (existing != null && existing.length > 0 && existing.length != shardCount)
+            throw new IOException("Le répertoire " + directory + " contient " + existing.length + " fragments au lieu de " + shardCount);
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(shardCount, r -> {
+            Thread t = new Thread(r, "ShardedBDD " + directory.getName() + " " + threads.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        shards = new BDD[shardCount];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            int index = i;
+            File file = new File(directory, String.format("shard-%03d.bdd", i));
+            tasks.add(() -> {
+                shards[index] = new BDD(file, configuration);
+                return null;
+            });
+        }
+        try {
+            invokeAll(tasks);
+        } catch (IOException | ClassNotFoundException | RuntimeException | Error e) {
+            try {
+                close();
+            } catch (Exception suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return le nombre de fragments
+     */
+    public int getShardCount () {
+        return shards.length;
+    }
+
+    /**
+     * @param key la clé
+     * @return l'indice du fragment qui contient la clé
+     */
+    int shardIndex (String key) {
+        int h = key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    private BDD shard (String key) {
+        if (key == null) throw new NullPointerException();
+        return shards[shardIndex(key)];
+    }
+
+    /**
+     * @param objectName la clé
+     * @param object     l'objet à ajouter
+     * @throws IOException si un problème d'entrée/sortie se produit
+     * @see BDD#putObject(String, Serializable)
+     */
+    public void putObject (String objectName, Serializable object) throws IOException {
+        shard(objectName).putObject(objectName, object);
+    }
+
+    /**
+     * @param objectName la clé
+     * @return l'objet associé à la clé, ou null
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si l'objet n'a pas pu être désérialisé
+     * @see BDD#getObject(String)
+     */
+    public Serializable getObject (String objectName) throws IOException, ClassNotFoundException {
+        return shard(objectName).getObject(objectName);
+    }
+
+    /**
+     * @param objectName la clé
+     * @return true si l'objet a été trouvé
+     * @throws IOException si un problème d'entrée/sortie se produit
+     * @see BDD#removeObject(String)
+     */
+    public boolean removeObject (String objectName) throws IOException {
+        return shard(objectName).removeObject(objectName);
+    }
+
+    /**
+     * Ajoute un lot d'objets. Le lot est découpé par fragment, puis chaque fragment reçoit son lot grâce à {@link BDD#putAll(Map)}, en parallèle.
+     *
+     * @param objects les objets à ajouter, associés à leurs clés
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public void putAll (Map<String, ? extends Serializable> objects) throws IOException {
+        List<Map<String, Serializable>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++)
+            parts.add(new HashMap<>());
+        for (Map.Entry<String, ? extends Serializable> e : objects.entrySet())
+            parts.get(shardIndex(e.getKey())).put(e.getKey(), e.getValue());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            BDD shard = shards[i];
+            Map<String, Serializable> part = parts.get(i);
+            if (!part.isEmpty())
+                tasks.add(() -> {
+                    shard.putAll(part);
+                    return null;
+                });
+        }
+        invokeAllWithoutDeserialization(tasks);
+    }
+
+    /**
+     * Récupère un lot d'objets, en lisant les fragments en parallèle grâce à {@link BDD#getAll(Collection)}
+     *
+     * @param objectNames les clés des objets à récupérer
+     * @return les objets trouvés, associés à leurs clés
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si un objet n'a pas pu être désérialisé
+     */
+    public Map<String, Serializable> getAll (Collection<String> objectNames) throws IOException, ClassNotFoundException {
+        List<Callable<Map<String, Serializable>>> tasks = new ArrayList<>();
+        for (Map.Entry<BDD, List<String>> e : split(objectNames).entrySet())
+            tasks.add(() -> e.getKey().getAll(e.getValue()));
+        HashMap<String, Serializable> res = new HashMap<>();
+        for (Map<String, Serializable> part : invokeAll(tasks))
+            res.putAll(part);
+        return res;
+    }
+
+    /**
+     * Supprime un lot d'objets, en modifiant les fragments en parallèle grâce à {@link BDD#removeAll(Collection)}
+     *
+     * @param objectNames les clés des objets à supprimer
+     * @return le nombre d'objets trouvés et supprimés
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    public int removeAll (Collection<String> objectNames) throws IOException {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (Map.Entry<BDD, List<String>> e : split(objectNames).entrySet())
+            tasks.add(() -> e.getKey().removeAll(e.getValue()));
+        int res = 0;
+        for (Integer count : invokeAllWithoutDeserialization(tasks))
+            res += count;
+        return res;
+    }
+
+    /**
+     * @param objectNames des clés
+     * @return les clés regroupées par fragment. Les fragments qui ne sont concernés par aucune clé sont absents.
+     */
+    private Map<BDD, List<String>> split (Collection<String> objectNames) {
+        HashMap<BDD, List<String>> res = new HashMap<>();
+        for (String objectName : objectNames)
+            res.computeIfAbsent(shard(objectName), s -> new ArrayList<>()).add(objectName);
+        return res;
+    }
+
+    /**
+     * Parcourt, dans l'ordre des clés, les objets dont la clé est comprise entre fromKey inclus et toKey exclu.
+     * Les parcours de tous les fragments ({@link BDD#scan(String, String)}) sont fusionnés au fur et à mesure de la consommation du flux.
+     *
+     * @param fromKey la plus petite clé, ou null
+     * @param toKey   la clé qui suit la dernière clé retournée, ou null
+     * @return un flux séquentiel des associations entre les clés et les objets
+     */
+    public Stream<Map.Entry<String, Serializable>> scan (String fromKey, String toKey) {
+        return merge(shard -> shard.scan(fromKey, toKey));
+    }
+
+    /**
+     * Parcourt, dans l'ordre des clés, les objets dont la clé commence par le préfixe donné, de la même manière que {@link #scan(String, String)}
+     *
+     * @param prefix le préfixe des clés
+     * @return un flux séquentiel des associations entre les clés et les objets
+     */
+    public Stream<Map.Entry<String, Serializable>> scanPrefix (String prefix) {
+        if (prefix == null) throw new NullPointerException();
+        return merge(shard -> shard.scanPrefix(prefix));
+    }
+
+    private Stream<Map.Entry<String, Serializable>> merge (Function<BDD, Stream<Map.Entry<String, Serializable>>> scans) {
+        List<Iterator<Map.Entry<String, Serializable>>> iterators = new ArrayList<>();
+        for (BDD shard : shards)
+            iterators.add(scans.apply(shard).iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new MergeIterator(iterators),
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+    }
+
+    /**
+     * Fusionne des itérateurs triés par clé. Une clé n'appartient qu'à un seul fragment, si bien qu'aucune clé n'est retournée deux fois.
+     */
+    private static final class MergeIterator implements Iterator<Map.Entry<String, Serializable>> {
+        private final List<Iterator<Map.Entry<String, Serializable>>> iterators;
+        private PriorityQueue<Head> heads = null;
+
+        private static final class Head {
+            private final Map.Entry<String, Serializable> entry;
+            private final Iterator<Map.Entry<String, Serializable>> rest;
+
+            private Head (Map.Entry<String, Serializable> entry, Iterator<Map.Entry<String, Serializable>> rest) {
+                this.entry = entry;
+                this.rest = rest;
+            }
+        }
+
+        private MergeIterator (List<Iterator<Map.Entry<String, Serializable>>> iterators) {
+            this.iterators = iterators;
+        }
+
+        private PriorityQueue<Head> heads () {
+            if (heads == null) {
+                heads = new PriorityQueue<>(Math.max(1, iterators.size()), (a, b) -> KeyDirectory.compareKeys(a.entry.getKey(), b.entry.getKey()));
+                for (Iterator<Map.Entry<String, Serializable>> it : iterators)
+                    if (it.hasNext())
+                        heads.add(new Head(it.next(), it));
+            }
+            return heads;
+        }
+
+        @Override
+        public boolean hasNext () {
+            return !heads().isEmpty();
+        }
+
+        @Override
+        public Map.Entry<String, Serializable> next () {
+            Head head = heads().poll();
+            if (head == null)
+                throw new NoSuchElementException();
+            if (head.rest.hasNext())
+                heads.add(new Head(head.rest.next(), head.rest));
+            return head.entry;
+        }
+    }
+
+    /**
+     * Sauvegarde en parallèle les métadonnées de tous les fragments
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     * @see BDD#checkpoint()
+     */
+    public void checkpoint () throws IOException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (BDD shard : shards)
+            tasks.add(() -> {
+                shard.checkpoint();
+                return null;
+            });
+        invokeAllWithoutDeserialization(tasks);
+    }
+
+    /**
+     * Compacte en parallèle les fichiers de tous les fragments
+     *
+     * @return la somme des états finaux des compactages des fragments
+     * @throws IOException si un problème d'entrée/sortie se produit
+     * @see BDD#compact()
+     */
+    public CompactionStatistics compact () throws IOException {
+        List<Callable<CompactionStatistics>> tasks = new ArrayList<>();
+        for (BDD shard : shards)
+            tasks.add(shard::compact);
+        long movedRecords = 0, movedBytes = 0, initialLength = 0, currentLength = 0, freeBytes = 0;
+        for (CompactionStatistics s : invokeAllWithoutDeserialization(tasks)) {
+            movedRecords += s.getMovedRecords();
+            movedBytes += s.getMovedBytes();
+            initialLength += s.getInitialLength();
+            currentLength = currentLength < 0 || s.getCurrentLength() < 0 ? -1 : currentLength + s.getCurrentLength();
+            freeBytes += s.getFreeBytes();
+        }
+        return new CompactionStatistics(movedRecords, movedBytes, initialLength, currentLength, freeBytes);
+    }
+
+    /**
+     * @return l'état de chaque fragment, dans l'ordre des fragments
+     * @throws IOException si un problème d'entrée/sortie se produit
+     * @see BDD#getStatistics()
+     */
+    public List<BDDStatistics> getStatistics () throws IOException {
+        List<BDDStatistics> res = new ArrayList<>();
+        for (BDD shard : shards)
+            res.add(shard.getStatistics());
+        return res;
+    }
+
+    /**
+     * Exécute des tâches en parallèle et attend qu'elles soient toutes terminées. Une tâche unique est exécutée directement par le fil appelant.
+     * Si plusieurs tâches échouent, la première erreur est levée et les suivantes lui sont ajoutées comme erreurs supprimées.
+     *
+     * @param tasks les tâches
+     * @param <T>   le type des résultats
+     * @return les résultats, dans l'ordre des tâches
+     * @throws IOException            si une tâche a levé une {@link IOException}, ou si le fil appelant a été interrompu
+     * @throws ClassNotFoundException si une tâche a levé une {@link ClassNotFoundException}
+     */
+    private <T> List<T> invokeAll (List<Callable<T>> tasks) throws IOException, ClassNotFoundException {
+        List<T> res = new ArrayList<>(tasks.size());
+        Throwable failure = null;
+        if (tasks.size() == 1) {
+            try {
+                res.add(tasks.get(0).call());
+            } catch (Exception e) {
+                failure = e;
+            }
+        } else {
+            List<Future<T>> futures;
+            try {
+                futures = executor.invokeAll(tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            for (Future<T> future : futures) {
+                try {
+                    res.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                    else
+                        failure.addSuppressed(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof ClassNotFoundException)
+            throw (ClassNotFoundException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        if (failure != null)
+            throw new IOException(failure);
+        return res;
+    }
+
+    /**
+     * Comme {@link #invokeAll(List)}, pour des tâches qui ne désérialisent aucun objet
+     */
+    private <T> List<T> invokeAllWithoutDeserialization (List<Callable<T>> tasks) throws IOException {
+        try {
+            return invokeAll(tasks);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Ferme en parallèle tous les fragments ouverts, puis arrête les fils d'exécution. Les appels suivants sont sans effet.
+     *
+     * @throws Exception si la fermeture d'un fragment a échoué
+     */
+    @Override
+    public synchronized void close () throws Exception {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (BDD shard : shards)
+                if (shard != null)
+                    tasks.add(() -> {
+                        shard.close();
+                        return null;
+                    });
+            if (!tasks.isEmpty())
+                invokeAll(tasks);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package bdd;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Instantané d'une {@link BDD}, ouvert par {@link BDD#snapshot()}. Ses lectures voient les objets tels qu'ils étaient à l'ouverture de l'instantané,
+ * même si leurs clés ont été modifiées ou supprimées depuis, et même si les modifications d'un lot ou d'une transaction ont eu lieu pendant la lecture.
+ * <p>
+ * Un instantané ne prend pas de verrou entre deux lectures : il retient seulement les zones des enregistrements remplacés depuis son ouverture,
+ * qui ne sont réutilisées qu'après sa fermeture. Il peut être utilisé par plusieurs fils d'exécution.
+ *
+ * @version 1.0
+ */
+public final class Snapshot implements AutoCloseable {
+    private final BDD bdd;
+    private final long version;
+    private volatile boolean closed = false;
+
+    Snapshot (BDD bdd, long version) {
+        this.bdd = bdd;
+        this.version = version;
+    }
+
+    /**
+     * @return la version de la BDD lue par cet instantané
+     */
+    public long getVersion () {
+        return version;
+    }
+
+    /**
+     * @param objectName la clé de l'objet
+     * @return l'objet associé à la clé à l'ouverture de l'instantané, ou null si la clé était absente
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si l'objet n'a pas pu être désérialisé
+     * @throws IllegalStateException  si l'instantané est fermé
+     */
+    public Serializable getObject (String objectName) throws IOException, ClassNotFoundException {
+        if (objectName == null) throw new NullPointerException();
+        return getAll(Collections.singleton(objectName)).get(objectName);
+    }
+
+    /**
+     * @param objectNames les clés des objets
+     * @return les objets associés aux clés à l'ouverture de l'instantané. Les clés alors absentes sont absentes du résultat.
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si un objet n'a pas pu être désérialisé
+     * @throws IllegalStateException  si l'instantané est fermé
+     * @see BDD#getAll(Collection)
+     */
+    public Map<String, Serializable> getAll (Collection<String> objectNames) throws IOException, ClassNotFoundException {
+        if (closed)
+            throw new IllegalStateException("L'instantané est fermé");
+        return bdd.readAll(objectNames, version);
+    }
+
+    /**
+     * Ferme l'instantané, ce qui permet de réutiliser les zones qu'il était le seul à pouvoir lire. Un second appel n'a pas d'effet.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    @Override
+    public synchronized void close () throws IOException {
+        if (!closed) {
+            closed = true;
+            bdd.closeSnapshot(version);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package bdd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Abstraction du support physique utilisé par {@link BDD} pour lire et écrire ses enregistrements.
+ * <p>
+ * Toutes les opérations sont positionnelles : la position est donnée à chaque appel, il n'y a pas de curseur partagé.
+ * Deux implémentations sont disponibles :
+ * <ul>
+ *     <li>{@link RandomAccessFileStorage} qui s'appuie sur un {@link java.io.RandomAccessFile}</li>
+ *     <li>{@link MappedFileStorage} qui projette le fichier en mémoire par segments grâce à {@link java.nio.channels.FileChannel#map}</li>
+ * </ul>
+ * {@link MeteredStorage} peut envelopper l'une ou l'autre pour compter les octets lus et écrits.
+ *
+ * @version 1.0
+ */
+interface Storage extends AutoCloseable {
+
+    /**
+     * Ouvre le support correspondant au mode donné en paramètre
+     *
+     * @param file le fichier de la BDD
+     * @param mode le mode d'ouverture
+     * @return le support ouvert
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    static Storage open (File file, StorageMode mode) throws IOException {
+        if (mode == null) throw new NullPointerException();
+        switch (mode) {
+            case MEMORY_MAPPED:
+                return new MappedFileStorage(file);
+            case RANDOM_ACCESS_FILE:
+            default:
+                return new RandomAccessFileStorage(file);
+        }
+    }
+
+    /**
+     * @return la taille logique du fichier en octets
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    long length () throws IOException;
+
+    /**
+     * Modifie la taille du fichier. Les données au delà de la nouvelle taille sont perdues.
+     *
+     * @param newLength la nouvelle taille
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void setLength (long newLength) throws IOException;
+
+    /**
+     * Lit un entier à la position donnée
+     *
+     * @param pos la position dans le fichier
+     * @return l'entier lu
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    int readInt (long pos) throws IOException;
+
+    /**
+     * Lit un entier long à la position donnée
+     *
+     * @param pos la position dans le fichier
+     * @return l'entier long lu
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    long readLong (long pos) throws IOException;
+
+    /**
+     * Remplit entièrement la portion donnée du tableau avec les octets lus à partir de la position donnée
+     *
+     * @param pos    la position dans le fichier
+     * @param dst    le tableau de destination
+     * @param offset la position de début dans le tableau
+     * @param length le nombre d'octets à lire
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si la fin du fichier est atteinte
+     */
+    void read (long pos, byte[] dst, int offset, int length) throws IOException;
+
+    /**
+     * Remplit entièrement l'espace restant du tampon donné avec les octets lus à partir de la position donnée.
+     * La position du tampon est avancée d'autant.
+     *
+     * @param pos la position dans le fichier
+     * @param dst le tampon de destination
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si la fin du fichier est atteinte
+     */
+    void read (long pos, ByteBuffer dst) throws IOException;
+
+    /**
+     * Envoie vers le canal donné les octets lus à partir de la position donnée, sans les copier dans un tableau intermédiaire
+     * lorsque le système le permet
+     *
+     * @param pos    la position dans le fichier
+     * @param count  le nombre d'octets à envoyer
+     * @param target le canal de destination
+     * @throws IOException si un problème d'entrée/sortie se produit, ou si la fin du fichier est atteinte
+     */
+    void transferTo (long pos, long count, WritableByteChannel target) throws IOException;
+
+    /**
+     * Ecrit un entier à la position donnée. Le fichier est agrandi si nécessaire.
+     *
+     * @param pos   la position dans le fichier
+     * @param value l'entier à écrire
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void writeInt (long pos, int value) throws IOException;
+
+    /**
+     * Ecrit un entier long à la position donnée. Le fichier est agrandi si nécessaire.
+     *
+     * @param pos   la position dans le fichier
+     * @param value l'entier long à écrire
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void writeLong (long pos, long value) throws IOException;
+
+    /**
+     * Ecrit la portion donnée du tableau à la position donnée. Le fichier est agrandi si nécessaire.
+     *
+     * @param pos    la position dans le fichier
+     * @param src    le tableau source
+     * @param offset la position de début dans le tableau
+     * @param length le nombre d'octets à écrire
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void write (long pos, byte[] src, int offset, int length) throws IOException;
+
+    /**
+     * Force l'écriture sur disque des modifications effectuées
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    void force () throws IOException;
+
+    @Override
+    void close () throws IOException;
+}
@@ -0,0 +1,19 @@
+package bdd;
+
+/**
+ * Mode d'ouverture du support physique d'une {@link BDD}
+ *
+ * @version 1.0
+ */
+public enum StorageMode {
+    /**
+     * Lectures et écritures par appels systèmes sur un {@link java.io.RandomAccessFile}.
+     * C'est le mode par défaut.
+     */
+    RANDOM_ACCESS_FILE,
+    /**
+     * Le fichier est projeté en mémoire par segments {@link java.nio.MappedByteBuffer}.
+     * Les lectures et écritures se font alors sans appel système, ce qui est plus adapté aux accès intensifs en lecture.
+     */
+    MEMORY_MAPPED
+}
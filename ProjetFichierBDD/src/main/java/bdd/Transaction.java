@@ -0,0 +1,154 @@
+package bdd;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transaction d'une {@link BDD}, commencée par {@link BDD#beginTransaction()}.
+ * <p>
+ * Les ajouts et les suppressions sont encodés dès leur appel, mais conservés en mémoire jusqu'à la validation par {@link #commit()}.
+ * Celle-ci réserve et écrit tous les enregistrements, puis associe toutes les clés à leurs nouvelles positions en une seule prise
+ * du verrou d'écriture, dans une même version de la BDD et une seule entrée du journal des opérations : les lecteurs voient toutes
+ * les modifications de la transaction ou aucune, et un arrêt brutal ne peut pas n'en conserver qu'une partie.
+ * L'annulation par {@link #rollback()} n'a rien à défaire, puisque rien n'a été écrit.
+ * <p>
+ * Les lectures de la transaction voient ses propres modifications, puis l'instantané ({@link Snapshot}) ouvert à son commencement.
+ * Si une clé modifiée par la transaction a été modifiée par ailleurs depuis cet instantané, la validation échoue
+ * avec une {@link ConcurrentModificationException} : la première transaction validée l'emporte, et aucune mise à jour n'est perdue.
+ * <p>
+ * Une transaction ne doit être utilisée que par un seul fil d'exécution. Elle se termine par sa validation, son annulation ou sa fermeture,
+ * qui ferment son instantané.
+ *
+ * @version 1.0
+ */
+public final class Transaction implements AutoCloseable {
+    private final BDD bdd;
+    private final Snapshot snapshot;
+    /**
+     * Enregistrements binaires des clés modifiées, dans l'ordre des modifications, ou null pour les clés supprimées
+     */
+    private final LinkedHashMap<String, byte[]> writes = new LinkedHashMap<>();
+    private final HashMap<String, Object[]> indexValues = new HashMap<>();
+    private boolean active = true;
+
+    Transaction (BDD bdd, Snapshot snapshot) {
+        this.bdd = bdd;
+        this.snapshot = snapshot;
+    }
+
+    private void checkActive () {
+        if (!active)
+            throw new IllegalStateException("La transaction est terminée");
+    }
+
+    /**
+     * @return true tant que la transaction n'est ni validée, ni annulée
+     */
+    public boolean isActive () {
+        return active;
+    }
+
+    /**
+     * Ajoute un objet à la transaction. L'objet est encodé immédiatement : ses modifications ultérieures ne sont pas prises en compte.
+     *
+     * @param objectName la clé de l'objet
+     * @param object     l'objet
+     * @throws IOException           si un problème d'entrée/sortie se produit
+     * @throws IllegalStateException si la transaction est terminée
+     */
+    public void putObject (String objectName, Serializable object) throws IOException {
+        checkActive();
+        if (object == null) throw new NullPointerException();
+        bdd.checkKey(objectName);
+        indexValues.put(objectName, bdd.extractIndexValues(object));
+        writes.put(objectName, bdd.encode(object));
+    }
+
+    /**
+     * Supprime un objet dans la transaction
+     *
+     * @param objectName la clé de l'objet
+     * @throws IllegalStateException si la transaction est terminée
+     */
+    public void removeObject (String objectName) {
+        checkActive();
+        if (objectName == null) throw new NullPointerException();
+        indexValues.remove(objectName);
+        writes.put(objectName, null);
+    }
+
+    /**
+     * @param objectName la clé de l'objet
+     * @return l'objet ajouté par la transaction, null s'il y a été supprimé, et sinon l'objet de l'instantané de la transaction
+     * @throws IOException            si un problème d'entrée/sortie se produit
+     * @throws ClassNotFoundException si l'objet n'a pas pu être désérialisé
+     * @throws IllegalStateException  si la transaction est terminée
+     */
+    public Serializable getObject (String objectName) throws IOException, ClassNotFoundException {
+        checkActive();
+        if (objectName == null) throw new NullPointerException();
+        if (writes.containsKey(objectName)) {
+            byte[] data = writes.get(objectName);
+            return data == null ? null : bdd.decode(data);
+        }
+        return snapshot.getObject(objectName);
+    }
+
+    /**
+     * Valide la transaction : toutes ses modifications sont appliquées ensemble. La transaction est terminée, même en cas d'échec.
+     *
+     * @throws IOException                     si un problème d'entrée/sortie se produit
+     * @throws ConcurrentModificationException si une des clés modifiées par la transaction l'a été par ailleurs depuis son commencement.
+     *                                         Aucune modification de la transaction n'est alors appliquée.
+     * @throws IllegalStateException           si la transaction est déjà terminée
+     */
+    public void commit () throws IOException {
+        checkActive();
+        active = false;
+        try {
+            int count = writes.size();
+            String[] keys = new String[count];
+            byte[][] arrays = new byte[count][];
+            Object[][] values = new Object[count][];
+            int i = 0;
+            for (Map.Entry<String, byte[]> e : writes.entrySet()) {
+                keys[i] = e.getKey();
+                values[i] = indexValues.get(e.getKey());
+                arrays[i++] = e.getValue();
+            }
+            bdd.commit(snapshot.getVersion(), keys, arrays, values);
+        } finally {
+            writes.clear();
+            indexValues.clear();
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Annule la transaction, dont aucune modification n'est appliquée. Sans effet si la transaction est déjà terminée.
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit lors de la fermeture de l'instantané
+     */
+    public void rollback () throws IOException {
+        if (active) {
+            active = false;
+            writes.clear();
+            indexValues.clear();
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Annule la transaction si elle n'a pas été validée
+     *
+     * @throws IOException si un problème d'entrée/sortie se produit
+     */
+    @Override
+    public void close () throws IOException {
+        rollback();
+    }
+}
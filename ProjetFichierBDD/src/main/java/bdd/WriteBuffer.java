@@ -0,0 +1,106 @@
+package bdd;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tampon d'écriture différée d'une {@link BDD}, activé par {@link BDDConfiguration#setWriteBufferSize(long)}.
+ * <p>
+ * Le tampon associe chaque clé modifiée à son dernier enregistrement encodé, ou à une suppression. Les lectures le consultent avant le fichier.
+ * Lorsqu'il est vidé, ses entrées sont copiées par {@link #pending()} puis écrites ensemble ; elles restent visibles pendant l'écriture,
+ * et ne sont retirées par {@link #flushed(Map)} que si elles n'ont pas été remplacées entre temps.
+ * <p>
+ * Toutes les fonctions sont synchronisées sur le tampon.
+ *
+ * @version 1.0
+ */
+final class WriteBuffer {
+    /**
+     * Modification en attente d'une clé
+     */
+    static final class Entry {
+        final byte[] data;
+        final Object[] indexValues;
+
+        private Entry (byte[] data, Object[] indexValues) {
+            this.data = data;
+            this.indexValues = indexValues;
+        }
+
+        /**
+         * @return true si la clé est supprimée
+         */
+        boolean isRemoval () {
+            return data == null;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private long bytes = 0;
+
+    /**
+     * @param maxBytes le nombre d'octets en attente à partir duquel le tampon doit être vidé
+     */
+    WriteBuffer (long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Remplace la modification en attente d'une clé
+     *
+     * @param key         la clé
+     * @param data        l'enregistrement encodé, ou null pour une suppression
+     * @param indexValues les valeurs des index secondaires de l'enregistrement
+     * @return true si le tampon a atteint sa taille maximale et doit être vidé
+     */
+    synchronized boolean put (String key, byte[] data, Object[] indexValues) {
+        Entry previous = entries.put(key, new Entry(data, indexValues));
+        if (previous != null && previous.data != null)
+            bytes -= previous.data.length + 4;
+        if (data != null)
+            bytes += data.length + 4;
+        return bytes >= maxBytes;
+    }
+
+    /**
+     * @param key la clé
+     * @return la modification en attente de la clé, ou null si la clé n'a pas de modification en attente
+     */
+    synchronized Entry get (String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * @return une copie des modifications en attente, dans l'ordre de leur première inscription
+     */
+    synchronized LinkedHashMap<String, Entry> pending () {
+        return new LinkedHashMap<>(entries);
+    }
+
+    /**
+     * Retire les modifications écrites, sauf celles qui ont été remplacées pendant l'écriture
+     *
+     * @param written les modifications retournées par {@link #pending()} puis écrites
+     */
+    synchronized void flushed (Map<String, Entry> written) {
+        for (Map.Entry<String, Entry> e : written.entrySet()) {
+            if (entries.remove(e.getKey(), e.getValue()) && e.getValue().data != null)
+                bytes -= e.getValue().data.length + 4;
+        }
+    }
+
+    /**
+     * @return le nombre de clés qui ont une modification en attente
+     */
+    synchronized int size () {
+        return entries.size();
+    }
+
+    /**
+     * @return le nombre d'octets des enregistrements en attente, en-têtes compris
+     */
+    synchronized long getBytes () {
+        return bytes;
+    }
+}
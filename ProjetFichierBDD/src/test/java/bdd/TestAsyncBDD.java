@@ -0,0 +1,182 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests de {@link AsyncBDD}
+ */
+public class TestAsyncBDD {
+
+	private static final File bddFile=new File("bddAsyncTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		bddFile.delete();
+		OperationLog.getLogFile(bddFile).delete();
+	}
+
+	/**
+	 * Exécuteur qui conserve les tâches jusqu'à ce que le test les exécute
+	 */
+	private static class ManualExecutor implements Executor {
+		final ArrayDeque<Runnable> tasks=new ArrayDeque<>();
+
+		@Override
+		public synchronized void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		synchronized int runAll() {
+			int count=0;
+			Runnable task;
+			while ((task=tasks.poll())!=null)
+			{
+				task.run();
+				count++;
+			}
+			return count;
+		}
+	}
+
+	@Test
+	public void testOperations() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			try (AsyncBDD async=new AsyncBDD(bdd, 4, 100)) {
+				List<CompletableFuture<Void>> puts=new ArrayList<>();
+				for (int i=0;i<50;i++)
+					puts.add(async.putAsync("k"+i, "value"+i));
+				CompletableFuture.allOf(puts.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+				for (int i=0;i<50;i++)
+					Assert.assertEquals(async.getAsync("k"+i).get(10, TimeUnit.SECONDS), "value"+i);
+				Assert.assertNull(async.getAsync("missing").get(10, TimeUnit.SECONDS));
+				Assert.assertTrue(async.removeAsync("k3").get(10, TimeUnit.SECONDS));
+				Assert.assertFalse(async.removeAsync("k3").get(10, TimeUnit.SECONDS));
+				Assert.assertNull(async.getAsync("k3").get(10, TimeUnit.SECONDS));
+			}
+			Assert.assertEquals(bdd.getObject("k4"), "value4");
+		}
+	}
+
+	@Test
+	public void testOrderingOfSameKey() throws Exception {
+		try (BDD bdd=new BDD(bddFile); AsyncBDD async=new AsyncBDD(bdd, 8, 1000)) {
+			CompletableFuture<Serializable> last=null;
+			for (int i=0;i<200;i++)
+			{
+				async.putAsync("key", i);
+				last=async.getAsync("key");
+			}
+			Assert.assertEquals(last.get(10, TimeUnit.SECONDS), 199);
+			async.removeAsync("key");
+			Assert.assertNull(async.getAsync("key").get(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testReadBeforeWrite() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			ManualExecutor executor=new ManualExecutor();
+			AsyncBDD async=new AsyncBDD(bdd, executor, 10);
+			CompletableFuture<Void> w0=async.putAsync("key", "first");
+			CompletableFuture<Serializable> read=async.getAsync("key");
+			CompletableFuture<Void> w1=async.putAsync("key", "second");
+			executor.runAll();
+			Assert.assertTrue(w0.isDone() && w1.isDone());
+			Assert.assertEquals(read.get(), "first", "A read must not see a write submitted after it");
+			Assert.assertEquals(bdd.getObject("key"), "second");
+			async.close();
+		}
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putObject("key", "value");
+			ManualExecutor executor=new ManualExecutor();
+			AsyncBDD async=new AsyncBDD(bdd, executor, 10);
+			CompletableFuture<Serializable> f1=async.getAsync("key");
+			CompletableFuture<Serializable> f2=async.getAsync("key");
+			CompletableFuture<Serializable> f3=async.getAsync("key");
+			Assert.assertEquals(async.getCoalescedReads(), 2);
+			Assert.assertEquals(async.getPendingOperations(), 1);
+			// une lecture soumise après une écriture ne rejoint pas la lecture en attente
+			CompletableFuture<Void> put=async.putAsync("key", "other");
+			CompletableFuture<Serializable> f4=async.getAsync("key");
+			CompletableFuture<Serializable> f5=async.getAsync("key");
+			Assert.assertEquals(async.getCoalescedReads(), 3);
+			Assert.assertEquals(async.getPendingOperations(), 3);
+			Assert.assertFalse(f1.isDone());
+			Assert.assertTrue(executor.runAll()>=3);
+			Assert.assertEquals(f1.get(), "value");
+			Assert.assertEquals(f2.get(), "value");
+			Assert.assertEquals(f3.get(), "value");
+			Assert.assertTrue(put.isDone());
+			Assert.assertEquals(f4.get(), "other");
+			Assert.assertEquals(f5.get(), "other");
+			Assert.assertEquals(async.getPendingOperations(), 0);
+			// la lecture terminée n'est plus partagée
+			CompletableFuture<Serializable> f6=async.getAsync("key");
+			Assert.assertEquals(async.getCoalescedReads(), 3);
+			executor.runAll();
+			Assert.assertEquals(f6.get(), "other");
+			async.close();
+		}
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			ManualExecutor executor=new ManualExecutor();
+			AsyncBDD async=new AsyncBDD(bdd, executor, 2);
+			CompletableFuture<Void> p1=async.putAsync("a", 1);
+			CompletableFuture<Void> p2=async.putAsync("b", 2);
+			CompletableFuture<Void> p3=async.putAsync("c", 3);
+			Assert.assertTrue(p3.isCompletedExceptionally());
+			try {
+				p3.get();
+				Assert.fail();
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+			}
+			Assert.assertEquals(async.getRejectedOperations(), 1);
+			Assert.assertEquals(async.getPendingOperations(), 2);
+			executor.runAll();
+			Assert.assertTrue(p1.isDone() && p2.isDone());
+			Assert.assertEquals(async.getPendingOperations(), 0);
+			async.putAsync("c", 3);
+			executor.runAll();
+			Assert.assertEquals(bdd.getObject("c"), 3);
+			async.close();
+			Assert.assertTrue(async.getAsync("c").isCompletedExceptionally());
+		}
+	}
+
+	@Test
+	public void testFailurePropagation() throws Exception {
+		BDD bdd=new BDD(bddFile);
+		try (AsyncBDD async=new AsyncBDD(bdd, 1, 10)) {
+			async.putAsync("key", "value").get(10, TimeUnit.SECONDS);
+			bdd.close();
+			try {
+				async.getAsync("key").get(10, TimeUnit.SECONDS);
+				Assert.fail();
+			} catch (ExecutionException e) {
+				Assert.assertNotNull(e.getCause());
+			}
+			Assert.assertEquals(async.getPendingOperations(), 0);
+		}
+	}
+}
@@ -129,7 +129,11 @@ public class TestBDD {
 
 	private void checkBddOpened() throws IOException, ClassNotFoundException {
 		if (bdd==null)
-			bdd=new BDD(bddFile);
+			bdd=openBDD(bddFile);
+	}
+
+	protected BDD openBDD(File file) throws IOException, ClassNotFoundException {
+		return new BDD(file);
 	}
 
 	@AfterTest
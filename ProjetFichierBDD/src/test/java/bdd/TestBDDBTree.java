@@ -0,0 +1,19 @@
+package bdd;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Rejoue les tests de {@link TestBDD} avec un répertoire des clés {@link KeyDirectoryType#B_TREE}.
+ * Les petites pages et le petit cache provoquent de nombreux découpages et relectures de pages.
+ */
+public class TestBDDBTree extends TestBDD {
+
+	@Override
+	protected BDD openBDD(File file) throws IOException, ClassNotFoundException {
+		return new BDD(file, new BDDConfiguration()
+				.setKeyDirectoryType(KeyDirectoryType.B_TREE)
+				.setKeyDirectoryPageSize(512)
+				.setKeyDirectoryCacheSize(4));
+	}
+}
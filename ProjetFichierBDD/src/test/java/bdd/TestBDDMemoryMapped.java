@@ -0,0 +1,15 @@
+package bdd;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Rejoue les tests de {@link TestBDD} avec le mode {@link StorageMode#MEMORY_MAPPED}
+ */
+public class TestBDDMemoryMapped extends TestBDD {
+
+	@Override
+	protected BDD openBDD(File file) throws IOException, ClassNotFoundException {
+		return new BDD(file, StorageMode.MEMORY_MAPPED);
+	}
+}
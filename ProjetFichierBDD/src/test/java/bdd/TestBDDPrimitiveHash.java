@@ -0,0 +1,15 @@
+package bdd;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Rejoue les tests de {@link TestBDD} avec un répertoire des clés {@link KeyDirectoryType#PRIMITIVE_HASH}
+ */
+public class TestBDDPrimitiveHash extends TestBDD {
+
+	@Override
+	protected BDD openBDD(File file) throws IOException, ClassNotFoundException {
+		return new BDD(file, new BDDConfiguration().setKeyDirectoryType(KeyDirectoryType.PRIMITIVE_HASH));
+	}
+}
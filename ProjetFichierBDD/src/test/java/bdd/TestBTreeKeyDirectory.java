@@ -0,0 +1,214 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Tests du répertoire des clés {@link BTreeKeyDirectory}, et de son utilisation par la {@link BDD}
+ */
+public class TestBTreeKeyDirectory {
+
+	private static final File storageFile=new File("btreeTest.toRemove");
+	private static final File bddFile=new File("bddBTreeTest.toRemove");
+	private static final File crashFile=new File("bddBTreeCrashTest.toRemove");
+
+	/**
+	 * Allocateur qui ajoute les pages en fin de fichier, et qui vérifie qu'aucune page n'est libérée deux fois
+	 */
+	private static class PageTracker implements KeyDirectory.PageAllocator {
+		private final Storage storage;
+		private final HashSet<Long> pages=new HashSet<>();
+
+		private PageTracker(Storage storage) {
+			this.storage=storage;
+		}
+
+		@Override
+		public long allocate(int length) throws IOException {
+			long pos=Math.max(16, storage.length());
+			storage.setLength(pos+length);
+			pages.add(pos);
+			return pos;
+		}
+
+		@Override
+		public void release(long position, int length) {
+			Assert.assertTrue(pages.remove(position), "Page released twice or never allocated: "+position);
+		}
+	}
+
+	@AfterMethod
+	public void removeFiles() {
+		storageFile.delete();
+		bddFile.delete();
+		crashFile.delete();
+		OperationLog.getLogFile(bddFile).delete();
+		OperationLog.getLogFile(crashFile).delete();
+	}
+
+	private static void check(BTreeKeyDirectory directory, TreeMap<String, Long> expected) throws IOException {
+		Assert.assertEquals(directory.size(), expected.size());
+		Iterator<Map.Entry<String, Long>> it=directory.iterator();
+		for (Map.Entry<String, Long> e : expected.entrySet())
+		{
+			Assert.assertTrue(it.hasNext());
+			Assert.assertEquals(it.next(), e, "Keys must be iterated in order");
+		}
+		Assert.assertFalse(it.hasNext());
+		for (Map.Entry<String, Long> e : expected.entrySet())
+			Assert.assertEquals(directory.get(e.getKey()), e.getValue());
+	}
+
+	@Test
+	public void testRandomOperations() throws Exception {
+		try (Storage storage=Storage.open(storageFile, StorageMode.RANDOM_ACCESS_FILE)) {
+			PageTracker tracker=new PageTracker(storage);
+			BTreeKeyDirectory directory=new BTreeKeyDirectory(storage, tracker, 512, 8, 1000);
+			TreeMap<String, Long> expected=new TreeMap<>();
+			Random random=new Random(42);
+			for (int round=0;round<20;round++)
+			{
+				for (int i=0;i<500;i++)
+				{
+					String key="key"+random.nextInt(2000)+(random.nextBoolean()?"":"-with-a-longer-suffix");
+					if (random.nextInt(3)==0)
+						Assert.assertEquals(directory.remove(key), expected.remove(key));
+					else
+					{
+						long position=random.nextInt(1000000);
+						Assert.assertEquals(directory.put(key, position), expected.put(key, position));
+					}
+				}
+				check(directory, expected);
+				byte[] descriptor=directory.save();
+				directory=new BTreeKeyDirectory(storage, tracker, descriptor, 8, 1000);
+				check(directory, expected);
+			}
+			for (String key : new HashSet<>(expected.keySet()))
+				Assert.assertEquals(directory.remove(key), expected.remove(key));
+			check(directory, expected);
+			directory.save();
+			directory.releaseAll();
+			Assert.assertTrue(tracker.pages.isEmpty(), "Every page must be released: "+tracker.pages.size()+" remaining");
+		}
+	}
+
+	@Test
+	public void testIteratorFromKey() throws Exception {
+		try (Storage storage=Storage.open(storageFile, StorageMode.RANDOM_ACCESS_FILE)) {
+			BTreeKeyDirectory directory=new BTreeKeyDirectory(storage, new PageTracker(storage), 512, 8, 1000);
+			for (int i=0;i<1000;i+=2)
+				directory.put(String.format("%04d", i), i);
+			directory=new BTreeKeyDirectory(storage, new PageTracker(storage), directory.save(), 8, 1000);
+			Assert.assertEquals(directory.iterator("0500", true).next().getValue(), Long.valueOf(500));
+			Assert.assertEquals(directory.iterator("0500", false).next().getValue(), Long.valueOf(502));
+			Assert.assertEquals(directory.iterator("0501", true).next().getValue(), Long.valueOf(502));
+			Assert.assertFalse(directory.iterator("0998", false).hasNext());
+			int count=0;
+			for (Iterator<Map.Entry<String, Long>> it=directory.iterator("0100", true);it.hasNext();it.next())
+				count++;
+			Assert.assertEquals(count, 450);
+		}
+	}
+
+	@Test
+	public void testUnicodeKeysAndKeyLength() throws Exception {
+		try (Storage storage=Storage.open(storageFile, StorageMode.RANDOM_ACCESS_FILE)) {
+			BTreeKeyDirectory directory=new BTreeKeyDirectory(storage, new PageTracker(storage), 512, 8, 1000);
+			directory.put("été", 1);
+			directory.put("😀", 2);
+			directory.put("ete", 3);
+			directory=new BTreeKeyDirectory(storage, new PageTracker(storage), directory.save(), 8, 1000);
+			Assert.assertEquals(directory.get("été"), Long.valueOf(1));
+			Assert.assertEquals(directory.get("😀"), Long.valueOf(2));
+			Assert.assertEquals(directory.iterator().next().getKey(), "ete");
+			StringBuilder sb=new StringBuilder();
+			while (sb.length()<200)
+				sb.append('x');
+			try {
+				directory.put(sb.toString(), 4);
+				Assert.fail("IllegalArgumentException should be generated");
+			}
+			catch (IllegalArgumentException ignored)
+			{
+
+			}
+			Assert.assertEquals(directory.size(), 3);
+		}
+	}
+
+	@Test
+	public void testConversionBetweenDirectoryTypes() throws Exception {
+		HashMap<String, Person> persons=new HashMap<>();
+		try (BDD bdd=new BDD(bddFile)) {
+			for (int i=0;i<300;i++)
+			{
+				Person p=new Person();
+				persons.put("p"+i, p);
+				bdd.putObject("p"+i, p);
+			}
+		}
+		BDDConfiguration btree=new BDDConfiguration().setKeyDirectoryType(KeyDirectoryType.B_TREE).setKeyDirectoryPageSize(512);
+		try (BDD bdd=new BDD(bddFile, btree)) {
+			for (Map.Entry<String, Person> e : persons.entrySet())
+				Assert.assertEquals(bdd.getObject(e.getKey()), e.getValue());
+			Assert.assertTrue(bdd.removeObject("p0"));
+			persons.remove("p0");
+		}
+		try (BDD bdd=new BDD(bddFile, btree)) {
+			Assert.assertEquals(bdd.getLinks().size(), persons.size());
+		}
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertEquals(bdd.getLinks().size(), persons.size());
+			for (Map.Entry<String, Person> e : persons.entrySet())
+				Assert.assertEquals(bdd.getObject(e.getKey()), e.getValue());
+		}
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.compact();
+			Assert.assertTrue(bdd.getFragmentation()<0.2, "The pages of the former tree must be released: "+bdd.getFragmentation());
+		}
+	}
+
+	@Test
+	public void testRecoveryWithOperationLog() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration()
+				.setKeyDirectoryType(KeyDirectoryType.B_TREE)
+				.setKeyDirectoryPageSize(512)
+				.setKeyDirectoryMaxDirtyPages(8)
+				.setOperationLogEnabled(true)
+				.setLogSyncPolicy(LogSyncPolicy.EVERY_OPERATION);
+		HashMap<String, Integer> expected=new HashMap<>();
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			for (int i=0;i<2000;i++)
+			{
+				bdd.putObject("k"+i, i);
+				expected.put("k"+i, i);
+				if (i%3==0)
+				{
+					bdd.removeObject("k"+(i/2));
+					expected.remove("k"+(i/2));
+				}
+			}
+			//arrêt brutal simulé : seules les sauvegardes provoquées par les pages modifiées ont eu lieu
+			Files.copy(bddFile.toPath(), crashFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.copy(OperationLog.getLogFile(bddFile).toPath(), OperationLog.getLogFile(crashFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		try (BDD recovered=new BDD(crashFile, configuration)) {
+			Assert.assertEquals(recovered.getLinks().size(), expected.size());
+			for (Map.Entry<String, Integer> e : expected.entrySet())
+				Assert.assertEquals(recovered.getObject(e.getKey()), e.getValue());
+		}
+	}
+}
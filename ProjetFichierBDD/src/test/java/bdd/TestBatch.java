@@ -0,0 +1,134 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests des fonctions {@link BDD#putAll(Map)}, {@link BDD#getAll(java.util.Collection)} et {@link BDD#removeAll(java.util.Collection)}
+ */
+public class TestBatch {
+
+	private static final File bddFile=new File("bddBatchTest.toRemove");
+
+	private static HashMap<String, Person> generate(String prefix, int count)
+	{
+		HashMap<String, Person> persons=new HashMap<>();
+		for (int i=0;i<count;i++)
+			persons.put(prefix+i, new Person());
+		return persons;
+	}
+
+	@Test
+	public void testPutAllGetAll() throws Exception {
+		HashMap<String, Person> persons=generate("p", 500);
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putAll(persons);
+			Assert.assertEquals(bdd.getLinks().size(), persons.size());
+			Map<String, Serializable> read=bdd.getAll(persons.keySet());
+			Assert.assertEquals(read, persons);
+			for (Map.Entry<String, Person> e : persons.entrySet())
+				Assert.assertEquals(bdd.getObject(e.getKey()), e.getValue());
+		}
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertEquals(bdd.getAll(persons.keySet()), persons);
+		}
+	}
+
+	@Test
+	public void testRecordsAreContiguous() throws Exception {
+		HashMap<String, Person> persons=generate("p", 100);
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putAll(persons);
+			List<Long> positions=new ArrayList<>(bdd.getLinks().values());
+			positions.sort(null);
+			long expected=16;
+			for (Long pos : positions)
+			{
+				Assert.assertEquals(pos.longValue(), expected, "The records of a batch appended to an empty file must follow each other");
+				expected+=SerializationTools.serialize(bdd.getObject(keyOf(bdd, pos)), new CodecRegistry()).length+4;
+			}
+		}
+	}
+
+	private static String keyOf(BDD bdd, long pos)
+	{
+		for (Map.Entry<String, Long> e : bdd.getLinks().entrySet())
+			if (e.getValue()==pos)
+				return e.getKey();
+		throw new IllegalArgumentException();
+	}
+
+	@Test
+	public void testOverwriteAndMissingKeys() throws Exception {
+		HashMap<String, Person> persons=generate("p", 200);
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putAll(persons);
+			HashMap<String, Person> updates=generate("p", 100);
+			updates.putAll(generate("q", 50));
+			bdd.putAll(updates);
+			persons.putAll(updates);
+			ArrayList<String> keys=new ArrayList<>(persons.keySet());
+			keys.add("unknown");
+			keys.add("p0");
+			Map<String, Serializable> read=bdd.getAll(keys);
+			Assert.assertEquals(read, persons);
+			Assert.assertEquals(bdd.getLinks().size(), 250);
+		}
+	}
+
+	@Test
+	public void testRemoveAll() throws Exception {
+		HashMap<String, byte[]> values=new HashMap<>();
+		for (int i=0;i<200;i++)
+			values.put("v"+i, new byte[100]);
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putAll(values);
+			long length=bddFile.length();
+			ArrayList<String> removed=new ArrayList<>();
+			for (int i=0;i<200;i+=2)
+				removed.add("v"+i);
+			removed.add("unknown");
+			Assert.assertEquals(bdd.removeAll(removed), 100);
+			Assert.assertEquals(bdd.removeAll(Arrays.asList("v0", "v2")), 0);
+			Assert.assertEquals(bdd.getAll(removed).size(), 0);
+			Assert.assertEquals(bdd.getAll(values.keySet()).size(), 100);
+			HashMap<String, byte[]> added=new HashMap<>();
+			for (int i=0;i<100;i++)
+				added.put("w"+i, new byte[100]);
+			bdd.putAll(added);
+			Assert.assertTrue(bddFile.length()<=length, "The space freed by removeAll must be reused");
+			Assert.assertEquals(bdd.getLinks().size(), 200);
+		}
+	}
+
+	@Test
+	public void testWithCacheAndOperationLog() throws Exception {
+		HashMap<String, Person> persons=generate("p", 100);
+		BDDConfiguration configuration=new BDDConfiguration().setCacheMaxEntries(50).setOperationLogEnabled(true).setLogSyncPolicy(LogSyncPolicy.EVERY_OPERATION);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			bdd.putAll(persons);
+			Assert.assertEquals(bdd.getAll(persons.keySet()), persons);
+			Assert.assertEquals(bdd.getAll(persons.keySet()), persons);
+			Assert.assertEquals(bdd.getCacheStatistics().getHitCount(), 50);
+			HashMap<String, Person> updates=generate("p", 100);
+			bdd.putAll(updates);
+			Assert.assertEquals(bdd.getAll(persons.keySet()), updates);
+		}
+	}
+
+	@AfterMethod
+	public void removeFile()
+	{
+		//noinspection ResultOfMethodCallIgnored
+		bddFile.delete();
+	}
+}
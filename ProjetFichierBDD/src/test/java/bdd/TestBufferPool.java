@@ -0,0 +1,119 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests des tampons réutilisables {@link BufferPool} et des fonctions de {@link SerializationTools} qui les utilisent
+ */
+public class TestBufferPool {
+
+	private static final File bddFile=new File("bddBufferPoolTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		bddFile.delete();
+	}
+
+	@Test
+	public void testAcquire() {
+		BufferPool first;
+		try (BufferPool buffers=BufferPool.acquire()) {
+			first=buffers;
+			try (BufferPool nested=BufferPool.acquire()) {
+				Assert.assertNotSame(nested, buffers, "A nested acquisition must not share the buffers in use");
+			}
+			Assert.assertTrue(buffers.record(BufferPool.MAX_RETAINED_SIZE*2).length>=BufferPool.MAX_RETAINED_SIZE*2);
+			Assert.assertTrue(buffers.converted(100).length>=100);
+		}
+		try (BufferPool buffers=BufferPool.acquire()) {
+			Assert.assertSame(buffers, first);
+			Assert.assertTrue(buffers.getRecord().length<=BufferPool.MAX_RETAINED_SIZE, "Oversized arrays must not be retained");
+		}
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		CodecRegistry registry=new CodecRegistry();
+		char[] chars=new char[5000];
+		Arrays.fill(chars, 'a');
+		List<Serializable> values=Arrays.asList(42, "text", new String(chars), new byte[]{1, 2, 3}, new ArrayList<>(Arrays.asList(1, 2)));
+		try (BufferPool buffers=BufferPool.acquire()) {
+			for (Serializable value : values)
+			{
+				byte[] expected=SerializationTools.serialize(value, registry);
+				int size=SerializationTools.serialize(value, registry, buffers);
+				Assert.assertEquals(Arrays.copyOf(buffers.getOutput(), size), expected);
+
+				byte[] compressed=SerializationTools.compress(expected, 1);
+				int compressedSize=SerializationTools.compress(buffers.getOutput(), size, 1, buffers);
+				if (compressed==expected)
+					Assert.assertEquals(compressedSize, -1);
+				else
+					Assert.assertEquals(Arrays.copyOf(buffers.getConverted(), compressedSize), compressed);
+
+				// un enregistrement suivi d'octets inutilisés, comme dans une zone réservée avec une marge
+				byte[] record=Arrays.copyOf(compressed, compressed.length+10);
+				int decompressedSize=SerializationTools.decompress(record, compressed.length, buffers);
+				byte[] data=record;
+				int length=compressed.length;
+				if (compressed==expected)
+					Assert.assertEquals(decompressedSize, -1);
+				else
+				{
+					data=buffers.getConverted();
+					length=decompressedSize;
+					Assert.assertEquals(Arrays.copyOf(data, length), expected);
+				}
+				Object decoded=SerializationTools.deserialize(data, length, registry, buffers);
+				if (value instanceof byte[])
+					Assert.assertEquals((byte[]) decoded, (byte[]) value);
+				else
+					Assert.assertEquals(decoded, value);
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentUse() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setCompressionEnabled(true).setCompressionThreshold(64).setCacheMaxEntries(10);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			AtomicReference<Throwable> failure=new AtomicReference<>();
+			List<Thread> threads=new ArrayList<>();
+			for (int t=0;t<4;t++)
+			{
+				int thread=t;
+				Thread th=new Thread(() -> {
+					try {
+						for (int i=0;i<500;i++)
+						{
+							String key="t"+thread+"-"+(i%20);
+							char[] chars=new char[(i*37)%300];
+							Arrays.fill(chars, (char) ('a'+thread));
+							String value=new String(chars)+i;
+							bdd.putObject(key, value);
+							Assert.assertEquals(bdd.getObject(key), value);
+							bdd.putObject(key+"-n", i);
+							Assert.assertEquals(bdd.getObject(key+"-n"), i);
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				});
+				threads.add(th);
+				th.start();
+			}
+			for (Thread th : threads)
+				th.join();
+			Assert.assertNull(failure.get());
+		}
+	}
+}
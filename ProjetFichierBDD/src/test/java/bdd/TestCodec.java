@@ -0,0 +1,131 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests des {@link Codec} et du {@link CodecRegistry}
+ */
+public class TestCodec {
+
+	private static final File bddFile=new File("bddCodecTest.toRemove");
+
+	static class PersonCodec implements Codec<Person> {
+		@Override
+		public void encode(Person value, DataOutput out) throws IOException {
+			out.writeUTF(value.getFirstName());
+			out.writeUTF(value.getLastName());
+			out.writeInt(value.getAge());
+		}
+
+		@Override
+		public Person decode(DataInput in) throws IOException {
+			Person p=new Person();
+			p.setFirstName(in.readUTF());
+			p.setLastName(in.readUTF());
+			p.setAge(in.readInt());
+			return p;
+		}
+	}
+
+	private static CodecRegistry personRegistry()
+	{
+		return new CodecRegistry().register(CodecRegistry.MIN_USER_ID, Person.class, new PersonCodec());
+	}
+
+	@Test
+	public void testBuiltInCodecs() throws Exception {
+		CodecRegistry registry=new CodecRegistry();
+		for (java.io.Serializable o : Arrays.asList("texte accentué", 42, 42L, 3.5, new byte[]{1, 2, 3}))
+		{
+			byte[] data=SerializationTools.serialize(o, registry);
+			Assert.assertNotEquals(data[0], SerializationTools.JAVA_SERIALIZATION_HEADER);
+			Assert.assertTrue(data.length<SerializationTools.serialize(o).length);
+			if (o instanceof byte[])
+				Assert.assertEquals((byte[])SerializationTools.deserialize(data, registry), (byte[])o);
+			else
+				Assert.assertEquals(SerializationTools.deserialize(data, registry), o);
+		}
+	}
+
+	@Test
+	public void testJavaSerializationFallback() throws Exception {
+		ArrayList<Integer> list=new ArrayList<>(Arrays.asList(1, 2, 3));
+		byte[] data=SerializationTools.serialize(list, new CodecRegistry());
+		Assert.assertEquals(data, SerializationTools.serialize(list));
+		Assert.assertEquals(SerializationTools.deserialize(data, new CodecRegistry()), list);
+	}
+
+	@Test
+	public void testCustomCodec() throws Exception {
+		Person p=new Person();
+		CodecRegistry registry=personRegistry();
+		byte[] data=SerializationTools.serialize(p, registry);
+		Assert.assertEquals(data[0], CodecRegistry.MIN_USER_ID);
+		Assert.assertTrue(data.length*2<SerializationTools.serialize(p).length, "The class descriptor must not be written");
+		Assert.assertEquals(SerializationTools.deserialize(data, registry), p);
+		try
+		{
+			SerializationTools.deserialize(data, new CodecRegistry());
+			Assert.fail("IOException should be generated");
+		}
+		catch (IOException ignored)
+		{
+
+		}
+	}
+
+	@Test
+	public void testInvalidRegistrations() {
+		CodecRegistry registry=personRegistry();
+		for (int id : new int[]{0, CodecRegistry.MIN_USER_ID-1, CodecRegistry.MAX_ID+1, CodecRegistry.MIN_USER_ID})
+		{
+			try
+			{
+				registry.register(id, Person.class, new PersonCodec());
+				Assert.fail("IllegalArgumentException should be generated");
+			}
+			catch (IllegalArgumentException ignored)
+			{
+
+			}
+		}
+	}
+
+	@Test
+	public void testMixedRecords() throws Exception {
+		Person javaSerialized=new Person();
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putObject("old", javaSerialized);
+		}
+		Person encoded=new Person();
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCodecRegistry(personRegistry()))) {
+			bdd.putObject("new", encoded);
+			bdd.putObject("string", "valeur");
+			Assert.assertEquals(bdd.getObject("old"), javaSerialized);
+			Assert.assertEquals(bdd.getObject("new"), encoded);
+		}
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCodecRegistry(personRegistry()).setCacheMaxEntries(10))) {
+			Assert.assertEquals(bdd.getObject("old"), javaSerialized);
+			Assert.assertEquals(bdd.getObject("new"), encoded);
+			Assert.assertEquals(bdd.getObject("new"), encoded);
+			Assert.assertEquals(bdd.getObject("string"), "valeur");
+			Assert.assertEquals(bdd.getCacheStatistics().getHitCount(), 1);
+		}
+	}
+
+	@AfterMethod
+	public void removeFile()
+	{
+		//noinspection ResultOfMethodCallIgnored
+		bddFile.delete();
+	}
+}
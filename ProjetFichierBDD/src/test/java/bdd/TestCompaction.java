@@ -0,0 +1,171 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests du compactage du fichier
+ */
+public class TestCompaction {
+
+	private static final File bddFile=new File("bddCompactionTest.toRemove");
+	private static final File crashFile=new File("bddCompactionCrashTest.toRemove");
+
+	/**
+	 * Ajoute des personnes puis en supprime les deux tiers, en partant du début du fichier
+	 */
+	private static HashMap<String, Person> fragment(BDD bdd, int count) throws Exception
+	{
+		HashMap<String, Person> persons=new HashMap<>();
+		for (int i=0;i<count;i++)
+		{
+			Person p=new Person();
+			persons.put("p"+i, p);
+			bdd.putObject("p"+i, p);
+		}
+		for (int i=0;i<count;i++)
+		{
+			if (i%3!=2)
+			{
+				Assert.assertTrue(bdd.removeObject("p"+i));
+				persons.remove("p"+i);
+			}
+		}
+		return persons;
+	}
+
+	private static void check(BDD bdd, Map<String, Person> persons) throws Exception
+	{
+		Assert.assertEquals(bdd.getLinks().size(), persons.size());
+		for (Map.Entry<String, Person> e : persons.entrySet())
+			Assert.assertEquals(bdd.getObject(e.getKey()), e.getValue());
+	}
+
+	@Test
+	public void testCompact() throws Exception {
+		HashMap<String, Person> persons;
+		try (BDD bdd=new BDD(bddFile)) {
+			persons=fragment(bdd, 600);
+			long length=bddFile.length();
+			Assert.assertTrue(bdd.getFragmentation()>0.5);
+			ArrayList<CompactionStatistics> progress=new ArrayList<>();
+			CompactionStatistics statistics=bdd.compact(progress::add);
+			Assert.assertTrue(statistics.getMovedRecords()>0);
+			Assert.assertEquals(progress.size(), statistics.getMovedRecords());
+			for (int i=1;i<progress.size();i++)
+				Assert.assertTrue(progress.get(i).getMovedBytes()>progress.get(i-1).getMovedBytes());
+			Assert.assertEquals(statistics.getInitialLength(), length);
+			Assert.assertEquals(statistics.getCurrentLength(), bddFile.length());
+			Assert.assertTrue(bddFile.length()*2<length, "The file must shrink");
+			Assert.assertTrue(bdd.getFragmentation()<0.2, "Fragmentation after compaction: "+bdd.getFragmentation());
+			check(bdd, persons);
+		}
+		try (BDD bdd=new BDD(bddFile)) {
+			check(bdd, persons);
+			Assert.assertEquals(bdd.compact().getMovedRecords(), 0, "A compacted file must not be compacted again");
+		}
+	}
+
+	@Test
+	public void testCompactWithOperationLog() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setOperationLogEnabled(true).setLogSyncPolicy(LogSyncPolicy.EVERY_OPERATION).setCacheMaxEntries(100);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			HashMap<String, Person> persons=fragment(bdd, 300);
+			bdd.compact();
+			check(bdd, persons);
+			Person p=new Person();
+			bdd.putObject("after", p);
+			persons.put("after", p);
+			//simulation d'un arrêt brutal après le compactage
+			Files.copy(bddFile.toPath(), crashFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.copy(OperationLog.getLogFile(bddFile).toPath(), OperationLog.getLogFile(crashFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			try (BDD crashed=new BDD(crashFile)) {
+				check(crashed, persons);
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentCompaction() throws Exception {
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCompactionMaxBytesPerSecond(200000))) {
+			HashMap<String, Person> persons=fragment(bdd, 600);
+			AtomicReference<Throwable> failure=new AtomicReference<>();
+			AtomicBoolean finished=new AtomicBoolean(false);
+			Thread compaction=new Thread(() -> {
+				try {
+					bdd.compact();
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+				finished.set(true);
+			});
+			compaction.start();
+			int i=0;
+			Iterator<String> removed=new ArrayList<>(persons.keySet()).iterator();
+			while (!finished.get() || i<100)
+			{
+				Person p=new Person();
+				bdd.putObject("q"+i, p);
+				persons.put("q"+(i++), p);
+				if (removed.hasNext())
+				{
+					String key=removed.next();
+					bdd.removeObject(key);
+					persons.remove(key);
+				}
+				String key=persons.keySet().iterator().next();
+				Assert.assertEquals(bdd.getObject(key), persons.get(key));
+			}
+			compaction.join();
+			Assert.assertNull(failure.get());
+			check(bdd, persons);
+		}
+	}
+
+	@Test
+	public void testThrottling() throws Exception {
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCompactionMaxBytesPerSecond(50000))) {
+			fragment(bdd, 300);
+			long start=System.nanoTime();
+			CompactionStatistics statistics=bdd.compact();
+			double seconds=(System.nanoTime()-start)/1e9;
+			Assert.assertTrue(statistics.getMovedBytes()>10000);
+			Assert.assertTrue(seconds>=statistics.getMovedBytes()/50000.0*0.9, "The compaction must not copy more than 50000 bytes per second");
+		}
+	}
+
+	@Test
+	public void testBackgroundCompaction() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setCompactionThreshold(0.3).setCompactionCheckInterval(20);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			HashMap<String, Person> persons=fragment(bdd, 600);
+			long deadline=System.currentTimeMillis()+10000;
+			while (bdd.getFragmentation()>=0.3 && System.currentTimeMillis()<deadline)
+				Thread.sleep(20);
+			Assert.assertTrue(bdd.getFragmentation()<0.3, "The background compaction must have run");
+			check(bdd, persons);
+		}
+	}
+
+	@AfterMethod
+	public void removeFiles()
+	{
+		//noinspection ResultOfMethodCallIgnored
+		bddFile.delete();
+		//noinspection ResultOfMethodCallIgnored
+		crashFile.delete();
+		//noinspection ResultOfMethodCallIgnored
+		OperationLog.getLogFile(crashFile).delete();
+	}
+}
@@ -0,0 +1,101 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Tests de la compression des enregistrements
+ */
+public class TestCompression {
+
+	private static final File bddFile=new File("bddCompressionTest.toRemove");
+
+	private static ArrayList<Person> persons(int count)
+	{
+		ArrayList<Person> res=new ArrayList<>();
+		for (int i=0;i<count;i++)
+			res.add(new Person());
+		return res;
+	}
+
+	@Test
+	public void testCompressDecompress() throws IOException, ClassNotFoundException {
+		ArrayList<Person> list=persons(100);
+		byte[] data=SerializationTools.serialize(list);
+		byte[] compressed=SerializationTools.compress(data, Deflater.BEST_COMPRESSION);
+		Assert.assertEquals(compressed[0], (byte)(SerializationTools.RECORD_FLAGS_MARKER|SerializationTools.COMPRESSED));
+		Assert.assertTrue(compressed.length*3<data.length);
+		Assert.assertEquals(SerializationTools.decompress(compressed), data);
+		Assert.assertSame(SerializationTools.decompress(data), data);
+		Assert.assertEquals(SerializationTools.deserialize(SerializationTools.decompress(compressed)), list);
+	}
+
+	@Test
+	public void testIncompressibleData() {
+		byte[] data=new byte[1000];
+		new Random(0).nextBytes(data);
+		data[0]=SerializationTools.JAVA_SERIALIZATION_HEADER;
+		Assert.assertSame(SerializationTools.compress(data, Deflater.BEST_COMPRESSION), data);
+		Assert.assertEquals(SerializationTools.compress(new byte[3], Deflater.BEST_COMPRESSION).length, 3);
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testCorruptedRecord() throws IOException {
+		byte[] compressed=SerializationTools.compress(SerializationTools.serialize(persons(10)), Deflater.BEST_SPEED);
+		for (int i=10;i<compressed.length;i++)
+			compressed[i]^=0x5A;
+		SerializationTools.decompress(compressed);
+	}
+
+	@Test
+	public void testThresholdAndCoexistence() throws Exception {
+		ArrayList<Person> big=persons(200);
+		Person small=new Person();
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putObject("raw", big);
+		}
+		long rawLength=bddFile.length();
+		BDDConfiguration configuration=new BDDConfiguration().setCompressionEnabled(true).setCompressionThreshold(256);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			bdd.putObject("compressed", big);
+			bdd.putObject("small", small);
+			Assert.assertEquals(bdd.getObject("raw"), big);
+			Assert.assertEquals(bdd.getObject("compressed"), big);
+			Assert.assertEquals(bdd.getObject("small"), small);
+			Assert.assertTrue(bddFile.length()-rawLength<rawLength/3, "The compressed record must be at least three times smaller");
+		}
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertEquals(bdd.getObject("compressed"), big, "Compressed records must stay readable once the compression is disabled");
+			Assert.assertEquals(bdd.getObject("small"), small);
+			Assert.assertEquals(bdd.getAll(bdd.getLinks().keySet()).size(), 3);
+		}
+	}
+
+	@Test
+	public void testWithBatchAndCache() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setCompressionEnabled(true).setCompressionThreshold(0).setCacheMaxEntries(10);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			java.util.HashMap<String, ArrayList<Person>> values=new java.util.HashMap<>();
+			for (int i=0;i<20;i++)
+				values.put("v"+i, persons(20));
+			bdd.putAll(values);
+			Assert.assertEquals(bdd.getAll(values.keySet()), values);
+			Assert.assertEquals(bdd.getAll(values.keySet()), values);
+			Assert.assertEquals(bdd.getObject("v0"), values.get("v0"));
+		}
+	}
+
+	@AfterMethod
+	public void removeFile()
+	{
+		//noinspection ResultOfMethodCallIgnored
+		bddFile.delete();
+	}
+}
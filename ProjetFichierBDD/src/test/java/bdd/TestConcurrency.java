@@ -0,0 +1,97 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Utilisation d'une même {@link BDD} par plusieurs fils d'exécution
+ */
+public class TestConcurrency {
+
+	private static final File bddFile=new File("bddConcurrencyTest.toRemove");
+	private static final int THREADS=8;
+
+	@Test
+	public void testRandomAccessFile() throws Exception {
+		testConcurrentAccess(new BDDConfiguration());
+	}
+
+	@Test
+	public void testMemoryMapped() throws Exception {
+		testConcurrentAccess(new BDDConfiguration().setStorageMode(StorageMode.MEMORY_MAPPED));
+	}
+
+	@Test
+	public void testWithOperationLog() throws Exception {
+		testConcurrentAccess(new BDDConfiguration().setOperationLogEnabled(true).setLogSyncPolicy(LogSyncPolicy.GROUP_COMMIT).setGroupCommitDelay(1));
+	}
+
+	@Test
+	public void testWithCache() throws Exception {
+		testConcurrentAccess(new BDDConfiguration().setCacheMaxEntries(100).setCacheSharedInstances(true));
+	}
+
+	private void testConcurrentAccess(BDDConfiguration configuration) throws Exception {
+		ExecutorService executor=Executors.newFixedThreadPool(THREADS);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			final Person shared=new Person();
+			bdd.putObject("shared", shared);
+			List<Callable<Map<String, Person>>> tasks=new ArrayList<>();
+			for (int t=0;t<THREADS;t++)
+			{
+				final int thread=t;
+				tasks.add(() -> {
+					HashMap<String, Person> persons=new HashMap<>();
+					for (int i=0;i<300;i++)
+					{
+						String name="thread"+thread+"-"+((int)(Math.random()*50));
+						double r=Math.random();
+						if (r<0.4)
+						{
+							Person p=new Person();
+							bdd.putObject(name, p);
+							persons.put(name, p);
+						}
+						else if (r<0.5)
+						{
+							Assert.assertEquals(bdd.removeObject(name), persons.remove(name)!=null);
+						}
+						else
+						{
+							Assert.assertEquals(bdd.getObject(name), persons.get(name));
+							Assert.assertEquals(bdd.getObject("shared"), shared);
+						}
+					}
+					return persons;
+				});
+			}
+			HashMap<String, Person> all=new HashMap<>();
+			for (Future<Map<String, Person>> f : executor.invokeAll(tasks))
+				all.putAll(f.get());
+			for (Map.Entry<String, Person> e : all.entrySet())
+				Assert.assertEquals(bdd.getObject(e.getKey()), e.getValue());
+			Assert.assertEquals(bdd.getLinks().size(), all.size()+1);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@AfterMethod
+	public void removeFile()
+	{
+		//noinspection ResultOfMethodCallIgnored
+		bddFile.delete();
+	}
+}
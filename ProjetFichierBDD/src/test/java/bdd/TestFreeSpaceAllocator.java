@@ -0,0 +1,104 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests de l'allocateur d'espaces libres {@link FreeSpaceAllocator}
+ */
+public class TestFreeSpaceAllocator {
+
+	@Test
+	public void testBestFitAndSplit() {
+		FreeSpaceAllocator allocator=new FreeSpaceAllocator();
+		allocator.free(100, 50);
+		allocator.free(200, 20);
+		allocator.free(300, 30);
+		Assert.assertEquals(allocator.allocate(25), Long.valueOf(300L), "The smallest sufficient interval must be chosen");
+		Assert.assertEquals(allocator.size(), 3, "The remainder of the interval must stay free");
+		Assert.assertEquals(allocator.allocate(5), Long.valueOf(325L));
+		Assert.assertEquals(allocator.size(), 2);
+		Assert.assertEquals(allocator.allocate(20), Long.valueOf(200L));
+		Assert.assertNull(allocator.allocate(51));
+		Assert.assertEquals(allocator.getFreeBytes(), 50);
+	}
+
+	@Test
+	public void testCoalescing() {
+		FreeSpaceAllocator allocator=new FreeSpaceAllocator();
+		allocator.free(100, 10);
+		allocator.free(120, 10);
+		Assert.assertEquals(allocator.size(), 2);
+		allocator.free(110, 10);
+		Assert.assertEquals(allocator.size(), 1, "Left and right neighbours must be merged");
+		BDD.FreeSpaceInterval interval=allocator.getIntervals().first();
+		Assert.assertEquals(interval.getStartPosition(), 100);
+		Assert.assertEquals(interval.getLength(), 30);
+		Assert.assertEquals(allocator.trimEnd(200), 200);
+		Assert.assertEquals(allocator.trimEnd(130), 100);
+		Assert.assertEquals(allocator.size(), 0);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testDoubleFree() {
+		FreeSpaceAllocator allocator=new FreeSpaceAllocator();
+		allocator.free(100, 10);
+		allocator.free(105, 10);
+	}
+
+	@Test
+	public void testClaim() {
+		FreeSpaceAllocator allocator=new FreeSpaceAllocator(Arrays.asList(new BDD.FreeSpaceInterval(0, 10), new BDD.FreeSpaceInterval(10, 10), new BDD.FreeSpaceInterval(40, 10)));
+		Assert.assertEquals(allocator.size(), 2, "Contiguous intervals must be merged when loaded");
+		allocator.claim(5, 40);
+		Assert.assertEquals(allocator.size(), 2);
+		Assert.assertEquals(allocator.getFreeBytes(), 10);
+		Assert.assertEquals(allocator.getIntervals().first().getLength(), 5);
+		Assert.assertEquals(allocator.getIntervals().last().getStartPosition(), 45);
+	}
+
+	@Test
+	public void testRandomChurn() {
+		Random random=new Random(0);
+		FreeSpaceAllocator allocator=new FreeSpaceAllocator();
+		boolean[] used=new boolean[10000];
+		long end=0;
+		ArrayList<long[]> allocated=new ArrayList<>();
+		for (int i=0;i<20000;i++)
+		{
+			if (allocated.size()>0 && random.nextBoolean())
+			{
+				long[] a=allocated.remove(random.nextInt(allocated.size()));
+				for (long j=a[0];j<a[0]+a[1];j++)
+					used[(int)j]=false;
+				allocator.free(a[0], a[1]);
+				end=allocator.trimEnd(end);
+			}
+			else
+			{
+				long length=1+random.nextInt(20);
+				Long pos=allocator.allocate(length);
+				if (pos==null)
+				{
+					pos=end;
+					end+=length;
+				}
+				Assert.assertTrue(end<=used.length);
+				for (long j=pos;j<pos+length;j++)
+				{
+					Assert.assertFalse(used[(int)j], "Allocated zones must not overlap");
+					used[(int)j]=true;
+				}
+				allocated.add(new long[]{pos, length});
+			}
+			long usedBytes=0;
+			for (long[] a : allocated)
+				usedBytes+=a[1];
+			Assert.assertEquals(usedBytes+allocator.getFreeBytes(), end, "Each byte must be either allocated or free");
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Tests de la réécriture sur place ({@link BDDConfiguration#setInPlaceUpdatesEnabled(boolean)})
+ * et de la marge réservée après les enregistrements ({@link BDDConfiguration#setAllocationSlack(int)})
+ */
+public class TestInPlaceUpdate {
+
+	private static final File bddFile=new File("bddInPlaceTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		bddFile.delete();
+		OperationLog.getLogFile(bddFile).delete();
+		BDD.getIndexFile(bddFile).delete();
+	}
+
+	private static String text(int length) {
+		char[] c=new char[length];
+		Arrays.fill(c, 'x');
+		return new String(c);
+	}
+
+	private static byte[] bytes(int length, int seed) {
+		byte[] b=new byte[length];
+		for (int i=0;i<length;i++)
+			b[i]=(byte) (i*31+seed);
+		return b;
+	}
+
+	@Test
+	public void testOverwrite() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setMetricsEnabled(true).setCacheMaxEntries(100)
+				.addIndex("age", Person.class, Person::getAge);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			bdd.putObject("text", text(200));
+			bdd.putObject("other", "other");
+			long length=bdd.getStatistics().getFileLength();
+			Assert.assertEquals(bdd.getObject("text"), text(200));
+			bdd.putObject("text", text(150));
+			bdd.putObject("text", 42);
+			Assert.assertEquals(bdd.getObject("text"), 42);
+			bdd.putObject("text", text(200));
+			Assert.assertEquals(bdd.getObject("text"), text(200));
+			bdd.putBytes("text", ByteBuffer.wrap(bytes(100, 1)));
+			Assert.assertEquals(bdd.getBytes("text"), bytes(100, 1));
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 4);
+			Assert.assertEquals(bdd.getStatistics().getFileLength(), length);
+
+			// les noms aléatoires de Person sont remplacés pour que les deux versions aient la même taille
+			Person person=new Person();
+			person.setFirstName("first");
+			person.setLastName("last");
+			person.setAge(7);
+			bdd.putObject("person", person);
+			Person older=new Person();
+			older.setFirstName("first");
+			older.setLastName("last");
+			older.setAge(8);
+			bdd.putObject("person", older);
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 5);
+			Assert.assertTrue(bdd.findKeys("age", 7).isEmpty());
+			Assert.assertEquals(bdd.findKeys("age", 8), Arrays.asList("person"));
+
+			// un enregistrement plus grand que sa zone est ajouté ailleurs
+			bdd.putObject("other", text(300));
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 5);
+			Assert.assertEquals(bdd.getObject("other"), text(300));
+		}
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertEquals(bdd.getBytes("text"), bytes(100, 1));
+			Assert.assertEquals(((Person) bdd.getObject("person")).getAge(), 8);
+			Assert.assertEquals(bdd.getObject("other"), text(300));
+		}
+	}
+
+	@Test
+	public void testSlack() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setMetricsEnabled(true).setAllocationSlack(25)
+				.setCompressionEnabled(true).setCompressionThreshold(512);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			long empty=bdd.getStatistics().getFileLength();
+			bdd.putObject("text", text(100));
+			bdd.putObject("bytes", bytes(400, 2));
+			bdd.putObject("number", 1L);
+			bdd.putObject("text", text(120));
+			bdd.putBytes("bytes", ByteBuffer.wrap(bytes(450, 3)));
+			bdd.putObject("number", 2L);
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 3);
+			bdd.putObject("text", text(200));
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 3);
+
+			// enregistrement compressé suivi d'une marge
+			bdd.putObject("compressed", text(2000));
+			bdd.putObject("compressed", text(1000));
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 4);
+			Assert.assertEquals(bdd.getObject("compressed"), text(1000));
+
+			Assert.assertEquals(bdd.getObject("text"), text(200));
+			Assert.assertEquals(bdd.getBytes("bytes"), bytes(450, 3));
+			ByteBuffer buffer=ByteBuffer.allocate(450);
+			Assert.assertEquals(bdd.getInto("bytes", buffer), 450);
+			try (InputStream in=bdd.openForRead("bytes")) {
+				byte[] read=new byte[1000];
+				int n=0;
+				for (int r;(r=in.read(read, n, read.length-n))>0;)
+					n+=r;
+				Assert.assertEquals(Arrays.copyOf(read, n), bytes(450, 3));
+			}
+			Assert.assertEquals(bdd.getObject("number"), 2L);
+
+			// les marges sont libérées avec les enregistrements
+			for (String key : Arrays.asList("text", "bytes", "number", "compressed"))
+				Assert.assertTrue(bdd.removeObject(key));
+			Assert.assertEquals(bdd.getStatistics().getFileLength(), empty);
+		}
+	}
+
+	@Test
+	public void testSlackWithWriteBuffer() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setMetricsEnabled(true).setAllocationSlack(50)
+				.setWriteBufferSize(1<<20).setWriteBufferFlushInterval(60000);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			for (int i=0;i<10;i++)
+				bdd.putObject("k"+i, text(100));
+			bdd.putBytes("bytes", ByteBuffer.wrap(bytes(100, 6)));
+			bdd.flush();
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 0);
+			for (int i=0;i<10;i++)
+				Assert.assertEquals(bdd.getObject("k"+i), text(100));
+			Assert.assertEquals(bdd.getBytes("bytes"), bytes(100, 6));
+		}
+		long length;
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setMetricsEnabled(true).setAllocationSlack(50))) {
+			for (int i=0;i<10;i++)
+				Assert.assertEquals(bdd.getObject("k"+i), text(100));
+			length=bdd.getStatistics().getFileLength();
+			// les zones réservées par le tampon ont une marge : une version plus grande y est réécrite
+			for (int i=0;i<10;i++)
+				bdd.putObject("k"+i, text(130));
+			bdd.putBytes("bytes", ByteBuffer.wrap(bytes(130, 7)));
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 11);
+			Assert.assertEquals(bdd.getStatistics().getFileLength(), length);
+			for (int i=0;i<10;i++)
+				Assert.assertEquals(bdd.getObject("k"+i), text(130));
+			Assert.assertEquals(bdd.getBytes("bytes"), bytes(130, 7));
+
+			// un lot réserve aussi la marge, et la rend avec l'enregistrement
+			HashMap<String, Serializable> batch=new HashMap<>();
+			for (int i=0;i<10;i++)
+				batch.put("b"+i, text(100));
+			bdd.putAll(batch);
+			bdd.putObject("b3", text(130));
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 12);
+			Assert.assertEquals(bdd.getObject("b3"), text(130));
+			Assert.assertEquals(bdd.removeAll(batch.keySet()), 10);
+			Assert.assertEquals(bdd.getStatistics().getFileLength(), length);
+		}
+	}
+
+	@Test
+	public void testOldRecordStillNeeded() throws Exception {
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setMetricsEnabled(true).setInPlaceUpdatesEnabled(false))) {
+			bdd.putObject("a", "a0");
+			bdd.putObject("a", "a1");
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 0);
+		}
+		bddFile.delete();
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setMetricsEnabled(true).setOperationLogEnabled(true))) {
+			bdd.putObject("a", "a0");
+			bdd.putObject("a", "a1");
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 0);
+		}
+		bddFile.delete();
+		OperationLog.getLogFile(bddFile).delete();
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setMetricsEnabled(true))) {
+			bdd.putObject("a", "a0");
+			try (Snapshot snapshot=bdd.snapshot()) {
+				bdd.putObject("a", "a1");
+				Assert.assertEquals(snapshot.getObject("a"), "a0");
+			}
+			bdd.putBytes("b", ByteBuffer.wrap(bytes(100, 4)));
+			try (InputStream in=bdd.openForRead("b")) {
+				bdd.putBytes("b", ByteBuffer.wrap(bytes(100, 5)));
+				byte[] read=new byte[100];
+				int n=0;
+				for (int r;(r=in.read(read, n, read.length-n))>0;)
+					n+=r;
+				Assert.assertEquals(read, bytes(100, 4));
+			}
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 0);
+			bdd.putObject("a", "a2");
+			Assert.assertEquals(bdd.getStatistics().getInPlaceUpdates(), 1);
+			Assert.assertEquals(bdd.getObject("a"), "a2");
+			Assert.assertEquals(bdd.getBytes("b"), bytes(100, 5));
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests de {@link LogStructuredBDD}
+ */
+public class TestLogStructuredBDD {
+
+	private static final File directory=new File("bddLogStructuredTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		File[] files=directory.listFiles();
+		if (files!=null)
+			for (File f : files)
+				f.delete();
+		directory.delete();
+	}
+
+	@DataProvider
+	public Object[][] configurations() {
+		return new Object[][]{
+				{new BDDConfiguration()},
+				{new BDDConfiguration().setKeyDirectoryType(KeyDirectoryType.PRIMITIVE_HASH).setLogSyncPolicy(LogSyncPolicy.EVERY_OPERATION)},
+				{new BDDConfiguration().setStorageMode(StorageMode.MEMORY_MAPPED).setCompressionEnabled(true).setCompressionThreshold(16)},
+		};
+	}
+
+	private static File[] files(String suffix) {
+		return directory.listFiles((dir, name) -> name.endsWith(suffix));
+	}
+
+	private static void check(LogStructuredBDD bdd, Map<String, Serializable> expected) throws Exception {
+		Assert.assertEquals(bdd.size(), expected.size());
+		for (Map.Entry<String, Serializable> e : expected.entrySet())
+			Assert.assertEquals(bdd.getObject(e.getKey()), e.getValue(), e.getKey());
+		Assert.assertEquals(bdd.getAll(expected.keySet()), expected);
+	}
+
+	@Test(dataProvider="configurations")
+	public void testOperations(BDDConfiguration configuration) throws Exception {
+		configuration.setMaxSegmentSize(4096);
+		HashMap<String, Serializable> expected=new HashMap<>();
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory, configuration)) {
+			for (int i=0;i<300;i++)
+			{
+				bdd.putObject("k"+i, "value"+i);
+				expected.put("k"+i, "value"+i);
+			}
+			Person person=new Person();
+			bdd.putObject("k1", person);
+			expected.put("k1", person);
+			HashMap<String, Serializable> batch=new HashMap<>();
+			for (int i=250;i<400;i++)
+				batch.put("k"+i, i);
+			bdd.putAll(batch);
+			expected.putAll(batch);
+			Assert.assertTrue(bdd.removeObject("k5"));
+			Assert.assertFalse(bdd.removeObject("k5"));
+			expected.remove("k5");
+			Assert.assertEquals(bdd.removeAll(Arrays.asList("k6", "k7", "k7", "missing")), 2);
+			expected.remove("k6");
+			expected.remove("k7");
+			Assert.assertNull(bdd.getObject("missing"));
+			Assert.assertTrue(bdd.getSegmentCount()>1);
+			check(bdd, expected);
+		}
+		Assert.assertEquals(files(".hint").length, files(".data").length);
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory, configuration)) {
+			check(bdd, expected);
+			bdd.putObject("k8", "after reopen");
+			expected.put("k8", "after reopen");
+		}
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory, configuration)) {
+			check(bdd, expected);
+		}
+	}
+
+	@Test
+	public void testCompact() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setMaxSegmentSize(8192);
+		HashMap<String, Serializable> expected=new HashMap<>();
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory, configuration)) {
+			Random random=new Random(0);
+			for (int i=0;i<5000;i++)
+			{
+				String key="k"+random.nextInt(100);
+				if (random.nextInt(10)==0)
+				{
+					bdd.removeObject(key);
+					expected.remove(key);
+				}
+				else
+				{
+					bdd.putObject(key, i);
+					expected.put(key, i);
+				}
+			}
+			Assert.assertTrue(bdd.getFragmentation()>0.5);
+			int segmentCount=bdd.getSegmentCount();
+			CompactionStatistics statistics=bdd.compact();
+			Assert.assertEquals(statistics.getMovedRecords(), expected.size());
+			Assert.assertTrue(statistics.getCurrentLength()<statistics.getInitialLength());
+			Assert.assertTrue(bdd.getSegmentCount()<segmentCount);
+			Assert.assertEquals(bdd.getFragmentation(), 0.0);
+			check(bdd, expected);
+			statistics=bdd.compact();
+			Assert.assertEquals(statistics.getMovedRecords(), 0);
+			bdd.putObject("k0", "new");
+			expected.put("k0", "new");
+		}
+		Assert.assertEquals(files(".hint").length, files(".data").length);
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory, configuration)) {
+			check(bdd, expected);
+		}
+	}
+
+	@Test
+	public void testRecoveryWithoutHints() throws Exception {
+		HashMap<String, Serializable> expected=new HashMap<>();
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory)) {
+			for (int i=0;i<100;i++)
+			{
+				bdd.putObject("k"+i, "value"+i);
+				expected.put("k"+i, "value"+i);
+			}
+			bdd.removeObject("k3");
+			expected.remove("k3");
+		}
+		File[] data=files(".data");
+		Assert.assertEquals(data.length, 1);
+		long length=data[0].length();
+		for (File f : files(".hint"))
+			Assert.assertTrue(f.delete());
+		// une entrée incomplète en fin de segment, comme après un arrêt brutal
+		try (FileOutputStream out=new FileOutputStream(data[0], true)) {
+			out.write(LogStructuredBDD.encodeEntry("k4".getBytes("UTF-8"), new byte[100]), 0, 50);
+		}
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory)) {
+			check(bdd, expected);
+		}
+		Assert.assertEquals(data[0].length(), length);
+		Assert.assertEquals(files(".hint").length, 1);
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory)) {
+			check(bdd, expected);
+		}
+	}
+
+	@Test
+	public void testCompactDuringWrites() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setMaxSegmentSize(4096);
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory, configuration)) {
+			for (int i=0;i<2000;i++)
+				bdd.putObject("k"+(i%200), i);
+			AtomicReference<Throwable> failure=new AtomicReference<>();
+			List<Thread> threads=new ArrayList<>();
+			for (int t=0;t<2;t++)
+			{
+				int first=t*100;
+				Thread thread=new Thread(() -> {
+					try {
+						for (int round=0;round<20;round++)
+							for (int i=first;i<first+100;i++)
+								bdd.putObject("k"+i, -round);
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+			for (int i=0;i<5;i++)
+				bdd.compact();
+			for (Thread thread : threads)
+				thread.join();
+			Assert.assertNull(failure.get());
+			for (int i=0;i<200;i++)
+				Assert.assertEquals(bdd.getObject("k"+i), -19);
+			bdd.compact();
+			for (int i=0;i<200;i++)
+				Assert.assertEquals(bdd.getObject("k"+i), -19);
+		}
+		try (LogStructuredBDD bdd=new LogStructuredBDD(directory, configuration)) {
+			Assert.assertEquals(bdd.size(), 200);
+			for (int i=0;i<200;i++)
+				Assert.assertEquals(bdd.getObject("k"+i), -19);
+		}
+	}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void testBTreeRejected() throws Exception {
+		new LogStructuredBDD(directory, new BDDConfiguration().setKeyDirectoryType(KeyDirectoryType.B_TREE));
+	}
+}
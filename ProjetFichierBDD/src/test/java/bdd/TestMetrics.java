@@ -0,0 +1,140 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Tests de {@link BDD#getStatistics()}, de {@link LatencyHistogram} et de l'enregistrement JMX
+ */
+public class TestMetrics {
+
+	private static final File bddFile=new File("bddMetricsTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		bddFile.delete();
+		OperationLog.getLogFile(bddFile).delete();
+	}
+
+	@Test
+	public void testHistogram() {
+		for (long v : new long[]{0, 1, 15, 16, 17, 18, 1000, 123456789, Long.MAX_VALUE})
+		{
+			int bucket=LatencyHistogram.bucketOf(v);
+			Assert.assertTrue(bucket>=0 && bucket<LatencyHistogram.BUCKET_COUNT);
+			Assert.assertTrue(LatencyHistogram.upperBoundOf(bucket)>=v);
+			Assert.assertTrue(bucket==0 || LatencyHistogram.upperBoundOf(bucket-1)<v);
+			Assert.assertTrue(LatencyHistogram.upperBoundOf(bucket)-v<=v/8, "The precision must be 12.5%: "+v);
+		}
+		LatencyHistogram histogram=new LatencyHistogram();
+		Assert.assertEquals(histogram.getStatistics().getCount(), 0);
+		Assert.assertEquals(histogram.getStatistics().getP99Nanos(), 0);
+		for (int i=1;i<=1000;i++)
+			histogram.record(i*1000L);
+		LatencyStatistics statistics=histogram.getStatistics();
+		Assert.assertEquals(statistics.getCount(), 1000);
+		Assert.assertEquals(statistics.getMaxNanos(), 1000000);
+		Assert.assertEquals(statistics.getMeanNanos(), 500500, 0.001);
+		Assert.assertEquals(statistics.getPercentileNanos(100), 1000000);
+		for (double p : new double[]{1, 50, 90, 99, 99.9})
+		{
+			long expected=(long) Math.ceil(p*10)*1000;
+			long value=statistics.getPercentileNanos(p);
+			Assert.assertTrue(value>=expected && value<=expected*1.125, p+" : "+value+" instead of "+expected);
+		}
+	}
+
+	@Test
+	public void testDisabledMetrics() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			for (int i=0;i<10;i++)
+				bdd.putObject("k"+i, new byte[100]);
+			bdd.removeObject("k3");
+			bdd.removeObject("k5");
+			BDDStatistics statistics=bdd.getStatistics();
+			Assert.assertFalse(statistics.isMetricsEnabled());
+			Assert.assertTrue(statistics.getLatencies().isEmpty());
+			Assert.assertNull(statistics.getLatency(MeasuredOperation.PUT));
+			Assert.assertEquals(statistics.getBytesWritten(), 0);
+			Assert.assertEquals(statistics.getKeyCount(), 8);
+			Assert.assertEquals(statistics.getFileLength(), bddFile.length());
+			Assert.assertEquals(statistics.getFreeIntervalCount(), 2);
+			Assert.assertEquals(statistics.getLargestFreeInterval(), 109);
+			Assert.assertEquals(statistics.getFreeBytes(), 218);
+			Assert.assertEquals(statistics.getUsedBytes(), bddFile.length()-218);
+			Assert.assertEquals(statistics.getFragmentation(), bdd.getFragmentation(), 1e-9);
+		}
+	}
+
+	@Test
+	public void testEnabledMetrics() throws Exception {
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setMetricsEnabled(true))) {
+			for (int i=0;i<100;i++)
+				bdd.putObject("k"+i, new byte[1000]);
+			for (int i=0;i<50;i++)
+				Assert.assertNotNull(bdd.getObject("k"+i));
+			bdd.getAll(Arrays.asList("k1", "k2", "missing"));
+			for (int i=0;i<10;i++)
+				bdd.removeObject("k"+i);
+			bdd.removeAll(Arrays.asList("k10", "k11"));
+			HashMap<String, byte[]> batch=new HashMap<>();
+			batch.put("b1", new byte[10]);
+			batch.put("b2", new byte[10]);
+			bdd.putAll(batch);
+			bdd.checkpoint();
+
+			BDDStatistics statistics=bdd.getStatistics();
+			Assert.assertTrue(statistics.isMetricsEnabled());
+			Assert.assertEquals(statistics.getLatency(MeasuredOperation.PUT).getCount(), 100);
+			Assert.assertEquals(statistics.getLatency(MeasuredOperation.GET).getCount(), 50);
+			Assert.assertEquals(statistics.getLatency(MeasuredOperation.GET_ALL).getCount(), 1);
+			Assert.assertEquals(statistics.getLatency(MeasuredOperation.REMOVE).getCount(), 10);
+			Assert.assertEquals(statistics.getLatency(MeasuredOperation.REMOVE_ALL).getCount(), 1);
+			Assert.assertEquals(statistics.getLatency(MeasuredOperation.PUT_ALL).getCount(), 1);
+			Assert.assertEquals(statistics.getLatency(MeasuredOperation.SERIALIZE).getCount(), 102);
+			Assert.assertEquals(statistics.getLatency(MeasuredOperation.DESERIALIZE).getCount(), 52);
+			Assert.assertTrue(statistics.getLatency(MeasuredOperation.CHECKPOINT).getCount()>=1);
+			LatencyStatistics put=statistics.getLatency(MeasuredOperation.PUT);
+			Assert.assertTrue(put.getP50Nanos()>0);
+			Assert.assertTrue(put.getP50Nanos()<=put.getP99Nanos() && put.getP99Nanos()<=put.getMaxNanos());
+			Assert.assertTrue(statistics.getBytesWritten()>=100*1000, "bytesWritten="+statistics.getBytesWritten());
+			Assert.assertTrue(statistics.getBytesRead()>=52*1000, "bytesRead="+statistics.getBytesRead());
+			Assert.assertTrue(statistics.getAllocationsAtEnd()>=100);
+			Assert.assertTrue(statistics.getAllocationsInFreeSpace()>=2, "The batch must reuse the freed zones");
+			Assert.assertEquals(statistics.getKeyCount(), 90);
+		}
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		MBeanServer server=ManagementFactory.getPlatformMBeanServer();
+		ObjectName name=new ObjectName("bdd:type=BDD,name="+ObjectName.quote(bddFile.getAbsolutePath()));
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setMetricsEnabled(true).setJmxEnabled(true))) {
+			Assert.assertTrue(server.isRegistered(name));
+			for (int i=0;i<100;i++)
+				bdd.putObject("k"+i, new byte[1000]);
+			for (int i=0;i<90;i++)
+				bdd.removeObject("k"+i);
+			Assert.assertEquals(server.getAttribute(name, "KeyCount"), 10L);
+			Assert.assertEquals(server.getAttribute(name, "FileLength"), bddFile.length());
+			Assert.assertEquals(server.getAttribute(name, "MetricsEnabled"), true);
+			Assert.assertTrue((Double) server.getAttribute(name, "Fragmentation")>0.5);
+			TabularData latencies=(TabularData) server.getAttribute(name, "Latencies");
+			CompositeData put=(CompositeData) latencies.get(new Object[]{"PUT"}).get("value");
+			Assert.assertEquals(put.get("count"), 100L);
+			Assert.assertTrue((Long) server.invoke(name, "compact", new Object[0], new String[0])>0);
+			Assert.assertTrue((Double) server.getAttribute(name, "Fragmentation")<0.5);
+		}
+		Assert.assertFalse(server.isRegistered(name), "The MBean must be unregistered when the BDD is closed");
+	}
+}
@@ -0,0 +1,125 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Tests du cache des objets désérialisés
+ */
+public class TestObjectCache {
+
+	private static final File bddFile=new File("bddCacheTest.toRemove");
+
+	@Test
+	public void testDisabledByDefault() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertNull(bdd.getCacheStatistics());
+		}
+	}
+
+	@Test
+	public void testHitsAndMisses() throws Exception {
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCacheMaxEntries(10))) {
+			Person p=new Person();
+			bdd.putObject("p", p);
+			Assert.assertNull(bdd.getObject("unknown"));
+			Assert.assertEquals(bdd.getObject("p"), p);
+			Assert.assertEquals(bdd.getObject("p"), p);
+			Assert.assertEquals(bdd.getObject("p"), p);
+			CacheStatistics statistics=bdd.getCacheStatistics();
+			Assert.assertEquals(statistics.getMissCount(), 1);
+			Assert.assertEquals(statistics.getHitCount(), 2);
+			Assert.assertEquals(statistics.getSize(), 1);
+			Assert.assertTrue(statistics.getWeight()>0);
+		}
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCacheMaxEntries(10).setCacheSharedInstances(true))) {
+			Person p1=new Person();
+			bdd.putObject("p", p1);
+			Assert.assertEquals(bdd.getObject("p"), p1);
+			Person p2=new Person();
+			bdd.putObject("p", p2);
+			Assert.assertEquals(bdd.getObject("p"), p2);
+			Assert.assertTrue(bdd.removeObject("p"));
+			Assert.assertNull(bdd.getObject("p"));
+			Assert.assertEquals(bdd.getCacheStatistics().getHitCount(), 0);
+			Assert.assertEquals(bdd.getCacheStatistics().getSize(), 0);
+		}
+	}
+
+	@Test
+	public void testSharedInstances() throws Exception {
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCacheMaxEntries(10).setCacheSharedInstances(true))) {
+			bdd.putObject("p", new Person());
+			Assert.assertSame(bdd.getObject("p"), bdd.getObject("p"));
+		}
+	}
+
+	@Test
+	public void testDefensiveCopies() throws Exception {
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCacheMaxEntries(10))) {
+			Person p=new Person();
+			bdd.putObject("p", p);
+			Person copy=(Person)bdd.getObject("p");
+			copy.setAge(p.getAge()+1);
+			Person other=(Person)bdd.getObject("p");
+			Assert.assertNotSame(other, copy);
+			Assert.assertEquals(other, p);
+			Assert.assertEquals(bdd.getCacheStatistics().getHitCount(), 1);
+		}
+	}
+
+	@Test
+	public void testEvictionByEntries() throws Exception {
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCacheMaxEntries(3).setCacheSharedInstances(true))) {
+			ArrayList<Person> persons=new ArrayList<>();
+			for (int i=0;i<5;i++)
+			{
+				Person p=new Person();
+				persons.add(p);
+				bdd.putObject("p"+i, p);
+				bdd.getObject("p"+i);
+			}
+			CacheStatistics statistics=bdd.getCacheStatistics();
+			Assert.assertEquals(statistics.getSize(), 3);
+			Assert.assertEquals(statistics.getEvictionCount(), 2);
+			//p0 est le moins récemment utilisé : il a été évincé
+			Assert.assertEquals(bdd.getObject("p0"), persons.get(0));
+			Assert.assertEquals(bdd.getCacheStatistics().getMissCount(), 6);
+			Assert.assertEquals(bdd.getObject("p4"), persons.get(4));
+			Assert.assertEquals(bdd.getCacheStatistics().getHitCount(), 1);
+		}
+	}
+
+	@Test
+	public void testEvictionByBytes() throws Exception {
+		int recordSize=SerializationTools.serialize(new byte[1000], new CodecRegistry()).length;
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCacheMaxBytes(recordSize*2L))) {
+			for (int i=0;i<5;i++)
+			{
+				bdd.putObject("b"+i, new byte[1000]);
+				bdd.getObject("b"+i);
+			}
+			CacheStatistics statistics=bdd.getCacheStatistics();
+			Assert.assertEquals(statistics.getSize(), 2);
+			Assert.assertEquals(statistics.getWeight(), recordSize*2L);
+			bdd.putObject("big", new byte[5000]);
+			bdd.getObject("big");
+			Assert.assertEquals(bdd.getCacheStatistics().getSize(), 2, "A record larger than the cache must not be cached");
+		}
+	}
+
+	@AfterMethod
+	public void removeFile()
+	{
+		//noinspection ResultOfMethodCallIgnored
+		bddFile.delete();
+	}
+}
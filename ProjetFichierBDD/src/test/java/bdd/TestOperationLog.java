@@ -0,0 +1,203 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests du journal des opérations. Un arrêt brutal est simulé en copiant le fichier de la BDD et son journal
+ * pendant que la BDD est encore ouverte, puis en ouvrant la copie.
+ */
+public class TestOperationLog {
+
+	private static final File bddFile=new File("bddLogTest.toRemove");
+	private static final File crashFile=new File("bddLogCrashTest.toRemove");
+
+	@Test
+	public void testEveryOperation() throws Exception {
+		testRecovery(LogSyncPolicy.EVERY_OPERATION, false);
+	}
+
+	@Test
+	public void testGroupCommit() throws Exception {
+		testRecovery(LogSyncPolicy.GROUP_COMMIT, true);
+	}
+
+	@Test
+	public void testNone() throws Exception {
+		testRecovery(LogSyncPolicy.NONE, false);
+	}
+
+	@Test
+	public void testRecoveryAfterCheckpoint() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setOperationLogEnabled(true).setLogSyncPolicy(LogSyncPolicy.EVERY_OPERATION);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			HashMap<String, Person> persons=new HashMap<>();
+			fill(bdd, 50, persons);
+			bdd.checkpoint();
+			Assert.assertEquals(OperationLog.getLogFile(bddFile).length(), 4, "The log must be emptied by a checkpoint");
+			fill(bdd, 10, persons);
+			crash();
+			check(persons);
+		}
+		Assert.assertFalse(OperationLog.getLogFile(bddFile).exists(), "The log must be removed when the database is closed");
+	}
+
+	@Test
+	public void testCrashBeforeLogReset() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setOperationLogEnabled(true).setLogSyncPolicy(LogSyncPolicy.EVERY_OPERATION);
+		File savedLog=new File("bddLogSavedTest.toRemove");
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			HashMap<String, Person> persons=new HashMap<>();
+			fill(bdd, 50, persons);
+			bdd.checkpoint();
+			for (String key : new ArrayList<>(persons.keySet()).subList(0, Math.min(20, persons.size()))) {
+				Person p=new Person();
+				persons.put(key, p);
+				bdd.putObject(key, p);
+			}
+			crash();
+			Files.copy(OperationLog.getLogFile(crashFile).toPath(), savedLog.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			// arrêt brutal pendant la récupération, après l'écriture des nouvelles métadonnées mais avant que le journal ne soit vidé
+			new BDD(crashFile).close();
+			restoreLog(savedLog);
+			check(persons);
+
+			// arrêt brutal pendant une sauvegarde, après l'écriture des nouvelles métadonnées mais avant que le journal ne soit vidé
+			bdd.checkpoint();
+			crash();
+			restoreLog(savedLog);
+			check(persons);
+		} finally {
+			//noinspection ResultOfMethodCallIgnored
+			savedLog.delete();
+		}
+	}
+
+	@Test
+	public void testAutomaticCheckpoint() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setOperationLogEnabled(true).setLogSyncPolicy(LogSyncPolicy.NONE).setMaxOperationLogSize(1000);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			HashMap<String, Person> persons=new HashMap<>();
+			fill(bdd, 200, persons);
+			Assert.assertTrue(OperationLog.getLogFile(bddFile).length()<=1100, "The log must not grow beyond its maximal size");
+			crash();
+			check(persons);
+		}
+	}
+
+	@Test
+	public void testMemoryMappedTail() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setStorageMode(StorageMode.MEMORY_MAPPED)
+				.setOperationLogEnabled(true).setLogSyncPolicy(LogSyncPolicy.EVERY_OPERATION);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			HashMap<String, Person> persons=new HashMap<>();
+			fill(bdd, 50, persons);
+			bdd.checkpoint();
+			fill(bdd, 10, persons);
+			long length=bdd.getStatistics().getFileLength();
+			Assert.assertTrue(bddFile.length()>length, "The mapped file must extend beyond its logical length");
+			crash();
+			try (BDD recovered=new BDD(crashFile, StorageMode.MEMORY_MAPPED)) {
+				for (Map.Entry<String, Person> e : persons.entrySet())
+					Assert.assertEquals(recovered.getObject(e.getKey()), e.getValue(), "The key "+e.getKey()+" must be recovered");
+				// sans enregistrement, le fichier ne garde que ses métadonnées : la fin projetée n'est pas perdue
+				Assert.assertEquals(recovered.removeAll(persons.keySet()), persons.size());
+				recovered.checkpoint();
+				Assert.assertTrue(recovered.getStatistics().getFileLength()<length, "The mapped tail must be given back to the allocator after a crash");
+			}
+		}
+	}
+
+	@Test
+	public void testMemoryMappedTailWithoutLog() throws Exception {
+		try (BDD bdd=new BDD(bddFile, StorageMode.MEMORY_MAPPED)) {
+			HashMap<String, Person> persons=new HashMap<>();
+			fill(bdd, 50, persons);
+			bdd.checkpoint();
+			long length=bdd.getStatistics().getFileLength();
+			// les modifications qui suivent la sauvegarde sont perdues, et leurs zones rendues à l'allocateur
+			for (int i=0;i<50;i++)
+				bdd.putObject("other"+i, new Person());
+			Assert.assertTrue(bddFile.length()>length, "The mapped file must extend beyond its logical length");
+			Files.copy(bddFile.toPath(), crashFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			try (BDD recovered=new BDD(crashFile, StorageMode.MEMORY_MAPPED)) {
+				Assert.assertEquals(recovered.getStatistics().getFileLength(), length);
+				for (Map.Entry<String, Person> e : persons.entrySet())
+					Assert.assertEquals(recovered.getObject(e.getKey()), e.getValue(), "The key "+e.getKey()+" must be recovered");
+			}
+		}
+	}
+
+	private void testRecovery(LogSyncPolicy policy, boolean waitGroupCommit) throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setOperationLogEnabled(true).setLogSyncPolicy(policy).setGroupCommitDelay(5);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			HashMap<String, Person> persons=new HashMap<>();
+			fill(bdd, 100, persons);
+			if (waitGroupCommit)
+				Thread.sleep(200);
+			crash();
+			check(persons);
+		}
+	}
+
+	private void fill(BDD bdd, int count, HashMap<String, Person> persons) throws IOException {
+		for (int i=0;i<count;i++)
+		{
+			Person p=new Person();
+			String name="name"+((int)(Math.random()*count));
+			persons.put(name, p);
+			bdd.putObject(name, p);
+			if (i%5==0)
+			{
+				String removed="name"+((int)(Math.random()*count));
+				bdd.removeObject(removed);
+				persons.remove(removed);
+			}
+		}
+	}
+
+	private void crash() throws IOException {
+		Files.copy(bddFile.toPath(), crashFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Files.copy(OperationLog.getLogFile(bddFile).toPath(), OperationLog.getLogFile(crashFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Remet le journal sauvegardé à côté de la copie, suivi de la sauvegarde des métadonnées que la copie référence
+	 */
+	private void restoreLog(File savedLog) throws IOException {
+		Files.copy(savedLog.toPath(), OperationLog.getLogFile(crashFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		try (DataInputStream in=new DataInputStream(new FileInputStream(crashFile))) {
+			OperationLog.appendCheckpoint(OperationLog.getLogFile(crashFile), in.readLong(), in.readLong());
+		}
+	}
+
+	private void check(HashMap<String, Person> persons) throws Exception {
+		try (BDD bdd=new BDD(crashFile)) {
+			Assert.assertFalse(OperationLog.getLogFile(crashFile).exists(), "The log must be removed once replayed");
+			for (Map.Entry<String, Person> e : persons.entrySet())
+				Assert.assertEquals(bdd.getObject(e.getKey()), e.getValue(), "The key "+e.getKey()+" must be recovered");
+			for (String key : bdd.getLinks().keySet())
+				Assert.assertTrue(persons.containsKey(key), "The key "+key+" should have been removed");
+		}
+	}
+
+	@AfterMethod
+	public void removeFiles()
+	{
+		for (File f : new File[]{bddFile, crashFile, OperationLog.getLogFile(bddFile), OperationLog.getLogFile(crashFile)})
+			//noinspection ResultOfMethodCallIgnored
+			f.delete();
+	}
+}
@@ -0,0 +1,123 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests du répertoire des clés {@link PrimitiveHashKeyDirectory}
+ */
+public class TestPrimitiveHashKeyDirectory {
+
+	private static final File bddFile=new File("bddPrimitiveHashTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		bddFile.delete();
+	}
+
+	private static void check(KeyDirectory directory, Map<String, Long> expected) throws Exception {
+		Assert.assertEquals(directory.size(), expected.size());
+		HashMap<String, Long> iterated=new HashMap<>();
+		for (Iterator<Map.Entry<String, Long>> it=directory.iterator();it.hasNext();)
+		{
+			Map.Entry<String, Long> e=it.next();
+			Assert.assertNull(iterated.put(e.getKey(), e.getValue()), "A key must be iterated once");
+		}
+		Assert.assertEquals(iterated, expected);
+		for (Map.Entry<String, Long> e : expected.entrySet())
+			Assert.assertEquals(directory.get(e.getKey()), e.getValue());
+	}
+
+	@Test
+	public void testRandomOperations() throws Exception {
+		PrimitiveHashKeyDirectory directory=new PrimitiveHashKeyDirectory();
+		HashMap<String, Long> expected=new HashMap<>();
+		Random random=new Random(7);
+		for (int round=0;round<20;round++)
+		{
+			//les tours alternent les phases de croissance et de décroissance, afin de provoquer des migrations dans les deux sens
+			int removeRatio=round%4==3?1:4;
+			for (int i=0;i<3000;i++)
+			{
+				String key="k"+random.nextInt(20000);
+				if (random.nextInt(removeRatio+1)==0)
+					Assert.assertEquals(directory.remove(key), expected.remove(key));
+				else
+				{
+					long position=random.nextLong();
+					Assert.assertEquals(directory.put(key, position), expected.put(key, position));
+				}
+				if (i%500==0)
+					Assert.assertEquals(directory.size(), expected.size());
+			}
+			check(directory, expected);
+			directory=new PrimitiveHashKeyDirectory(directory.save());
+			check(directory, expected);
+		}
+	}
+
+	@Test
+	public void testMigrationIsIncremental() throws Exception {
+		PrimitiveHashKeyDirectory directory=new PrimitiveHashKeyDirectory();
+		HashMap<String, Long> expected=new HashMap<>();
+		for (long i=0;i<100000;i++)
+		{
+			directory.put("key"+i, i);
+			expected.put("key"+i, i);
+			//la migration est en cours pendant une partie de ces vérifications
+			if (i%997==0)
+			{
+				Assert.assertEquals(directory.get("key"+(i/2)), Long.valueOf(i/2));
+				Assert.assertEquals(directory.put("key"+(i/3), -i), Long.valueOf(expected.put("key"+(i/3), -i)));
+				Assert.assertEquals(directory.remove("key"+(i/5)), expected.remove("key"+(i/5)));
+				Assert.assertEquals(directory.size(), expected.size());
+			}
+		}
+		check(directory, expected);
+	}
+
+	@Test
+	public void testUnusualKeys() throws Exception {
+		PrimitiveHashKeyDirectory directory=new PrimitiveHashKeyDirectory();
+		StringBuilder sb=new StringBuilder();
+		while (sb.length()<100000)
+			sb.append("été-");
+		HashMap<String, Long> expected=new HashMap<>();
+		expected.put("", 1L);
+		expected.put("😀", 2L);
+		expected.put(sb.toString(), 3L);
+		expected.put(sb.substring(1), 4L);
+		for (Map.Entry<String, Long> e : expected.entrySet())
+			directory.put(e.getKey(), e.getValue());
+		check(directory, expected);
+		check(new PrimitiveHashKeyDirectory(directory.save()), expected);
+	}
+
+	@Test
+	public void testConversionBetweenDirectoryTypes() throws Exception {
+		HashMap<String, Integer> expected=new HashMap<>();
+		try (BDD bdd=new BDD(bddFile)) {
+			for (int i=0;i<500;i++)
+			{
+				bdd.putObject("k"+i, i);
+				expected.put("k"+i, i);
+			}
+		}
+		BDDConfiguration configuration=new BDDConfiguration().setKeyDirectoryType(KeyDirectoryType.PRIMITIVE_HASH);
+		for (BDDConfiguration c : new BDDConfiguration[]{configuration, configuration, new BDDConfiguration()})
+		{
+			try (BDD bdd=new BDD(bddFile, c)) {
+				Assert.assertEquals(bdd.getLinks().size(), expected.size());
+				for (Map.Entry<String, Integer> e : expected.entrySet())
+					Assert.assertEquals(bdd.getObject(e.getKey()), e.getValue());
+			}
+		}
+	}
+}
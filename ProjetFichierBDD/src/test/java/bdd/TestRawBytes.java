@@ -0,0 +1,163 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests des fonctions qui échangent des tableaux d'octets sans sérialisation :
+ * {@link BDD#putBytes(String, ByteBuffer)}, {@link BDD#getBytes(String)}, {@link BDD#getInto(String, ByteBuffer)} et {@link BDD#transferTo(String, java.nio.channels.WritableByteChannel)}
+ */
+public class TestRawBytes {
+
+	private static final File bddFile=new File("bddRawBytesTest.toRemove");
+	private static final File targetFile=new File("bddRawBytesTarget.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		bddFile.delete();
+		targetFile.delete();
+		OperationLog.getLogFile(bddFile).delete();
+	}
+
+	@DataProvider(name="configurations")
+	public Object[][] configurations() {
+		return new Object[][]{
+				{new BDDConfiguration()},
+				{new BDDConfiguration().setStorageMode(StorageMode.MEMORY_MAPPED)},
+				{new BDDConfiguration().setCompressionEnabled(true)},
+		};
+	}
+
+	private static byte[] value(int length, boolean compressible) {
+		byte[] res=new byte[length];
+		if (compressible)
+			for (int i=0;i<length;i++)
+				res[i]=(byte) (i%13);
+		else
+			new Random(length).nextBytes(res);
+		return res;
+	}
+
+	@Test(dataProvider="configurations")
+	public void testRoundTrip(BDDConfiguration configuration) throws Exception {
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			for (int length : new int[]{0, 1, 100, 100000})
+			{
+				for (boolean compressible : new boolean[]{false, true})
+				{
+					String key="k"+length+compressible;
+					byte[] value=value(length, compressible);
+					ByteBuffer source=ByteBuffer.allocateDirect(length+3);
+					source.position(3);
+					source.put(value);
+					source.position(3);
+					bdd.putBytes(key, source);
+					Assert.assertFalse(source.hasRemaining());
+
+					Assert.assertEquals(bdd.getBytes(key), value);
+					Assert.assertEquals(bdd.getObject(key), value, "putBytes must be compatible with getObject");
+
+					ByteBuffer dst=ByteBuffer.allocate(length+2);
+					dst.put((byte) 1);
+					Assert.assertEquals(bdd.getInto(key, dst), length);
+					Assert.assertEquals(dst.position(), length+1);
+					Assert.assertEquals(Arrays.copyOfRange(dst.array(), 1, length+1), value);
+
+					ByteArrayOutputStream out=new ByteArrayOutputStream();
+					Assert.assertEquals(bdd.transferTo(key, Channels.newChannel(out)), length);
+					Assert.assertEquals(out.toByteArray(), value);
+				}
+			}
+			bdd.putObject("object", value(1000, true));
+			Assert.assertEquals(bdd.getBytes("object"), value(1000, true), "putObject must be compatible with getBytes");
+		}
+	}
+
+	@Test
+	public void testMissingAndInvalidValues() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertNull(bdd.getBytes("missing"));
+			Assert.assertEquals(bdd.getInto("missing", ByteBuffer.allocate(1)), -1);
+			Assert.assertEquals(bdd.transferTo("missing", Channels.newChannel(new ByteArrayOutputStream())), -1);
+			bdd.putObject("string", "not an array");
+			try {
+				bdd.getBytes("string");
+				Assert.fail("IOException should be generated");
+			}
+			catch (IOException ignored)
+			{
+
+			}
+			bdd.putBytes("k", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+			ByteBuffer small=ByteBuffer.allocate(2);
+			try {
+				bdd.getInto("k", small);
+				Assert.fail("BufferOverflowException should be generated");
+			}
+			catch (BufferOverflowException ignored)
+			{
+
+			}
+			Assert.assertEquals(small.position(), 0);
+		}
+	}
+
+	@Test
+	public void testTransferToFile() throws Exception {
+		byte[] value=value(3_000_000, false);
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putBytes("big", ByteBuffer.wrap(value));
+		}
+		try (BDD bdd=new BDD(bddFile); RandomAccessFile raf=new RandomAccessFile(targetFile, "rw"); FileChannel channel=raf.getChannel()) {
+			Assert.assertEquals(bdd.transferTo("big", channel), value.length);
+		}
+		Assert.assertEquals(Files.readAllBytes(targetFile.toPath()), value);
+	}
+
+	@Test
+	public void testTransferKeepsItsVersion() throws Exception {
+		byte[] value=value(200000, false);
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putBytes("k", ByteBuffer.wrap(value));
+			ByteArrayOutputStream out=new ByteArrayOutputStream();
+			//le canal modifie la clé pendant le transfert : les octets envoyés doivent rester ceux de l'ancienne valeur
+			bdd.transferTo("k", Channels.newChannel(new OutputStream() {
+				private boolean modified=false;
+
+				@Override
+				public void write(int b) {
+					out.write(b);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					if (!modified)
+					{
+						modified=true;
+						bdd.removeObject("k");
+						for (int i=0;i<10;i++)
+							bdd.putBytes("other"+i, ByteBuffer.wrap(new byte[50000]));
+					}
+					out.write(b, off, len);
+				}
+			}));
+			Assert.assertEquals(out.toByteArray(), value);
+			Assert.assertNull(bdd.getBytes("k"));
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Tests des parcours ordonnés {@link BDD#scan(String, String)} et {@link BDD#scanPrefix(String)}
+ */
+public class TestScan {
+
+	private static final File bddFile=new File("bddScanTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		bddFile.delete();
+	}
+
+	@DataProvider
+	public Object[][] keyDirectoryTypes() {
+		Object[][] res=new Object[KeyDirectoryType.values().length][];
+		for (int i=0;i<res.length;i++)
+			res[i]=new Object[]{KeyDirectoryType.values()[i]};
+		return res;
+	}
+
+	private static BDD openBDD(KeyDirectoryType type) throws Exception {
+		return new BDD(bddFile, new BDDConfiguration().setKeyDirectoryType(type).setKeyDirectoryPageSize(512));
+	}
+
+	private static TreeMap<String, Integer> fill(BDD bdd) throws Exception {
+		TreeMap<String, Integer> expected=new TreeMap<>();
+		for (int i=0;i<1000;i++)
+		{
+			String key=(i%2==0?"user:":"group:")+i+":name";
+			bdd.putObject(key, i);
+			expected.put(key, i);
+		}
+		return expected;
+	}
+
+	private static List<String> keys(Iterator<Map.Entry<String, Serializable>> it) {
+		List<String> res=new ArrayList<>();
+		while (it.hasNext())
+			res.add(it.next().getKey());
+		return res;
+	}
+
+	@Test(dataProvider = "keyDirectoryTypes")
+	public void testScan(KeyDirectoryType type) throws Exception {
+		try (BDD bdd=openBDD(type)) {
+			TreeMap<String, Integer> expected=fill(bdd);
+			Map<String, Serializable> all=bdd.scan(null, null).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+			Assert.assertEquals(all, expected);
+			Assert.assertEquals(keys(bdd.scan(null, null).iterator()), new ArrayList<>(expected.keySet()), "Keys must be sorted");
+			Assert.assertEquals(keys(bdd.scan("user:3", "user:5").iterator()), new ArrayList<>(expected.subMap("user:3", "user:5").keySet()));
+			Assert.assertEquals(keys(bdd.scan("user:100:name", "user:200:name").iterator()), new ArrayList<>(expected.subMap("user:100:name", "user:200:name").keySet()));
+			Assert.assertEquals(keys(bdd.scan("zzz", null).iterator()).size(), 0);
+			Assert.assertEquals(keys(bdd.scan("b", "a").iterator()).size(), 0);
+		}
+	}
+
+	@Test(dataProvider = "keyDirectoryTypes")
+	public void testScanPrefix(KeyDirectoryType type) throws Exception {
+		try (BDD bdd=openBDD(type)) {
+			TreeMap<String, Integer> expected=fill(bdd);
+			Assert.assertEquals(bdd.scanPrefix("user:").count(), 500);
+			Assert.assertEquals(bdd.scanPrefix("group:").mapToInt(e -> (Integer) e.getValue()).sum(), expected.entrySet().stream()
+					.filter(e -> e.getKey().startsWith("group:")).mapToInt(Map.Entry::getValue).sum());
+			Assert.assertEquals(keys(bdd.scanPrefix("user:12").iterator()), new ArrayList<>(expected.subMap("user:12", "user:13").keySet()));
+			Assert.assertEquals(bdd.scanPrefix("nobody:").count(), 0);
+			Assert.assertEquals(bdd.scanPrefix("").count(), expected.size());
+		}
+	}
+
+	@Test(dataProvider = "keyDirectoryTypes")
+	public void testModificationsDuringScan(KeyDirectoryType type) throws Exception {
+		try (BDD bdd=openBDD(type)) {
+			TreeMap<String, Integer> expected=fill(bdd);
+			Iterator<Map.Entry<String, Serializable>> it=bdd.scanPrefix("user:").iterator();
+			Assert.assertEquals(it.next().getKey(), expected.ceilingKey("user:"));
+			//les modifications situées après le premier lot sont visibles, et le parcours reste trié
+			String last=expected.floorKey("user:￿");
+			Assert.assertTrue(bdd.removeObject(last));
+			bdd.putObject(expected.lowerKey(last), -1);
+			List<Map.Entry<String, Serializable>> rest=new ArrayList<>();
+			it.forEachRemaining(rest::add);
+			Assert.assertEquals(rest.size(), 498);
+			Assert.assertEquals(rest.get(rest.size()-1).getValue(), -1);
+			for (int i=1;i<rest.size();i++)
+				Assert.assertTrue(KeyDirectory.compareKeys(rest.get(i-1).getKey(), rest.get(i).getKey())<0);
+		}
+	}
+
+	@Test
+	public void testCompareKeys() {
+		Assert.assertTrue(KeyDirectory.compareKeys("a", "b")<0);
+		Assert.assertTrue(KeyDirectory.compareKeys("ab", "a")>0);
+		Assert.assertEquals(KeyDirectory.compareKeys("été", "été"), 0);
+		//au delà de U+FFFF, l'ordre des points de code diffère de celui de String.compareTo
+		Assert.assertTrue(KeyDirectory.compareKeys("￿", "😀")<0);
+		Assert.assertTrue("￿".compareTo("😀")>0);
+	}
+}
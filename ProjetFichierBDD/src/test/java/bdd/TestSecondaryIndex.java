@@ -0,0 +1,207 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests des index secondaires déclarés par {@link BDDConfiguration#addIndex(String, Class, java.util.function.Function)}
+ */
+public class TestSecondaryIndex {
+
+	private static final File bddFile=new File("bddIndexTest.toRemove");
+	private static final File crashFile=new File("bddIndexCrashTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		for (File f : new File[]{bddFile, crashFile})
+		{
+			f.delete();
+			OperationLog.getLogFile(f).delete();
+			BDD.getIndexFile(f).delete();
+		}
+	}
+
+	private static Person person(String lastName, int age) {
+		Person p=new Person();
+		p.setLastName(lastName);
+		p.setAge(age);
+		return p;
+	}
+
+	private static BDDConfiguration configuration(AtomicInteger extractions) {
+		return new BDDConfiguration()
+				.addIndex("age", Person.class, p -> {
+					extractions.incrementAndGet();
+					return p.getAge();
+				})
+				.addIndex("lastName", Person.class, Person::getLastName);
+	}
+
+	/**
+	 * Vérifie les index en les comparant aux objets attendus
+	 */
+	private static void check(BDD bdd, Map<String, Person> expected) throws Exception {
+		for (int age=0;age<10;age++)
+		{
+			TreeSet<String> keys=new TreeSet<>();
+			for (Map.Entry<String, Person> e : expected.entrySet())
+				if (e.getValue().getAge()==age)
+					keys.add(e.getKey());
+			Assert.assertEquals(bdd.findKeys("age", age), new ArrayList<>(keys));
+		}
+		List<String> range=bdd.findKeysInRange("age", 3, 6);
+		List<String> expectedRange=new ArrayList<>();
+		for (int age=3;age<6;age++)
+			expectedRange.addAll(bdd.findKeys("age", age));
+		Assert.assertEquals(range, expectedRange);
+		Assert.assertEquals(bdd.findKeysInRange("age", null, null).size(), expected.size());
+	}
+
+	@Test
+	public void testMaintenance() throws Exception {
+		AtomicInteger extractions=new AtomicInteger();
+		HashMap<String, Person> expected=new HashMap<>();
+		try (BDD bdd=new BDD(bddFile, configuration(extractions))) {
+			for (int i=0;i<100;i++)
+			{
+				Person p=person("name"+(i%7), i%10);
+				bdd.putObject("p"+i, p);
+				expected.put("p"+i, p);
+			}
+			HashMap<String, Person> batch=new HashMap<>();
+			for (int i=100;i<150;i++)
+				batch.put("p"+i, person("batch", i%10));
+			bdd.putAll(batch);
+			expected.putAll(batch);
+			bdd.putObject("other", "not a person");
+			check(bdd, expected);
+
+			Person moved=person("moved", 9);
+			bdd.putObject("p3", moved);
+			expected.put("p3", moved);
+			Assert.assertTrue(bdd.removeObject("p4"));
+			expected.remove("p4");
+			Assert.assertEquals(bdd.removeAll(Arrays.asList("p5", "p6")), 2);
+			expected.remove("p5");
+			expected.remove("p6");
+			bdd.putBytes("p7", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+			expected.remove("p7");
+			check(bdd, expected);
+
+			Assert.assertEquals(bdd.findKeys("lastName", "moved"), Arrays.asList("p3"));
+			Assert.assertTrue(bdd.findKeys("lastName", "missing").isEmpty());
+			Map<String, Serializable> found=bdd.findBy("lastName", "batch");
+			Assert.assertEquals(found.size(), 50);
+			for (Serializable p : found.values())
+				Assert.assertEquals(((Person) p).getLastName(), "batch");
+			Map<String, Serializable> inRange=bdd.findInRange("age", 8, null);
+			Assert.assertEquals(new ArrayList<>(inRange.keySet()), bdd.findKeysInRange("age", 8, 10));
+			for (Serializable p : inRange.values())
+				Assert.assertTrue(((Person) p).getAge()>=8);
+			try {
+				bdd.findKeys("missing", 1);
+				Assert.fail();
+			} catch (IllegalArgumentException ignored) {
+			}
+		}
+		Assert.assertTrue(BDD.getIndexFile(bddFile).exists());
+
+		extractions.set(0);
+		try (BDD bdd=new BDD(bddFile, configuration(extractions))) {
+			Assert.assertEquals(extractions.get(), 0, "The indexes must be loaded from the index file");
+			check(bdd, expected);
+			Assert.assertEquals(bdd.findKeys("lastName", "moved"), Arrays.asList("p3"));
+		}
+	}
+
+	@Test
+	public void testCompareToEquality() throws Exception {
+		// 1.0 et 1.00 sont différents pour equals, mais égaux pour compareTo, comme dans l'index
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().addIndex("amount", BigDecimal.class, v -> v))) {
+			bdd.putObject("a", new BigDecimal("1.0"));
+			bdd.putObject("b", new BigDecimal("1.00"));
+			bdd.putObject("c", new BigDecimal("2"));
+			Assert.assertEquals(bdd.findKeys("amount", new BigDecimal("1")), Arrays.asList("a", "b"));
+			Map<String, Serializable> found=bdd.findBy("amount", new BigDecimal("1"));
+			Assert.assertEquals(new ArrayList<>(found.keySet()), Arrays.asList("a", "b"));
+			Assert.assertEquals(found.get("b"), new BigDecimal("1.00"));
+			Assert.assertEquals(bdd.findInRange("amount", new BigDecimal("1"), new BigDecimal("2.0")).keySet(), found.keySet());
+		}
+	}
+
+	@Test
+	public void testRebuild() throws Exception {
+		HashMap<String, Person> expected=new HashMap<>();
+		try (BDD bdd=new BDD(bddFile)) {
+			for (int i=0;i<50;i++)
+			{
+				Person p=person("name", i%10);
+				bdd.putObject("p"+i, p);
+				expected.put("p"+i, p);
+			}
+		}
+		Assert.assertFalse(BDD.getIndexFile(bddFile).exists());
+		AtomicInteger extractions=new AtomicInteger();
+		try (BDD bdd=new BDD(bddFile, configuration(extractions))) {
+			Assert.assertEquals(extractions.get(), 50, "A new index must be built from the stored objects");
+			check(bdd, expected);
+		}
+		// un index qui n'est plus déclaré disparaît du fichier des index
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().addIndex("lastName", Person.class, Person::getLastName))) {
+			Assert.assertEquals(bdd.findKeys("lastName", "name").size(), 50);
+		}
+		extractions.set(0);
+		try (BDD bdd=new BDD(bddFile, configuration(extractions))) {
+			Assert.assertEquals(extractions.get(), 50);
+			check(bdd, expected);
+		}
+	}
+
+	@Test
+	public void testRebuildAfterCrash() throws Exception {
+		AtomicInteger extractions=new AtomicInteger();
+		BDDConfiguration configuration=configuration(extractions).setOperationLogEnabled(true).setLogSyncPolicy(LogSyncPolicy.EVERY_OPERATION);
+		HashMap<String, Person> expected=new HashMap<>();
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			for (int i=0;i<40;i++)
+			{
+				Person p=person("name", i%10);
+				bdd.putObject("p"+i, p);
+				expected.put("p"+i, p);
+			}
+			bdd.checkpoint();
+			for (int i=0;i<10;i++)
+			{
+				Person p=person("after", (i+5)%10);
+				bdd.putObject("p"+i, p);
+				expected.put("p"+i, p);
+			}
+			bdd.removeObject("p20");
+			expected.remove("p20");
+			Files.copy(bddFile.toPath(), crashFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.copy(OperationLog.getLogFile(bddFile).toPath(), OperationLog.getLogFile(crashFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.copy(BDD.getIndexFile(bddFile).toPath(), BDD.getIndexFile(crashFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		extractions.set(0);
+		try (BDD bdd=new BDD(crashFile, configuration)) {
+			Assert.assertEquals(extractions.get(), expected.size(), "A stale index file must be rebuilt");
+			check(bdd, expected);
+			Assert.assertEquals(bdd.findKeys("lastName", "after").size(), 10);
+		}
+	}
+}
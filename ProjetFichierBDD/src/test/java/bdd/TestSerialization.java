@@ -3,8 +3,17 @@ package bdd;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.TreeSet;
 
 /**
@@ -72,5 +81,73 @@ public class TestSerialization {
 			freeSpaceIntervals.add(new BDD.FreeSpaceInterval((int)(i*Math.random()*1000), (int)(Math.random()*10+10)));
 		byte[] data=SerializationTools.serializeFreeSpaceIntervals(freeSpaceIntervals);
 		Assert.assertEquals(data.length, 16*freeSpaceIntervals.size());
+		TreeSet<BDD.FreeSpaceInterval> freeSpaceIntervals2=SerializationTools.deserializeFreeSpaceIntervals(data);
+		Assert.assertEquals(freeSpaceIntervals2.size(), freeSpaceIntervals.size());
+		Iterator<BDD.FreeSpaceInterval> it=freeSpaceIntervals2.iterator();
+		for (BDD.FreeSpaceInterval interval : freeSpaceIntervals)
+		{
+			BDD.FreeSpaceInterval interval2=it.next();
+			Assert.assertEquals(interval2.getStartPosition(), interval.getStartPosition());
+			Assert.assertEquals(interval2.getLength(), interval.getLength());
+		}
+	}
+
+	@Test
+	public void testVarLong() throws IOException {
+		long[] values={0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+		ByteArrayOutputStream bos=new ByteArrayOutputStream();
+		DataOutputStream out=new DataOutputStream(bos);
+		for (long v : values)
+			SerializationTools.writeVarLong(out, v);
+		DataInputStream in=new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		for (long v : values)
+			Assert.assertEquals(SerializationTools.readVarLong(in), v);
+		Assert.assertEquals(in.available(), 0);
+	}
+
+	@Test
+	public void testKeyDirectory() throws IOException, ClassNotFoundException {
+		HashMap<String, Long> links=new HashMap<>();
+		for (int i=0;i<1000;i++)
+			links.put("user/"+i+"/profile", 16L+i*100+(long)(Math.random()*50));
+		links.put("", 20L);
+		links.put("clé", Long.MAX_VALUE);
+		links.put("clés", 16L);
+		byte[] data=SerializationTools.serializeKeyDirectory(links);
+		Assert.assertTrue(data.length<SerializationTools.serialize(links).length/2, "The binary format must be smaller than Java serialization");
+		Assert.assertEquals(SerializationTools.deserializeKeyDirectory(new ByteArrayInputStream(data)), links);
+		Assert.assertTrue(HashKeyDirectory.isSavedDirectory(data));
+		Assert.assertTrue(SerializationTools.deserializeKeyDirectory(new ByteArrayInputStream(SerializationTools.serializeKeyDirectory(new HashMap<>()))).isEmpty());
+
+		try
+		{
+			SerializationTools.deserializeKeyDirectory(new ByteArrayInputStream(Arrays.copyOf(data, data.length-1)));
+			Assert.fail("EOFException should be generated");
+		}
+		catch (EOFException ignored)
+		{
+
+		}
+		byte[] unknownVersion=data.clone();
+		unknownVersion[4]=(byte) (SerializationTools.KEY_DIRECTORY_VERSION+1);
+		try
+		{
+			SerializationTools.deserializeKeyDirectory(new ByteArrayInputStream(unknownVersion));
+			Assert.fail("IOException should be generated");
+		}
+		catch (IOException ignored)
+		{
+
+		}
+
+		// les répertoires sérialisés par Java restent lisibles
+		BDDConfiguration configuration=new BDDConfiguration();
+		for (byte[] saved : new byte[][]{data, SerializationTools.serialize(links)})
+		{
+			KeyDirectory directory=KeyDirectory.load(saved, configuration, null, null);
+			Assert.assertEquals(directory.size(), links.size());
+			for (Map.Entry<String, Long> e : links.entrySet())
+				Assert.assertEquals(directory.get(e.getKey()), e.getValue());
+		}
 	}
 }
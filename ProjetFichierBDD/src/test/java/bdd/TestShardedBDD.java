@@ -0,0 +1,141 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Tests de {@link ShardedBDD}
+ */
+public class TestShardedBDD {
+
+	private static final File directory=new File("bddShardedTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		File[] files=directory.listFiles();
+		if (files!=null)
+			for (File f : files)
+				f.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testOperations() throws Exception {
+		HashMap<String, Serializable> expected=new HashMap<>();
+		try (ShardedBDD bdd=new ShardedBDD(directory, 4)) {
+			Assert.assertEquals(bdd.getShardCount(), 4);
+			for (int i=0;i<200;i++)
+			{
+				bdd.putObject("k"+i, "value"+i);
+				expected.put("k"+i, "value"+i);
+			}
+			HashMap<String, Serializable> batch=new HashMap<>();
+			for (int i=200;i<1000;i++)
+				batch.put("k"+i, i);
+			bdd.putAll(batch);
+			expected.putAll(batch);
+			Assert.assertTrue(bdd.removeObject("k5"));
+			Assert.assertFalse(bdd.removeObject("k5"));
+			expected.remove("k5");
+			List<String> removed=new ArrayList<>();
+			for (int i=500;i<600;i++)
+				removed.add("k"+i);
+			removed.add("missing");
+			Assert.assertEquals(bdd.removeAll(removed), 100);
+			for (String key : removed)
+				expected.remove(key);
+			Assert.assertEquals(bdd.getObject("k7"), "value7");
+			Assert.assertNull(bdd.getObject("k5"));
+			Assert.assertEquals(bdd.getAll(expected.keySet()), expected);
+
+			long keys=0;
+			for (BDDStatistics statistics : bdd.getStatistics())
+			{
+				Assert.assertTrue(statistics.getKeyCount()>0, "The keys must be spread across all shards");
+				keys+=statistics.getKeyCount();
+			}
+			Assert.assertEquals(keys, expected.size());
+		}
+		Assert.assertEquals(directory.list().length, 4);
+		try (ShardedBDD bdd=new ShardedBDD(directory, 4)) {
+			Assert.assertEquals(bdd.getAll(expected.keySet()), expected);
+			bdd.checkpoint();
+			CompactionStatistics statistics=bdd.compact();
+			Assert.assertTrue(statistics.getMovedRecords()>0);
+			Assert.assertEquals(bdd.getAll(expected.keySet()), expected);
+		}
+	}
+
+	@Test
+	public void testShardCountMismatch() throws Exception {
+		try (ShardedBDD bdd=new ShardedBDD(directory, 3)) {
+			bdd.putObject("k", "v");
+		}
+		try {
+			new ShardedBDD(directory, 5).close();
+			Assert.fail("IOException should be generated");
+		}
+		catch (IOException ignored)
+		{
+
+		}
+	}
+
+	@Test
+	public void testScan() throws Exception {
+		try (ShardedBDD bdd=new ShardedBDD(directory, 5)) {
+			HashMap<String, Serializable> batch=new HashMap<>();
+			for (int i=0;i<500;i++)
+				batch.put(String.format("key%04d", i), i);
+			bdd.putAll(batch);
+			List<String> keys=bdd.scan("key0100", "key0200").map(Map.Entry::getKey).collect(Collectors.toList());
+			Assert.assertEquals(keys.size(), 100);
+			for (int i=0;i<keys.size();i++)
+				Assert.assertEquals(keys.get(i), String.format("key%04d", i+100));
+			Assert.assertEquals(bdd.scanPrefix("key04").count(), 100);
+			Assert.assertEquals(bdd.scanPrefix("other").count(), 0);
+			Assert.assertEquals(bdd.scan(null, null).mapToInt(e -> (Integer) e.getValue()).sum(), 499*500/2);
+		}
+	}
+
+	@Test
+	public void testConcurrentWriters() throws Exception {
+		ExecutorService executor=Executors.newFixedThreadPool(8);
+		try (ShardedBDD bdd=new ShardedBDD(directory, 4)) {
+			List<Future<?>> futures=new ArrayList<>();
+			for (int t=0;t<8;t++)
+			{
+				int thread=t;
+				futures.add(executor.submit(() -> {
+					Random random=new Random(thread);
+					for (int i=0;i<300;i++)
+					{
+						String key="t"+thread+"-"+random.nextInt(50);
+						bdd.putObject(key, i);
+						Assert.assertEquals(bdd.getObject(key), i);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> f : futures)
+				f.get();
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Vérifie que les deux implémentations de {@link Storage} se comportent de la même manière,
+ * y compris lorsque les données chevauchent plusieurs segments projetés.
+ */
+public class TestStorage {
+
+	private static final File storageFile=new File("storageFileTest.toRemove");
+
+	@Test
+	public void testRandomAccessFile() throws IOException {
+		testStorage(new RandomAccessFileStorage(storageFile));
+	}
+
+	@Test
+	public void testMemoryMapped() throws IOException {
+		testStorage(new MappedFileStorage(storageFile, 64));
+	}
+
+	@Test
+	public void testMemoryMappedReopen() throws IOException {
+		byte[] data=new byte[1000];
+		new Random().nextBytes(data);
+		try (Storage storage=new MappedFileStorage(storageFile, 128)) {
+			storage.write(10, data, 0, data.length);
+			Assert.assertEquals(storage.length(), 1010);
+		}
+		Assert.assertEquals(storageFile.length(), 1010, "The file must be truncated to its logical length when closed");
+		try (Storage storage=new MappedFileStorage(storageFile, 256)) {
+			byte[] read=new byte[data.length];
+			storage.read(10, read, 0, read.length);
+			Assert.assertEquals(read, data);
+		}
+	}
+
+	private void testStorage(Storage storage) throws IOException {
+		try (Storage s=storage) {
+			Assert.assertEquals(s.length(), 0);
+			s.writeLong(0, -1);
+			s.writeInt(62, 123456789);
+			s.writeLong(124, Long.MAX_VALUE - 5);
+			Assert.assertEquals(s.length(), 132);
+			Assert.assertEquals(s.readLong(0), -1);
+			Assert.assertEquals(s.readInt(62), 123456789);
+			Assert.assertEquals(s.readLong(124), Long.MAX_VALUE - 5);
+
+			byte[] data=new byte[500];
+			new Random().nextBytes(data);
+			s.write(100, data, 0, data.length);
+			byte[] read=new byte[data.length];
+			s.read(100, read, 0, read.length);
+			Assert.assertEquals(read, data);
+			Assert.assertEquals(s.length(), 600);
+
+			ByteBuffer buffer=ByteBuffer.allocateDirect(data.length+10);
+			buffer.position(10);
+			s.read(100, buffer);
+			Assert.assertFalse(buffer.hasRemaining());
+			buffer.position(10);
+			buffer.get(read);
+			Assert.assertEquals(read, data);
+			ByteArrayOutputStream out=new ByteArrayOutputStream();
+			s.transferTo(150, 400, Channels.newChannel(out));
+			Assert.assertEquals(out.toByteArray(), Arrays.copyOfRange(data, 50, 450));
+			try {
+				s.transferTo(550, 100, Channels.newChannel(out));
+				Assert.fail("Transferring beyond the end of the storage must fail");
+			}
+			catch (IOException ignored)
+			{
+
+			}
+
+			s.setLength(300);
+			Assert.assertEquals(s.length(), 300);
+			try {
+				s.read(250, read, 0, 100);
+				Assert.fail("Reading beyond the end of the storage must fail");
+			}
+			catch (IOException ignored)
+			{
+
+			}
+		}
+	}
+
+	@BeforeMethod
+	@AfterClass
+	public static void removeFile()
+	{
+		//noinspection ResultOfMethodCallIgnored
+		storageFile.delete();
+	}
+}
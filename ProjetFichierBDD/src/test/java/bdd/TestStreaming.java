@@ -0,0 +1,164 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests des flux {@link BDD#openForWrite(String, long)} et {@link BDD#openForRead(String)}
+ */
+public class TestStreaming {
+
+	private static final File bddFile=new File("bddStreamingTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		bddFile.delete();
+		OperationLog.getLogFile(bddFile).delete();
+	}
+
+	private static byte[] randomBytes(int length, long seed) {
+		byte[] res=new byte[length];
+		new Random(seed).nextBytes(res);
+		return res;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		byte[] res=new byte[0];
+		byte[] buffer=new byte[7000];
+		int n;
+		while ((n=in.read(buffer))>=0)
+		{
+			res=Arrays.copyOf(res, res.length+n);
+			System.arraycopy(buffer, 0, res, res.length-n, n);
+		}
+		return res;
+	}
+
+	private static void write(BDD bdd, String key, byte[] value, long expectedLength) throws IOException {
+		try (OutputStream out=bdd.openForWrite(key, expectedLength)) {
+			//des écritures de tailles variées passent par le tampon ou directement dans le fichier
+			int off=0;
+			Random random=new Random(off);
+			while (off<value.length)
+			{
+				int n=Math.min(value.length-off, random.nextInt(3)==0?1:random.nextInt(200000));
+				if (n==1)
+					out.write(value[off]);
+				else
+					out.write(value, off, n);
+				off+=n;
+			}
+		}
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		byte[] value=randomBytes(3_000_000, 1);
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertNull(bdd.openForRead("big"));
+			write(bdd, "big", value, value.length);
+			try (InputStream in=bdd.openForRead("big")) {
+				Assert.assertEquals(readAll(in), value);
+			}
+			Assert.assertEquals(bdd.getObject("big"), value, "A streamed value must be readable as a byte array");
+		}
+		try (BDD bdd=new BDD(bddFile); InputStream in=bdd.openForRead("big")) {
+			Assert.assertEquals(readAll(in), value);
+		}
+	}
+
+	@Test
+	public void testShorterAndLongerValues() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			byte[] value=randomBytes(1000, 2);
+			write(bdd, "k", value, 100000);
+			Assert.assertTrue(bddFile.length()<10000, "The unused end of the zone must be released");
+			try (InputStream in=bdd.openForRead("k")) {
+				Assert.assertEquals(readAll(in), value);
+			}
+			long length=bddFile.length();
+			OutputStream out=bdd.openForWrite("k", 10);
+			out.write(new byte[10]);
+			try {
+				out.write(1);
+				Assert.fail("IOException should be generated");
+			}
+			catch (IOException ignored)
+			{
+
+			}
+			out.close();
+			Assert.assertEquals(bdd.getObject("k"), value, "An aborted stream must not replace the value");
+			Assert.assertEquals(bddFile.length(), length);
+			write(bdd, "empty", new byte[0], 0);
+			Assert.assertEquals(bdd.getObject("empty"), new byte[0]);
+		}
+	}
+
+	@Test
+	public void testKeyIsReplacedOnClose() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putObject("k", "old");
+			OutputStream out=bdd.openForWrite("k", 3);
+			out.write(new byte[]{1, 2, 3});
+			Assert.assertEquals(bdd.getObject("k"), "old");
+			out.close();
+			Assert.assertEquals(bdd.getObject("k"), new byte[]{1, 2, 3});
+			Assert.assertNull(bdd.openForRead("missing"));
+			bdd.putObject("s", "not an array");
+			try {
+				bdd.openForRead("s");
+				Assert.fail("IOException should be generated");
+			}
+			catch (IOException ignored)
+			{
+
+			}
+		}
+	}
+
+	@Test
+	public void testCompressedValue() throws Exception {
+		byte[] value=new byte[200000];
+		for (int i=0;i<value.length;i++)
+			value[i]=(byte) (i%7);
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setCompressionEnabled(true))) {
+			bdd.putObject("c", value);
+			Assert.assertTrue(bddFile.length()<value.length/10);
+			try (InputStream in=bdd.openForRead("c")) {
+				Assert.assertEquals(readAll(in), value);
+			}
+		}
+	}
+
+	@Test
+	public void testReaderKeepsItsVersion() throws Exception {
+		byte[] first=randomBytes(500000, 3);
+		try (BDD bdd=new BDD(bddFile, new BDDConfiguration().setOperationLogEnabled(true))) {
+			write(bdd, "k", first, first.length);
+			InputStream in=bdd.openForRead("k");
+			byte[] start=new byte[1000];
+			Assert.assertEquals(in.read(start), 1000);
+			//la zone lue ne doit pas être réutilisée, même après la suppression de la clé et de nouveaux ajouts
+			Assert.assertTrue(bdd.removeObject("k"));
+			bdd.checkpoint();
+			for (int i=0;i<20;i++)
+				bdd.putObject("other"+i, randomBytes(50000, i));
+			byte[] rest=readAll(in);
+			in.close();
+			Assert.assertEquals(start, Arrays.copyOf(first, 1000));
+			Assert.assertEquals(rest, Arrays.copyOfRange(first, 1000, first.length));
+		}
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertTrue(bdd.getFragmentation()<0.6, "The zone of the stream must have been released: "+bdd.getFragmentation());
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests de {@link Transaction} et de {@link Snapshot}
+ */
+public class TestTransaction {
+
+	private static final File bddFile=new File("bddTransactionTest.toRemove");
+	private static final File crashFile=new File("bddTransactionCrashTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		for (File f : new File[]{bddFile, crashFile})
+		{
+			f.delete();
+			OperationLog.getLogFile(f).delete();
+		}
+	}
+
+	@Test
+	public void testCommitAndRollback() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putObject("a", "a0");
+			bdd.putObject("b", "b0");
+			try (Transaction transaction=bdd.beginTransaction()) {
+				transaction.putObject("a", "a1");
+				transaction.putObject("c", "c1");
+				transaction.removeObject("b");
+				transaction.removeObject("missing");
+				Assert.assertEquals(transaction.getObject("a"), "a1");
+				Assert.assertNull(transaction.getObject("b"));
+				Assert.assertEquals(transaction.getObject("c"), "c1");
+				Assert.assertEquals(bdd.getObject("a"), "a0");
+				Assert.assertEquals(bdd.getObject("b"), "b0");
+				Assert.assertNull(bdd.getObject("c"));
+				transaction.commit();
+				Assert.assertFalse(transaction.isActive());
+				try {
+					transaction.putObject("d", "d1");
+					Assert.fail();
+				} catch (IllegalStateException ignored) {
+				}
+			}
+			Assert.assertEquals(bdd.getObject("a"), "a1");
+			Assert.assertNull(bdd.getObject("b"));
+			Assert.assertEquals(bdd.getObject("c"), "c1");
+
+			try (Transaction transaction=bdd.beginTransaction()) {
+				transaction.putObject("a", "a2");
+				transaction.removeObject("c");
+			}
+			Transaction transaction=bdd.beginTransaction();
+			transaction.putObject("a", "a3");
+			transaction.rollback();
+			Assert.assertEquals(bdd.getObject("a"), "a1");
+			Assert.assertEquals(bdd.getObject("c"), "c1");
+		}
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertEquals(bdd.getObject("a"), "a1");
+			Assert.assertNull(bdd.getObject("b"));
+			Assert.assertEquals(bdd.getObject("c"), "c1");
+		}
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			for (int i=0;i<20;i++)
+				bdd.putObject("k"+i, "v"+i);
+			long length;
+			long freeBytes;
+			try (Snapshot snapshot=bdd.snapshot()) {
+				length=bdd.getStatistics().getFileLength();
+				for (int round=0;round<5;round++)
+					for (int i=0;i<10;i++)
+						bdd.putObject("k"+i, "round"+round);
+				bdd.removeObject("k10");
+				bdd.putObject("new", "new");
+				Assert.assertTrue(bdd.getStatistics().getFileLength()>length, "The replaced records must not be reused");
+				for (int i=0;i<20;i++)
+					Assert.assertEquals(snapshot.getObject("k"+i), "v"+i);
+				Assert.assertNull(snapshot.getObject("new"));
+				Map<String, Serializable> all=snapshot.getAll(Arrays.asList("k0", "k10", "new"));
+				Assert.assertEquals(all.size(), 2);
+				Assert.assertEquals(all.get("k10"), "v10");
+				try (Snapshot later=bdd.snapshot()) {
+					bdd.putObject("k0", "last");
+					Assert.assertEquals(later.getObject("k0"), "round4");
+					Assert.assertEquals(snapshot.getObject("k0"), "v0");
+				}
+				Assert.assertEquals(snapshot.getObject("k0"), "v0");
+				freeBytes=bdd.getStatistics().getFreeBytes();
+			}
+			Assert.assertTrue(bdd.getStatistics().getFreeBytes()>freeBytes, "The replaced records must be released once the snapshots are closed");
+			Assert.assertEquals(bdd.getObject("k0"), "last");
+			for (int i=0;i<200;i++)
+				bdd.putObject("k"+(i%10), "after"+i);
+			try (Snapshot snapshot=bdd.snapshot()) {
+				Assert.assertEquals(snapshot.getObject("k1"), "after191");
+				snapshot.close();
+				try {
+					snapshot.getObject("k1");
+					Assert.fail();
+				} catch (IllegalStateException ignored) {
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testConflict() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			bdd.putObject("a", 0);
+			bdd.putObject("b", 0);
+			Transaction first=bdd.beginTransaction();
+			Transaction second=bdd.beginTransaction();
+			Transaction other=bdd.beginTransaction();
+			first.putObject("a", 1);
+			second.putObject("a", 2);
+			second.putObject("b", 2);
+			other.putObject("b", 3);
+			first.commit();
+			try {
+				second.commit();
+				Assert.fail();
+			} catch (ConcurrentModificationException ignored) {
+			}
+			Assert.assertFalse(second.isActive());
+			other.commit();
+			Assert.assertEquals(bdd.getObject("a"), 1);
+			Assert.assertEquals(bdd.getObject("b"), 3);
+
+			// une modification hors transaction entre aussi en conflit
+			try (Transaction transaction=bdd.beginTransaction()) {
+				transaction.removeObject("a");
+				bdd.putObject("a", 4);
+				try {
+					transaction.commit();
+					Assert.fail();
+				} catch (ConcurrentModificationException ignored) {
+				}
+			}
+			Assert.assertEquals(bdd.getObject("a"), 4);
+		}
+	}
+
+	@Test
+	public void testConcurrentReaders() throws Exception {
+		try (BDD bdd=new BDD(bddFile)) {
+			int accounts=10;
+			for (int i=0;i<accounts;i++)
+				bdd.putObject("account"+i, 100);
+			List<String> keys=new ArrayList<>();
+			for (int i=0;i<accounts;i++)
+				keys.add("account"+i);
+			AtomicBoolean done=new AtomicBoolean(false);
+			AtomicReference<Throwable> failure=new AtomicReference<>();
+			List<Thread> readers=new ArrayList<>();
+			for (int t=0;t<3;t++)
+			{
+				Thread reader=new Thread(() -> {
+					try {
+						while (!done.get())
+						{
+							try (Snapshot snapshot=bdd.snapshot()) {
+								int sum=0;
+								for (String key : keys)
+									sum+=(Integer) snapshot.getObject(key);
+								Assert.assertEquals(sum, accounts*100);
+								int total=0;
+								for (Serializable v : snapshot.getAll(keys).values())
+									total+=(Integer) v;
+								Assert.assertEquals(total, accounts*100);
+							}
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				});
+				readers.add(reader);
+				reader.start();
+			}
+			for (int i=0;i<300;i++)
+			{
+				String from="account"+(i%accounts);
+				String to="account"+((i*7+3)%accounts);
+				if (from.equals(to))
+					continue;
+				try (Transaction transaction=bdd.beginTransaction()) {
+					transaction.putObject(from, (Integer) transaction.getObject(from)-1);
+					transaction.putObject(to, (Integer) transaction.getObject(to)+1);
+					transaction.commit();
+				}
+			}
+			done.set(true);
+			for (Thread reader : readers)
+				reader.join();
+			Assert.assertNull(failure.get());
+			int sum=0;
+			for (Serializable v : bdd.getAll(keys).values())
+				sum+=(Integer) v;
+			Assert.assertEquals(sum, accounts*100);
+		}
+	}
+
+	@Test
+	public void testReplayIsAtomic() throws Exception {
+		BDDConfiguration configuration=new BDDConfiguration().setOperationLogEnabled(true).setLogSyncPolicy(LogSyncPolicy.EVERY_OPERATION);
+		long logLength;
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			bdd.putObject("a", "a0");
+			bdd.putObject("b", "b0");
+			logLength=OperationLog.getLogFile(bddFile).length();
+			try (Transaction transaction=bdd.beginTransaction()) {
+				transaction.putObject("a", "a1");
+				transaction.removeObject("b");
+				transaction.putObject("c", "c1");
+				transaction.commit();
+			}
+			Files.copy(bddFile.toPath(), crashFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.copy(OperationLog.getLogFile(bddFile).toPath(), OperationLog.getLogFile(crashFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Assert.assertTrue(OperationLog.getLogFile(crashFile).length()>logLength);
+		}
+		try (BDD bdd=new BDD(crashFile)) {
+			Assert.assertEquals(bdd.getObject("a"), "a1");
+			Assert.assertNull(bdd.getObject("b"));
+			Assert.assertEquals(bdd.getObject("c"), "c1");
+		}
+		crashFile.delete();
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			bdd.putObject("a", "a0");
+			bdd.putObject("b", "b0");
+			bdd.removeObject("c");
+			bdd.checkpoint();
+			try (Transaction transaction=bdd.beginTransaction()) {
+				transaction.putObject("a", "a1");
+				transaction.removeObject("b");
+				transaction.putObject("c", "c1");
+				transaction.commit();
+			}
+			Files.copy(bddFile.toPath(), crashFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.copy(OperationLog.getLogFile(bddFile).toPath(), OperationLog.getLogFile(crashFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		// l'entrée de la transaction est incomplète : aucune de ses opérations n'est rejouée
+		try (RandomAccessFile raf=new RandomAccessFile(OperationLog.getLogFile(crashFile), "rw")) {
+			raf.setLength(raf.length()-2);
+		}
+		try (BDD bdd=new BDD(crashFile)) {
+			Assert.assertEquals(bdd.getObject("a"), "a0");
+			Assert.assertEquals(bdd.getObject("b"), "b0");
+			Assert.assertNull(bdd.getObject("c"));
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package bdd;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests de l'écriture différée ({@link BDDConfiguration#setWriteBufferSize(long)})
+ */
+public class TestWriteBuffer {
+
+	private static final File bddFile=new File("bddWriteBufferTest.toRemove");
+
+	@AfterMethod
+	public void removeFiles() {
+		bddFile.delete();
+		OperationLog.getLogFile(bddFile).delete();
+		BDD.getIndexFile(bddFile).delete();
+	}
+
+	private static BDDConfiguration configuration(long size) {
+		return new BDDConfiguration().setWriteBufferSize(size).setWriteBufferFlushInterval(60000).setMetricsEnabled(true);
+	}
+
+	@Test
+	public void testBufferedOperations() throws Exception {
+		HashMap<String, Serializable> expected=new HashMap<>();
+		try (BDD bdd=new BDD(bddFile, configuration(1<<20))) {
+			bdd.putObject("stored", "stored");
+			bdd.putObject("removed", "removed");
+			bdd.flush();
+			long length=bdd.getStatistics().getFileLength();
+			for (int i=0;i<100;i++)
+			{
+				bdd.putObject("k"+i, "value"+i);
+				expected.put("k"+i, "value"+i);
+			}
+			HashMap<String, Serializable> batch=new HashMap<>();
+			for (int i=90;i<110;i++)
+				batch.put("k"+i, i);
+			bdd.putAll(batch);
+			expected.putAll(batch);
+			Assert.assertTrue(bdd.removeObject("removed"));
+			Assert.assertFalse(bdd.removeObject("removed"));
+			Assert.assertTrue(bdd.removeObject("k5"));
+			Assert.assertFalse(bdd.removeObject("missing"));
+			expected.remove("k5");
+			Assert.assertEquals(bdd.removeAll(Arrays.asList("k6", "k7", "k5")), 2);
+			expected.remove("k6");
+			expected.remove("k7");
+			expected.put("stored", "stored");
+			Assert.assertEquals(bdd.getStatistics().getFileLength(), length, "Nothing must be written before the flush");
+			Assert.assertEquals(bdd.getStatistics().getLatency(MeasuredOperation.FLUSH).getCount(), 1);
+
+			Assert.assertEquals(bdd.getObject("k1"), "value1");
+			Assert.assertEquals(bdd.getObject("k95"), 95);
+			Assert.assertNull(bdd.getObject("k5"));
+			Assert.assertNull(bdd.getObject("removed"));
+			Assert.assertEquals(bdd.getObject("stored"), "stored");
+			Map<String, Serializable> all=bdd.getAll(Arrays.asList("k1", "k5", "removed", "stored"));
+			Assert.assertEquals(all.size(), 2);
+			Assert.assertEquals(all.get("k1"), "value1");
+			Assert.assertEquals(all.get("stored"), "stored");
+
+			bdd.flush();
+			Assert.assertTrue(bdd.getStatistics().getFileLength()>length);
+			Assert.assertEquals(bdd.getStatistics().getLatency(MeasuredOperation.FLUSH).getCount(), 2);
+			Assert.assertEquals(bdd.getAll(expected.keySet()), expected);
+			Assert.assertNull(bdd.getObject("removed"));
+			Assert.assertEquals(bdd.getLinks().size(), expected.size());
+
+			bdd.putObject("k1", "last");
+		}
+		expected.put("k1", "last");
+		try (BDD bdd=new BDD(bddFile)) {
+			Assert.assertEquals(bdd.getAll(expected.keySet()), expected);
+			Assert.assertEquals(bdd.getLinks().size(), expected.size());
+		}
+	}
+
+	@Test
+	public void testSizeThreshold() throws Exception {
+		try (BDD bdd=new BDD(bddFile, configuration(4096))) {
+			for (int i=0;i<1000;i++)
+				bdd.putObject("k"+i, i);
+			long flushes=bdd.getStatistics().getLatency(MeasuredOperation.FLUSH).getCount();
+			Assert.assertTrue(flushes>0 && flushes<100, "flushes: "+flushes);
+			bdd.flush();
+			for (int i=0;i<1000;i++)
+				Assert.assertEquals(bdd.getObject("k"+i), i);
+		}
+	}
+
+	@Test
+	public void testBackgroundFlush() throws Exception {
+		try (BDD bdd=new BDD(bddFile, configuration(1<<20).setWriteBufferFlushInterval(10))) {
+			long length=bdd.getStatistics().getFileLength();
+			bdd.putObject("key", "value");
+			long deadline=System.currentTimeMillis()+10000;
+			while (bdd.getStatistics().getFileLength()==length && System.currentTimeMillis()<deadline)
+				Thread.sleep(10);
+			Assert.assertTrue(bdd.getStatistics().getFileLength()>length);
+			Assert.assertEquals(bdd.getObject("key"), "value");
+		}
+	}
+
+	@Test
+	public void testOtherOperations() throws Exception {
+		BDDConfiguration configuration=configuration(1<<20).addIndex("age", Person.class, Person::getAge);
+		try (BDD bdd=new BDD(bddFile, configuration)) {
+			bdd.putBytes("bytes", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+			Assert.assertEquals(bdd.getBytes("bytes"), new byte[]{1, 2, 3});
+			Person person=new Person();
+			person.setAge(42);
+			bdd.putObject("person", person);
+			Assert.assertEquals(bdd.findKeys("age", 42), Arrays.asList("person"));
+			bdd.putObject("a", "a0");
+			Assert.assertEquals(bdd.scanPrefix("a").count(), 1);
+
+			Transaction transaction=bdd.beginTransaction();
+			Assert.assertEquals(transaction.getObject("a"), "a0");
+			transaction.putObject("a", "a1");
+			bdd.putObject("a", "a2");
+			try {
+				transaction.commit();
+				Assert.fail();
+			} catch (ConcurrentModificationException ignored) {
+			}
+			Assert.assertEquals(bdd.getObject("a"), "a2");
+			try (Snapshot snapshot=bdd.snapshot()) {
+				bdd.putObject("a", "a3");
+				Assert.assertEquals(snapshot.getObject("a"), "a2");
+				Assert.assertEquals(bdd.getObject("a"), "a3");
+			}
+		}
+	}
+}